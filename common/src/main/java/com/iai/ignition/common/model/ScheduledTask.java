@@ -22,6 +22,7 @@ public class ScheduledTask implements Serializable {
     private String resultStorage;
     private long createdAt;
     private boolean enabled;
+    private Integer keepRuns;
 
     /**
      * No-arg constructor for serialization.
@@ -155,6 +156,17 @@ public class ScheduledTask implements Serializable {
         this.enabled = enabled;
     }
 
+    /**
+     * Number of most recent runs to retain for this task, or null to use the module default.
+     */
+    public Integer getKeepRuns() {
+        return keepRuns;
+    }
+
+    public void setKeepRuns(Integer keepRuns) {
+        this.keepRuns = keepRuns;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -12,6 +12,7 @@ public class ToolResult implements Serializable {
     private String toolCallId;
     private String content;
     private boolean isError;
+    private String contentRef;
 
     /**
      * No-arg constructor for serialization.
@@ -52,6 +53,18 @@ public class ToolResult implements Serializable {
         isError = error;
     }
 
+    /**
+     * SHA-256 of the content when it is stored in the tool blob store rather than inline.
+     * Only set on stored copies; content is null while the reference is unresolved.
+     */
+    public String getContentRef() {
+        return contentRef;
+    }
+
+    public void setContentRef(String contentRef) {
+        this.contentRef = contentRef;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
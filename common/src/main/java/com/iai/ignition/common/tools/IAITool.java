@@ -2,6 +2,9 @@ package com.iai.ignition.common.tools;
 
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Interface for Ignition AI tools.
  * Each tool provides a specific capability that Claude can invoke.
@@ -40,4 +43,95 @@ public interface IAITool {
      * @throws Exception if execution fails
      */
     JsonObject execute(JsonObject params) throws Exception;
+
+    /**
+     * Execute the tool for a specific conversation.
+     * This is how the registry calls tools. Tool instances are shared by all conversations and
+     * may be called concurrently, so per-call state must come from the context, never from
+     * fields. The default adapts tools that don't need the context to {@link #execute(JsonObject)}.
+     *
+     * @param params The parameters as a JSON object
+     * @param context The calling conversation, deadline, token budget and cancellation
+     * @return The result as a JSON object
+     * @throws Exception if execution fails
+     */
+    default JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        return execute(params);
+    }
+
+    /**
+     * Whether a call only reads state, so repeating it with the same parameters in the same
+     * conversation may return the earlier result instead of running again.
+     *
+     * @param params The parameters of the call
+     * @return true if the result may be memoized for {@link #getResultTtlMillis(JsonObject)}
+     */
+    default boolean isIdempotent(JsonObject params) {
+        return false;
+    }
+
+    /**
+     * How long a memoized result of an idempotent call stays valid.
+     *
+     * @return Time to live in milliseconds
+     */
+    default long getResultTtlMillis() {
+        return 60_000L;
+    }
+
+    /**
+     * How long the result of a particular idempotent call stays valid, for tools whose results
+     * age differently per target. Defaults to {@link #getResultTtlMillis()}.
+     *
+     * @param params The parameters of the call
+     * @return Time to live in milliseconds; 0 or less to not memoize
+     */
+    default long getResultTtlMillis(JsonObject params) {
+        return getResultTtlMillis();
+    }
+
+    /**
+     * Whether a call may change gateway state (tags, databases, tasks). The calling
+     * conversation's memoized results are discarded after such a call; so are every
+     * conversation's memoized results, schema catalogs and cached query results of the databases
+     * it may have written (see {@link #getWrittenTables}).
+     *
+     * @param params The parameters of the call
+     * @return true if the call may write
+     */
+    default boolean hasSideEffects(JsonObject params) {
+        return false;
+    }
+
+    /**
+     * The database tables a call with side effects may have written, so only cached query
+     * results that read them are discarded. Only consulted when {@link #hasSideEffects} is true.
+     *
+     * @param params The parameters of the call
+     * @return Table names by datasource name, with a null or empty set for any table of that
+     *         datasource; an empty map if the call writes no database; or null if it may have
+     *         written any database
+     */
+    default Map<String, Set<String>> getWrittenTables(JsonObject params) {
+        return null;
+    }
+
+    /**
+     * Name what a call acts on (a table, a function) so execution metrics can be broken down
+     * below the tool level, e.g. to find slow tables. Keep the number of distinct values small.
+     *
+     * @param params The parameters of the call
+     * @return The target, or null to count the call only against the tool
+     */
+    default String getMetricsTarget(JsonObject params) {
+        return null;
+    }
+
+    /**
+     * Prepare expensive state (catalogs, caches) before the first call.
+     * Called once when the tool registry is built. Tools are shared by all conversations,
+     * so any state prepared here must be safe for concurrent use.
+     */
+    default void warmUp() throws Exception {
+    }
 }
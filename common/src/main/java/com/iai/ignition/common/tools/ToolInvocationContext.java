@@ -0,0 +1,122 @@
+package com.iai.ignition.common.tools;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-call context passed to {@link IAITool#execute(com.inductiveautomation.ignition.common.gson.JsonObject, ToolInvocationContext)}.
+ *
+ * Tools are shared by all conversations, so anything specific to the calling conversation
+ * travels here instead of being set on the tool. One context is created per chat turn and
+ * shared by the tool calls in that turn, which may run concurrently: the identifying fields
+ * are immutable and the token budget and cancellation flag are thread-safe.
+ */
+public final class ToolInvocationContext {
+
+    private final String conversationId;
+    private final String userName;
+    private final String projectName;
+    private final long deadline;
+    private final long tokenBudget;
+    private final AtomicLong tokensUsed = new AtomicLong();
+    private volatile boolean cancelled;
+
+    /**
+     * Create a context.
+     *
+     * @param conversationId The calling conversation
+     * @param userName The conversation's user
+     * @param projectName The conversation's project
+     * @param deadline Time (epoch millis) by which tool calls should finish, or 0 for none
+     * @param tokenBudget Estimated tokens tool results may add to the conversation, or 0 for no limit
+     */
+    public ToolInvocationContext(String conversationId, String userName, String projectName, long deadline, long tokenBudget) {
+        this.conversationId = conversationId;
+        this.userName = userName;
+        this.projectName = projectName;
+        this.deadline = deadline;
+        this.tokenBudget = tokenBudget;
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    public String getProjectName() {
+        return projectName;
+    }
+
+    /**
+     * @return Deadline in epoch millis, or 0 if there is none
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Milliseconds left before the deadline, or {@link Long#MAX_VALUE} if there is none.
+     */
+    public long getRemainingMillis() {
+        if (deadline <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * @return Total token budget for tool results, or 0 for no limit
+     */
+    public long getTokenBudget() {
+        return tokenBudget;
+    }
+
+    /**
+     * Tokens of budget left, or {@link Long#MAX_VALUE} if there is no limit.
+     */
+    public long getRemainingTokens() {
+        if (tokenBudget <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, tokenBudget - tokensUsed.get());
+    }
+
+    /**
+     * Charge a tool result against the token budget.
+     *
+     * @return Tokens left afterwards, or {@link Long#MAX_VALUE} if there is no limit
+     */
+    public long recordTokens(long tokens) {
+        long used = tokensUsed.addAndGet(tokens);
+        return tokenBudget <= 0 ? Long.MAX_VALUE : Math.max(0, tokenBudget - used);
+    }
+
+    /**
+     * Ask tool calls using this context to stop. Calls already running stop at their next
+     * {@link #checkActive()}; calls not yet started are refused.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Throw if the caller has cancelled or the deadline has passed. Long-running tools should
+     * call this between units of work.
+     */
+    public void checkActive() throws CancellationException, TimeoutException {
+        if (cancelled) {
+            throw new CancellationException("Tool call cancelled");
+        }
+        if (deadline > 0 && System.currentTimeMillis() > deadline) {
+            throw new TimeoutException("Tool call deadline exceeded");
+        }
+    }
+}
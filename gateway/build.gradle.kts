@@ -16,4 +16,17 @@ dependencies {
     implementation(libs.ignition.perspective.gateway)
     implementation(libs.ignition.perspective.common)
     compileOnly(libs.ia.gson)
+
+    // The Ignition SDK is provided by the gateway at runtime, so tests need it on their own classpath
+    testImplementation(libs.ignition.common)
+    testImplementation(libs.ignition.gateway.api)
+    testImplementation(libs.ia.gson)
+    testImplementation(platform(libs.junit.bom))
+    testImplementation(libs.junit.jupiter)
+    testImplementation(libs.mockito.core)
+    testRuntimeOnly(libs.junit.platform.launcher)
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
@@ -5,8 +5,15 @@ import com.iai.ignition.common.IgnitionAIModule;
 import com.iai.ignition.gateway.database.ConversationSchemaManager;
 // import com.iai.ignition.gateway.delegate.InsightChatModelDelegate;
 import com.iai.ignition.gateway.endpoints.ConversationEndpoints;
+import com.iai.ignition.gateway.metrics.ToolMetrics;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.retention.RetentionService;
+import com.iai.ignition.gateway.store.CachingConversationStore;
+import com.iai.ignition.gateway.store.ConversationStore;
+import com.iai.ignition.gateway.store.EmbeddedConversationStore;
+import com.iai.ignition.gateway.store.JdbcConversationStore;
 import com.iai.ignition.gateway.tasks.TaskSchedulerService;
+import com.iai.ignition.gateway.tools.ToolRegistry;
 import com.iai.ignition.gateway.util.GatewayPathDetector;
 import com.iai.ignition.gateway.web.IAISettingsPage;
 import com.inductiveautomation.ignition.common.BundleUtil;
@@ -24,10 +31,14 @@ import com.inductiveautomation.perspective.common.api.ComponentRegistry;
 // import com.inductiveautomation.perspective.gateway.api.ComponentModelDelegateRegistry;
 import com.inductiveautomation.perspective.gateway.api.PerspectiveContext;
 
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Gateway hook for the Ignition AI module.
@@ -42,10 +53,23 @@ public class GatewayHook extends AbstractGatewayModuleHook {
     // private ComponentModelDelegateRegistry modelDelegateRegistry;
     private IAISettings settings;
     private TaskSchedulerService taskScheduler;
+    private RetentionService retentionService;
 
     // Static reference for tools to access scheduler
     private static TaskSchedulerService staticTaskScheduler;
 
+    // Static reference for endpoints, scheduler and tools to access conversation storage
+    private static volatile CachingConversationStore conversationStore;
+
+    // Private copy of the settings as last saved, replaced (never modified) when the record changes
+    private static volatile IAISettings settingsSnapshot;
+
+    // Tool registry shared by all conversations, rebuilt when settings change
+    private static final AtomicReference<ToolRegistry> toolRegistry = new AtomicReference<>();
+
+    // Tool execution metrics, kept across registry rebuilds for the whole gateway run
+    private static final ToolMetrics toolMetrics = new ToolMetrics();
+
     /**
      * Config category for the settings page
      */
@@ -97,7 +121,14 @@ public class GatewayHook extends AbstractGatewayModuleHook {
             @Override
             public void recordUpdated(IAISettings record) {
                 logger.info("Settings updated, attempting to create database tables.");
-                createDatabaseTables(record);
+                // Work from a private copy: the record belongs to whoever saved it and can still change
+                IAISettings snapshot = publishSettings(record);
+                settings = snapshot;
+                restartConversationStore(snapshot);
+                createDatabaseTables(snapshot);
+                rebuildToolRegistry(snapshot);
+                restartRetentionService(snapshot);
+                startToolMetrics(snapshot);
             }
 
             @Override
@@ -168,11 +199,23 @@ public class GatewayHook extends AbstractGatewayModuleHook {
         // Detect and update gateway data path if needed
         detectAndUpdateGatewayPath();
 
-        // Create database tables if database connection is configured
+        // Publish settings for endpoints, scheduler and tools
         if (settings != null) {
+            settings = publishSettings(settings);
+        }
+
+        // Open conversation storage, then create database tables if it is database-backed
+        if (settings != null) {
+            restartConversationStore(settings);
             createDatabaseTables(settings);
         }
 
+        // Build and warm up the shared tool registry
+        if (settings != null) {
+            rebuildToolRegistry(settings);
+            startToolMetrics(settings);
+        }
+
         // Initialize and start task scheduler
         if (settings != null) {
             logger.info("Initializing TaskSchedulerService");
@@ -181,6 +224,11 @@ public class GatewayHook extends AbstractGatewayModuleHook {
             taskScheduler.start();
         }
 
+        // Start retention service (no-op unless enabled in settings)
+        if (settings != null) {
+            restartRetentionService(settings);
+        }
+
         this.perspectiveContext = PerspectiveContext.get(this.gatewayContext);
         this.componentRegistry = this.perspectiveContext.getComponentRegistry();
         // this.modelDelegateRegistry = this.perspectiveContext.getComponentModelDelegateRegistry();
@@ -236,11 +284,13 @@ public class GatewayHook extends AbstractGatewayModuleHook {
         if (detectedPath.isPresent()) {
             String path = detectedPath.get();
 
-            // Update settings if path is empty or different
+            // Update settings if path is empty or different, on a copy so no published snapshot changes
             if (currentPath == null || currentPath.isEmpty() || !currentPath.equals(path)) {
                 try {
-                    settings.setGatewayDataPath(path);
-                    gatewayContext.getLocalPersistenceInterface().save(settings);
+                    IAISettings updated = copyOf(settings);
+                    updated.setGatewayDataPath(path);
+                    gatewayContext.getLocalPersistenceInterface().save(updated);
+                    settings = updated;
                     logger.info("Gateway data path auto-detected and saved: " + path);
                 } catch (Exception e) {
                     logger.error("Failed to save detected gateway path", e);
@@ -259,28 +309,192 @@ public class GatewayHook extends AbstractGatewayModuleHook {
     }
 
     /**
-     * Create database tables for conversations and messages.
+     * Publish a copy of a settings record as the snapshot for endpoints, scheduler and tools.
+     * The copy is read back from the internal database, so no one else holds it, and it is
+     * never modified once published; a later save publishes a new one.
+     *
+     * @return The published copy
+     */
+    private IAISettings publishSettings(IAISettings record) {
+        IAISettings snapshot = copyOf(record);
+        settingsSnapshot = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Read a fresh instance of a settings record, independent of the one passed in.
+     * Falls back to the record itself if it cannot be read back.
+     */
+    private IAISettings copyOf(IAISettings record) {
+        try {
+            IAISettings copy = gatewayContext.getLocalPersistenceInterface().find(IAISettings.META, record.getId());
+            if (copy != null) {
+                return copy;
+            }
+            logger.warn("Settings record " + record.getId() + " not found when copying, using it as saved");
+        } catch (Exception e) {
+            logger.warn("Could not read back settings record, using it as saved", e);
+        }
+        return record;
+    }
+
+    /**
+     * Create or migrate database tables for conversations and messages.
      */
     private void createDatabaseTables(IAISettings settings) {
-        String dbConnection = settings.getDatabaseConnection();
-        if (dbConnection == null || dbConnection.isEmpty()) {
-            logger.debug("Database connection not configured, skipping table creation.");
+        ConversationStore store = getBackingStore();
+        if (!(store instanceof JdbcConversationStore)) {
+            logger.debug("Conversations are not stored in a database, skipping table creation.");
             return;
         }
+        String dbConnection = ((JdbcConversationStore) store).getDatabaseConnectionName();
 
-        logger.info("Attempting to create IAI database tables in connection: " + dbConnection);
-        boolean success = ConversationSchemaManager.createTables(
+        logger.info("Migrating IAI database schema in connection: " + dbConnection);
+        int version = ConversationSchemaManager.migrate(
             gatewayContext.getDatasourceManager(),
             dbConnection
         );
 
-        if (success) {
-            logger.info("Database tables created successfully.");
+        if (version >= 0) {
+            logger.info("Database schema is at version " + version + " (latest " + ConversationSchemaManager.getLatestVersion() + ").");
         } else {
-            logger.error("Failed to create database tables. Check database connection configuration.");
+            logger.error("Failed to migrate database schema. Check database connection configuration.");
+        }
+    }
+
+    /**
+     * Open the conversation store selected by the StorageBackend setting, replacing the current one.
+     *
+     * AUTO uses the database connection when it is configured and exists, otherwise the
+     * embedded store in the gateway data directory. A store already open on the same database
+     * connection or directory is kept. A replaced store is retired: turns and task runs still
+     * using it keep it until they finish, and it is shut down when the last of them releases it.
+     */
+    private synchronized void restartConversationStore(IAISettings settings) {
+        String backend = settings.getStorageBackend() != null ? settings.getStorageBackend().trim().toUpperCase() : "AUTO";
+        String dbConnection = settings.getDatabaseConnection();
+        boolean dbConfigured = dbConnection != null && !dbConnection.isEmpty();
+
+        boolean useDatabase;
+        if ("DATABASE".equals(backend)) {
+            useDatabase = true;
+        } else if ("EMBEDDED".equals(backend)) {
+            useDatabase = false;
+        } else {
+            useDatabase = dbConfigured && gatewayContext.getDatasourceManager().getDatasource(dbConnection) != null;
+        }
+
+        CachingConversationStore previous = conversationStore;
+        ConversationStore previousBacking = getBackingStore();
+        ConversationStore next;
+
+        if (useDatabase) {
+            if (previousBacking instanceof JdbcConversationStore
+                && ((JdbcConversationStore) previousBacking).getDatabaseConnectionName().equals(dbConnection)) {
+                logger.debug("Database conversation store unchanged: " + dbConnection);
+                return;
+            }
+            if (!dbConfigured) {
+                logger.error("Storage backend is DATABASE but no database connection is configured; conversations will not be stored.");
+                next = null;
+            } else {
+                next = new JdbcConversationStore(gatewayContext.getDatasourceManager(), dbConnection);
+            }
+        } else {
+            Path directory = getEmbeddedStoreDirectory(settings);
+            if (previousBacking instanceof EmbeddedConversationStore
+                && ((EmbeddedConversationStore) previousBacking).getDirectory().equals(directory)) {
+                logger.debug("Embedded conversation store unchanged: " + directory);
+                return;
+            }
+            try {
+                next = EmbeddedConversationStore.open(directory);
+            } catch (Exception e) {
+                logger.error("Failed to open embedded conversation store at " + directory, e);
+                next = null;
+            }
+        }
+
+        conversationStore = next != null ? new CachingConversationStore(next) : null;
+        if (next != null) {
+            logger.info("Storing conversations in the " + next.getName() + " store.");
+        }
+        if (previous != null) {
+            previous.retire();
+        }
+    }
+
+    private Path getEmbeddedStoreDirectory(IAISettings settings) {
+        String dataPath = settings.getGatewayDataPath();
+        File dataDir = dataPath != null && !dataPath.isEmpty()
+            ? new File(dataPath)
+            : gatewayContext.getSystemManager().getDataDir();
+        return Paths.get(dataDir.getAbsolutePath(), "ignition-ai", "store").toAbsolutePath().normalize();
+    }
+
+    /**
+     * Build a tool registry for the given settings, warm it up and swap it in, then retire the
+     * one it replaces. Turns already running keep the registry they started with; it is shut
+     * down when the last of them releases it.
+     */
+    private void rebuildToolRegistry(IAISettings settings) {
+        ToolRegistry next;
+        try {
+            next = new ToolRegistry(gatewayContext, settings, toolMetrics);
+            next.warmUp();
+        } catch (Exception e) {
+            logger.error("Failed to build tool registry, keeping the current one", e);
+            return;
+        }
+
+        publishToolRegistry(next);
+    }
+
+    /**
+     * Publish a tool registry for new turns and retire the one it replaces.
+     *
+     * @param next The registry to publish, or null to publish none
+     */
+    static void publishToolRegistry(ToolRegistry next) {
+        ToolRegistry previous = toolRegistry.getAndSet(next);
+        if (previous != null) {
+            previous.retire();
         }
     }
 
+    /**
+     * Start or reschedule periodic tool metrics rollups.
+     */
+    private void startToolMetrics(IAISettings settings) {
+        Integer minutes = settings.getToolMetricsRollupMinutes();
+        toolMetrics.start(minutes != null ? minutes : 5);
+    }
+
+    /**
+     * The store behind the cache, or null if storage is not available.
+     */
+    private static ConversationStore getBackingStore() {
+        CachingConversationStore store = conversationStore;
+        return store != null ? store.getDelegate() : null;
+    }
+
+    /**
+     * Stop the running retention service, if any, and start one with the given settings.
+     * Retention applies to both the database and the embedded store.
+     */
+    private synchronized void restartRetentionService(IAISettings settings) {
+        if (retentionService != null) {
+            retentionService.stop();
+            retentionService = null;
+        }
+        if (getBackingStore() == null) {
+            logger.debug("Conversation storage not available, retention service not started.");
+            return;
+        }
+        retentionService = new RetentionService(gatewayContext, settings);
+        retentionService.start();
+    }
+
     /**
      * Get current module settings.
      */
@@ -298,8 +512,34 @@ public class GatewayHook extends AbstractGatewayModuleHook {
             taskScheduler.stop();
         }
 
-        // Clear static reference
+        // Clear static references
         staticTaskScheduler = null;
+        settingsSnapshot = null;
+
+        // Release tool resources (script executor threads)
+        ToolRegistry registry = toolRegistry.getAndSet(null);
+        if (registry != null) {
+            registry.shutdown();
+        }
+
+        // Save the last tool metrics rollup while the store is still open
+        toolMetrics.stop();
+
+        // Stop retention service
+        synchronized (this) {
+            if (retentionService != null) {
+                retentionService.stop();
+                retentionService = null;
+            }
+        }
+
+        // Close conversation storage after everything that writes to it has stopped
+        synchronized (this) {
+            if (conversationStore != null) {
+                conversationStore.shutdown();
+                conversationStore = null;
+            }
+        }
 
         // Remove localization bundle
         BundleUtil.get().removeBundle("IgnitionAI");
@@ -339,6 +579,68 @@ public class GatewayHook extends AbstractGatewayModuleHook {
         return staticTaskScheduler;
     }
 
+    /**
+     * Get the current module settings without a database read.
+     * The returned record is a private copy shared by all readers and must not be modified;
+     * save changes through the persistence interface and a new snapshot is published.
+     */
+    public static IAISettings getSettingsSnapshot() {
+        return settingsSnapshot;
+    }
+
+    /**
+     * Get the tool registry shared by all conversations, or null before startup.
+     */
+    public static ToolRegistry getToolRegistry() {
+        return toolRegistry.get();
+    }
+
+    /**
+     * Get the current tool registry and hold it for a turn. The caller must
+     * {@link ToolRegistry#release() release} it when the turn ends.
+     *
+     * @return The registry, or null before startup or after shutdown
+     */
+    public static ToolRegistry acquireToolRegistry() {
+        while (true) {
+            ToolRegistry registry = toolRegistry.get();
+            if (registry == null || registry.acquire()) {
+                return registry;
+            }
+            // Retired between the read and the acquire; the replacement is already published
+        }
+    }
+
+    /**
+     * Get the gateway-wide tool execution metrics.
+     */
+    public static ToolMetrics getToolMetrics() {
+        return toolMetrics;
+    }
+
+    /**
+     * Get the active conversation store, or null if storage is not available.
+     */
+    public static ConversationStore getConversationStore() {
+        return conversationStore;
+    }
+
+    /**
+     * Get the active conversation store and hold it for a turn or task run. The caller must
+     * {@link CachingConversationStore#release() release} it when done.
+     *
+     * @return The store, or null if storage is not available
+     */
+    public static CachingConversationStore acquireConversationStore() {
+        while (true) {
+            CachingConversationStore store = conversationStore;
+            if (store == null || store.acquire()) {
+                return store;
+            }
+            // Retired between the read and the acquire; the replacement is already published
+        }
+    }
+
     @Override
     public void mountRouteHandlers(RouteGroup routes) {
         logger.info("Mounting RPC endpoints for Perspective components");
@@ -2,10 +2,8 @@ package com.iai.ignition.gateway.database;
 
 import com.iai.ignition.common.model.Conversation;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
-import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.datasource.DatasourceManager;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -15,11 +13,23 @@ import java.util.List;
 /**
  * Data access object for conversation operations.
  * Follows ConversationSchemaManager pattern for database access.
+ *
+ * Each operation has a {@link UnitOfWork} variant for callers that group several calls on
+ * one connection, and a convenience variant that runs in its own short unit of work.
  */
 public class ConversationDAO {
 
     private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.database.ConversationDAO");
 
+    private static final String INSERT_SQL = "INSERT INTO iai_conversations (id, user_name, project_name, title, created_at, last_updated_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String FIND_BY_ID_SQL = "SELECT id, user_name, project_name, title, created_at, last_updated_at FROM iai_conversations WHERE id = ?";
+    private static final String LIST_BY_USER_SQL = "SELECT id, user_name, project_name, title, created_at, last_updated_at FROM iai_conversations WHERE user_name = ? ORDER BY last_updated_at DESC";
+    private static final String LIST_BY_PROJECT_SQL = "SELECT id, user_name, project_name, title, created_at, last_updated_at FROM iai_conversations WHERE project_name = ? ORDER BY last_updated_at DESC";
+    private static final String UPDATE_SQL = "UPDATE iai_conversations SET title = ?, last_updated_at = ? WHERE id = ?";
+    private static final String DELETE_SQL = "DELETE FROM iai_conversations WHERE id = ?";
+    private static final String BLOB_PAYLOADS_SQL = "SELECT t.tool_results FROM iai_message_tools t JOIN iai_messages m ON t.message_id = m.id WHERE m.conversation_id = ? " +
+                     "UNION ALL SELECT d.request_json FROM iai_debug_log d JOIN iai_messages m ON d.message_id = m.id WHERE m.conversation_id = ?";
+
     /**
      * Create a new conversation in the database.
      *
@@ -29,39 +39,30 @@ public class ConversationDAO {
      * @return true if created successfully
      */
     public static boolean create(DatasourceManager datasourceManager, String databaseConnectionName, Conversation conversation) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return false;
-        }
-
-        String sql = "INSERT INTO iai_conversations (id, user_name, project_name, title, created_at, last_updated_at) VALUES (?, ?, ?, ?, ?, ?)";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return false;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, conversation.getId());
-                stmt.setString(2, conversation.getUserName());
-                stmt.setString(3, conversation.getProjectName());
-                stmt.setString(4, conversation.getTitle());
-                stmt.setLong(5, conversation.getCreatedAt());
-                stmt.setLong(6, conversation.getLastUpdatedAt());
-
-                int rows = stmt.executeUpdate();
-                return rows > 0;
-            }
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            boolean created = create(uow, conversation);
+            uow.commit();
+            return created;
         } catch (SQLException e) {
             logger.error("Error creating conversation", e);
             return false;
         }
     }
 
+    /**
+     * Create a new conversation within a unit of work. Not committed until the unit of work is.
+     */
+    public static boolean create(UnitOfWork uow, Conversation conversation) throws SQLException {
+        PreparedStatement stmt = uow.prepare(INSERT_SQL);
+        stmt.setString(1, conversation.getId());
+        stmt.setString(2, conversation.getUserName());
+        stmt.setString(3, conversation.getProjectName());
+        stmt.setString(4, conversation.getTitle());
+        stmt.setLong(5, conversation.getCreatedAt());
+        stmt.setLong(6, conversation.getLastUpdatedAt());
+        return uow.executeUpdate(stmt) > 0;
+    }
+
     /**
      * Find a conversation by ID.
      *
@@ -71,35 +72,27 @@ public class ConversationDAO {
      * @return The conversation, or null if not found
      */
     public static Conversation findById(DatasourceManager datasourceManager, String databaseConnectionName, String id) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return null;
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return findById(uow, id);
+        } catch (SQLException e) {
+            logger.error("Error finding conversation by ID", e);
         }
 
-        String sql = "SELECT id, user_name, project_name, title, created_at, last_updated_at FROM iai_conversations WHERE id = ?";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return null;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        return null;
+    }
 
-                stmt.setString(1, id);
+    /**
+     * Find a conversation by ID within a unit of work.
+     */
+    public static Conversation findById(UnitOfWork uow, String id) throws SQLException {
+        PreparedStatement stmt = uow.prepare(FIND_BY_ID_SQL);
+        stmt.setString(1, id);
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return mapResultSetToConversation(rs);
-                    }
-                }
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return mapResultSetToConversation(rs);
             }
-        } catch (SQLException e) {
-            logger.error("Error finding conversation by ID", e);
         }
-
         return null;
     }
 
@@ -113,39 +106,13 @@ public class ConversationDAO {
      * @return List of conversations
      */
     public static List<Conversation> listByUser(DatasourceManager datasourceManager, String databaseConnectionName, String userName, int limit) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return new ArrayList<>();
-        }
-
-        String sql = "SELECT id, user_name, project_name, title, created_at, last_updated_at FROM iai_conversations WHERE user_name = ? ORDER BY last_updated_at DESC LIMIT ?";
-
-        List<Conversation> conversations = new ArrayList<>();
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return conversations;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, userName);
-                stmt.setInt(2, limit);
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        conversations.add(mapResultSetToConversation(rs));
-                    }
-                }
-            }
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return list(uow, LIST_BY_USER_SQL, userName, limit);
         } catch (SQLException e) {
             logger.error("Error listing conversations by user", e);
         }
 
-        return conversations;
+        return new ArrayList<>();
     }
 
     /**
@@ -158,38 +125,29 @@ public class ConversationDAO {
      * @return List of conversations
      */
     public static List<Conversation> listByProject(DatasourceManager datasourceManager, String databaseConnectionName, String projectName, int limit) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return new ArrayList<>();
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return list(uow, LIST_BY_PROJECT_SQL, projectName, limit);
+        } catch (SQLException e) {
+            logger.error("Error listing conversations by project", e);
         }
 
-        String sql = "SELECT id, user_name, project_name, title, created_at, last_updated_at FROM iai_conversations WHERE project_name = ? ORDER BY last_updated_at DESC LIMIT ?";
+        return new ArrayList<>();
+    }
 
+    /**
+     * Run one of the list queries.
+     */
+    private static List<Conversation> list(UnitOfWork uow, String sql, String key, int limit) throws SQLException {
         List<Conversation> conversations = new ArrayList<>();
+        PreparedStatement stmt = uow.prepare(uow.getDialect().firstRows(sql));
+        stmt.setString(1, key);
+        stmt.setInt(2, limit);
 
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return conversations;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, projectName);
-                stmt.setInt(2, limit);
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        conversations.add(mapResultSetToConversation(rs));
-                    }
-                }
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                conversations.add(mapResultSetToConversation(rs));
             }
-        } catch (SQLException e) {
-            logger.error("Error listing conversations by project", e);
         }
-
         return conversations;
     }
 
@@ -202,39 +160,31 @@ public class ConversationDAO {
      * @return true if updated successfully
      */
     public static boolean update(DatasourceManager datasourceManager, String databaseConnectionName, Conversation conversation) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return false;
-        }
-
-        String sql = "UPDATE iai_conversations SET title = ?, last_updated_at = ? WHERE id = ?";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return false;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, conversation.getTitle());
-                stmt.setLong(2, conversation.getLastUpdatedAt());
-                stmt.setString(3, conversation.getId());
-
-                int rows = stmt.executeUpdate();
-                return rows > 0;
-            }
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            boolean updated = update(uow, conversation);
+            uow.commit();
+            return updated;
         } catch (SQLException e) {
             logger.error("Error updating conversation", e);
             return false;
         }
     }
 
+    /**
+     * Update a conversation within a unit of work. Not committed until the unit of work is.
+     */
+    public static boolean update(UnitOfWork uow, Conversation conversation) throws SQLException {
+        PreparedStatement stmt = uow.prepare(UPDATE_SQL);
+        stmt.setString(1, conversation.getTitle());
+        stmt.setLong(2, conversation.getLastUpdatedAt());
+        stmt.setString(3, conversation.getId());
+        return uow.executeUpdate(stmt) > 0;
+    }
+
     /**
      * Delete a conversation by ID.
      * Due to ON DELETE CASCADE, this will also delete all associated messages.
+     * Tool blobs referenced by the messages and their debug logs are released.
      *
      * @param datasourceManager The datasource manager
      * @param databaseConnectionName Name of the database connection
@@ -242,28 +192,23 @@ public class ConversationDAO {
      * @return true if deleted successfully
      */
     public static boolean delete(DatasourceManager datasourceManager, String databaseConnectionName, String id) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return false;
-        }
-
-        String sql = "DELETE FROM iai_conversations WHERE id = ?";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return false;
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            List<String> blobRefs = new ArrayList<>();
+            PreparedStatement payloads = uow.prepare(BLOB_PAYLOADS_SQL);
+            payloads.setString(1, id);
+            payloads.setString(2, id);
+            try (ResultSet rs = payloads.executeQuery()) {
+                while (rs.next()) {
+                    ToolBlobDAO.collectReferences(rs.getString(1), blobRefs);
+                }
             }
+            ToolBlobDAO.release(uow, blobRefs);
 
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, id);
-
-                int rows = stmt.executeUpdate();
-                return rows > 0;
-            }
+            PreparedStatement stmt = uow.prepare(DELETE_SQL);
+            stmt.setString(1, id);
+            boolean deleted = uow.executeUpdate(stmt) > 0;
+            uow.commit();
+            return deleted;
         } catch (SQLException e) {
             logger.error("Error deleting conversation", e);
             return false;
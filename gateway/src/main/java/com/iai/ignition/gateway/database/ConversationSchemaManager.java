@@ -6,214 +6,192 @@ import com.inductiveautomation.ignition.gateway.datasource.DatasourceManager;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Manages database schema for IAI conversations and messages.
- * Creates tables in the configured database connection.
+ * Creates and upgrades tables in the configured database connection through
+ * versioned migrations (see {@link SchemaMigrator}).
  */
 public class ConversationSchemaManager {
 
     private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.database.ConversationSchemaManager");
 
     /**
-     * SQL to create conversations table.
+     * Tables the module reads and writes, checked by {@link #verifyTables}.
      */
-    private static final String CREATE_CONVERSATIONS_TABLE =
-        "CREATE TABLE IF NOT EXISTS iai_conversations (" +
-        "    id VARCHAR(36) PRIMARY KEY," +
-        "    user_name VARCHAR(255)," +
-        "    project_name VARCHAR(255) NOT NULL," +
-        "    title VARCHAR(500)," +
-        "    created_at BIGINT NOT NULL," +
-        "    last_updated_at BIGINT NOT NULL" +
-        ")";
+    private static final List<String> TABLES = Arrays.asList(
+        "iai_conversations", "iai_messages", "iai_debug_log", "iai_scheduled_tasks",
+        "iai_task_executions", "iai_message_tools", "iai_tool_blobs", "iai_tool_metrics");
 
     /**
-     * SQL to create conversations indexes.
+     * Ordered schema migrations. Append new migrations to the end; never edit one that has shipped.
      */
-    private static final String[] CONVERSATIONS_INDEXES = {
-        "CREATE INDEX IF NOT EXISTS idx_conv_user ON iai_conversations(user_name)",
-        "CREATE INDEX IF NOT EXISTS idx_conv_project ON iai_conversations(project_name)",
-        "CREATE INDEX IF NOT EXISTS idx_conv_updated ON iai_conversations(last_updated_at)"
-    };
+    private static final List<SchemaMigration> MIGRATIONS = Arrays.asList(
+        new SchemaMigration(1, "Baseline conversation, message, debug log and task tables")
+            .createTable("iai_conversations",
+                "    id VARCHAR(36) PRIMARY KEY," +
+                "    user_name VARCHAR(255)," +
+                "    project_name VARCHAR(255) NOT NULL," +
+                "    title VARCHAR(500)," +
+                "    created_at {BIGINT} NOT NULL," +
+                "    last_updated_at {BIGINT} NOT NULL")
+            .createIndex("idx_conv_user", "iai_conversations", "user_name")
+            .createIndex("idx_conv_project", "iai_conversations", "project_name")
+            .createIndex("idx_conv_updated", "iai_conversations", "last_updated_at")
+            .createTable("iai_messages",
+                "    id VARCHAR(36) PRIMARY KEY," +
+                "    conversation_id VARCHAR(36) NOT NULL," +
+                "    role VARCHAR(20) NOT NULL," +
+                "    content {TEXT}," +
+                "    tool_calls {TEXT}," +
+                "    tool_results {TEXT}," +
+                "    input_tokens INTEGER," +
+                "    output_tokens INTEGER," +
+                "    timestamp {BIGINT} NOT NULL," +
+                "    FOREIGN KEY (conversation_id) REFERENCES iai_conversations(id) ON DELETE CASCADE")
+            .createIndex("idx_msg_conv", "iai_messages", "conversation_id")
+            .createIndex("idx_msg_timestamp", "iai_messages", "timestamp")
+            .createTable("iai_debug_log",
+                "    id VARCHAR(36) PRIMARY KEY," +
+                "    message_id VARCHAR(36)," +
+                "    request_json {TEXT}," +
+                "    response_json {TEXT}," +
+                "    timestamp {BIGINT} NOT NULL," +
+                "    FOREIGN KEY (message_id) REFERENCES iai_messages(id) ON DELETE CASCADE")
+            .createIndex("idx_debug_msg", "iai_debug_log", "message_id")
+            .createIndex("idx_debug_timestamp", "iai_debug_log", "timestamp")
+            .createTable("iai_scheduled_tasks",
+                "    id VARCHAR(36) PRIMARY KEY," +
+                "    user_name VARCHAR(255)," +
+                "    project_name VARCHAR(255) NOT NULL," +
+                "    task_description {TEXT} NOT NULL," +
+                "    conversation_id VARCHAR(36)," +
+                "    prompt {TEXT} NOT NULL," +
+                "    cron_expression VARCHAR(100) NOT NULL," +
+                "    last_run_at {BIGINT}," +
+                "    next_run_at {BIGINT} NOT NULL," +
+                "    status VARCHAR(20) NOT NULL," +
+                "    result_storage VARCHAR(20) NOT NULL," +
+                "    created_at {BIGINT} NOT NULL," +
+                "    enabled {BOOLEAN} DEFAULT {TRUE}")
+            .createIndex("idx_task_user", "iai_scheduled_tasks", "user_name")
+            .createIndex("idx_task_project", "iai_scheduled_tasks", "project_name")
+            .createIndex("idx_task_next_run", "iai_scheduled_tasks", "next_run_at")
+            .createIndex("idx_task_enabled", "iai_scheduled_tasks", "enabled")
+            .createTable("iai_task_executions",
+                "    id VARCHAR(36) PRIMARY KEY," +
+                "    task_id VARCHAR(36) NOT NULL," +
+                "    executed_at {BIGINT} NOT NULL," +
+                "    conversation_id VARCHAR(36)," +
+                "    status VARCHAR(20) NOT NULL," +
+                "    error_message {TEXT}," +
+                "    execution_time_ms INTEGER," +
+                "    FOREIGN KEY (task_id) REFERENCES iai_scheduled_tasks(id) ON DELETE CASCADE")
+            .createIndex("idx_exec_task", "iai_task_executions", "task_id")
+            .createIndex("idx_exec_time", "iai_task_executions", "executed_at"),
+
+        new SchemaMigration(2, "Composite indexes for conversation listing and history reads")
+            .createIndex("idx_conv_user_updated", "iai_conversations", "user_name", "last_updated_at")
+            .createIndex("idx_conv_project_updated", "iai_conversations", "project_name", "last_updated_at")
+            .createIndex("idx_msg_conv_ts", "iai_messages", "conversation_id", "timestamp")
+            .createIndex("idx_exec_task_time", "iai_task_executions", "task_id", "executed_at"),
+
+        new SchemaMigration(3, "Per-task run retention")
+            .addColumn("iai_scheduled_tasks", "keep_runs", "INTEGER")
+            .createIndex("idx_exec_conv", "iai_task_executions", "conversation_id"),
+
+        // Tool payloads move out of iai_messages so history reads never touch them. The legacy
+        // columns are kept (dropping columns is not portable) but cleared once copied. Both the
+        // copy and the clear run in batches so a large table is never one long transaction.
+        new SchemaMigration(4, "Move tool calls and results to iai_message_tools")
+            .createTable("iai_message_tools",
+                "    message_id VARCHAR(36) PRIMARY KEY," +
+                "    tool_calls {TEXT}," +
+                "    tool_results {TEXT}," +
+                "    FOREIGN KEY (message_id) REFERENCES iai_messages(id) ON DELETE CASCADE")
+            .sqlInBatches("SELECT m.id FROM iai_messages m " +
+                "WHERE (m.tool_calls IS NOT NULL OR m.tool_results IS NOT NULL) " +
+                "AND NOT EXISTS (SELECT 1 FROM iai_message_tools t WHERE t.message_id = m.id)",
+                "INSERT INTO iai_message_tools (message_id, tool_calls, tool_results) " +
+                "SELECT m.id, m.tool_calls, m.tool_results FROM iai_messages m " +
+                "WHERE m.id IN ({KEYS}) " +
+                "AND NOT EXISTS (SELECT 1 FROM iai_message_tools t WHERE t.message_id = m.id)")
+            .sqlInBatches("SELECT m.id FROM iai_messages m " +
+                "WHERE (m.tool_calls IS NOT NULL OR m.tool_results IS NOT NULL) " +
+                "AND EXISTS (SELECT 1 FROM iai_message_tools t WHERE t.message_id = m.id)",
+                "UPDATE iai_messages SET tool_calls = NULL, tool_results = NULL WHERE id IN ({KEYS})"),
+
+        new SchemaMigration(5, "Content-addressed tool blob store")
+            .createTable("iai_tool_blobs",
+                "    hash VARCHAR(64) PRIMARY KEY," +
+                "    content {TEXT} NOT NULL," +
+                "    size_bytes {BIGINT} NOT NULL," +
+                "    ref_count INTEGER NOT NULL," +
+                "    created_at {BIGINT} NOT NULL," +
+                "    last_referenced_at {BIGINT} NOT NULL")
+            .createIndex("idx_blob_refs", "iai_tool_blobs", "ref_count", "last_referenced_at"),
+
+        // Periodic tool execution rollups; target is NULL for a tool's totals
+        new SchemaMigration(6, "Tool metrics rollups")
+            .createTable("iai_tool_metrics",
+                "    id VARCHAR(36) PRIMARY KEY," +
+                "    tool_name VARCHAR(100) NOT NULL," +
+                "    target VARCHAR(255)," +
+                "    period_start {BIGINT} NOT NULL," +
+                "    period_end {BIGINT} NOT NULL," +
+                "    invocations {BIGINT} NOT NULL," +
+                "    errors {BIGINT} NOT NULL," +
+                "    timeouts {BIGINT} NOT NULL," +
+                "    result_bytes {BIGINT} NOT NULL," +
+                "    result_tokens {BIGINT} NOT NULL," +
+                "    total_us {BIGINT} NOT NULL," +
+                "    max_us {BIGINT} NOT NULL," +
+                "    p50_us {BIGINT} NOT NULL," +
+                "    p90_us {BIGINT} NOT NULL," +
+                "    p99_us {BIGINT} NOT NULL," +
+                "    histogram {TEXT}")
+            .createIndex("idx_toolmetrics_period", "iai_tool_metrics", "period_end")
+            .createIndex("idx_toolmetrics_tool", "iai_tool_metrics", "tool_name", "period_end")
+    );
 
     /**
-     * SQL to create messages table.
-     */
-    private static final String CREATE_MESSAGES_TABLE =
-        "CREATE TABLE IF NOT EXISTS iai_messages (" +
-        "    id VARCHAR(36) PRIMARY KEY," +
-        "    conversation_id VARCHAR(36) NOT NULL," +
-        "    role VARCHAR(20) NOT NULL," +
-        "    content TEXT," +
-        "    tool_calls TEXT," +
-        "    tool_results TEXT," +
-        "    input_tokens INTEGER," +
-        "    output_tokens INTEGER," +
-        "    timestamp BIGINT NOT NULL," +
-        "    FOREIGN KEY (conversation_id) REFERENCES iai_conversations(id) ON DELETE CASCADE" +
-        ")";
-
-    /**
-     * SQL to create messages indexes.
-     */
-    private static final String[] MESSAGES_INDEXES = {
-        "CREATE INDEX IF NOT EXISTS idx_msg_conv ON iai_messages(conversation_id)",
-        "CREATE INDEX IF NOT EXISTS idx_msg_timestamp ON iai_messages(timestamp)"
-    };
-
-    /**
-     * SQL to create debug log table.
-     */
-    private static final String CREATE_DEBUG_LOG_TABLE =
-        "CREATE TABLE IF NOT EXISTS iai_debug_log (" +
-        "    id VARCHAR(36) PRIMARY KEY," +
-        "    message_id VARCHAR(36)," +
-        "    request_json TEXT," +
-        "    response_json TEXT," +
-        "    timestamp BIGINT NOT NULL," +
-        "    FOREIGN KEY (message_id) REFERENCES iai_messages(id) ON DELETE CASCADE" +
-        ")";
-
-    /**
-     * SQL to create debug log indexes.
-     */
-    private static final String[] DEBUG_LOG_INDEXES = {
-        "CREATE INDEX IF NOT EXISTS idx_debug_msg ON iai_debug_log(message_id)",
-        "CREATE INDEX IF NOT EXISTS idx_debug_timestamp ON iai_debug_log(timestamp)"
-    };
-
-    /**
-     * SQL to create scheduled tasks table.
-     */
-    private static final String CREATE_SCHEDULED_TASKS_TABLE =
-        "CREATE TABLE IF NOT EXISTS iai_scheduled_tasks (" +
-        "    id VARCHAR(36) PRIMARY KEY," +
-        "    user_name VARCHAR(255)," +
-        "    project_name VARCHAR(255) NOT NULL," +
-        "    task_description TEXT NOT NULL," +
-        "    conversation_id VARCHAR(36)," +
-        "    prompt TEXT NOT NULL," +
-        "    cron_expression VARCHAR(100) NOT NULL," +
-        "    last_run_at BIGINT," +
-        "    next_run_at BIGINT NOT NULL," +
-        "    status VARCHAR(20) NOT NULL," +
-        "    result_storage VARCHAR(20) NOT NULL," +
-        "    created_at BIGINT NOT NULL," +
-        "    enabled BOOLEAN DEFAULT TRUE" +
-        ")";
-
-    /**
-     * SQL to create scheduled tasks indexes.
-     */
-    private static final String[] SCHEDULED_TASKS_INDEXES = {
-        "CREATE INDEX IF NOT EXISTS idx_task_user ON iai_scheduled_tasks(user_name)",
-        "CREATE INDEX IF NOT EXISTS idx_task_project ON iai_scheduled_tasks(project_name)",
-        "CREATE INDEX IF NOT EXISTS idx_task_next_run ON iai_scheduled_tasks(next_run_at)",
-        "CREATE INDEX IF NOT EXISTS idx_task_enabled ON iai_scheduled_tasks(enabled)"
-    };
-
-    /**
-     * SQL to create task executions table.
-     */
-    private static final String CREATE_TASK_EXECUTIONS_TABLE =
-        "CREATE TABLE IF NOT EXISTS iai_task_executions (" +
-        "    id VARCHAR(36) PRIMARY KEY," +
-        "    task_id VARCHAR(36) NOT NULL," +
-        "    executed_at BIGINT NOT NULL," +
-        "    conversation_id VARCHAR(36)," +
-        "    status VARCHAR(20) NOT NULL," +
-        "    error_message TEXT," +
-        "    execution_time_ms INTEGER," +
-        "    FOREIGN KEY (task_id) REFERENCES iai_scheduled_tasks(id) ON DELETE CASCADE" +
-        ")";
-
-    /**
-     * SQL to create task executions indexes.
-     */
-    private static final String[] TASK_EXECUTIONS_INDEXES = {
-        "CREATE INDEX IF NOT EXISTS idx_exec_task ON iai_task_executions(task_id)",
-        "CREATE INDEX IF NOT EXISTS idx_exec_time ON iai_task_executions(executed_at)"
-    };
-
-    /**
-     * Create conversation and message tables in the specified database.
+     * Bring the IAI schema in the specified database up to the latest version.
      *
      * @param datasourceManager The datasource manager
      * @param databaseConnectionName Name of the database connection
-     * @return true if tables were created successfully
+     * @return The schema version after migrating, or -1 if migration failed
      */
-    public static boolean createTables(DatasourceManager datasourceManager, String databaseConnectionName) {
+    public static int migrate(DatasourceManager datasourceManager, String databaseConnectionName) {
         if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
             logger.error("Database connection name is not configured. Cannot create tables.");
-            return false;
+            return -1;
         }
 
         try {
             Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
             if (datasource == null) {
                 logger.error("Database connection not found: " + databaseConnectionName);
-                return false;
+                return -1;
             }
 
             try (Connection conn = datasource.getConnection()) {
-                // Create conversations table
-                executeUpdate(conn, CREATE_CONVERSATIONS_TABLE);
-
-                // Create conversations indexes
-                for (String indexSql : CONVERSATIONS_INDEXES) {
-                    executeUpdate(conn, indexSql);
-                }
-
-                // Create messages table
-                executeUpdate(conn, CREATE_MESSAGES_TABLE);
-
-                // Create messages indexes
-                for (String indexSql : MESSAGES_INDEXES) {
-                    executeUpdate(conn, indexSql);
-                }
-
-                // Create debug log table
-                executeUpdate(conn, CREATE_DEBUG_LOG_TABLE);
-
-                // Create debug log indexes
-                for (String indexSql : DEBUG_LOG_INDEXES) {
-                    executeUpdate(conn, indexSql);
-                }
-
-                // Create scheduled tasks table
-                executeUpdate(conn, CREATE_SCHEDULED_TASKS_TABLE);
-
-                // Create scheduled tasks indexes
-                for (String indexSql : SCHEDULED_TASKS_INDEXES) {
-                    executeUpdate(conn, indexSql);
-                }
-
-                // Create task executions table
-                executeUpdate(conn, CREATE_TASK_EXECUTIONS_TABLE);
-
-                // Create task executions indexes
-                for (String indexSql : TASK_EXECUTIONS_INDEXES) {
-                    executeUpdate(conn, indexSql);
-                }
-
-                logger.info("IAI database schema initialized");
-                return true;
+                int version = SchemaMigrator.migrate(conn, MIGRATIONS);
+                logger.info("IAI database schema initialized at version " + version);
+                return version;
             }
         } catch (SQLException e) {
-            logger.error("Error creating IAI database tables", e);
-            return false;
+            logger.error("Error migrating IAI database schema", e);
+            return -1;
         }
     }
 
     /**
-     * Execute a SQL update statement.
+     * Get the latest schema version known to this module.
      */
-    private static void executeUpdate(Connection conn, String sql) throws SQLException {
-        try (Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(sql);
-        }
+    public static int getLatestVersion() {
+        return MIGRATIONS.stream().mapToInt(SchemaMigration::getVersion).max().orElse(0);
     }
 
     /**
@@ -235,13 +213,12 @@ public class ConversationSchemaManager {
             }
 
             try (Connection conn = datasource.getConnection()) {
-                // Try to query the tables
-                try (Statement stmt = conn.createStatement()) {
-                    stmt.executeQuery("SELECT 1 FROM iai_conversations LIMIT 1");
-                    stmt.executeQuery("SELECT 1 FROM iai_messages LIMIT 1");
-                    stmt.executeQuery("SELECT 1 FROM iai_debug_log LIMIT 1");
-                    stmt.executeQuery("SELECT 1 FROM iai_scheduled_tasks LIMIT 1");
-                    stmt.executeQuery("SELECT 1 FROM iai_task_executions LIMIT 1");
+                // Metadata lookups rather than probe queries, which need dialect-specific row limits
+                for (String table : TABLES) {
+                    if (!SchemaMigrator.tableExists(conn, table)) {
+                        logger.debug("Table does not exist: " + table);
+                        return false;
+                    }
                 }
                 return true;
             }
@@ -1,25 +1,42 @@
 package com.iai.ignition.gateway.database;
 
 import com.iai.ignition.common.model.DebugLog;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.gson.JsonParseException;
+import com.inductiveautomation.ignition.common.gson.JsonParser;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
-import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.datasource.DatasourceManager;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data access object for debug log operations.
  * Stores full request/response JSON for LLM API calls.
+ *
+ * The system prompt, tool definitions and large tool results repeat in every request of a
+ * conversation, so they are stored in the blob store ({@link ToolBlobDAO}) and the stored
+ * request JSON holds references. They are resolved again when debug logs are read.
  */
 public class DebugLogDAO {
 
     private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.database.DebugLogDAO");
 
+    private static final String INSERT_SQL = "INSERT INTO iai_debug_log (id, message_id, request_json, response_json, timestamp) VALUES (?, ?, ?, ?, ?)";
+    private static final String FIND_BY_MESSAGE_SQL = "SELECT id, message_id, request_json, response_json, timestamp FROM iai_debug_log WHERE message_id = ? ORDER BY timestamp ASC";
+    private static final String FIND_BY_CONVERSATION_SQL = "SELECT d.id, d.message_id, d.request_json, d.response_json, d.timestamp " +
+                     "FROM iai_debug_log d " +
+                     "JOIN iai_messages m ON d.message_id = m.id " +
+                     "WHERE m.conversation_id = ? " +
+                     "ORDER BY d.timestamp ASC";
+
     /**
      * Create a new debug log entry in the database.
      *
@@ -29,36 +46,50 @@ public class DebugLogDAO {
      * @return true if created successfully
      */
     public static boolean create(DatasourceManager datasourceManager, String databaseConnectionName, DebugLog debugLog) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            String requestJson = externalizeRequest(uow, debugLog.getRequestJson());
+            PreparedStatement stmt = uow.prepare(INSERT_SQL);
+            bindInsert(stmt, debugLog, requestJson);
+            boolean created = uow.executeUpdate(stmt) > 0;
+            uow.commit();
+            return created;
+        } catch (SQLException e) {
+            logger.error("Error creating debug log", e);
             return false;
         }
+    }
 
-        String sql = "INSERT INTO iai_debug_log (id, message_id, request_json, response_json, timestamp) VALUES (?, ?, ?, ?, ?)";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return false;
-            }
+    /**
+     * Insert several debug log entries as one batch within a unit of work.
+     * Not committed until the unit of work is.
+     *
+     * @param uow The unit of work
+     * @param debugLogs The debug logs to create
+     * @return Number of entries inserted
+     */
+    public static int createAll(UnitOfWork uow, List<DebugLog> debugLogs) throws SQLException {
+        if (debugLogs.isEmpty()) {
+            return 0;
+        }
 
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        // Store blobs first: the insert statement is batched and must not be interleaved
+        List<String> requestJsons = new ArrayList<>(debugLogs.size());
+        for (DebugLog debugLog : debugLogs) {
+            requestJsons.add(externalizeRequest(uow, debugLog.getRequestJson()));
+        }
 
-                stmt.setString(1, debugLog.getId());
-                stmt.setString(2, debugLog.getMessageId());
-                stmt.setString(3, debugLog.getRequestJson());
-                stmt.setString(4, debugLog.getResponseJson());
-                stmt.setLong(5, debugLog.getTimestamp());
+        PreparedStatement stmt = uow.prepare(INSERT_SQL);
+        for (int i = 0; i < debugLogs.size(); i++) {
+            bindInsert(stmt, debugLogs.get(i), requestJsons.get(i));
+            stmt.addBatch();
+        }
 
-                int rows = stmt.executeUpdate();
-                return rows > 0;
-            }
-        } catch (SQLException e) {
-            logger.error("Error creating debug log", e);
-            return false;
+        int inserted = 0;
+        for (int count : uow.executeBatch(stmt)) {
+            // SUCCESS_NO_INFO (-2) still means the row was written
+            inserted += count > 0 || count == Statement.SUCCESS_NO_INFO ? 1 : 0;
         }
+        return inserted;
     }
 
     /**
@@ -70,44 +101,13 @@ public class DebugLogDAO {
      * @return List of debug logs for this message
      */
     public static List<DebugLog> findByMessageId(DatasourceManager datasourceManager, String databaseConnectionName, String messageId) {
-        List<DebugLog> logs = new ArrayList<>();
-
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return logs;
-        }
-
-        String sql = "SELECT id, message_id, request_json, response_json, timestamp FROM iai_debug_log WHERE message_id = ? ORDER BY timestamp ASC";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return logs;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-                stmt.setString(1, messageId);
-
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        DebugLog log = new DebugLog();
-                        log.setId(rs.getString("id"));
-                        log.setMessageId(rs.getString("message_id"));
-                        log.setRequestJson(rs.getString("request_json"));
-                        log.setResponseJson(rs.getString("response_json"));
-                        log.setTimestamp(rs.getLong("timestamp"));
-                        logs.add(log);
-                    }
-                }
-            }
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return query(uow, FIND_BY_MESSAGE_SQL, messageId);
         } catch (SQLException e) {
             logger.error("Error querying debug logs", e);
         }
 
-        return logs;
+        return new ArrayList<>();
     }
 
     /**
@@ -119,47 +119,150 @@ public class DebugLogDAO {
      * @return List of debug logs for this conversation
      */
     public static List<DebugLog> findByConversationId(DatasourceManager datasourceManager, String databaseConnectionName, String conversationId) {
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return query(uow, FIND_BY_CONVERSATION_SQL, conversationId);
+        } catch (SQLException e) {
+            logger.error("Error querying debug logs for conversation", e);
+        }
+
+        return new ArrayList<>();
+    }
+
+    private static List<DebugLog> query(UnitOfWork uow, String sql, String key) throws SQLException {
         List<DebugLog> logs = new ArrayList<>();
+        PreparedStatement stmt = uow.prepare(sql);
+        stmt.setString(1, key);
 
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return logs;
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                DebugLog log = new DebugLog();
+                log.setId(rs.getString("id"));
+                log.setMessageId(rs.getString("message_id"));
+                log.setRequestJson(rs.getString("request_json"));
+                log.setResponseJson(rs.getString("response_json"));
+                log.setTimestamp(rs.getLong("timestamp"));
+                logs.add(log);
+            }
         }
 
-        String sql = "SELECT d.id, d.message_id, d.request_json, d.response_json, d.timestamp " +
-                     "FROM iai_debug_log d " +
-                     "JOIN iai_messages m ON d.message_id = m.id " +
-                     "WHERE m.conversation_id = ? " +
-                     "ORDER BY d.timestamp ASC";
+        for (DebugLog log : logs) {
+            log.setRequestJson(resolveRequest(uow, log.getRequestJson()));
+        }
+        return logs;
+    }
+
+    private static void bindInsert(PreparedStatement stmt, DebugLog debugLog, String requestJson) throws SQLException {
+        stmt.setString(1, debugLog.getId());
+        stmt.setString(2, debugLog.getMessageId());
+        stmt.setString(3, requestJson);
+        stmt.setString(4, debugLog.getResponseJson());
+        stmt.setLong(5, debugLog.getTimestamp());
+    }
+
+    /**
+     * Move the system prompt, tool definitions and large tool results of a serialized
+     * LLM request into the blob store, returning the request JSON with references.
+     */
+    private static String externalizeRequest(UnitOfWork uow, String requestJson) throws SQLException {
+        if (requestJson == null || requestJson.length() < ToolBlobDAO.MIN_BLOB_CHARS) {
+            return requestJson;
+        }
+
+        JsonObject request;
+        try {
+            request = new JsonParser().parse(requestJson).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return requestJson;
+        }
+
+        JsonElement systemPrompt = request.get("systemPrompt");
+        if (systemPrompt != null && systemPrompt.isJsonPrimitive()
+                && systemPrompt.getAsString().length() >= ToolBlobDAO.MIN_BLOB_CHARS) {
+            request.remove("systemPrompt");
+            request.addProperty(ToolBlobDAO.SYSTEM_PROMPT_REF, ToolBlobDAO.store(uow, systemPrompt.getAsString()));
+        }
+
+        JsonElement tools = request.get("tools");
+        if (tools != null && tools.isJsonArray()) {
+            String toolsJson = tools.toString();
+            if (toolsJson.length() >= ToolBlobDAO.MIN_BLOB_CHARS) {
+                request.remove("tools");
+                request.addProperty(ToolBlobDAO.TOOLS_REF, ToolBlobDAO.store(uow, toolsJson));
+            }
+        }
+
+        for (JsonObject toolResult : toolResults(request)) {
+            JsonElement content = toolResult.get("content");
+            if (content != null && content.isJsonPrimitive()
+                    && content.getAsString().length() >= ToolBlobDAO.MIN_BLOB_CHARS) {
+                toolResult.remove("content");
+                toolResult.addProperty(ToolBlobDAO.CONTENT_REF, ToolBlobDAO.store(uow, content.getAsString()));
+            }
+        }
 
+        return request.toString();
+    }
+
+    /**
+     * Replace blob references in a stored request JSON with their content.
+     */
+    private static String resolveRequest(UnitOfWork uow, String requestJson) throws SQLException {
+        if (requestJson == null || !requestJson.contains("Ref\"")) {
+            return requestJson;
+        }
+
+        JsonObject request;
         try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return logs;
+            request = new JsonParser().parse(requestJson).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            return requestJson;
+        }
+
+        List<String> hashes = new ArrayList<>();
+        ToolBlobDAO.collectReferences(request, hashes);
+        Map<String, String> contents = ToolBlobDAO.load(uow, hashes);
+
+        JsonElement systemPromptRef = request.remove(ToolBlobDAO.SYSTEM_PROMPT_REF);
+        if (systemPromptRef != null) {
+            request.addProperty("systemPrompt", contents.get(systemPromptRef.getAsString()));
+        }
+
+        JsonElement toolsRef = request.remove(ToolBlobDAO.TOOLS_REF);
+        if (toolsRef != null && contents.containsKey(toolsRef.getAsString())) {
+            request.add("tools", new JsonParser().parse(contents.get(toolsRef.getAsString())));
+        }
+
+        for (JsonObject toolResult : toolResults(request)) {
+            JsonElement contentRef = toolResult.remove(ToolBlobDAO.CONTENT_REF);
+            if (contentRef != null) {
+                toolResult.addProperty("content", contents.get(contentRef.getAsString()));
             }
+        }
 
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        return request.toString();
+    }
 
-                stmt.setString(1, conversationId);
+    /**
+     * The toolResults entries of every message in a serialized LLM request.
+     */
+    private static List<JsonObject> toolResults(JsonObject request) {
+        List<JsonObject> results = new ArrayList<>();
+        JsonElement messages = request.get("messages");
+        if (messages == null || !messages.isJsonArray()) {
+            return results;
+        }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        DebugLog log = new DebugLog();
-                        log.setId(rs.getString("id"));
-                        log.setMessageId(rs.getString("message_id"));
-                        log.setRequestJson(rs.getString("request_json"));
-                        log.setResponseJson(rs.getString("response_json"));
-                        log.setTimestamp(rs.getLong("timestamp"));
-                        logs.add(log);
+        for (JsonElement message : messages.getAsJsonArray()) {
+            JsonElement toolResults = message.isJsonObject() ? message.getAsJsonObject().get("toolResults") : null;
+            if (toolResults != null && toolResults.isJsonArray()) {
+                JsonArray array = toolResults.getAsJsonArray();
+                for (JsonElement toolResult : array) {
+                    if (toolResult.isJsonObject()) {
+                        results.add(toolResult.getAsJsonObject());
                     }
                 }
             }
-        } catch (SQLException e) {
-            logger.error("Error querying debug logs for conversation", e);
         }
-
-        return logs;
+        return results;
     }
 }
@@ -6,20 +6,23 @@ import com.iai.ignition.common.model.Message;
 import com.iai.ignition.common.model.ToolCall;
 import com.iai.ignition.common.model.ToolResult;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
-import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.datasource.DatasourceManager;
 
 import java.lang.reflect.Type;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Data access object for message operations.
  * Follows ConversationSchemaManager pattern for database access.
+ *
+ * Each operation has a {@link UnitOfWork} variant for callers that group several calls on
+ * one connection, and a convenience variant that runs in its own short unit of work.
  */
 public class MessageDAO {
 
@@ -28,6 +31,25 @@ public class MessageDAO {
     private static final Type TOOL_CALL_LIST_TYPE = new TypeToken<List<ToolCall>>(){}.getType();
     private static final Type TOOL_RESULT_LIST_TYPE = new TypeToken<List<ToolResult>>(){}.getType();
 
+    private static final String INSERT_SQL = "INSERT INTO iai_messages (id, conversation_id, role, content, input_tokens, output_tokens, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TOOLS_SQL = "INSERT INTO iai_message_tools (message_id, tool_calls, tool_results) VALUES (?, ?, ?)";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM iai_messages WHERE conversation_id = ?";
+
+    // Content-only projection: the history hot path never reads tool payloads
+    private static final String LIST_SQL = "SELECT id, conversation_id, role, content, input_tokens, output_tokens, timestamp FROM iai_messages WHERE conversation_id = ? ORDER BY timestamp ASC";
+
+    // With-tools projection. COALESCE falls back to the legacy columns for rows not yet moved to iai_message_tools.
+    private static final String WITH_TOOLS_SELECT = "SELECT m.id, m.conversation_id, m.role, m.content, " +
+                     "COALESCE(t.tool_calls, m.tool_calls) AS tool_calls, COALESCE(t.tool_results, m.tool_results) AS tool_results, " +
+                     "m.input_tokens, m.output_tokens, m.timestamp " +
+                     "FROM iai_messages m LEFT JOIN iai_message_tools t ON t.message_id = m.id ";
+    private static final String FIND_BY_ID_SQL = WITH_TOOLS_SELECT + "WHERE m.id = ?";
+    private static final String LIST_WITH_TOOLS_SQL = WITH_TOOLS_SELECT + "WHERE m.conversation_id = ? ORDER BY m.timestamp ASC";
+
+    // Tools-for-message projection
+    private static final String FIND_TOOLS_SQL = "SELECT m.id, COALESCE(t.tool_calls, m.tool_calls) AS tool_calls, COALESCE(t.tool_results, m.tool_results) AS tool_results " +
+                     "FROM iai_messages m LEFT JOIN iai_message_tools t ON t.message_id = m.id WHERE m.id = ?";
+
     /**
      * Create a new message in the database.
      *
@@ -37,51 +59,55 @@ public class MessageDAO {
      * @return true if created successfully
      */
     public static boolean create(DatasourceManager datasourceManager, String databaseConnectionName, Message message) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            boolean created = create(uow, message);
+            uow.commit();
+            return created;
+        } catch (SQLException e) {
+            logger.error("Error creating message", e);
             return false;
         }
+    }
 
-        String sql = "INSERT INTO iai_messages (id, conversation_id, role, content, tool_calls, tool_results, input_tokens, output_tokens, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return false;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Create a new message within a unit of work. Not committed until the unit of work is.
+     * Tool calls and results, if any, are written to iai_message_tools; result bodies of at least
+     * {@link ToolBlobDAO#MIN_BLOB_CHARS} characters are stored once in the blob store and referenced.
+     */
+    public static boolean create(UnitOfWork uow, Message message) throws SQLException {
+        PreparedStatement stmt = uow.prepare(INSERT_SQL);
+        stmt.setString(1, message.getId());
+        stmt.setString(2, message.getConversationId());
+        stmt.setString(3, message.getRole());
+        stmt.setString(4, message.getContent());
+        stmt.setObject(5, message.getInputTokens());
+        stmt.setObject(6, message.getOutputTokens());
+        stmt.setLong(7, message.getTimestamp());
+
+        if (uow.executeUpdate(stmt) == 0) {
+            return false;
+        }
 
-                stmt.setString(1, message.getId());
-                stmt.setString(2, message.getConversationId());
-                stmt.setString(3, message.getRole());
-                stmt.setString(4, message.getContent());
+        if (message.getToolCalls() == null && message.getToolResults() == null) {
+            return true;
+        }
 
-                // Serialize tool_calls to JSON
-                String toolCallsJson = message.getToolCalls() != null ? gson.toJson(message.getToolCalls()) : null;
-                stmt.setString(5, toolCallsJson);
+        PreparedStatement toolsStmt = uow.prepare(INSERT_TOOLS_SQL);
+        toolsStmt.setString(1, message.getId());
 
-                // Serialize tool_results to JSON
-                String toolResultsJson = message.getToolResults() != null ? gson.toJson(message.getToolResults()) : null;
-                stmt.setString(6, toolResultsJson);
+        // Serialize tool_calls to JSON
+        String toolCallsJson = message.getToolCalls() != null ? gson.toJson(message.getToolCalls()) : null;
+        toolsStmt.setString(2, toolCallsJson);
 
-                stmt.setObject(7, message.getInputTokens());
-                stmt.setObject(8, message.getOutputTokens());
-                stmt.setLong(9, message.getTimestamp());
+        // Serialize tool_results to JSON, with large bodies moved to the blob store
+        String toolResultsJson = message.getToolResults() != null ? gson.toJson(toStoredResults(uow, message.getToolResults())) : null;
+        toolsStmt.setString(3, toolResultsJson);
 
-                int rows = stmt.executeUpdate();
-                return rows > 0;
-            }
-        } catch (SQLException e) {
-            logger.error("Error creating message", e);
-            return false;
-        }
+        return uow.executeUpdate(toolsStmt) > 0;
     }
 
     /**
-     * Find a message by ID.
+     * Find a message by ID, including its tool calls and results.
      *
      * @param datasourceManager The datasource manager
      * @param databaseConnectionName Name of the database connection
@@ -89,40 +115,67 @@ public class MessageDAO {
      * @return The message, or null if not found
      */
     public static Message findById(DatasourceManager datasourceManager, String databaseConnectionName, String id) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return null;
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            PreparedStatement stmt = uow.prepare(FIND_BY_ID_SQL);
+            stmt.setString(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    Message message = mapResultSetToMessage(rs);
+                    mapToolColumns(rs, message);
+                    resolveToolResults(uow, Collections.singletonList(message));
+                    return message;
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error finding message by ID", e);
         }
 
-        String sql = "SELECT id, conversation_id, role, content, tool_calls, tool_results, input_tokens, output_tokens, timestamp FROM iai_messages WHERE id = ?";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return null;
-            }
+        return null;
+    }
 
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+    /**
+     * Load only the tool calls and results of a message.
+     *
+     * @param datasourceManager The datasource manager
+     * @param databaseConnectionName Name of the database connection
+     * @param messageId The message ID
+     * @return A message holding only its ID, tool calls and tool results, or null if not found
+     */
+    public static Message findToolsForMessage(DatasourceManager datasourceManager, String databaseConnectionName, String messageId) {
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return findToolsForMessage(uow, messageId);
+        } catch (SQLException e) {
+            logger.error("Error loading tools for message", e);
+        }
 
-                stmt.setString(1, id);
+        return null;
+    }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return mapResultSetToMessage(rs);
-                    }
-                }
+    /**
+     * Load only the tool calls and results of a message within a unit of work.
+     */
+    public static Message findToolsForMessage(UnitOfWork uow, String messageId) throws SQLException {
+        PreparedStatement stmt = uow.prepare(FIND_TOOLS_SQL);
+        stmt.setString(1, messageId);
+
+        Message message = null;
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                message = new Message();
+                message.setId(rs.getString("id"));
+                mapToolColumns(rs, message);
             }
-        } catch (SQLException e) {
-            logger.error("Error finding message by ID", e);
         }
 
-        return null;
+        if (message != null) {
+            resolveToolResults(uow, Collections.singletonList(message));
+        }
+        return message;
     }
 
     /**
-     * List messages for a conversation.
+     * List messages for a conversation without their tool calls and results.
      *
      * @param datasourceManager The datasource manager
      * @param databaseConnectionName Name of the database connection
@@ -131,45 +184,82 @@ public class MessageDAO {
      * @return List of messages ordered by timestamp
      */
     public static List<Message> listByConversation(DatasourceManager datasourceManager, String databaseConnectionName, String conversationId, int limit) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return new ArrayList<>();
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return listByConversation(uow, conversationId, limit);
+        } catch (SQLException e) {
+            logger.error("Error listing messages by conversation", e);
         }
 
-        String sql;
-        if (limit > 0) {
-            sql = "SELECT id, conversation_id, role, content, tool_calls, tool_results, input_tokens, output_tokens, timestamp FROM iai_messages WHERE conversation_id = ? ORDER BY timestamp ASC LIMIT ?";
-        } else {
-            sql = "SELECT id, conversation_id, role, content, tool_calls, tool_results, input_tokens, output_tokens, timestamp FROM iai_messages WHERE conversation_id = ? ORDER BY timestamp ASC";
-        }
+        return new ArrayList<>();
+    }
 
+    /**
+     * List messages for a conversation within a unit of work, without their tool calls and results.
+     *
+     * @param uow The unit of work
+     * @param conversationId The conversation ID
+     * @param limit Maximum number of messages to return (0 for all)
+     * @return List of messages ordered by timestamp
+     */
+    public static List<Message> listByConversation(UnitOfWork uow, String conversationId, int limit) throws SQLException {
         List<Message> messages = new ArrayList<>();
 
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return messages;
+        PreparedStatement stmt = uow.prepare(limit > 0 ? uow.getDialect().firstRows(LIST_SQL) : LIST_SQL);
+        stmt.setString(1, conversationId);
+        if (limit > 0) {
+            stmt.setInt(2, limit);
+        }
+
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                messages.add(mapResultSetToMessage(rs));
             }
+        }
 
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        return messages;
+    }
 
-                stmt.setString(1, conversationId);
-                if (limit > 0) {
-                    stmt.setInt(2, limit);
-                }
+    /**
+     * List messages for a conversation including their tool calls and results.
+     * Use for audit and export; history reads should use {@link #listByConversation}.
+     *
+     * @param datasourceManager The datasource manager
+     * @param databaseConnectionName Name of the database connection
+     * @param conversationId The conversation ID
+     * @param limit Maximum number of messages to return (0 for all)
+     * @return List of messages ordered by timestamp
+     */
+    public static List<Message> listByConversationWithTools(DatasourceManager datasourceManager, String databaseConnectionName, String conversationId, int limit) {
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return listByConversationWithTools(uow, conversationId, limit);
+        } catch (SQLException e) {
+            logger.error("Error listing messages with tools by conversation", e);
+        }
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    while (rs.next()) {
-                        messages.add(mapResultSetToMessage(rs));
-                    }
-                }
+        return new ArrayList<>();
+    }
+
+    /**
+     * List messages for a conversation within a unit of work, including their tool calls and results.
+     */
+    public static List<Message> listByConversationWithTools(UnitOfWork uow, String conversationId, int limit) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+
+        PreparedStatement stmt = uow.prepare(limit > 0 ? uow.getDialect().firstRows(LIST_WITH_TOOLS_SQL) : LIST_WITH_TOOLS_SQL);
+        stmt.setString(1, conversationId);
+        if (limit > 0) {
+            stmt.setInt(2, limit);
+        }
+
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Message message = mapResultSetToMessage(rs);
+                mapToolColumns(rs, message);
+                messages.add(message);
             }
-        } catch (SQLException e) {
-            logger.error("Error listing messages by conversation", e);
         }
 
+        resolveToolResults(uow, messages);
         return messages;
     }
 
@@ -182,40 +272,32 @@ public class MessageDAO {
      * @return Number of messages in the conversation
      */
     public static int countByConversation(DatasourceManager datasourceManager, String databaseConnectionName, String conversationId) {
-        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
-            logger.error("Database connection name is not configured.");
-            return 0;
+        try (UnitOfWork uow = UnitOfWork.open(datasourceManager, databaseConnectionName)) {
+            return countByConversation(uow, conversationId);
+        } catch (SQLException e) {
+            logger.error("Error counting messages by conversation", e);
         }
 
-        String sql = "SELECT COUNT(*) FROM iai_messages WHERE conversation_id = ?";
-
-        try {
-            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
-            if (datasource == null) {
-                logger.error("Database connection not found: " + databaseConnectionName);
-                return 0;
-            }
-
-            try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+        return 0;
+    }
 
-                stmt.setString(1, conversationId);
+    /**
+     * Count messages in a conversation within a unit of work.
+     */
+    public static int countByConversation(UnitOfWork uow, String conversationId) throws SQLException {
+        PreparedStatement stmt = uow.prepare(COUNT_SQL);
+        stmt.setString(1, conversationId);
 
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getInt(1);
-                    }
-                }
+        try (ResultSet rs = stmt.executeQuery()) {
+            if (rs.next()) {
+                return rs.getInt(1);
             }
-        } catch (SQLException e) {
-            logger.error("Error counting messages by conversation", e);
         }
-
         return 0;
     }
 
     /**
-     * Map a ResultSet row to a Message object.
+     * Map the content columns of a ResultSet row to a Message object.
      */
     private static Message mapResultSetToMessage(ResultSet rs) throws SQLException {
         Message message = new Message();
@@ -223,7 +305,16 @@ public class MessageDAO {
         message.setConversationId(rs.getString("conversation_id"));
         message.setRole(rs.getString("role"));
         message.setContent(rs.getString("content"));
+        message.setInputTokens((Integer) rs.getObject("input_tokens"));
+        message.setOutputTokens((Integer) rs.getObject("output_tokens"));
+        message.setTimestamp(rs.getLong("timestamp"));
+        return message;
+    }
 
+    /**
+     * Map the tool_calls and tool_results columns of a ResultSet row onto a message.
+     */
+    private static void mapToolColumns(ResultSet rs, Message message) throws SQLException {
         // Deserialize tool_calls from JSON
         String toolCallsJson = rs.getString("tool_calls");
         if (toolCallsJson != null && !toolCallsJson.isEmpty()) {
@@ -237,11 +328,57 @@ public class MessageDAO {
             List<ToolResult> toolResults = gson.fromJson(toolResultsJson, TOOL_RESULT_LIST_TYPE);
             message.setToolResults(toolResults);
         }
+    }
 
-        message.setInputTokens((Integer) rs.getObject("input_tokens"));
-        message.setOutputTokens((Integer) rs.getObject("output_tokens"));
-        message.setTimestamp(rs.getLong("timestamp"));
+    /**
+     * Copy tool results for storage, replacing large bodies with blob store references.
+     * The caller's results are left untouched.
+     */
+    private static List<ToolResult> toStoredResults(UnitOfWork uow, List<ToolResult> toolResults) throws SQLException {
+        List<ToolResult> stored = new ArrayList<>(toolResults.size());
+        for (ToolResult result : toolResults) {
+            String content = result.getContent();
+            if (content == null || content.length() < ToolBlobDAO.MIN_BLOB_CHARS) {
+                stored.add(result);
+                continue;
+            }
 
-        return message;
+            ToolResult ref = new ToolResult(result.getToolCallId(), null, result.isError());
+            ref.setContentRef(ToolBlobDAO.store(uow, content));
+            stored.add(ref);
+        }
+        return stored;
+    }
+
+    /**
+     * Replace blob store references in loaded tool results with their content.
+     */
+    private static void resolveToolResults(UnitOfWork uow, List<Message> messages) throws SQLException {
+        List<String> hashes = new ArrayList<>();
+        for (Message message : messages) {
+            if (message.getToolResults() != null) {
+                for (ToolResult result : message.getToolResults()) {
+                    if (result.getContentRef() != null) {
+                        hashes.add(result.getContentRef());
+                    }
+                }
+            }
+        }
+
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> contents = ToolBlobDAO.load(uow, hashes);
+        for (Message message : messages) {
+            if (message.getToolResults() != null) {
+                for (ToolResult result : message.getToolResults()) {
+                    if (result.getContentRef() != null && contents.containsKey(result.getContentRef())) {
+                        result.setContent(contents.get(result.getContentRef()));
+                        result.setContentRef(null);
+                    }
+                }
+            }
+        }
     }
 }
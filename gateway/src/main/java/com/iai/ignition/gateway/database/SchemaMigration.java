@@ -0,0 +1,139 @@
+package com.iai.ignition.gateway.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single versioned schema change for the iai_* tables.
+ * Steps are written once with portable type tokens (see {@link SqlDialect#translate(String)})
+ * and applied idempotently by {@link SchemaMigrator}, so a migration that was interrupted
+ * part way through can simply be run again.
+ */
+public class SchemaMigration {
+
+    /**
+     * Kinds of migration step.
+     */
+    enum StepType {
+        CREATE_TABLE,
+        CREATE_INDEX,
+        ADD_COLUMN,
+        SQL,
+        BATCHED_SQL
+    }
+
+    /**
+     * One step of a migration.
+     */
+    static final class Step {
+        final StepType type;
+        final String table;
+        final String name;
+        final String[] columns;
+        final String sql;
+        final String keySql;
+        final SqlDialect dialect;
+
+        Step(StepType type, String table, String name, String[] columns, String sql, String keySql, SqlDialect dialect) {
+            this.type = type;
+            this.table = table;
+            this.name = name;
+            this.columns = columns;
+            this.sql = sql;
+            this.keySql = keySql;
+            this.dialect = dialect;
+        }
+    }
+
+    private final int version;
+    private final String description;
+    private final List<Step> steps = new ArrayList<>();
+
+    public SchemaMigration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+
+    /**
+     * Create a table if it does not already exist.
+     *
+     * @param table Table name
+     * @param columnDefinitions Column and constraint definitions (without the surrounding parentheses)
+     */
+    public SchemaMigration createTable(String table, String columnDefinitions) {
+        steps.add(new Step(StepType.CREATE_TABLE, table, table, null, columnDefinitions, null, null));
+        return this;
+    }
+
+    /**
+     * Create an index if it does not already exist. Built online where the dialect supports it.
+     *
+     * @param name Index name
+     * @param table Table name
+     * @param columns Indexed columns, in order
+     */
+    public SchemaMigration createIndex(String name, String table, String... columns) {
+        steps.add(new Step(StepType.CREATE_INDEX, table, name, columns, null, null, null));
+        return this;
+    }
+
+    /**
+     * Add a nullable column if it does not already exist.
+     *
+     * @param table Table name
+     * @param column Column name
+     * @param type Column type (type tokens allowed)
+     */
+    public SchemaMigration addColumn(String table, String column, String type) {
+        steps.add(new Step(StepType.ADD_COLUMN, table, column, null, type, null, null));
+        return this;
+    }
+
+    /**
+     * Run a statement on every dialect. The statement must be safe to repeat.
+     *
+     * @param sql SQL statement (type tokens allowed)
+     */
+    public SchemaMigration sql(String sql) {
+        steps.add(new Step(StepType.SQL, null, null, null, sql, null, null));
+        return this;
+    }
+
+    /**
+     * Run a statement only on the given dialect. The statement must be safe to repeat.
+     *
+     * @param dialect Dialect the statement applies to
+     * @param sql SQL statement
+     */
+    public SchemaMigration sql(SqlDialect dialect, String sql) {
+        steps.add(new Step(StepType.SQL, null, null, null, sql, null, dialect));
+        return this;
+    }
+
+    /**
+     * Run a statement over a large table in batches, each committed on its own, so the
+     * migration never holds one long transaction. The key query is run repeatedly and must
+     * only return keys whose rows still need the change; the statement is run for each batch
+     * of keys it returns until it returns none.
+     *
+     * @param keySql SELECT of the keys still to process
+     * @param sql Statement for one batch, with {KEYS} where the batch's key placeholders go
+     */
+    public SchemaMigration sqlInBatches(String keySql, String sql) {
+        steps.add(new Step(StepType.BATCHED_SQL, null, null, null, sql, keySql, null));
+        return this;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+}
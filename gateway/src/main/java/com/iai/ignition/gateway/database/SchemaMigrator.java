@@ -0,0 +1,373 @@
+package com.iai.ignition.gateway.database;
+
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies ordered {@link SchemaMigration}s and records them in the iai_schema_version table.
+ *
+ * Every step checks the live schema before changing it, so existing installs whose tables
+ * were created before versioning existed are adopted without error, and two gateways
+ * (e.g. a redundant pair) migrating at the same time converge on the same schema.
+ * Indexes are built online where the dialect allows it so large tables stay writable.
+ */
+public class SchemaMigrator {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.database.SchemaMigrator");
+
+    /**
+     * Table recording applied migrations.
+     */
+    public static final String VERSION_TABLE = "iai_schema_version";
+
+    /**
+     * Keys per batch for batched data migrations.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private static final String CREATE_VERSION_TABLE =
+        "CREATE TABLE " + VERSION_TABLE + " (" +
+        "    version INTEGER PRIMARY KEY," +
+        "    description VARCHAR(255)," +
+        "    applied_at {BIGINT} NOT NULL" +
+        ")";
+
+    /**
+     * Apply all migrations that have not yet been recorded.
+     *
+     * @param conn Open connection (auto-commit is enabled for the duration of the migration)
+     * @param migrations Migrations in any order
+     * @return The schema version after migrating
+     * @throws SQLException if a migration fails
+     */
+    public static int migrate(Connection conn, List<SchemaMigration> migrations) throws SQLException {
+        boolean originalAutoCommit = conn.getAutoCommit();
+        // Online index builds (e.g. CREATE INDEX CONCURRENTLY) cannot run inside a transaction
+        conn.setAutoCommit(true);
+
+        try {
+            SqlDialect dialect = SqlDialect.detect(conn);
+            ensureVersionTable(conn, dialect);
+
+            Set<Integer> applied = loadAppliedVersions(conn);
+            List<SchemaMigration> ordered = new ArrayList<>(migrations);
+            ordered.sort(Comparator.comparingInt(SchemaMigration::getVersion));
+
+            int currentVersion = applied.stream().mapToInt(Integer::intValue).max().orElse(0);
+
+            for (SchemaMigration migration : ordered) {
+                if (applied.contains(migration.getVersion())) {
+                    continue;
+                }
+
+                logger.info("Applying IAI schema migration " + migration.getVersion() + " (" + dialect + "): " + migration.getDescription());
+                long start = System.currentTimeMillis();
+
+                for (SchemaMigration.Step step : migration.getSteps()) {
+                    applyStep(conn, dialect, step);
+                }
+
+                recordVersion(conn, migration);
+                currentVersion = Math.max(currentVersion, migration.getVersion());
+
+                logger.info("Schema migration " + migration.getVersion() + " applied in " + (System.currentTimeMillis() - start) + "ms");
+            }
+
+            return currentVersion;
+        } finally {
+            conn.setAutoCommit(originalAutoCommit);
+        }
+    }
+
+    /**
+     * Read the highest applied schema version.
+     *
+     * @param conn Open connection
+     * @return The schema version, or 0 if no migrations have been applied
+     * @throws SQLException if the version table cannot be read
+     */
+    public static int getSchemaVersion(Connection conn) throws SQLException {
+        if (!tableExists(conn, VERSION_TABLE)) {
+            return 0;
+        }
+        return loadAppliedVersions(conn).stream().mapToInt(Integer::intValue).max().orElse(0);
+    }
+
+    /**
+     * Apply a single step.
+     */
+    private static void applyStep(Connection conn, SqlDialect dialect, SchemaMigration.Step step) throws SQLException {
+        switch (step.type) {
+            case CREATE_TABLE:
+                if (!tableExists(conn, step.table)) {
+                    executeUpdate(conn, dialect.translate("CREATE TABLE " + step.table + " (" + step.sql + ")"));
+                } else {
+                    logger.debug("Table already exists: " + step.table);
+                }
+                break;
+
+            case CREATE_INDEX:
+                if (!indexExists(conn, dialect, step.table, step.name)) {
+                    createIndex(conn, dialect, step);
+                } else {
+                    logger.debug("Index already exists: " + step.name);
+                }
+                break;
+
+            case ADD_COLUMN:
+                if (!columnExists(conn, step.table, step.name)) {
+                    executeUpdate(conn, dialect.translate("ALTER TABLE " + step.table + " ADD " + step.name + " " + step.sql));
+                } else {
+                    logger.debug("Column already exists: " + step.table + "." + step.name);
+                }
+                break;
+
+            case SQL:
+                if (step.dialect == null || step.dialect == dialect) {
+                    executeUpdate(conn, dialect.translate(step.sql));
+                }
+                break;
+
+            case BATCHED_SQL:
+                executeInBatches(conn, dialect, step);
+                break;
+
+            default:
+                throw new IllegalStateException("Unknown migration step: " + step.type);
+        }
+    }
+
+    /**
+     * Create an index, online where the dialect supports it, falling back to a regular build
+     * (e.g. SQL Server Standard Edition rejects ONLINE = ON).
+     */
+    private static void createIndex(Connection conn, SqlDialect dialect, SchemaMigration.Step step) throws SQLException {
+        String target = " ON " + step.table + " (" + String.join(", ", step.columns) + ")";
+        String plain = "CREATE INDEX " + step.name + target;
+
+        String online;
+        switch (dialect) {
+            case POSTGRESQL:
+                online = "CREATE INDEX CONCURRENTLY " + step.name + target;
+                break;
+            case SQLSERVER:
+                online = plain + " WITH (ONLINE = ON)";
+                break;
+            case MYSQL:
+                online = plain + " ALGORITHM=INPLACE LOCK=NONE";
+                break;
+            case ORACLE:
+                online = plain + " ONLINE";
+                break;
+            default:
+                online = null;
+        }
+
+        if (online != null) {
+            try {
+                executeUpdate(conn, online);
+                return;
+            } catch (SQLException e) {
+                logger.info("Online build of index " + step.name + " not available (" + e.getMessage() + "), building offline");
+                if (dialect == SqlDialect.POSTGRESQL) {
+                    // A failed concurrent build leaves an invalid index behind
+                    executeUpdate(conn, "DROP INDEX IF EXISTS " + step.name);
+                }
+            }
+        }
+
+        executeUpdate(conn, plain);
+    }
+
+    /**
+     * Run a batched step until its key query returns no more keys. Each batch commits on its
+     * own since the migration runs in auto-commit mode.
+     */
+    private static void executeInBatches(Connection conn, SqlDialect dialect, SchemaMigration.Step step) throws SQLException {
+        long total = 0;
+        List<String> unchanged = null;
+        while (true) {
+            List<String> keys = new ArrayList<>();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.setMaxRows(BATCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery(dialect.translate(step.keySql))) {
+                    while (rs.next()) {
+                        keys.add(rs.getString(1));
+                    }
+                }
+            }
+            if (keys.isEmpty()) {
+                break;
+            }
+
+            String sql = dialect.translate(step.sql).replace("{KEYS}", String.join(", ", Collections.nCopies(keys.size(), "?")));
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < keys.size(); i++) {
+                    stmt.setString(i + 1, keys.get(i));
+                }
+                if (stmt.executeUpdate() > 0) {
+                    unchanged = null;
+                } else if (keys.equals(unchanged)) {
+                    // Not a concurrent gateway getting there first; the key query would keep returning these rows
+                    throw new SQLException("Batched migration step made no progress: " + step.sql);
+                } else {
+                    unchanged = keys;
+                }
+            }
+            total += keys.size();
+        }
+        logger.debug("Batched migration step processed " + total + " rows");
+    }
+
+    /**
+     * Create the version table if it does not exist.
+     */
+    private static void ensureVersionTable(Connection conn, SqlDialect dialect) throws SQLException {
+        if (!tableExists(conn, VERSION_TABLE)) {
+            try {
+                executeUpdate(conn, dialect.translate(CREATE_VERSION_TABLE));
+            } catch (SQLException e) {
+                // Another gateway may have created it concurrently
+                if (!tableExists(conn, VERSION_TABLE)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the set of applied migration versions.
+     */
+    private static Set<Integer> loadAppliedVersions(Connection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM " + VERSION_TABLE)) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Record a migration as applied.
+     */
+    private static void recordVersion(Connection conn, SchemaMigration migration) throws SQLException {
+        String sql = "INSERT INTO " + VERSION_TABLE + " (version, description, applied_at) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, migration.getVersion());
+            stmt.setString(2, migration.getDescription());
+            stmt.setLong(3, System.currentTimeMillis());
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // Tolerate a concurrent gateway recording the same version first
+            if (!loadAppliedVersions(conn).contains(migration.getVersion())) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Check whether a table exists.
+     */
+    static boolean tableExists(Connection conn, String table) throws SQLException {
+        DatabaseMetaData metadata = conn.getMetaData();
+        for (String candidate : identifierVariants(table)) {
+            try (ResultSet rs = metadata.getTables(null, null, candidate, new String[]{"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a column exists.
+     */
+    static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData metadata = conn.getMetaData();
+        for (String tableCandidate : identifierVariants(table)) {
+            for (String columnCandidate : identifierVariants(column)) {
+                try (ResultSet rs = metadata.getColumns(null, null, tableCandidate, columnCandidate)) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a usable index exists. On PostgreSQL an invalid index left by an
+     * interrupted concurrent build is dropped so it can be rebuilt.
+     */
+    private static boolean indexExists(Connection conn, SqlDialect dialect, String table, String index) throws SQLException {
+        if (dialect == SqlDialect.POSTGRESQL) {
+            String sql = "SELECT i.indisvalid FROM pg_class c JOIN pg_index i ON i.indexrelid = c.oid WHERE c.relname = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, index.toLowerCase());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    if (rs.getBoolean(1)) {
+                        return true;
+                    }
+                }
+            }
+            logger.warn("Dropping invalid index left by an interrupted build: " + index);
+            executeUpdate(conn, "DROP INDEX IF EXISTS " + index);
+            return false;
+        }
+
+        DatabaseMetaData metadata = conn.getMetaData();
+        for (String candidate : identifierVariants(table)) {
+            try (ResultSet rs = metadata.getIndexInfo(null, null, candidate, false, true)) {
+                while (rs.next()) {
+                    String name = rs.getString("INDEX_NAME");
+                    if (name != null && name.equalsIgnoreCase(index)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Identifier spellings to try against metadata, since databases fold unquoted
+     * identifiers to different cases.
+     */
+    private static Set<String> identifierVariants(String identifier) {
+        Set<String> variants = new LinkedHashSet<>();
+        variants.add(identifier);
+        variants.add(identifier.toLowerCase());
+        variants.add(identifier.toUpperCase());
+        return variants;
+    }
+
+    /**
+     * Execute a SQL update statement.
+     */
+    private static void executeUpdate(Connection conn, String sql) throws SQLException {
+        logger.debug("Executing: " + sql);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+}
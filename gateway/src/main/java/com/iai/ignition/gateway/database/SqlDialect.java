@@ -0,0 +1,285 @@
+package com.iai.ignition.gateway.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * SQL dialects supported by the module's schema management and database tools.
+ * Detected from JDBC metadata so no extra configuration is required.
+ */
+public enum SqlDialect {
+    POSTGRESQL,
+    SQLSERVER,
+    MYSQL,
+    SQLITE,
+    ORACLE,
+    GENERIC;
+
+    /**
+     * Detect the dialect of an open connection.
+     *
+     * @param conn The connection
+     * @return The detected dialect, GENERIC if unknown
+     * @throws SQLException if metadata cannot be read
+     */
+    public static SqlDialect detect(Connection conn) throws SQLException {
+        return fromProductName(conn.getMetaData().getDatabaseProductName());
+    }
+
+    /**
+     * Map a JDBC database product name to a dialect.
+     *
+     * @param productName Value of DatabaseMetaData.getDatabaseProductName()
+     * @return The matching dialect, GENERIC if unknown
+     */
+    public static SqlDialect fromProductName(String productName) {
+        if (productName == null) {
+            return GENERIC;
+        }
+
+        String name = productName.toLowerCase();
+        if (name.contains("postgres")) {
+            return POSTGRESQL;
+        }
+        if (name.contains("microsoft") || name.contains("sql server")) {
+            return SQLSERVER;
+        }
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        }
+        if (name.contains("sqlite")) {
+            return SQLITE;
+        }
+        if (name.contains("oracle")) {
+            return ORACLE;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Column type for unbounded text (JSON payloads, message content).
+     */
+    public String textType() {
+        switch (this) {
+            case SQLSERVER:
+                return "NVARCHAR(MAX)";
+            case MYSQL:
+                return "LONGTEXT";
+            case ORACLE:
+                return "CLOB";
+            default:
+                return "TEXT";
+        }
+    }
+
+    /**
+     * Column type for booleans.
+     */
+    public String booleanType() {
+        switch (this) {
+            case SQLSERVER:
+                return "BIT";
+            case ORACLE:
+                return "NUMBER(1)";
+            default:
+                return "BOOLEAN";
+        }
+    }
+
+    /**
+     * Literal for a boolean value in DDL defaults and WHERE clauses.
+     */
+    public String booleanLiteral(boolean value) {
+        switch (this) {
+            case SQLSERVER:
+            case ORACLE:
+                return value ? "1" : "0";
+            default:
+                return value ? "TRUE" : "FALSE";
+        }
+    }
+
+    /**
+     * Column type for 64-bit integers (epoch millisecond timestamps).
+     */
+    public String bigintType() {
+        return this == ORACLE ? "NUMBER(19)" : "BIGINT";
+    }
+
+    /**
+     * Replace portable type tokens in a DDL statement with this dialect's types.
+     * Supported tokens: {TEXT}, {BOOLEAN}, {BIGINT}, {TRUE}, {FALSE}.
+     *
+     * @param ddl DDL containing type tokens
+     * @return DDL for this dialect
+     */
+    public String translate(String ddl) {
+        return ddl
+            .replace("{TEXT}", textType())
+            .replace("{BOOLEAN}", booleanType())
+            .replace("{BIGINT}", bigintType())
+            .replace("{TRUE}", booleanLiteral(true))
+            .replace("{FALSE}", booleanLiteral(false));
+    }
+
+    /**
+     * Fetch size that makes the driver stream a result set instead of reading all of it into
+     * memory. PostgreSQL only honours it outside auto-commit; see {@link #streamsOnlyInTransaction()}.
+     *
+     * @param rowsPerFetch Rows to fetch per round trip where the driver allows a choice
+     * @return The fetch size, or 0 to keep the driver's default (which already streams)
+     */
+    public int streamingFetchSize(int rowsPerFetch) {
+        switch (this) {
+            case MYSQL:
+                // MySQL Connector/J streams row by row only for this value
+                return Integer.MIN_VALUE;
+            case SQLSERVER:
+                // Adaptive buffering streams by default
+                return 0;
+            default:
+                return Math.max(1, rowsPerFetch);
+        }
+    }
+
+    /**
+     * Whether the driver streams with a fetch size only when auto-commit is off.
+     */
+    public boolean streamsOnlyInTransaction() {
+        return this == POSTGRESQL;
+    }
+
+    /**
+     * Quote an identifier, keeping its case and escaping embedded quotes.
+     */
+    public String quoteIdentifier(String name) {
+        switch (this) {
+            case MYSQL:
+                return "`" + name.replace("`", "``") + "`";
+            case SQLSERVER:
+                return "[" + name.replace("]", "]]") + "]";
+            default:
+                return "\"" + name.replace("\"", "\"\"") + "\"";
+        }
+    }
+
+    /**
+     * Quote a table name with its schema.
+     *
+     * @param schema The schema, or null if the database has none
+     * @param name The table name
+     */
+    public String qualifiedName(String schema, String name) {
+        return schema != null ? quoteIdentifier(schema) + "." + quoteIdentifier(name) : quoteIdentifier(name);
+    }
+
+    /**
+     * Select a range of rows of an ordered query.
+     *
+     * @param orderedSelect A SELECT ending in ORDER BY
+     * @param offset Rows to skip
+     * @param rows Rows to return
+     */
+    public String page(String orderedSelect, long offset, int rows) {
+        switch (this) {
+            case POSTGRESQL:
+            case MYSQL:
+            case SQLITE:
+                return orderedSelect + " LIMIT " + rows + " OFFSET " + offset;
+            default:
+                // SQL:2008, also SQL Server 2012+ and Oracle 12c+
+                return orderedSelect + " OFFSET " + offset + " ROWS FETCH NEXT " + rows + " ROWS ONLY";
+        }
+    }
+
+    /**
+     * Limit an ordered query to its first rows, with the row count as the last bind parameter.
+     *
+     * @param orderedSelect A SELECT ending in ORDER BY
+     */
+    public String firstRows(String orderedSelect) {
+        switch (this) {
+            case POSTGRESQL:
+            case MYSQL:
+            case SQLITE:
+                return orderedSelect + " LIMIT ?";
+            default:
+                return orderedSelect + " OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+        }
+    }
+
+    /**
+     * Expression rounding a timestamp down to the start of a fixed-length bucket, aligned to the
+     * Unix epoch.
+     *
+     * @param expr A timestamp expression
+     * @param seconds Bucket length
+     * @throws UnsupportedOperationException for GENERIC
+     */
+    public String timeBucket(String expr, int seconds) {
+        switch (this) {
+            case POSTGRESQL:
+                return "to_timestamp(floor(extract(epoch from " + expr + ") / " + seconds + ") * " + seconds + ")";
+            case MYSQL:
+                return "FROM_UNIXTIME(FLOOR(UNIX_TIMESTAMP(" + expr + ") / " + seconds + ") * " + seconds + ")";
+            case SQLSERVER:
+                // Counted from 2000 so DATEDIFF stays within int; 2000-01-01 is on the epoch's day boundaries
+                return "DATEADD(second, (DATEDIFF(second, '20000101', " + expr + ") / " + seconds + ") * " + seconds +
+                    ", CAST('20000101' AS DATETIME2))";
+            case SQLITE:
+                return "datetime((CAST(strftime('%s', " + expr + ") AS INTEGER) / " + seconds + ") * " + seconds + ", 'unixepoch')";
+            case ORACLE:
+                return "(DATE '1970-01-01' + FLOOR((CAST(" + expr + " AS DATE) - DATE '1970-01-01') * 86400 / " + seconds +
+                    ") * " + seconds + " / 86400)";
+            default:
+                throw new UnsupportedOperationException("Time buckets are not supported for this database");
+        }
+    }
+
+    /**
+     * Expression rounding an epoch milliseconds value (as in Ignition's tag history tables) down
+     * to the start of a fixed-length bucket.
+     *
+     * @param expr A numeric epoch milliseconds expression
+     * @param seconds Bucket length
+     */
+    public String epochMillisBucket(String expr, int seconds) {
+        long millis = seconds * 1000L;
+        if (this == SQLITE) {
+            // Integer division; FLOOR needs SQLite's optional math functions
+            return "(CAST(" + expr + " AS INTEGER) / " + millis + ") * " + millis;
+        }
+        return "FLOOR(" + expr + " / " + millis + ") * " + millis;
+    }
+
+    /**
+     * Aggregate expression for a continuous percentile.
+     *
+     * @param expr A numeric expression
+     * @param fraction The percentile, 0 to 1
+     * @return The expression, or null if the database has no percentile aggregate
+     */
+    public String percentile(String expr, double fraction) {
+        switch (this) {
+            case POSTGRESQL:
+            case ORACLE:
+                return "percentile_cont(" + fraction + ") WITHIN GROUP (ORDER BY " + expr + ")";
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Window expression for a continuous percentile over every row of a query, for databases
+     * where percentile_cont is only an analytic function. Each row of the query has the same value.
+     *
+     * @param expr A numeric expression
+     * @param fraction The percentile, 0 to 1
+     * @return The expression, or null if the database has no such function
+     */
+    public String percentileOverAll(String expr, double fraction) {
+        return this == SQLSERVER
+            ? "PERCENTILE_CONT(" + fraction + ") WITHIN GROUP (ORDER BY " + expr + ") OVER ()"
+            : null;
+    }
+}
@@ -30,7 +30,7 @@ public class TaskDAO {
             return false;
         }
 
-        String sql = "INSERT INTO iai_scheduled_tasks (id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO iai_scheduled_tasks (id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled, keep_runs) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
         try {
             Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
@@ -55,6 +55,7 @@ public class TaskDAO {
                 stmt.setString(11, task.getResultStorage());
                 stmt.setLong(12, task.getCreatedAt());
                 stmt.setBoolean(13, task.isEnabled());
+                stmt.setObject(14, task.getKeepRuns());
 
                 int rows = stmt.executeUpdate();
 
@@ -81,7 +82,7 @@ public class TaskDAO {
             return null;
         }
 
-        String sql = "SELECT id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled FROM iai_scheduled_tasks WHERE id = ?";
+        String sql = "SELECT id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled, keep_runs FROM iai_scheduled_tasks WHERE id = ?";
 
         try {
             Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
@@ -117,7 +118,7 @@ public class TaskDAO {
             return new ArrayList<>();
         }
 
-        String sql = "SELECT id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled FROM iai_scheduled_tasks WHERE user_name = ? AND project_name = ? ORDER BY created_at DESC";
+        String sql = "SELECT id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled, keep_runs FROM iai_scheduled_tasks WHERE user_name = ? AND project_name = ? ORDER BY created_at DESC";
 
         List<ScheduledTask> tasks = new ArrayList<>();
 
@@ -156,7 +157,7 @@ public class TaskDAO {
             return new ArrayList<>();
         }
 
-        String sql = "SELECT id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled FROM iai_scheduled_tasks WHERE enabled = TRUE ORDER BY next_run_at ASC";
+        String sql = "SELECT id, user_name, project_name, task_description, conversation_id, prompt, cron_expression, last_run_at, next_run_at, status, result_storage, created_at, enabled, keep_runs FROM iai_scheduled_tasks WHERE enabled = TRUE ORDER BY next_run_at ASC";
 
         List<ScheduledTask> tasks = new ArrayList<>();
 
@@ -362,12 +363,7 @@ public class TaskDAO {
             return new ArrayList<>();
         }
 
-        String sql;
-        if (limit > 0) {
-            sql = "SELECT id, task_id, executed_at, conversation_id, status, error_message, execution_time_ms FROM iai_task_executions WHERE task_id = ? ORDER BY executed_at DESC LIMIT ?";
-        } else {
-            sql = "SELECT id, task_id, executed_at, conversation_id, status, error_message, execution_time_ms FROM iai_task_executions WHERE task_id = ? ORDER BY executed_at DESC";
-        }
+        String sql = "SELECT id, task_id, executed_at, conversation_id, status, error_message, execution_time_ms FROM iai_task_executions WHERE task_id = ? ORDER BY executed_at DESC";
 
         List<TaskExecution> executions = new ArrayList<>();
 
@@ -379,7 +375,7 @@ public class TaskDAO {
             }
 
             try (Connection conn = datasource.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                 PreparedStatement stmt = conn.prepareStatement(limit > 0 ? SqlDialect.detect(conn).firstRows(sql) : sql)) {
 
                 stmt.setString(1, taskId);
                 if (limit > 0) {
@@ -417,6 +413,8 @@ public class TaskDAO {
         task.setResultStorage(rs.getString("result_storage"));
         task.setCreatedAt(rs.getLong("created_at"));
         task.setEnabled(rs.getBoolean("enabled"));
+        Object keepRuns = rs.getObject("keep_runs");
+        task.setKeepRuns(keepRuns != null ? ((Number) keepRuns).intValue() : null);
         return task;
     }
 
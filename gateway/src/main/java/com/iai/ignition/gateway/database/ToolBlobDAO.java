@@ -0,0 +1,205 @@
+package com.iai.ignition.gateway.database;
+
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.gson.JsonParseException;
+import com.inductiveautomation.ignition.common.gson.JsonParser;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Data access object for the content-addressed tool blob store.
+ *
+ * Large tool result bodies (and the repeated parts of debug log requests) are stored once in
+ * iai_tool_blobs keyed by their SHA-256, and rows that use them hold the hash instead. Each
+ * stored reference increments ref_count; deleting the referencing rows must {@link #release}
+ * the hashes they held. Blobs left without references are garbage collected by the
+ * retention service.
+ */
+public class ToolBlobDAO {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.database.ToolBlobDAO");
+
+    /**
+     * Content shorter than this is kept inline; the hash and bookkeeping are not worth it.
+     */
+    public static final int MIN_BLOB_CHARS = 1024;
+
+    /**
+     * JSON keys that hold blob hashes in stored payloads.
+     */
+    static final String CONTENT_REF = "contentRef";
+    static final String SYSTEM_PROMPT_REF = "systemPromptRef";
+    static final String TOOLS_REF = "toolsRef";
+    private static final Set<String> REF_KEYS = Set.of(CONTENT_REF, SYSTEM_PROMPT_REF, TOOLS_REF);
+
+    private static final String ADD_REF_SQL = "UPDATE iai_tool_blobs SET ref_count = ref_count + 1, last_referenced_at = ? WHERE hash = ?";
+    private static final String INSERT_SQL = "INSERT INTO iai_tool_blobs (hash, content, size_bytes, ref_count, created_at, last_referenced_at) VALUES (?, ?, ?, 1, ?, ?)";
+    private static final String FIND_SQL = "SELECT content FROM iai_tool_blobs WHERE hash = ?";
+    private static final String RELEASE_SQL = "UPDATE iai_tool_blobs SET ref_count = ref_count - 1 WHERE hash = ?";
+
+    /**
+     * Store content, or add a reference to it if it is already stored.
+     * Not committed until the unit of work is.
+     *
+     * @param uow The unit of work
+     * @param content The content to store
+     * @return The SHA-256 hash referencing the content
+     */
+    public static String store(UnitOfWork uow, String content) throws SQLException {
+        String hash = sha256(content);
+        long now = System.currentTimeMillis();
+
+        if (addReference(uow, hash, now)) {
+            return hash;
+        }
+
+        // A failed insert aborts the whole transaction on some databases, so isolate it
+        Savepoint savepoint = uow.setSavepoint();
+        try {
+            PreparedStatement stmt = uow.prepare(INSERT_SQL);
+            stmt.setString(1, hash);
+            stmt.setString(2, content);
+            stmt.setLong(3, content.getBytes(StandardCharsets.UTF_8).length);
+            stmt.setLong(4, now);
+            stmt.setLong(5, now);
+            uow.executeUpdate(stmt);
+        } catch (SQLException e) {
+            // Another writer stored the same content first
+            uow.rollback(savepoint);
+            if (!addReference(uow, hash, now)) {
+                throw e;
+            }
+        }
+        return hash;
+    }
+
+    private static boolean addReference(UnitOfWork uow, String hash, long now) throws SQLException {
+        PreparedStatement stmt = uow.prepare(ADD_REF_SQL);
+        stmt.setLong(1, now);
+        stmt.setString(2, hash);
+        return uow.executeUpdate(stmt) > 0;
+    }
+
+    /**
+     * Load stored content by hash.
+     *
+     * @param uow The unit of work
+     * @param hashes The hashes to load
+     * @return Content by hash; hashes that are not stored are absent
+     */
+    public static Map<String, String> load(UnitOfWork uow, Collection<String> hashes) throws SQLException {
+        Map<String, String> contents = new HashMap<>();
+        PreparedStatement stmt = uow.prepare(FIND_SQL);
+
+        for (String hash : hashes) {
+            if (contents.containsKey(hash)) {
+                continue;
+            }
+            stmt.setString(1, hash);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    contents.put(hash, rs.getString(1));
+                } else {
+                    logger.warn("Tool blob not found: " + hash);
+                }
+            }
+        }
+        return contents;
+    }
+
+    /**
+     * Drop one reference per occurrence of each hash. Not committed until the unit of work is.
+     */
+    public static void release(UnitOfWork uow, Collection<String> hashes) throws SQLException {
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement stmt = uow.prepare(RELEASE_SQL);
+        for (String hash : hashes) {
+            stmt.setString(1, hash);
+            stmt.addBatch();
+        }
+        uow.executeBatch(stmt);
+    }
+
+    /**
+     * Drop one reference per occurrence of each hash on a caller-managed connection.
+     */
+    public static void release(Connection conn, Collection<String> hashes) throws SQLException {
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(RELEASE_SQL)) {
+            for (String hash : hashes) {
+                stmt.setString(1, hash);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Add every blob hash referenced by a stored JSON payload (message tool results or a
+     * debug log request) to the given collection, once per occurrence.
+     */
+    public static void collectReferences(String json, Collection<String> into) {
+        if (json == null || json.isEmpty()) {
+            return;
+        }
+
+        try {
+            collectReferences(new JsonParser().parse(json), into);
+        } catch (JsonParseException e) {
+            logger.debug("Skipping unparseable payload while collecting blob references: " + e.getMessage());
+        }
+    }
+
+    static void collectReferences(JsonElement element, Collection<String> into) {
+        if (element.isJsonArray()) {
+            for (JsonElement child : element.getAsJsonArray()) {
+                collectReferences(child, into);
+            }
+        } else if (element.isJsonObject()) {
+            JsonObject obj = element.getAsJsonObject();
+            for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+                if (REF_KEYS.contains(entry.getKey()) && entry.getValue().isJsonPrimitive()) {
+                    into.add(entry.getValue().getAsString());
+                } else {
+                    collectReferences(entry.getValue(), into);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hex-encoded SHA-256 of the UTF-8 bytes of the content.
+     */
+    static String sha256(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.iai.ignition.gateway.database;
+
+import com.iai.ignition.gateway.metrics.ToolMetricsRollup;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.datasource.DatasourceManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Data access object for tool metrics rollups.
+ * Manages the iai_tool_metrics table; old rows are removed by the retention service.
+ */
+public class ToolMetricsDAO {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.database.ToolMetricsDAO");
+
+    private static final String INSERT_SQL = "INSERT INTO iai_tool_metrics (id, tool_name, target, period_start, period_end, " +
+        "invocations, errors, timeouts, result_bytes, result_tokens, total_us, max_us, p50_us, p90_us, p99_us, histogram) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * Insert a batch of rollups in one transaction.
+     */
+    public static boolean insertRollups(DatasourceManager datasourceManager, String databaseConnectionName, List<ToolMetricsRollup> rollups) {
+        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
+            logger.error("Database connection name is not configured.");
+            return false;
+        }
+        if (rollups.isEmpty()) {
+            return true;
+        }
+
+        try {
+            Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
+            if (datasource == null) {
+                logger.error("Database connection not found: " + databaseConnectionName);
+                return false;
+            }
+
+            try (Connection conn = datasource.getConnection()) {
+                boolean originalAutoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                    for (ToolMetricsRollup rollup : rollups) {
+                        stmt.setString(1, rollup.getId());
+                        stmt.setString(2, rollup.getToolName());
+                        stmt.setString(3, rollup.getTarget());
+                        stmt.setLong(4, rollup.getPeriodStart());
+                        stmt.setLong(5, rollup.getPeriodEnd());
+                        stmt.setLong(6, rollup.getInvocations());
+                        stmt.setLong(7, rollup.getErrors());
+                        stmt.setLong(8, rollup.getTimeouts());
+                        stmt.setLong(9, rollup.getResultBytes());
+                        stmt.setLong(10, rollup.getResultTokens());
+                        stmt.setLong(11, rollup.getTotalMicros());
+                        stmt.setLong(12, rollup.getMaxMicros());
+                        stmt.setLong(13, rollup.getP50Micros());
+                        stmt.setLong(14, rollup.getP90Micros());
+                        stmt.setLong(15, rollup.getP99Micros());
+                        stmt.setString(16, rollup.getHistogram());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    conn.commit();
+                    return true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(originalAutoCommit);
+                }
+            }
+        } catch (SQLException e) {
+            logger.error("Error recording tool metrics", e);
+            return false;
+        }
+    }
+}
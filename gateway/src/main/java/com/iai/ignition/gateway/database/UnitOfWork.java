@@ -0,0 +1,211 @@
+package com.iai.ignition.gateway.database;
+
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.datasource.DatasourceManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A unit of work shared by DAO calls that belong together, such as one chat turn.
+ *
+ * The connection is checked out lazily on first use and reused, along with its prepared
+ * statements, until {@link #release()} commits and returns it to the pool. Callers release
+ * before long waits (e.g. the LLM call) and the next DAO call transparently checks out a
+ * connection again. Writes are grouped into one transaction per checkout; {@link #close()}
+ * rolls back anything that was not committed.
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.database.UnitOfWork");
+
+    private final Datasource datasource;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private Connection connection;
+    private SqlDialect dialect;
+    private boolean dirty;
+    private int checkouts;
+
+    private UnitOfWork(Datasource datasource) {
+        this.datasource = datasource;
+    }
+
+    /**
+     * Open a unit of work on a named database connection. No connection is checked out until needed.
+     *
+     * @param datasourceManager The datasource manager
+     * @param databaseConnectionName Name of the database connection
+     * @return The unit of work
+     * @throws SQLException if the connection name is not configured or not found
+     */
+    public static UnitOfWork open(DatasourceManager datasourceManager, String databaseConnectionName) throws SQLException {
+        if (databaseConnectionName == null || databaseConnectionName.isEmpty()) {
+            throw new SQLException("Database connection name is not configured.");
+        }
+
+        Datasource datasource = datasourceManager.getDatasource(databaseConnectionName);
+        if (datasource == null) {
+            throw new SQLException("Database connection not found: " + databaseConnectionName);
+        }
+
+        return new UnitOfWork(datasource);
+    }
+
+    /**
+     * Get the connection, checking one out of the pool if necessary.
+     */
+    Connection getConnection() throws SQLException {
+        if (connection == null) {
+            connection = datasource.getConnection();
+            connection.setAutoCommit(false);
+            checkouts++;
+        }
+        return connection;
+    }
+
+    /**
+     * Get the dialect of the database, detected on first use.
+     */
+    SqlDialect getDialect() throws SQLException {
+        if (dialect == null) {
+            dialect = SqlDialect.detect(getConnection());
+        }
+        return dialect;
+    }
+
+    /**
+     * Get a prepared statement for this checkout, reusing it if the same SQL was prepared before.
+     * The statement is owned by the unit of work and must not be closed by the caller.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = getConnection().prepareStatement(sql);
+            statements.put(sql, stmt);
+        } else {
+            stmt.clearParameters();
+        }
+        return stmt;
+    }
+
+    /**
+     * Execute an update and mark the unit of work as having pending writes.
+     */
+    int executeUpdate(PreparedStatement stmt) throws SQLException {
+        dirty = true;
+        return stmt.executeUpdate();
+    }
+
+    /**
+     * Execute a batch and mark the unit of work as having pending writes.
+     */
+    int[] executeBatch(PreparedStatement stmt) throws SQLException {
+        dirty = true;
+        return stmt.executeBatch();
+    }
+
+    /**
+     * Commit pending writes, keeping the connection for further work.
+     */
+    public void commit() throws SQLException {
+        if (connection != null) {
+            connection.commit();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Discard pending writes, keeping the connection for further work.
+     */
+    public void rollback() {
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException e) {
+                logger.error("Error rolling back unit of work", e);
+            }
+            dirty = false;
+        }
+    }
+
+    /**
+     * Mark a point that later work can be rolled back to without losing earlier writes.
+     */
+    public Savepoint setSavepoint() throws SQLException {
+        return getConnection().setSavepoint();
+    }
+
+    /**
+     * Roll back to a savepoint.
+     */
+    public void rollback(Savepoint savepoint) throws SQLException {
+        if (connection != null) {
+            connection.rollback(savepoint);
+        }
+    }
+
+    /**
+     * Commit pending writes and return the connection to the pool. Later DAO calls check out a new one.
+     */
+    public void release() throws SQLException {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.commit();
+            dirty = false;
+        } finally {
+            closeConnection();
+        }
+    }
+
+    /**
+     * Number of times a connection was checked out by this unit of work.
+     */
+    public int getCheckoutCount() {
+        return checkouts;
+    }
+
+    /**
+     * Roll back uncommitted writes and return the connection to the pool.
+     */
+    @Override
+    public void close() {
+        if (connection == null) {
+            return;
+        }
+
+        if (dirty) {
+            logger.debug("Unit of work closed with uncommitted writes, rolling back");
+        }
+        // Also ends any read-only transaction opened by queries
+        rollback();
+        closeConnection();
+    }
+
+    private void closeConnection() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                logger.debug("Error closing statement: " + e.getMessage());
+            }
+        }
+        statements.clear();
+
+        try {
+            connection.setAutoCommit(true);
+            connection.close();
+        } catch (SQLException e) {
+            logger.error("Error returning connection to pool", e);
+        } finally {
+            connection = null;
+        }
+    }
+}
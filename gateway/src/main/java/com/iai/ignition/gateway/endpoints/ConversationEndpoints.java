@@ -10,13 +10,17 @@ import com.iai.ignition.common.model.TaskExecution;
 import com.iai.ignition.common.model.ToolCall;
 import com.iai.ignition.common.model.ToolResult;
 import com.iai.ignition.common.tools.IAITool;
-import com.iai.ignition.gateway.database.ConversationDAO;
-import com.iai.ignition.gateway.database.DebugLogDAO;
-import com.iai.ignition.gateway.database.MessageDAO;
-import com.iai.ignition.gateway.database.TaskDAO;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.GatewayHook;
 import com.iai.ignition.gateway.llm.ClaudeAPIClient;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.store.CachingConversationStore;
+import com.iai.ignition.gateway.store.ConversationStore;
+import com.iai.ignition.gateway.store.StoreSession;
+import com.iai.ignition.gateway.tools.RequestToolsTool;
 import com.iai.ignition.gateway.tools.ToolRegistry;
+import com.iai.ignition.gateway.tools.ToolRouter;
+import com.iai.ignition.gateway.tools.database.QueryResultCache;
 import com.iai.ignition.gateway.util.TokenCounter;
 import com.inductiveautomation.ignition.common.gson.Gson;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
@@ -78,6 +82,12 @@ public final class ConversationEndpoints {
             .handler((req, res) -> getConversation(req, res, req.getParameter("id")))
             .mount();
 
+        // GET /getMessageTools/:id - Load the tool calls and results of one message
+        routes.newRoute("/getMessageTools/:id")
+            .type(RouteGroup.TYPE_JSON)
+            .handler((req, res) -> getMessageTools(req, res, req.getParameter("id")))
+            .mount();
+
         // GET /listConversations - List conversations for a user/project
         routes.newRoute("/listConversations")
             .type(RouteGroup.TYPE_JSON)
@@ -136,6 +146,60 @@ public final class ConversationEndpoints {
             .type(RouteGroup.TYPE_JSON)
             .handler((req, res) -> getTaskExecutions(req, res, req.getParameter("id")))
             .mount();
+
+        // GET /toolMetrics - Per-tool execution counts, result sizes and latency percentiles
+        routes.newRoute("/toolMetrics")
+            .type(RouteGroup.TYPE_JSON)
+            .handler(ConversationEndpoints::getToolMetrics)
+            .mount();
+
+        // POST /invalidateQueryCache - Drop cached query results after an external write
+        routes.newRoute("/invalidateQueryCache")
+            .method(HttpMethod.POST)
+            .type(RouteGroup.TYPE_JSON)
+            .handler(ConversationEndpoints::invalidateQueryCache)
+            .mount();
+    }
+
+    /**
+     * Get the active conversation store, failing the request if storage is not available.
+     */
+    private static ConversationStore requireStore() {
+        ConversationStore store = GatewayHook.getConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available. Check the database connection and storage backend settings.");
+        }
+        return store;
+    }
+
+    /**
+     * Get and hold the active conversation store, failing the request if storage is not available.
+     * The caller must release it.
+     */
+    private static CachingConversationStore acquireStore() {
+        CachingConversationStore store = GatewayHook.acquireConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available. Check the database connection and storage backend settings.");
+        }
+        return store;
+    }
+
+    /**
+     * Discard memoized tool results after a change made outside the tools.
+     *
+     * @param conversationId The deleted conversation whose results and result cursors to drop, or null to drop all results
+     */
+    private static void invalidateToolResults(String conversationId) {
+        ToolRegistry toolRegistry = GatewayHook.getToolRegistry();
+        if (toolRegistry == null) {
+            return;
+        }
+        if (conversationId != null) {
+            toolRegistry.invalidateMemoizedResults(conversationId);
+            toolRegistry.closeResultCursors(conversationId);
+        } else {
+            toolRegistry.invalidateMemoizedResults();
+        }
     }
 
     /**
@@ -167,7 +231,7 @@ public final class ConversationEndpoints {
                 ? requestBody.get("compactToRecentMessages").getAsInt() : 30;
 
             // Load settings
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
@@ -176,75 +240,91 @@ public final class ConversationEndpoints {
             if (settings.getApiKey() == null || settings.getApiKey().isEmpty()) {
                 throw new IllegalStateException("Claude API key not configured");
             }
-            if (settings.getDatabaseConnection() == null || settings.getDatabaseConnection().isEmpty()) {
-                throw new IllegalStateException("Database connection not configured");
-            }
 
-            String dbConnection = settings.getDatabaseConnection();
+            // Held until the turn ends, so a storage settings change does not shut it down under the turn
+            CachingConversationStore store = acquireStore();
 
-            // Create or load conversation
+            // One store session for the whole turn: for the database store, a single connection
+            // and commit per phase, released back to the pool while waiting on the LLM
             Conversation conversation;
-            if (conversationId == null || conversationId.isEmpty()) {
-                // Create new conversation
-                conversation = new Conversation();
-                conversation.setId(UUID.randomUUID().toString());
-                conversation.setUserName(userName);
-                conversation.setProjectName(projectName);
-                conversation.setTitle(generateConversationTitle(message));
-                conversation.setCreatedAt(System.currentTimeMillis());
-                conversation.setLastUpdatedAt(System.currentTimeMillis());
-
-                ConversationDAO.create(context.getDatasourceManager(), dbConnection, conversation);
-                logger.debug("Created new conversation: " + conversation.getId());
-            } else {
-                // Load existing conversation
-                conversation = ConversationDAO.findById(context.getDatasourceManager(), dbConnection, conversationId);
-                if (conversation == null) {
-                    throw new IllegalArgumentException("Conversation not found: " + conversationId);
+            Message assistantMessage;
+            int estimatedTokens;
+            try (StoreSession session = store.openSession()) {
+                // Create or load conversation
+                if (conversationId == null || conversationId.isEmpty()) {
+                    // Create new conversation
+                    conversation = new Conversation();
+                    conversation.setId(UUID.randomUUID().toString());
+                    conversation.setUserName(userName);
+                    conversation.setProjectName(projectName);
+                    conversation.setTitle(generateConversationTitle(message));
+                    conversation.setCreatedAt(System.currentTimeMillis());
+                    conversation.setLastUpdatedAt(System.currentTimeMillis());
+
+                    session.createConversation(conversation);
+                    logger.debug("Created new conversation: " + conversation.getId());
+                } else {
+                    // Load existing conversation (usually cached)
+                    conversation = store.findConversation(conversationId);
+                    if (conversation == null) {
+                        throw new IllegalArgumentException("Conversation not found: " + conversationId);
+                    }
+
+                    // Update last updated time (coalesced, written in the background)
+                    conversation.setLastUpdatedAt(System.currentTimeMillis());
+                    store.touchConversation(conversation.getId(), conversation.getLastUpdatedAt());
                 }
 
-                // Update last updated time
-                conversation.setLastUpdatedAt(System.currentTimeMillis());
-                ConversationDAO.update(context.getDatasourceManager(), dbConnection, conversation);
-            }
+                // Save user message
+                Message userMessage = new Message();
+                userMessage.setId(UUID.randomUUID().toString());
+                userMessage.setConversationId(conversation.getId());
+                userMessage.setRole("user");
+                userMessage.setContent(message);
+                userMessage.setTimestamp(System.currentTimeMillis());
 
-            // Save user message
-            Message userMessage = new Message();
-            userMessage.setId(UUID.randomUUID().toString());
-            userMessage.setConversationId(conversation.getId());
-            userMessage.setRole("user");
-            userMessage.setContent(message);
-            userMessage.setTimestamp(System.currentTimeMillis());
-
-            MessageDAO.create(context.getDatasourceManager(), dbConnection, userMessage);
-
-            // Calculate estimated token count for user visibility
-            List<Message> allMessages = MessageDAO.listByConversation(
-                context.getDatasourceManager(),
-                dbConnection,
-                conversation.getId(),
-                settings.getMaxConversationHistoryMessages()
-            );
-            int estimatedTokens = TokenCounter.estimateTokens(allMessages);
-
-            // Initialize Claude API client
-            ClaudeAPIClient claudeClient = new ClaudeAPIClient(settings.getApiKey());
-
-            // Initialize tool registry
-            ToolRegistry toolRegistry = new ToolRegistry(context, settings);
-
-            // Process message with AI (may involve multiple tool calls)
-            Message assistantMessage = processWithAI(
-                context,
-                settings,
-                claudeClient,
-                toolRegistry,
-                conversation,
-                dbConnection,
-                enableAutoCompaction,
-                compactionTokenThreshold,
-                compactToRecentMessages
-            );
+                session.createMessage(userMessage);
+
+                // Calculate estimated token count for user visibility
+                List<Message> allMessages = session.listMessages(
+                    conversation.getId(),
+                    settings.getMaxConversationHistoryMessages()
+                );
+                estimatedTokens = TokenCounter.estimateTokens(allMessages);
+
+                // Commit the conversation and user message before the LLM call
+                session.commit();
+
+                // Initialize Claude API client
+                ClaudeAPIClient claudeClient = new ClaudeAPIClient(settings.getApiKey());
+
+                // Shared tool registry, rebuilt when settings change; held until the turn ends
+                ToolRegistry toolRegistry = GatewayHook.acquireToolRegistry();
+                if (toolRegistry == null) {
+                    throw new IllegalStateException("Tool registry not available");
+                }
+
+                // Process message with AI (may involve multiple tool calls)
+                try {
+                    assistantMessage = processWithAI(
+                        context,
+                        settings,
+                        claudeClient,
+                        toolRegistry,
+                        conversation,
+                        session,
+                        enableAutoCompaction,
+                        compactionTokenThreshold,
+                        compactToRecentMessages
+                    );
+                } finally {
+                    toolRegistry.release();
+                }
+
+                logger.debug("Turn completed using " + session.getCheckoutCount() + " connection checkout(s)");
+            } finally {
+                store.release();
+            }
 
             // Build response
             response.addProperty("success", true);
@@ -301,20 +381,43 @@ public final class ConversationEndpoints {
         ClaudeAPIClient claudeClient,
         ToolRegistry toolRegistry,
         Conversation conversation,
-        String dbConnection,
+        ConversationStore store,
+        boolean enableAutoCompaction,
+        int compactionTokenThreshold,
+        int compactToRecentMessages
+    ) throws Exception {
+        try (StoreSession session = store.openSession()) {
+            return processWithAI(context, settings, claudeClient, toolRegistry, conversation, session,
+                enableAutoCompaction, compactionTokenThreshold, compactToRecentMessages);
+        }
+    }
+
+    /**
+     * Process message with AI within the caller's store session.
+     * The session is released before each LLM call and the assistant message and its
+     * debug logs are written in a single commit at the end of the turn.
+     */
+    public static Message processWithAI(
+        GatewayContext context,
+        IAISettings settings,
+        ClaudeAPIClient claudeClient,
+        ToolRegistry toolRegistry,
+        Conversation conversation,
+        StoreSession session,
         boolean enableAutoCompaction,
         int compactionTokenThreshold,
         int compactToRecentMessages
     ) throws Exception {
 
         // Load conversation history
-        List<Message> allMessages = MessageDAO.listByConversation(
-            context.getDatasourceManager(),
-            dbConnection,
+        List<Message> allMessages = session.listMessages(
             conversation.getId(),
             settings.getMaxConversationHistoryMessages()
         );
 
+        // Return the connection to the pool while the LLM is working
+        session.release();
+
         // Check for most recent summary message to avoid reloading compacted messages
         Message latestSummary = null;
         int summaryIndex = -1;
@@ -354,22 +457,9 @@ public final class ConversationEndpoints {
         // Build system prompt
         String systemPrompt = buildSystemPrompt(settings, conversation, toolRegistry);
 
-        // Clean history for API: strip toolCalls/toolResults (they're for audit only)
-        // Claude doesn't need to see previous tool use in conversation history
-        List<Message> llmMessages = new ArrayList<>();
-        for (Message msg : history) {
-            Message cleanMsg = new Message();
-            cleanMsg.setId(msg.getId());
-            cleanMsg.setConversationId(msg.getConversationId());
-            cleanMsg.setRole(msg.getRole());
-            cleanMsg.setContent(msg.getContent());
-            cleanMsg.setTimestamp(msg.getTimestamp());
-            // Copy token counts for accurate compaction threshold calculation
-            cleanMsg.setInputTokens(msg.getInputTokens());
-            cleanMsg.setOutputTokens(msg.getOutputTokens());
-            // Don't copy toolCalls or toolResults - they shouldn't be in API requests
-            llmMessages.add(cleanMsg);
-        }
+        // History is loaded with the content-only projection, so toolCalls/toolResults (audit only)
+        // are never read here. Claude doesn't need to see previous tool use in conversation history.
+        List<Message> llmMessages = new ArrayList<>(history);
 
         // Calculate actual token count from stored API responses
         int systemPromptTokens = TokenCounter.estimateSystemPromptTokens(systemPrompt);
@@ -412,7 +502,8 @@ public final class ConversationEndpoints {
                 summaryMessage.setTimestamp(System.currentTimeMillis());
 
                 // Save summary to database so it persists across requests
-                MessageDAO.create(context.getDatasourceManager(), dbConnection, summaryMessage);
+                session.createMessage(summaryMessage);
+                session.release();
                 logger.debug("Saved summary message");
 
                 // Build compacted message list: [summary] + [recent messages]
@@ -447,21 +538,17 @@ public final class ConversationEndpoints {
             }
         }
 
-        // Build tool definitions
-        List<LLMRequest.ToolDefinition> toolDefinitions = new ArrayList<>();
-        for (Map<String, Object> toolDef : toolRegistry.getToolDefinitions()) {
-            LLMRequest.ToolDefinition td = new LLMRequest.ToolDefinition();
-            td.setName((String) toolDef.get("name"));
-            td.setDescription((String) toolDef.get("description"));
-            // Convert JsonObject to Map for input_schema
-            Object inputSchema = toolDef.get("input_schema");
-            if (inputSchema instanceof JsonObject) {
-                String json = gson.toJson(inputSchema);
-                td.setInputSchema(gson.fromJson(json, Map.class));
-            } else if (inputSchema instanceof Map) {
-                td.setInputSchema((Map<String, Object>) inputSchema);
-            }
-            toolDefinitions.add(td);
+        // Tool definitions are built once per registry. With routing, only the tools relevant
+        // to this turn are sent; request_tools adds others for the rest of the turn
+        boolean routeTools = settings.getEnableToolRouting() != null && settings.getEnableToolRouting();
+        ToolRouter toolRouter = toolRegistry.getRouter();
+        Set<String> routedTools = null;
+        List<LLMRequest.ToolDefinition> toolDefinitions;
+        if (routeTools) {
+            routedTools = toolRouter.select(conversation.getId(), recentUserText(llmMessages, 3), toolRegistry.getAllTools().keySet());
+            toolDefinitions = toolRegistry.getLLMToolDefinitions(routedTools);
+        } else {
+            toolDefinitions = toolRegistry.getLLMToolDefinitions();
         }
 
         // Tool execution loop
@@ -476,6 +563,18 @@ public final class ConversationEndpoints {
         // Collect debug logs during loop, save after message is created
         List<DebugLog> debugLogs = new ArrayList<>();
 
+        // One invocation context for the turn's tool calls; tool results share what is left of the context window
+        Integer turnTimeoutSeconds = settings.getTurnTimeoutSeconds();
+        long deadline = turnTimeoutSeconds != null && turnTimeoutSeconds > 0
+            ? System.currentTimeMillis() + turnTimeoutSeconds * 1000L : 0;
+        ToolInvocationContext toolContext = new ToolInvocationContext(
+            conversation.getId(),
+            conversation.getUserName(),
+            conversation.getProjectName(),
+            deadline,
+            Math.max(1, contextLimit - actualTotalTokens)
+        );
+
         int maxToolIterations = settings.getMaxToolIterations() != null ? settings.getMaxToolIterations() : 10;
         while (iteration < maxToolIterations) {
             iteration++;
@@ -529,15 +628,21 @@ public final class ConversationEndpoints {
                     JsonObject toolResult = toolRegistry.executeTool(
                         toolCall.getName(),
                         inputParams,
-                        conversation.getId(),
-                        conversation.getUserName(),
-                        conversation.getProjectName()
+                        toolContext
                     );
 
                     result.setContent(toolResult.toString());
                     result.setError(false);
                     logger.debug("Tool " + toolCall.getName() + " executed successfully");
 
+                    toolRouter.recordToolUse(conversation.getId(), toolCall.getName());
+                    if (routeTools && RequestToolsTool.NAME.equals(toolCall.getName()) && toolResult.has("enabled")) {
+                        for (JsonElement name : toolResult.getAsJsonArray("enabled")) {
+                            routedTools.add(name.getAsString());
+                        }
+                        toolDefinitions = toolRegistry.getLLMToolDefinitions(routedTools);
+                    }
+
                 } catch (Exception e) {
                     logger.error("Error executing tool " + toolCall.getName(), e);
                     result.setContent("Error: " + e.getMessage());
@@ -589,26 +694,23 @@ public final class ConversationEndpoints {
         assistantMessage.setContent(llmResponse.getContent());
         // Save toolCalls and toolResults for audit/display purposes
         // (Note: toolResults are ALSO saved to separate user messages for Claude API, but we attach
-        // them here so the HTTP response can include them for frontend display. They're stripped
-        // before being sent to the API anyway - see line 370)
+        // them here so the HTTP response can include them for frontend display. They never reach
+        // the API: processWithAI loads history through StoreSession.listMessages, which leaves them out)
         assistantMessage.setToolCalls(allToolCalls.isEmpty() ? null : allToolCalls);
         assistantMessage.setToolResults(allToolResults.isEmpty() ? null : allToolResults);
         assistantMessage.setInputTokens(llmResponse.getInputTokens());
         assistantMessage.setOutputTokens(llmResponse.getOutputTokens());
         assistantMessage.setTimestamp(System.currentTimeMillis());
 
-        MessageDAO.create(context.getDatasourceManager(), dbConnection, assistantMessage);
+        session.createMessage(assistantMessage);
 
-        // Now save debug logs (after message exists to satisfy foreign key constraint)
-        for (DebugLog debugLog : debugLogs) {
-            try {
-                DebugLogDAO.create(context.getDatasourceManager(), dbConnection, debugLog);
-            } catch (Exception e) {
-                logger.error("Failed to save debug log", e);
-                // Don't fail the conversation if debug logging fails
-            }
-        }
-        logger.debug("Saved " + debugLogs.size() + " debug log(s) for message " + assistantMessageId);
+        // Now save debug logs (after message exists to satisfy foreign key constraint).
+        // Best-effort: a failure is logged and doesn't fail the conversation
+        int saved = session.createDebugLogs(debugLogs);
+        logger.debug("Saved " + saved + " debug log(s) for message " + assistantMessageId);
+
+        // Assistant message and debug logs commit together
+        session.release();
 
         return assistantMessage;
     }
@@ -706,7 +808,7 @@ public final class ConversationEndpoints {
         }
 
         // Available Tools (always included)
-        prompt.append(sectionAvailableTools(toolRegistry)).append("\n\n");
+        prompt.append(sectionAvailableTools(settings, toolRegistry)).append("\n\n");
 
         // Response Style (always included)
         prompt.append(sectionResponseStyle());
@@ -776,7 +878,7 @@ public final class ConversationEndpoints {
     }
 
 
-    private static String sectionAvailableTools(ToolRegistry toolRegistry) {
+    private static String sectionAvailableTools(IAISettings settings, ToolRegistry toolRegistry) {
         StringBuilder section = new StringBuilder("## Available Tools\n");
         section.append("You have access to these tools:\n");
 
@@ -787,9 +889,31 @@ public final class ConversationEndpoints {
         section.append("\nUse tools to retrieve actual system data. When users ask about system information, ");
         section.append("always use tools to get current, accurate data rather than making assumptions.");
 
+        if (settings.getEnableToolRouting() != null && settings.getEnableToolRouting()) {
+            section.append("\n\nOnly the tools relevant to the user's message are attached to each request. ");
+            section.append("If you need a tool from this list that isn't attached, call request_tools with its name.");
+        }
+
         return section.toString();
     }
 
+    /**
+     * Text of the most recent user messages, newest first, for tool routing.
+     * Tool result messages are skipped.
+     */
+    private static String recentUserText(List<Message> messages, int count) {
+        StringBuilder text = new StringBuilder();
+        int found = 0;
+        for (int i = messages.size() - 1; i >= 0 && found < count; i--) {
+            Message msg = messages.get(i);
+            if ("user".equals(msg.getRole()) && msg.getContent() != null && !msg.getContent().isEmpty()) {
+                text.append(msg.getContent()).append('\n');
+                found++;
+            }
+        }
+        return text.toString();
+    }
+
     private static String sectionResponseStyle() {
         return "## Response Style\n" +
             "Be clear and technical. Show your work by displaying tool executions in your responses.\n\n" +
@@ -824,20 +948,15 @@ public final class ConversationEndpoints {
                 throw new IllegalArgumentException("Invalid conversation ID. Cannot load conversation with null or empty ID.");
             }
 
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
-            if (dbConnection == null || dbConnection.isEmpty()) {
-                throw new IllegalStateException("Database connection not configured");
-            }
+            ConversationStore store = requireStore();
 
             // Load conversation
-            Conversation conversation = ConversationDAO.findById(
-                context.getDatasourceManager(),
-                dbConnection,
+            Conversation conversation = store.findConversation(
                 conversationId
             );
 
@@ -846,9 +965,7 @@ public final class ConversationEndpoints {
             }
 
             // Load messages (use large limit to get all messages for export)
-            List<Message> messages = MessageDAO.listByConversation(
-                context.getDatasourceManager(),
-                dbConnection,
+            List<Message> messages = store.listMessages(
                 conversationId,
                 10000
             );
@@ -893,6 +1010,71 @@ public final class ConversationEndpoints {
         return response;
     }
 
+    /**
+     * Get the tool calls and results recorded for a single message.
+     * Tool payloads are not part of getConversation and are loaded on demand here.
+     */
+    private static JsonObject getMessageTools(RequestContext req, HttpServletResponse res, String messageId) {
+        JsonObject response = new JsonObject();
+        GatewayContext context = req.getGatewayContext();
+
+        try {
+            if (messageId == null || messageId.isEmpty() || messageId.equals("null") || messageId.equals("undefined")) {
+                throw new IllegalArgumentException("Invalid message ID");
+            }
+
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
+            if (settings == null) {
+                throw new IllegalStateException("IAI settings not found");
+            }
+
+            ConversationStore store = requireStore();
+
+            Message message = store.findToolsForMessage(
+                messageId
+            );
+
+            if (message == null) {
+                throw new IllegalArgumentException("Message not found: " + messageId);
+            }
+
+            response.addProperty("id", message.getId());
+
+            JsonArray toolCallsArray = new JsonArray();
+            if (message.getToolCalls() != null) {
+                for (ToolCall tc : message.getToolCalls()) {
+                    JsonObject tcObj = new JsonObject();
+                    tcObj.addProperty("id", tc.getId());
+                    tcObj.addProperty("name", tc.getName());
+                    tcObj.addProperty("input", tc.getInput().toString());
+                    toolCallsArray.add(tcObj);
+                }
+            }
+            response.add("toolCalls", toolCallsArray);
+
+            JsonArray toolResultsArray = new JsonArray();
+            if (message.getToolResults() != null) {
+                for (ToolResult tr : message.getToolResults()) {
+                    JsonObject trObj = new JsonObject();
+                    trObj.addProperty("toolCallId", tr.getToolCallId());
+                    trObj.addProperty("content", tr.getContent());
+                    trObj.addProperty("isError", tr.isError());
+                    toolResultsArray.add(trObj);
+                }
+            }
+            response.add("toolResults", toolResultsArray);
+            response.addProperty("success", true);
+
+        } catch (Exception e) {
+            logger.error("Error in getMessageTools endpoint", e);
+            response.addProperty("success", false);
+            response.addProperty("error", e.getMessage());
+            res.setStatus(500);
+        }
+
+        return response;
+    }
+
     /**
      * List conversations for a user and/or project.
      */
@@ -905,29 +1087,22 @@ public final class ConversationEndpoints {
             String userName = req.getRequest().getParameter("userName");
             String projectName = req.getRequest().getParameter("projectName");
 
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
-            if (dbConnection == null || dbConnection.isEmpty()) {
-                throw new IllegalStateException("Database connection not configured");
-            }
+            ConversationStore store = requireStore();
 
             // Load conversations based on filters (limit to most recent 100)
             List<Conversation> conversations;
             if (userName != null && !userName.isEmpty()) {
-                conversations = ConversationDAO.listByUser(
-                    context.getDatasourceManager(),
-                    dbConnection,
+                conversations = store.listConversationsByUser(
                     userName,
                     100
                 );
             } else if (projectName != null && !projectName.isEmpty()) {
-                conversations = ConversationDAO.listByProject(
-                    context.getDatasourceManager(),
-                    dbConnection,
+                conversations = store.listConversationsByProject(
                     projectName,
                     100
                 );
@@ -948,9 +1123,7 @@ public final class ConversationEndpoints {
                 convObj.addProperty("lastUpdatedAt", conv.getLastUpdatedAt());
 
                 // Get message count
-                int messageCount = MessageDAO.countByConversation(
-                    context.getDatasourceManager(),
-                    dbConnection,
+                int messageCount = store.countMessages(
                     conv.getId()
                 );
                 convObj.addProperty("messageCount", messageCount);
@@ -980,24 +1153,20 @@ public final class ConversationEndpoints {
         GatewayContext context = req.getGatewayContext();
 
         try {
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
-            if (dbConnection == null || dbConnection.isEmpty()) {
-                throw new IllegalStateException("Database connection not configured");
-            }
+            ConversationStore store = requireStore();
 
             // Delete conversation (messages will cascade due to FK constraint)
-            boolean deleted = ConversationDAO.delete(
-                context.getDatasourceManager(),
-                dbConnection,
+            boolean deleted = store.deleteConversation(
                 conversationId
             );
 
             if (deleted) {
+                invalidateToolResults(conversationId);
                 response.addProperty("success", true);
                 response.addProperty("deletedId", conversationId);
                 logger.info("Deleted conversation: " + conversationId);
@@ -1029,20 +1198,15 @@ public final class ConversationEndpoints {
                 format = "json";
             }
 
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
-            if (dbConnection == null || dbConnection.isEmpty()) {
-                throw new IllegalStateException("Database connection not configured");
-            }
+            ConversationStore store = requireStore();
 
             // Load conversation and messages
-            Conversation conversation = ConversationDAO.findById(
-                context.getDatasourceManager(),
-                dbConnection,
+            Conversation conversation = store.findConversation(
                 conversationId
             );
 
@@ -1050,9 +1214,7 @@ public final class ConversationEndpoints {
                 throw new IllegalArgumentException("Conversation not found: " + conversationId);
             }
 
-            List<Message> messages = MessageDAO.listByConversation(
-                context.getDatasourceManager(),
-                dbConnection,
+            List<Message> messages = store.listMessages(
                 conversationId,
                 10000
             );
@@ -1166,12 +1328,12 @@ public final class ConversationEndpoints {
             String resultStorage = requestBody.get("resultStorage").getAsString();
             String conversationId = requestBody.has("conversationId") ? requestBody.get("conversationId").getAsString() : null;
 
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
+            ConversationStore store = requireStore();
 
             // Calculate next run time
             long nextRunAt = calculateNextRunTime(cronExpression);
@@ -1191,9 +1353,10 @@ public final class ConversationEndpoints {
             task.setCreatedAt(System.currentTimeMillis());
             task.setEnabled(true);
 
-            boolean created = TaskDAO.createTask(context.getDatasourceManager(), dbConnection, task);
+            boolean created = store.createTask(task);
 
             if (created) {
+                invalidateToolResults(null);
                 response.addProperty("success", true);
                 response.addProperty("taskId", task.getId());
                 response.addProperty("nextRunAt", nextRunAt);
@@ -1224,16 +1387,14 @@ public final class ConversationEndpoints {
             String userName = req.getParameter("userName");
             String projectName = req.getParameter("projectName");
 
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
+            ConversationStore store = requireStore();
 
-            List<ScheduledTask> tasks = TaskDAO.getTasksByUser(
-                context.getDatasourceManager(),
-                dbConnection,
+            List<ScheduledTask> tasks = store.getTasksByUser(
                 userName,
                 projectName
             );
@@ -1279,21 +1440,20 @@ public final class ConversationEndpoints {
         GatewayContext context = req.getGatewayContext();
 
         try {
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
+            ConversationStore store = requireStore();
 
-            boolean updated = TaskDAO.updateTaskEnabled(
-                context.getDatasourceManager(),
-                dbConnection,
+            boolean updated = store.updateTaskEnabled(
                 taskId,
                 false
             );
 
             if (updated) {
+                invalidateToolResults(null);
                 response.addProperty("success", true);
                 response.addProperty("message", "Task paused");
             } else {
@@ -1320,21 +1480,20 @@ public final class ConversationEndpoints {
         GatewayContext context = req.getGatewayContext();
 
         try {
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
+            ConversationStore store = requireStore();
 
-            boolean updated = TaskDAO.updateTaskEnabled(
-                context.getDatasourceManager(),
-                dbConnection,
+            boolean updated = store.updateTaskEnabled(
                 taskId,
                 true
             );
 
             if (updated) {
+                invalidateToolResults(null);
                 response.addProperty("success", true);
                 response.addProperty("message", "Task resumed");
             } else {
@@ -1361,20 +1520,19 @@ public final class ConversationEndpoints {
         GatewayContext context = req.getGatewayContext();
 
         try {
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
+            ConversationStore store = requireStore();
 
-            boolean deleted = TaskDAO.deleteTask(
-                context.getDatasourceManager(),
-                dbConnection,
+            boolean deleted = store.deleteTask(
                 taskId
             );
 
             if (deleted) {
+                invalidateToolResults(null);
                 response.addProperty("success", true);
                 response.addProperty("message", "Task deleted");
             } else {
@@ -1404,16 +1562,14 @@ public final class ConversationEndpoints {
             String limitStr = req.getParameter("limit");
             int limit = limitStr != null ? Integer.parseInt(limitStr) : 20;
 
-            IAISettings settings = context.getLocalPersistenceInterface().find(IAISettings.META, 0L);
+            IAISettings settings = GatewayHook.getSettingsSnapshot();
             if (settings == null) {
                 throw new IllegalStateException("IAI settings not found");
             }
 
-            String dbConnection = settings.getDatabaseConnection();
+            ConversationStore store = requireStore();
 
-            List<TaskExecution> executions = TaskDAO.getTaskExecutions(
-                context.getDatasourceManager(),
-                dbConnection,
+            List<TaskExecution> executions = store.getTaskExecutions(
                 taskId,
                 limit
             );
@@ -1449,6 +1605,70 @@ public final class ConversationEndpoints {
         return response;
     }
 
+    /**
+     * Get tool execution metrics since the gateway started, slowest tools first.
+     */
+    private static JsonObject getToolMetrics(RequestContext req, HttpServletResponse res) {
+        JsonObject response = new JsonObject();
+
+        try {
+            response.addProperty("success", true);
+            response.add("metrics", GatewayHook.getToolMetrics().toJson());
+
+        } catch (Exception e) {
+            logger.error("Error getting tool metrics", e);
+            response.addProperty("success", false);
+            response.addProperty("error", e.getMessage());
+            res.setStatus(500);
+        }
+
+        return response;
+    }
+
+    /**
+     * Drop cached query results. The body may name a "database", and a "table" within it, to
+     * drop only results that read them; with neither, every cached result is dropped.
+     */
+    private static JsonObject invalidateQueryCache(RequestContext req, HttpServletResponse res) {
+        JsonObject response = new JsonObject();
+
+        try {
+            ToolRegistry toolRegistry = GatewayHook.getToolRegistry();
+            QueryResultCache queryCache = toolRegistry != null ? toolRegistry.getQueryCache() : null;
+            if (queryCache == null) {
+                throw new IllegalStateException("Query cache not available. Enable database tools.");
+            }
+
+            String requestBodyString = req.readBody();
+            JsonObject requestBody = requestBodyString == null || requestBodyString.trim().isEmpty()
+                ? new JsonObject() : new JsonParser().parse(requestBodyString).getAsJsonObject();
+            String database = requestBody.has("database") ? requestBody.get("database").getAsString() : null;
+            String table = requestBody.has("table") ? requestBody.get("table").getAsString() : null;
+
+            if (table != null && database == null) {
+                throw new IllegalArgumentException("A table can only be invalidated together with its database");
+            }
+
+            if (table != null) {
+                response.addProperty("invalidated", queryCache.invalidateTable(database, table));
+            } else if (database != null) {
+                response.addProperty("invalidated", queryCache.invalidateDatasource(database));
+            } else {
+                queryCache.invalidateAll();
+            }
+            response.addProperty("success", true);
+            response.add("cache", queryCache.toJson());
+
+        } catch (Exception e) {
+            logger.error("Error invalidating query cache", e);
+            response.addProperty("success", false);
+            response.addProperty("error", e.getMessage());
+            res.setStatus(500);
+        }
+
+        return response;
+    }
+
     /**
      * Calculate next run time based on cron expression.
      * Simple implementation for common patterns.
@@ -0,0 +1,188 @@
+package com.iai.ignition.gateway.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Values (microseconds) below 64 get a bucket each; above that every power of two is split
+ * into 32 equal buckets, so any recorded value is known to within about 3%. 1024 buckets
+ * cover up to 2^36 us (about 19 hours); larger values are counted in the last bucket.
+ *
+ * Readers work on {@link #snapshot()} copies, which can be subtracted to get the counts for
+ * an interval and encoded compactly for storage.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_BUCKETS = 2 * SUB_BUCKETS;
+
+    /**
+     * Number of buckets.
+     */
+    public static final int BUCKETS = 1024;
+
+    /**
+     * Largest value kept distinct; larger values are clamped to it.
+     */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record one value.
+     *
+     * @param value Value in microseconds; negative values are recorded as 0
+     */
+    public void record(long value) {
+        counts.incrementAndGet(indexOf(value));
+    }
+
+    /**
+     * Copy the current bucket counts. Concurrent recording may or may not be included.
+     */
+    public long[] snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * Bucket holding a value.
+     */
+    static int indexOf(long value) {
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+        if (v < LINEAR_BUCKETS) {
+            return (int) v;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(v)) - SUB_BUCKET_BITS;
+        int subBucket = (int) (v >>> shift);
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (subBucket - SUB_BUCKETS);
+    }
+
+    /**
+     * Smallest value counted in a bucket.
+     */
+    static long lowestValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = SUB_BUCKETS + (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return subBucket << shift;
+    }
+
+    /**
+     * Largest value counted in a bucket.
+     */
+    static long highestValue(int index) {
+        if (index >= BUCKETS - 1) {
+            return MAX_VALUE;
+        }
+        return lowestValue(index + 1) - 1;
+    }
+
+    /**
+     * Total number of values in a snapshot.
+     */
+    public static long count(long[] counts) {
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        return total;
+    }
+
+    /**
+     * Value at a percentile of a snapshot, reported as the top of its bucket.
+     *
+     * @param counts Snapshot bucket counts
+     * @param percentile Percentile, 0 to 100
+     * @return The value, or 0 if the snapshot is empty
+     */
+    public static long percentile(long[] counts, double percentile) {
+        long total = count(counts);
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * Largest value in a snapshot, reported as the top of its bucket.
+     *
+     * @return The value, or 0 if the snapshot is empty
+     */
+    public static long max(long[] counts) {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Counts recorded between two snapshots of the same histogram.
+     */
+    public static long[] subtract(long[] later, long[] earlier) {
+        long[] delta = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            delta[i] = later[i] - (earlier != null ? earlier[i] : 0);
+        }
+        return delta;
+    }
+
+    /**
+     * Encode the non-empty buckets of a snapshot as "index:count" pairs separated by commas.
+     */
+    public static String encode(long[] counts) {
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                if (encoded.length() > 0) {
+                    encoded.append(',');
+                }
+                encoded.append(i).append(':').append(counts[i]);
+            }
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Decode a snapshot written by {@link #encode(long[])}.
+     *
+     * @throws IllegalArgumentException if the text is malformed
+     */
+    public static long[] decode(String encoded) {
+        long[] counts = new long[BUCKETS];
+        if (encoded == null || encoded.isEmpty()) {
+            return counts;
+        }
+
+        for (String pair : encoded.split(",")) {
+            int colon = pair.indexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Malformed histogram bucket: " + pair);
+            }
+            int index = Integer.parseInt(pair.substring(0, colon));
+            if (index < 0 || index >= BUCKETS) {
+                throw new IllegalArgumentException("Histogram bucket out of range: " + index);
+            }
+            counts[index] += Long.parseLong(pair.substring(colon + 1));
+        }
+        return counts;
+    }
+}
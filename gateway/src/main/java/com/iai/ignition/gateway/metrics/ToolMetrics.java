@@ -0,0 +1,327 @@
+package com.iai.ignition.gateway.metrics;
+
+import com.iai.ignition.gateway.GatewayHook;
+import com.iai.ignition.gateway.store.CachingConversationStore;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-tool execution metrics: invocations, errors, timeouts, result size and a latency
+ * histogram, for each tool and for each target within a tool (a table, a system function).
+ *
+ * One instance lives for the whole gateway run (see {@link GatewayHook#getToolMetrics()}), so
+ * totals survive tool registry rebuilds. Recording is lock-free. Periodically the counts
+ * since the previous rollup are written to the conversation store as
+ * {@link ToolMetricsRollup}s; stores that don't keep metrics drop them.
+ */
+public class ToolMetrics {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.metrics.ToolMetrics");
+
+    /**
+     * Cap on distinct targets across all tools; further targets are only counted in their tool's totals.
+     */
+    private static final int MAX_TARGETS = 500;
+
+    /**
+     * How a tool call ended.
+     */
+    public enum Outcome {
+        SUCCESS,
+        ERROR,
+        TIMEOUT
+    }
+
+    private final Map<String, ToolEntry> tools = new ConcurrentHashMap<>();
+    private final AtomicInteger targetCount = new AtomicInteger();
+    private final long startedAt = System.currentTimeMillis();
+    private long lastRollupAt = startedAt;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Record one tool call.
+     *
+     * @param toolName The tool
+     * @param target The target within the tool, or null
+     * @param durationNanos Wall time of the call
+     * @param outcome How the call ended
+     * @param resultBytes Size of the result (0 if it failed)
+     * @param resultTokens Estimated tokens of the result (0 if it failed)
+     */
+    public void record(String toolName, String target, long durationNanos, Outcome outcome, long resultBytes, long resultTokens) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+        ToolEntry entry = tools.computeIfAbsent(toolName, name -> new ToolEntry());
+        entry.total.record(micros, outcome, resultBytes, resultTokens);
+
+        if (target == null || target.isEmpty()) {
+            return;
+        }
+
+        Stats targetStats = entry.targets.get(target);
+        if (targetStats == null) {
+            if (targetCount.get() >= MAX_TARGETS) {
+                return;
+            }
+            targetStats = entry.targets.computeIfAbsent(target, t -> {
+                targetCount.incrementAndGet();
+                return new Stats();
+            });
+        }
+        targetStats.record(micros, outcome, resultBytes, resultTokens);
+    }
+
+    /**
+     * Totals since the gateway started, slowest tools (by total time) first.
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("since", startedAt);
+        synchronized (this) {
+            json.addProperty("lastRollupAt", lastRollupAt);
+        }
+
+        List<Map.Entry<String, Snapshot>> toolSnapshots = new ArrayList<>();
+        Map<String, List<Map.Entry<String, Snapshot>>> targetSnapshots = new HashMap<>();
+        for (Map.Entry<String, ToolEntry> tool : tools.entrySet()) {
+            toolSnapshots.add(Map.entry(tool.getKey(), tool.getValue().total.snapshot()));
+
+            List<Map.Entry<String, Snapshot>> targets = new ArrayList<>();
+            for (Map.Entry<String, Stats> target : tool.getValue().targets.entrySet()) {
+                targets.add(Map.entry(target.getKey(), target.getValue().snapshot()));
+            }
+            targets.sort(Comparator.comparingLong((Map.Entry<String, Snapshot> e) -> e.getValue().totalMicros).reversed());
+            targetSnapshots.put(tool.getKey(), targets);
+        }
+        toolSnapshots.sort(Comparator.comparingLong((Map.Entry<String, Snapshot> e) -> e.getValue().totalMicros).reversed());
+
+        JsonArray toolsArray = new JsonArray();
+        for (Map.Entry<String, Snapshot> tool : toolSnapshots) {
+            JsonObject toolJson = new JsonObject();
+            toolJson.addProperty("name", tool.getKey());
+            tool.getValue().writeTo(toolJson);
+
+            JsonArray targetsArray = new JsonArray();
+            for (Map.Entry<String, Snapshot> target : targetSnapshots.get(tool.getKey())) {
+                JsonObject targetJson = new JsonObject();
+                targetJson.addProperty("target", target.getKey());
+                target.getValue().writeTo(targetJson);
+                targetsArray.add(targetJson);
+            }
+            if (targetsArray.size() > 0) {
+                toolJson.add("targets", targetsArray);
+            }
+            toolsArray.add(toolJson);
+        }
+
+        json.add("tools", toolsArray);
+        return json;
+    }
+
+    /**
+     * Collect the counts recorded since the previous rollup. Tools and targets with no calls
+     * in the period are left out.
+     *
+     * @param now End of the period (epoch millis)
+     */
+    public synchronized List<ToolMetricsRollup> rollup(long now) {
+        List<ToolMetricsRollup> rollups = new ArrayList<>();
+        for (Map.Entry<String, ToolEntry> tool : tools.entrySet()) {
+            addRollup(rollups, tool.getKey(), null, tool.getValue().total, now);
+            for (Map.Entry<String, Stats> target : tool.getValue().targets.entrySet()) {
+                addRollup(rollups, tool.getKey(), target.getKey(), target.getValue(), now);
+            }
+        }
+        lastRollupAt = now;
+        return rollups;
+    }
+
+    private void addRollup(List<ToolMetricsRollup> rollups, String toolName, String target, Stats stats, long now) {
+        Snapshot current = stats.snapshot();
+        Snapshot period = current.minus(stats.lastRollup);
+        stats.lastRollup = current;
+        if (period.invocations <= 0) {
+            return;
+        }
+
+        ToolMetricsRollup rollup = new ToolMetricsRollup();
+        rollup.setId(UUID.randomUUID().toString());
+        rollup.setToolName(toolName);
+        rollup.setTarget(target);
+        rollup.setPeriodStart(lastRollupAt);
+        rollup.setPeriodEnd(now);
+        rollup.setInvocations(period.invocations);
+        rollup.setErrors(period.errors);
+        rollup.setTimeouts(period.timeouts);
+        rollup.setResultBytes(period.resultBytes);
+        rollup.setResultTokens(period.resultTokens);
+        rollup.setTotalMicros(period.totalMicros);
+        rollup.setMaxMicros(LatencyHistogram.max(period.histogram));
+        rollup.setP50Micros(LatencyHistogram.percentile(period.histogram, 50));
+        rollup.setP90Micros(LatencyHistogram.percentile(period.histogram, 90));
+        rollup.setP99Micros(LatencyHistogram.percentile(period.histogram, 99));
+        rollup.setHistogram(LatencyHistogram.encode(period.histogram));
+        rollups.add(rollup);
+    }
+
+    /**
+     * Start (or restart with a new interval) periodic rollups to the conversation store.
+     *
+     * @param intervalMinutes Minutes between rollups; 0 or less keeps metrics in memory only
+     */
+    public synchronized void start(int intervalMinutes) {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (intervalMinutes <= 0) {
+            logger.info("Tool metrics rollups disabled, metrics are kept in memory only");
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "IAI-ToolMetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushSafely, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        logger.debug("Tool metrics rollups every " + intervalMinutes + " minutes");
+    }
+
+    /**
+     * Stop periodic rollups, writing the current period first. Call before the store shuts down.
+     */
+    public void stop() {
+        boolean wasRunning;
+        synchronized (this) {
+            wasRunning = scheduler != null;
+            if (wasRunning) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+        if (wasRunning) {
+            flushSafely();
+        }
+    }
+
+    /**
+     * Write a rollup to the conversation store, catching all errors.
+     */
+    private void flushSafely() {
+        try {
+            List<ToolMetricsRollup> rollups = rollup(System.currentTimeMillis());
+            if (rollups.isEmpty()) {
+                return;
+            }
+
+            CachingConversationStore store = GatewayHook.acquireConversationStore();
+            try {
+                if (store == null || !store.recordToolMetrics(rollups)) {
+                    logger.debug("Tool metrics rollup of " + rollups.size() + " row(s) not stored");
+                }
+            } finally {
+                if (store != null) {
+                    store.release();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Tool metrics rollup failed", e);
+        }
+    }
+
+    private static final class ToolEntry {
+        private final Stats total = new Stats();
+        private final Map<String, Stats> targets = new ConcurrentHashMap<>();
+    }
+
+    private static final class Stats {
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder resultBytes = new LongAdder();
+        private final LongAdder resultTokens = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        // Guarded by the owning ToolMetrics
+        private Snapshot lastRollup;
+
+        private void record(long micros, Outcome outcome, long bytes, long tokens) {
+            invocations.increment();
+            if (outcome == Outcome.ERROR) {
+                errors.increment();
+            } else if (outcome == Outcome.TIMEOUT) {
+                timeouts.increment();
+            }
+            resultBytes.add(bytes);
+            resultTokens.add(tokens);
+            totalMicros.add(micros);
+            latency.record(micros);
+        }
+
+        private Snapshot snapshot() {
+            return new Snapshot(invocations.sum(), errors.sum(), timeouts.sum(), resultBytes.sum(),
+                resultTokens.sum(), totalMicros.sum(), latency.snapshot());
+        }
+    }
+
+    private static final class Snapshot {
+        private final long invocations;
+        private final long errors;
+        private final long timeouts;
+        private final long resultBytes;
+        private final long resultTokens;
+        private final long totalMicros;
+        private final long[] histogram;
+
+        private Snapshot(long invocations, long errors, long timeouts, long resultBytes, long resultTokens,
+                         long totalMicros, long[] histogram) {
+            this.invocations = invocations;
+            this.errors = errors;
+            this.timeouts = timeouts;
+            this.resultBytes = resultBytes;
+            this.resultTokens = resultTokens;
+            this.totalMicros = totalMicros;
+            this.histogram = histogram;
+        }
+
+        private Snapshot minus(Snapshot earlier) {
+            if (earlier == null) {
+                return this;
+            }
+            return new Snapshot(invocations - earlier.invocations, errors - earlier.errors,
+                timeouts - earlier.timeouts, resultBytes - earlier.resultBytes,
+                resultTokens - earlier.resultTokens, totalMicros - earlier.totalMicros,
+                LatencyHistogram.subtract(histogram, earlier.histogram));
+        }
+
+        private void writeTo(JsonObject json) {
+            json.addProperty("invocations", invocations);
+            json.addProperty("errors", errors);
+            json.addProperty("timeouts", timeouts);
+            json.addProperty("resultBytes", resultBytes);
+            json.addProperty("resultTokens", resultTokens);
+            json.addProperty("avgResultBytes", invocations > 0 ? resultBytes / invocations : 0);
+            json.addProperty("avgResultTokens", invocations > 0 ? resultTokens / invocations : 0);
+            json.addProperty("totalMs", totalMicros / 1000.0);
+            json.addProperty("meanMs", invocations > 0 ? totalMicros / 1000.0 / invocations : 0);
+            json.addProperty("p50Ms", LatencyHistogram.percentile(histogram, 50) / 1000.0);
+            json.addProperty("p90Ms", LatencyHistogram.percentile(histogram, 90) / 1000.0);
+            json.addProperty("p99Ms", LatencyHistogram.percentile(histogram, 99) / 1000.0);
+            json.addProperty("maxMs", LatencyHistogram.max(histogram) / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.iai.ignition.gateway.metrics;
+
+/**
+ * Tool execution totals for one tool (or one target of a tool) over one rollup period.
+ * Stored in iai_tool_metrics. Latencies are in microseconds; the histogram is the period's
+ * {@link LatencyHistogram} counts in {@link LatencyHistogram#encode(long[])} form, so
+ * periods can be merged for percentiles over longer ranges.
+ */
+public class ToolMetricsRollup {
+
+    private String id;
+    private String toolName;
+    private String target;
+    private long periodStart;
+    private long periodEnd;
+    private long invocations;
+    private long errors;
+    private long timeouts;
+    private long resultBytes;
+    private long resultTokens;
+    private long totalMicros;
+    private long maxMicros;
+    private long p50Micros;
+    private long p90Micros;
+    private long p99Micros;
+    private String histogram;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getToolName() {
+        return toolName;
+    }
+
+    public void setToolName(String toolName) {
+        this.toolName = toolName;
+    }
+
+    /**
+     * @return The target within the tool (e.g. a table), or null for the tool as a whole
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public long getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(long periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public long getPeriodEnd() {
+        return periodEnd;
+    }
+
+    public void setPeriodEnd(long periodEnd) {
+        this.periodEnd = periodEnd;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public void setInvocations(long invocations) {
+        this.invocations = invocations;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public void setErrors(long errors) {
+        this.errors = errors;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(long timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public long getResultBytes() {
+        return resultBytes;
+    }
+
+    public void setResultBytes(long resultBytes) {
+        this.resultBytes = resultBytes;
+    }
+
+    public long getResultTokens() {
+        return resultTokens;
+    }
+
+    public void setResultTokens(long resultTokens) {
+        this.resultTokens = resultTokens;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public void setTotalMicros(long totalMicros) {
+        this.totalMicros = totalMicros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public void setMaxMicros(long maxMicros) {
+        this.maxMicros = maxMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public void setP50Micros(long p50Micros) {
+        this.p50Micros = p50Micros;
+    }
+
+    public long getP90Micros() {
+        return p90Micros;
+    }
+
+    public void setP90Micros(long p90Micros) {
+        this.p90Micros = p90Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public void setP99Micros(long p99Micros) {
+        this.p99Micros = p99Micros;
+    }
+
+    public String getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(String histogram) {
+        this.histogram = histogram;
+    }
+}
@@ -23,21 +23,38 @@ public class IAISettings extends PersistentRecord {
     public static final StringField SystemPrompt = new StringField(META, "SystemPrompt", SFieldFlags.SDESCRIPTIVE);
 
     // Database Configuration
-    public static final StringField DatabaseConnection = new StringField(META, "DatabaseConnection", SFieldFlags.SMANDATORY);
+    public static final StringField DatabaseConnection = new StringField(META, "DatabaseConnection");
+    public static final StringField StorageBackend = new StringField(META, "StorageBackend").setDefault("AUTO");
     public static final BooleanField EnableDatabaseTools = new BooleanField(META, "EnableDatabaseTools").setDefault(true);
 
     // Tool Limits
     public static final IntField MaxToolResultSizeKB = new IntField(META, "MaxToolResultSizeKB").setDefault(100);
+    public static final IntField SchemaCacheTtlMinutes = new IntField(META, "SchemaCacheTtlMinutes").setDefault(30);
+    public static final IntField SchemaCacheRefreshMinutes = new IntField(META, "SchemaCacheRefreshMinutes").setDefault(10);
+    public static final IntField QueryCacheTtlSeconds = new IntField(META, "QueryCacheTtlSeconds").setDefault(0);
+    public static final StringField QueryCacheTtlOverrides = new StringField(META, "QueryCacheTtlOverrides");
+    public static final IntField QueryCacheMaxMB = new IntField(META, "QueryCacheMaxMB").setDefault(32);
+    public static final IntField FanOutConcurrency = new IntField(META, "FanOutConcurrency").setDefault(4);
+    public static final IntField FanOutMaxDatabases = new IntField(META, "FanOutMaxDatabases").setDefault(20);
     public static final IntField MaxTagHistoryRecords = new IntField(META, "MaxTagHistoryRecords").setDefault(1000);
     public static final IntField MaxAlarmHistoryRecords = new IntField(META, "MaxAlarmHistoryRecords").setDefault(1000);
     public static final IntField QueryTimeoutSeconds = new IntField(META, "QueryTimeoutSeconds").setDefault(30);
+    public static final IntField ResultPageRows = new IntField(META, "ResultPageRows").setDefault(100);
+    public static final IntField MaxCursorRows = new IntField(META, "MaxCursorRows").setDefault(10000);
+    public static final IntField MaxResultBufferKB = new IntField(META, "MaxResultBufferKB").setDefault(8192);
+    public static final StringField QueryCostGuardMode = new StringField(META, "QueryCostGuardMode").setDefault("LIMIT");
+    public static final IntField QueryCostMaxRows = new IntField(META, "QueryCostMaxRows").setDefault(1000000);
+    public static final IntField QueryCostMaxCost = new IntField(META, "QueryCostMaxCost").setDefault(0);
 
     // Conversation Settings
     public static final IntField MaxConversationHistoryMessages = new IntField(META, "MaxConversationHistoryMessages").setDefault(50);
     public static final IntField MaxToolIterations = new IntField(META, "MaxToolIterations").setDefault(10);
+    public static final IntField TurnTimeoutSeconds = new IntField(META, "TurnTimeoutSeconds").setDefault(300);
+    public static final BooleanField EnableToolRouting = new BooleanField(META, "EnableToolRouting").setDefault(true);
 
     // Gateway Detection
     public static final StringField GatewayDataPath = new StringField(META, "GatewayDataPath");
+    public static final IntField ToolMetricsRollupMinutes = new IntField(META, "ToolMetricsRollupMinutes").setDefault(5);
 
     // System Function Execution Settings
     public static final BooleanField AllowSystemFunctionExecution = new BooleanField(META, "AllowSystemFunctionExecution").setDefault(false);
@@ -45,19 +62,41 @@ public class IAISettings extends PersistentRecord {
     public static final IntField SystemFunctionTimeoutSeconds = new IntField(META, "SystemFunctionTimeoutSeconds").setDefault(30);
     public static final IntField MaxSystemFunctionResultSizeKB = new IntField(META, "MaxSystemFunctionResultSizeKB").setDefault(100);
 
+    // Retention Settings
+    public static final BooleanField RetentionEnabled = new BooleanField(META, "RetentionEnabled").setDefault(false);
+    public static final IntField RetentionIntervalMinutes = new IntField(META, "RetentionIntervalMinutes").setDefault(60);
+    public static final IntField RetentionBatchSize = new IntField(META, "RetentionBatchSize").setDefault(100);
+    public static final BooleanField ArchiveExpiredRows = new BooleanField(META, "ArchiveExpiredRows").setDefault(false);
+    public static final IntField ConversationRetentionDays = new IntField(META, "ConversationRetentionDays").setDefault(90);
+    public static final IntField MaxConversations = new IntField(META, "MaxConversations").setDefault(0);
+    public static final IntField MaxMessageStorageMB = new IntField(META, "MaxMessageStorageMB").setDefault(0);
+    public static final IntField DebugLogRetentionDays = new IntField(META, "DebugLogRetentionDays").setDefault(14);
+    public static final IntField MaxDebugLogEntries = new IntField(META, "MaxDebugLogEntries").setDefault(0);
+    public static final IntField MaxDebugLogStorageMB = new IntField(META, "MaxDebugLogStorageMB").setDefault(0);
+    public static final IntField TaskExecutionRetentionDays = new IntField(META, "TaskExecutionRetentionDays").setDefault(90);
+    public static final IntField TaskRunsToKeep = new IntField(META, "TaskRunsToKeep").setDefault(100);
+    public static final IntField ToolMetricsRetentionDays = new IntField(META, "ToolMetricsRetentionDays").setDefault(30);
+
     // Categories for settings page organization
     static final Category ClaudeConfig = new Category("IAISettings.Category.Claude", 1000)
         .include(ApiKey, ModelName, SystemPrompt);
     static final Category DatabaseConfig = new Category("IAISettings.Category.Database", 1001)
-        .include(DatabaseConnection, EnableDatabaseTools);
+        .include(DatabaseConnection, StorageBackend, EnableDatabaseTools, SchemaCacheTtlMinutes, SchemaCacheRefreshMinutes,
+            QueryCacheTtlSeconds, QueryCacheTtlOverrides, QueryCacheMaxMB, FanOutConcurrency, FanOutMaxDatabases);
     static final Category ToolLimits = new Category("IAISettings.Category.ToolLimits", 1002)
-        .include(MaxToolResultSizeKB, MaxTagHistoryRecords, MaxAlarmHistoryRecords, QueryTimeoutSeconds);
+        .include(MaxToolResultSizeKB, MaxTagHistoryRecords, MaxAlarmHistoryRecords, QueryTimeoutSeconds,
+            ResultPageRows, MaxCursorRows, MaxResultBufferKB, QueryCostGuardMode, QueryCostMaxRows, QueryCostMaxCost);
     static final Category ConversationSettings = new Category("IAISettings.Category.Conversation", 1003)
-        .include(MaxConversationHistoryMessages, MaxToolIterations);
+        .include(MaxConversationHistoryMessages, MaxToolIterations, TurnTimeoutSeconds, EnableToolRouting);
     static final Category GatewaySettings = new Category("IAISettings.Category.Gateway", 1004)
-        .include(GatewayDataPath);
+        .include(GatewayDataPath, ToolMetricsRollupMinutes);
     static final Category SystemFunctionSettings = new Category("IAISettings.Category.SystemFunctions", 1005)
         .include(AllowSystemFunctionExecution, SystemFunctionMode, SystemFunctionTimeoutSeconds, MaxSystemFunctionResultSizeKB);
+    static final Category RetentionSettings = new Category("IAISettings.Category.Retention", 1006)
+        .include(RetentionEnabled, RetentionIntervalMinutes, RetentionBatchSize, ArchiveExpiredRows,
+            ConversationRetentionDays, MaxConversations, MaxMessageStorageMB,
+            DebugLogRetentionDays, MaxDebugLogEntries, MaxDebugLogStorageMB,
+            TaskExecutionRetentionDays, TaskRunsToKeep, ToolMetricsRetentionDays);
 
     @Override
     public RecordMeta<?> getMeta() {
@@ -85,6 +124,10 @@ public class IAISettings extends PersistentRecord {
         return getString(DatabaseConnection);
     }
 
+    public String getStorageBackend() {
+        return getString(StorageBackend);
+    }
+
     public Boolean getEnableDatabaseTools() {
         return getBoolean(EnableDatabaseTools);
     }
@@ -93,6 +136,34 @@ public class IAISettings extends PersistentRecord {
         return getInt(MaxToolResultSizeKB);
     }
 
+    public Integer getSchemaCacheTtlMinutes() {
+        return getInt(SchemaCacheTtlMinutes);
+    }
+
+    public Integer getSchemaCacheRefreshMinutes() {
+        return getInt(SchemaCacheRefreshMinutes);
+    }
+
+    public Integer getQueryCacheTtlSeconds() {
+        return getInt(QueryCacheTtlSeconds);
+    }
+
+    public String getQueryCacheTtlOverrides() {
+        return getString(QueryCacheTtlOverrides);
+    }
+
+    public Integer getQueryCacheMaxMB() {
+        return getInt(QueryCacheMaxMB);
+    }
+
+    public Integer getFanOutConcurrency() {
+        return getInt(FanOutConcurrency);
+    }
+
+    public Integer getFanOutMaxDatabases() {
+        return getInt(FanOutMaxDatabases);
+    }
+
     public Integer getMaxTagHistoryRecords() {
         return getInt(MaxTagHistoryRecords);
     }
@@ -105,6 +176,30 @@ public class IAISettings extends PersistentRecord {
         return getInt(QueryTimeoutSeconds);
     }
 
+    public Integer getResultPageRows() {
+        return getInt(ResultPageRows);
+    }
+
+    public Integer getMaxCursorRows() {
+        return getInt(MaxCursorRows);
+    }
+
+    public Integer getMaxResultBufferKB() {
+        return getInt(MaxResultBufferKB);
+    }
+
+    public String getQueryCostGuardMode() {
+        return getString(QueryCostGuardMode);
+    }
+
+    public Integer getQueryCostMaxRows() {
+        return getInt(QueryCostMaxRows);
+    }
+
+    public Integer getQueryCostMaxCost() {
+        return getInt(QueryCostMaxCost);
+    }
+
     public Integer getMaxConversationHistoryMessages() {
         return getInt(MaxConversationHistoryMessages);
     }
@@ -113,10 +208,22 @@ public class IAISettings extends PersistentRecord {
         return getInt(MaxToolIterations);
     }
 
+    public Integer getTurnTimeoutSeconds() {
+        return getInt(TurnTimeoutSeconds);
+    }
+
+    public Boolean getEnableToolRouting() {
+        return getBoolean(EnableToolRouting);
+    }
+
     public String getGatewayDataPath() {
         return getString(GatewayDataPath);
     }
 
+    public Integer getToolMetricsRollupMinutes() {
+        return getInt(ToolMetricsRollupMinutes);
+    }
+
     // Setters
     public void setId(Long value) {
         setLong(Id, value);
@@ -138,6 +245,10 @@ public class IAISettings extends PersistentRecord {
         setString(DatabaseConnection, value);
     }
 
+    public void setStorageBackend(String value) {
+        setString(StorageBackend, value);
+    }
+
     public void setEnableDatabaseTools(Boolean value) {
         setBoolean(EnableDatabaseTools, value);
     }
@@ -146,6 +257,34 @@ public class IAISettings extends PersistentRecord {
         setInt(MaxToolResultSizeKB, value);
     }
 
+    public void setSchemaCacheTtlMinutes(Integer value) {
+        setInt(SchemaCacheTtlMinutes, value);
+    }
+
+    public void setSchemaCacheRefreshMinutes(Integer value) {
+        setInt(SchemaCacheRefreshMinutes, value);
+    }
+
+    public void setQueryCacheTtlSeconds(Integer value) {
+        setInt(QueryCacheTtlSeconds, value);
+    }
+
+    public void setQueryCacheTtlOverrides(String value) {
+        setString(QueryCacheTtlOverrides, value);
+    }
+
+    public void setQueryCacheMaxMB(Integer value) {
+        setInt(QueryCacheMaxMB, value);
+    }
+
+    public void setFanOutConcurrency(Integer value) {
+        setInt(FanOutConcurrency, value);
+    }
+
+    public void setFanOutMaxDatabases(Integer value) {
+        setInt(FanOutMaxDatabases, value);
+    }
+
     public void setMaxTagHistoryRecords(Integer value) {
         setInt(MaxTagHistoryRecords, value);
     }
@@ -158,6 +297,30 @@ public class IAISettings extends PersistentRecord {
         setInt(QueryTimeoutSeconds, value);
     }
 
+    public void setResultPageRows(Integer value) {
+        setInt(ResultPageRows, value);
+    }
+
+    public void setMaxCursorRows(Integer value) {
+        setInt(MaxCursorRows, value);
+    }
+
+    public void setMaxResultBufferKB(Integer value) {
+        setInt(MaxResultBufferKB, value);
+    }
+
+    public void setQueryCostGuardMode(String value) {
+        setString(QueryCostGuardMode, value);
+    }
+
+    public void setQueryCostMaxRows(Integer value) {
+        setInt(QueryCostMaxRows, value);
+    }
+
+    public void setQueryCostMaxCost(Integer value) {
+        setInt(QueryCostMaxCost, value);
+    }
+
     public void setMaxConversationHistoryMessages(Integer value) {
         setInt(MaxConversationHistoryMessages, value);
     }
@@ -166,10 +329,22 @@ public class IAISettings extends PersistentRecord {
         setInt(MaxToolIterations, value);
     }
 
+    public void setTurnTimeoutSeconds(Integer value) {
+        setInt(TurnTimeoutSeconds, value);
+    }
+
+    public void setEnableToolRouting(Boolean value) {
+        setBoolean(EnableToolRouting, value);
+    }
+
     public void setGatewayDataPath(String value) {
         setString(GatewayDataPath, value);
     }
 
+    public void setToolMetricsRollupMinutes(Integer value) {
+        setInt(ToolMetricsRollupMinutes, value);
+    }
+
     public Boolean getAllowSystemFunctionExecution() {
         return getBoolean(AllowSystemFunctionExecution);
     }
@@ -201,4 +376,108 @@ public class IAISettings extends PersistentRecord {
     public void setMaxSystemFunctionResultSizeKB(Integer value) {
         setInt(MaxSystemFunctionResultSizeKB, value);
     }
+
+    public Boolean getRetentionEnabled() {
+        return getBoolean(RetentionEnabled);
+    }
+
+    public void setRetentionEnabled(Boolean value) {
+        setBoolean(RetentionEnabled, value);
+    }
+
+    public Integer getRetentionIntervalMinutes() {
+        return getInt(RetentionIntervalMinutes);
+    }
+
+    public void setRetentionIntervalMinutes(Integer value) {
+        setInt(RetentionIntervalMinutes, value);
+    }
+
+    public Integer getRetentionBatchSize() {
+        return getInt(RetentionBatchSize);
+    }
+
+    public void setRetentionBatchSize(Integer value) {
+        setInt(RetentionBatchSize, value);
+    }
+
+    public Boolean getArchiveExpiredRows() {
+        return getBoolean(ArchiveExpiredRows);
+    }
+
+    public void setArchiveExpiredRows(Boolean value) {
+        setBoolean(ArchiveExpiredRows, value);
+    }
+
+    public Integer getConversationRetentionDays() {
+        return getInt(ConversationRetentionDays);
+    }
+
+    public void setConversationRetentionDays(Integer value) {
+        setInt(ConversationRetentionDays, value);
+    }
+
+    public Integer getMaxConversations() {
+        return getInt(MaxConversations);
+    }
+
+    public void setMaxConversations(Integer value) {
+        setInt(MaxConversations, value);
+    }
+
+    public Integer getMaxMessageStorageMB() {
+        return getInt(MaxMessageStorageMB);
+    }
+
+    public void setMaxMessageStorageMB(Integer value) {
+        setInt(MaxMessageStorageMB, value);
+    }
+
+    public Integer getDebugLogRetentionDays() {
+        return getInt(DebugLogRetentionDays);
+    }
+
+    public void setDebugLogRetentionDays(Integer value) {
+        setInt(DebugLogRetentionDays, value);
+    }
+
+    public Integer getMaxDebugLogEntries() {
+        return getInt(MaxDebugLogEntries);
+    }
+
+    public void setMaxDebugLogEntries(Integer value) {
+        setInt(MaxDebugLogEntries, value);
+    }
+
+    public Integer getMaxDebugLogStorageMB() {
+        return getInt(MaxDebugLogStorageMB);
+    }
+
+    public void setMaxDebugLogStorageMB(Integer value) {
+        setInt(MaxDebugLogStorageMB, value);
+    }
+
+    public Integer getTaskExecutionRetentionDays() {
+        return getInt(TaskExecutionRetentionDays);
+    }
+
+    public void setTaskExecutionRetentionDays(Integer value) {
+        setInt(TaskExecutionRetentionDays, value);
+    }
+
+    public Integer getTaskRunsToKeep() {
+        return getInt(TaskRunsToKeep);
+    }
+
+    public void setTaskRunsToKeep(Integer value) {
+        setInt(TaskRunsToKeep, value);
+    }
+
+    public Integer getToolMetricsRetentionDays() {
+        return getInt(ToolMetricsRetentionDays);
+    }
+
+    public void setToolMetricsRetentionDays(Integer value) {
+        setInt(ToolMetricsRetentionDays, value);
+    }
 }
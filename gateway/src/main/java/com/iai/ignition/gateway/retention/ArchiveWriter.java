@@ -0,0 +1,130 @@
+package com.iai.ignition.gateway.retention;
+
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes expired rows to gzip-compressed NDJSON files, one file per table per retention run:
+ * {@code <archiveDir>/<table>/<table>-yyyyMMdd-HHmmss.ndjson.gz}.
+ */
+public class ArchiveWriter implements Closeable {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.retention.ArchiveWriter");
+
+    private final Path archiveDir;
+    private final String runStamp;
+    private final Map<String, Writer> writers = new LinkedHashMap<>();
+    private final Map<String, Long> rowCounts = new LinkedHashMap<>();
+
+    public ArchiveWriter(Path archiveDir) {
+        this.archiveDir = archiveDir;
+        this.runStamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+    }
+
+    /**
+     * Archive every row of a result set.
+     *
+     * @param table Source table name
+     * @param rs Result set positioned before the first row
+     * @return Number of rows archived
+     */
+    public int writeRows(String table, ResultSet rs) throws SQLException, IOException {
+        ResultSetMetaData metadata = rs.getMetaData();
+        int columnCount = metadata.getColumnCount();
+        Writer writer = writerFor(table);
+        int rows = 0;
+
+        while (rs.next()) {
+            JsonObject row = new JsonObject();
+            for (int i = 1; i <= columnCount; i++) {
+                String column = metadata.getColumnLabel(i).toLowerCase();
+                switch (metadata.getColumnType(i)) {
+                    case Types.BIGINT:
+                    case Types.INTEGER:
+                    case Types.SMALLINT:
+                    case Types.TINYINT:
+                    case Types.NUMERIC:
+                    case Types.DECIMAL:
+                        Object number = rs.getObject(i);
+                        if (number instanceof Number) {
+                            row.addProperty(column, (Number) number);
+                        }
+                        break;
+                    case Types.BIT:
+                    case Types.BOOLEAN:
+                        boolean value = rs.getBoolean(i);
+                        if (!rs.wasNull()) {
+                            row.addProperty(column, value);
+                        }
+                        break;
+                    default:
+                        String text = rs.getString(i);
+                        if (text != null) {
+                            row.addProperty(column, text);
+                        }
+                }
+            }
+            writer.write(row.toString());
+            writer.write('\n');
+            rows++;
+        }
+
+        rowCounts.merge(table, (long) rows, Long::sum);
+        return rows;
+    }
+
+    /**
+     * Flush all archive files so archived rows are on disk before the matching delete commits.
+     */
+    public void flush() throws IOException {
+        for (Writer writer : writers.values()) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Map.Entry<String, Writer> entry : writers.entrySet()) {
+            try {
+                entry.getValue().close();
+                logger.info("Archived " + rowCounts.getOrDefault(entry.getKey(), 0L) + " rows from " + entry.getKey());
+            } catch (IOException e) {
+                logger.error("Error closing archive for " + entry.getKey(), e);
+            }
+        }
+        writers.clear();
+    }
+
+    private Writer writerFor(String table) throws IOException {
+        Writer writer = writers.get(table);
+        if (writer == null) {
+            Path dir = archiveDir.resolve(table);
+            Files.createDirectories(dir);
+            Path file = dir.resolve(table + "-" + runStamp + ".ndjson.gz");
+            // syncFlush so flush() pushes compressed data to disk between batches
+            writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file), true), StandardCharsets.UTF_8));
+            writers.put(table, writer);
+            logger.debug("Opened archive file: " + file);
+        }
+        return writer;
+    }
+}
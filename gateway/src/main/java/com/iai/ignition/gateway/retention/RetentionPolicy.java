@@ -0,0 +1,107 @@
+package com.iai.ignition.gateway.retention;
+
+import com.iai.ignition.gateway.records.IAISettings;
+
+/**
+ * Age, count and size limits for one retained table.
+ * A limit of 0 disables that part of the policy.
+ */
+public class RetentionPolicy {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    private final int maxAgeDays;
+    private final int maxRows;
+    private final int maxMegabytes;
+
+    public RetentionPolicy(int maxAgeDays, int maxRows, int maxMegabytes) {
+        this.maxAgeDays = Math.max(0, maxAgeDays);
+        this.maxRows = Math.max(0, maxRows);
+        this.maxMegabytes = Math.max(0, maxMegabytes);
+    }
+
+    /**
+     * Policy for conversations and their messages.
+     */
+    public static RetentionPolicy forConversations(IAISettings settings) {
+        return new RetentionPolicy(
+            valueOf(settings.getConversationRetentionDays()),
+            valueOf(settings.getMaxConversations()),
+            valueOf(settings.getMaxMessageStorageMB())
+        );
+    }
+
+    /**
+     * Policy for the API debug log.
+     */
+    public static RetentionPolicy forDebugLog(IAISettings settings) {
+        return new RetentionPolicy(
+            valueOf(settings.getDebugLogRetentionDays()),
+            valueOf(settings.getMaxDebugLogEntries()),
+            valueOf(settings.getMaxDebugLogStorageMB())
+        );
+    }
+
+    /**
+     * Default policy for scheduled task runs. The row limit applies per task
+     * and can be overridden by the task's own keep_runs value.
+     */
+    public static RetentionPolicy forTaskRuns(IAISettings settings) {
+        return new RetentionPolicy(
+            valueOf(settings.getTaskExecutionRetentionDays()),
+            valueOf(settings.getTaskRunsToKeep()),
+            0
+        );
+    }
+
+    /**
+     * Policy for tool metrics rollups (age only).
+     */
+    public static RetentionPolicy forToolMetrics(IAISettings settings) {
+        return new RetentionPolicy(valueOf(settings.getToolMetricsRetentionDays()), 0, 0);
+    }
+
+    /**
+     * Get the timestamp before which rows have expired, or 0 if there is no age limit.
+     */
+    public long getCutoff(long now) {
+        return maxAgeDays > 0 ? now - maxAgeDays * DAY_MS : 0L;
+    }
+
+    public boolean hasAgeLimit() {
+        return maxAgeDays > 0;
+    }
+
+    public boolean hasRowLimit() {
+        return maxRows > 0;
+    }
+
+    public boolean hasSizeLimit() {
+        return maxMegabytes > 0;
+    }
+
+    public boolean isEmpty() {
+        return !hasAgeLimit() && !hasRowLimit() && !hasSizeLimit();
+    }
+
+    public int getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    public long getMaxBytes() {
+        return maxMegabytes * 1024L * 1024L;
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy{maxAgeDays=" + maxAgeDays + ", maxRows=" + maxRows + ", maxMegabytes=" + maxMegabytes + "}";
+    }
+
+    private static int valueOf(Integer value) {
+        return value != null && value > 0 ? value : 0;
+    }
+}
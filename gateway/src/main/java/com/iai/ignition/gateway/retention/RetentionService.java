@@ -0,0 +1,733 @@
+package com.iai.ignition.gateway.retention;
+
+import com.iai.ignition.common.model.TaskExecution;
+import com.iai.ignition.gateway.GatewayHook;
+import com.iai.ignition.gateway.database.SqlDialect;
+import com.iai.ignition.gateway.database.ToolBlobDAO;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.store.CachingConversationStore;
+import com.iai.ignition.gateway.store.ConversationStore;
+import com.iai.ignition.gateway.store.EmbeddedConversationStore;
+import com.iai.ignition.gateway.store.JdbcConversationStore;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Periodically removes conversations, messages, debug logs and scheduled task runs that fall
+ * outside the configured {@link RetentionPolicy}s, from whichever conversation store is active.
+ *
+ * For the embedded store, expired records are deleted in batches through the store, which
+ * reclaims the space when it next compacts. Archiving is only supported for database storage.
+ *
+ * In a database, rows are selected oldest first and deleted in small batches, each in its own
+ * short transaction, so the service never holds long locks on a busy database. A conversation's
+ * messages and debug logs are deleted in batches of their own before the conversation row,
+ * so a long history does not turn into one large delete. When archiving is
+ * enabled each batch is written to NDJSON before it is deleted.
+ *
+ * Deleted rows release the tool blobs they referenced, and blobs left without references
+ * are garbage collected at the end of each run.
+ */
+public class RetentionService {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.retention.RetentionService");
+
+    /**
+     * Pause between batches so other writers get a turn.
+     */
+    private static final long BATCH_PAUSE_MS = 100;
+
+    /**
+     * Upper bound on the batch size, so IN lists stay well below SQL Server's 2100 parameter limit.
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * Rows sampled when estimating table size.
+     */
+    private static final int SIZE_SAMPLE_ROWS = 50;
+
+    /**
+     * Approximate per-row overhead added to sampled payload sizes.
+     */
+    private static final int ROW_OVERHEAD_BYTES = 128;
+
+    /**
+     * How long an unreferenced tool blob is kept before it is collected, so a blob that is
+     * being referenced again by a concurrent write is not deleted underneath it.
+     */
+    private static final long BLOB_GRACE_MS = TimeUnit.HOURS.toMillis(1);
+
+    private final GatewayContext gatewayContext;
+    private final IAISettings settings;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile boolean stopping = false;
+    private boolean archiveWarned = false;
+    private ScheduledExecutorService scheduler;
+
+    @FunctionalInterface
+    private interface BatchDeleter {
+        int delete(List<String> ids) throws SQLException, IOException;
+    }
+
+    public RetentionService(GatewayContext gatewayContext, IAISettings settings) {
+        this.gatewayContext = gatewayContext;
+        this.settings = settings;
+    }
+
+    /**
+     * Start periodic retention runs if retention is enabled.
+     */
+    public void start() {
+        if (!Boolean.TRUE.equals(settings.getRetentionEnabled())) {
+            logger.info("Retention disabled, conversation data will be kept indefinitely");
+            return;
+        }
+
+        int interval = settings.getRetentionIntervalMinutes() != null ? Math.max(1, settings.getRetentionIntervalMinutes()) : 60;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "IAI-Retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::runSafely, 1, interval, TimeUnit.MINUTES);
+
+        logger.info("Retention service started, running every " + interval + " minutes");
+    }
+
+    /**
+     * Stop periodic retention runs. A batch in progress is allowed to finish.
+     */
+    public void stop() {
+        stopping = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            logger.info("Retention service stopped");
+        }
+    }
+
+    /**
+     * Run retention once, catching all errors.
+     */
+    private void runSafely() {
+        try {
+            runOnce();
+        } catch (Exception e) {
+            logger.error("Retention run failed", e);
+        }
+    }
+
+    /**
+     * Apply all retention policies once.
+     *
+     * @return Rows deleted per table (empty if another run is in progress or nothing was configured)
+     */
+    public Map<String, Long> runOnce() {
+        Map<String, Long> deleted = new LinkedHashMap<>();
+
+        if (!running.compareAndSet(false, true)) {
+            logger.debug("Retention run already in progress, skipping");
+            return deleted;
+        }
+
+        // Held so a settings change does not shut the store down during the run
+        CachingConversationStore store = GatewayHook.acquireConversationStore();
+        try {
+            if (store == null) {
+                logger.debug("Conversation storage not available, skipping retention run");
+                return deleted;
+            }
+
+            long start = System.currentTimeMillis();
+
+            ConversationStore backing = store.getDelegate();
+            if (backing instanceof EmbeddedConversationStore) {
+                purgeEmbedded(store, (EmbeddedConversationStore) backing, deleted);
+            } else if (backing instanceof JdbcConversationStore) {
+                purgeDatabase(((JdbcConversationStore) backing).getDatabaseConnectionName(), deleted);
+            }
+
+            if (!deleted.isEmpty()) {
+                logger.info("Retention run completed in " + (System.currentTimeMillis() - start) + "ms, deleted " + deleted);
+            } else {
+                logger.debug("Retention run completed, nothing to delete");
+            }
+        } catch (SQLException e) {
+            logger.error("Error running retention", e);
+        } finally {
+            if (store != null) {
+                store.release();
+            }
+            running.set(false);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Apply all retention policies to the embedded store. The store writes delete records and
+     * reclaims their space when it next compacts.
+     */
+    private void purgeEmbedded(CachingConversationStore cache, EmbeddedConversationStore store, Map<String, Long> deleted) {
+        if (Boolean.TRUE.equals(settings.getArchiveExpiredRows()) && !archiveWarned) {
+            archiveWarned = true;
+            logger.warn("Archiving is only supported for database storage, expired rows in the embedded store are deleted without an archive");
+        }
+
+        long now = System.currentTimeMillis();
+        Consumer<List<String>> conversationDeleter = ids -> {
+            count(deleted, "iai_conversations", store.deleteConversations(ids));
+            cache.evictConversations(ids);
+        };
+
+        // Task runs first so the conversations they created go with them
+        RetentionPolicy taskRuns = RetentionPolicy.forTaskRuns(settings);
+        inBatches(store.findExpiredTaskRuns(taskRuns.getCutoff(now), taskRuns.getMaxRows()), runs -> {
+            count(deleted, "iai_task_executions", store.deleteTaskRuns(runs));
+            List<String> conversationIds = new ArrayList<>();
+            for (TaskExecution run : runs) {
+                if (run.getConversationId() != null) {
+                    conversationIds.add(run.getConversationId());
+                }
+            }
+            conversationDeleter.accept(conversationIds);
+        });
+
+        RetentionPolicy conversations = RetentionPolicy.forConversations(settings);
+        if (!conversations.isEmpty()) {
+            inBatches(store.findExpiredConversations(conversations.getCutoff(now), conversations.getMaxRows(), conversations.getMaxBytes()),
+                conversationDeleter);
+        }
+
+        RetentionPolicy debugLog = RetentionPolicy.forDebugLog(settings);
+        if (!debugLog.isEmpty()) {
+            inBatches(store.findExpiredDebugLogs(debugLog.getCutoff(now), debugLog.getMaxRows(), debugLog.getMaxBytes()),
+                logs -> count(deleted, "iai_debug_log", store.deleteDebugLogs(logs)));
+        }
+    }
+
+    /**
+     * Apply all retention policies to the conversation tables in a database connection.
+     */
+    private void purgeDatabase(String connectionName, Map<String, Long> deleted) throws SQLException {
+        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(connectionName);
+        if (datasource == null) {
+            logger.error("Database connection not found: " + connectionName);
+            return;
+        }
+
+        ArchiveWriter archive = null;
+        if (Boolean.TRUE.equals(settings.getArchiveExpiredRows())) {
+            Path archiveDir = getArchiveDirectory();
+            if (archiveDir == null) {
+                logger.error("Archiving is enabled but the gateway data path is not configured, skipping retention run");
+                return;
+            }
+            archive = new ArchiveWriter(archiveDir);
+        }
+
+        try (Connection conn = datasource.getConnection()) {
+            boolean originalAutoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                long now = System.currentTimeMillis();
+                // Task runs first so the conversations they created go with them
+                purgeTaskRuns(conn, archive, now, deleted);
+                purgeConversations(conn, archive, now, deleted);
+                purgeDebugLog(conn, archive, now, deleted);
+                purgeToolBlobs(conn, now, deleted);
+                purgeToolMetrics(conn, now, deleted);
+            } catch (SQLException | IOException e) {
+                conn.rollback();
+                logger.error("Retention run stopped early", e);
+            } finally {
+                conn.setAutoCommit(originalAutoCommit);
+            }
+        } finally {
+            if (archive != null) {
+                archive.close();
+            }
+        }
+    }
+
+    /**
+     * Apply the per-task run count and run age policies.
+     */
+    private void purgeTaskRuns(Connection conn, ArchiveWriter archive, long now, Map<String, Long> deleted)
+            throws SQLException, IOException {
+        RetentionPolicy policy = RetentionPolicy.forTaskRuns(settings);
+        BatchDeleter deleter = ids -> deleteTaskRuns(conn, ids, archive, deleted);
+
+        // Count policy, per task (task keep_runs overrides the module default)
+        Map<String, Integer> keepRunsByTask = new LinkedHashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id, keep_runs FROM iai_scheduled_tasks");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Object keepRuns = rs.getObject("keep_runs");
+                int keep = keepRuns != null ? ((Number) keepRuns).intValue() : policy.getMaxRows();
+                if (keep > 0) {
+                    keepRunsByTask.put(rs.getString("id"), keep);
+                }
+            }
+        }
+
+        // Runs past the newest keep_runs, a page at a time; each delete moves the next page into place
+        SqlDialect dialect = SqlDialect.detect(conn);
+        for (Map.Entry<String, Integer> entry : keepRunsByTask.entrySet()) {
+            String excessRuns = dialect.page(
+                "SELECT id FROM iai_task_executions WHERE task_id = ? ORDER BY executed_at DESC",
+                entry.getValue(), getBatchSize());
+            deleteInBatches(conn, excessRuns, Long.MAX_VALUE, deleter, entry.getKey());
+        }
+
+        // Age policy
+        if (policy.hasAgeLimit()) {
+            deleteInBatches(conn,
+                "SELECT id FROM iai_task_executions WHERE executed_at < ? ORDER BY executed_at ASC",
+                Long.MAX_VALUE, deleter, policy.getCutoff(now));
+        }
+    }
+
+    /**
+     * Apply the conversation age, count and size policies.
+     */
+    private void purgeConversations(Connection conn, ArchiveWriter archive, long now, Map<String, Long> deleted)
+            throws SQLException, IOException {
+        RetentionPolicy policy = RetentionPolicy.forConversations(settings);
+        BatchDeleter deleter = ids -> deleteConversations(conn, ids, archive, deleted);
+        String oldestFirst = "SELECT id FROM iai_conversations ORDER BY last_updated_at ASC";
+
+        if (policy.hasAgeLimit()) {
+            deleteInBatches(conn,
+                "SELECT id FROM iai_conversations WHERE last_updated_at < ? ORDER BY last_updated_at ASC",
+                Long.MAX_VALUE, deleter, policy.getCutoff(now));
+        }
+
+        if (policy.hasRowLimit()) {
+            long excess = countRows(conn, "iai_conversations") - policy.getMaxRows();
+            if (excess > 0) {
+                deleteInBatches(conn, oldestFirst, excess, deleter);
+            }
+        }
+
+        if (policy.hasSizeLimit()) {
+            long estimatedBytes = estimateTableBytes(conn, "iai_messages", "timestamp", "content")
+                + estimateTableBytes(conn, "iai_message_tools", "message_id", "tool_calls", "tool_results")
+                + sumColumn(conn, "iai_tool_blobs", "size_bytes");
+            long conversations = countRows(conn, "iai_conversations");
+            if (estimatedBytes > policy.getMaxBytes() && conversations > 0) {
+                long bytesPerConversation = Math.max(1, estimatedBytes / conversations);
+                long excess = (estimatedBytes - policy.getMaxBytes() + bytesPerConversation - 1) / bytesPerConversation;
+                logger.debug("Message storage estimated at " + estimatedBytes + " bytes, removing " + excess + " conversations");
+                deleteInBatches(conn, oldestFirst, excess, deleter);
+            }
+        }
+    }
+
+    /**
+     * Apply the debug log age, count and size policies.
+     */
+    private void purgeDebugLog(Connection conn, ArchiveWriter archive, long now, Map<String, Long> deleted)
+            throws SQLException, IOException {
+        RetentionPolicy policy = RetentionPolicy.forDebugLog(settings);
+        BatchDeleter deleter = ids -> deleteDebugLogs(conn, ids, archive, deleted);
+        String oldestFirst = "SELECT id FROM iai_debug_log ORDER BY timestamp ASC";
+
+        if (policy.hasAgeLimit()) {
+            deleteInBatches(conn,
+                "SELECT id FROM iai_debug_log WHERE timestamp < ? ORDER BY timestamp ASC",
+                Long.MAX_VALUE, deleter, policy.getCutoff(now));
+        }
+
+        if (policy.hasRowLimit()) {
+            long excess = countRows(conn, "iai_debug_log") - policy.getMaxRows();
+            if (excess > 0) {
+                deleteInBatches(conn, oldestFirst, excess, deleter);
+            }
+        }
+
+        if (policy.hasSizeLimit()) {
+            long rows = countRows(conn, "iai_debug_log");
+            long estimatedBytes = estimateTableBytes(conn, "iai_debug_log", "timestamp", "request_json", "response_json");
+            if (estimatedBytes > policy.getMaxBytes() && rows > 0) {
+                long bytesPerRow = Math.max(1, estimatedBytes / rows);
+                long excess = (estimatedBytes - policy.getMaxBytes() + bytesPerRow - 1) / bytesPerRow;
+                logger.debug("Debug log estimated at " + estimatedBytes + " bytes, removing " + excess + " entries");
+                deleteInBatches(conn, oldestFirst, excess, deleter);
+            }
+        }
+    }
+
+    /**
+     * Delete tool metrics rollups past their age limit. Rows are small and not archived.
+     */
+    private void purgeToolMetrics(Connection conn, long now, Map<String, Long> deleted) throws SQLException {
+        RetentionPolicy policy = RetentionPolicy.forToolMetrics(settings);
+        if (!policy.hasAgeLimit()) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM iai_tool_metrics WHERE period_end < ?")) {
+            stmt.setLong(1, policy.getCutoff(now));
+            count(deleted, "iai_tool_metrics", stmt.executeUpdate());
+        }
+        conn.commit();
+    }
+
+    /**
+     * Delete tool blobs that are no longer referenced.
+     */
+    private void purgeToolBlobs(Connection conn, long now, Map<String, Long> deleted) throws SQLException, IOException {
+        BatchDeleter deleter = hashes -> {
+            String in = placeholders(hashes.size());
+            // Re-check the count in case the blob was referenced again since it was selected
+            int rows = executeUpdate(conn, "DELETE FROM iai_tool_blobs WHERE hash IN (" + in + ") AND ref_count <= 0", hashes);
+            conn.commit();
+            count(deleted, "iai_tool_blobs", rows);
+            return rows;
+        };
+
+        deleteInBatches(conn,
+            "SELECT hash FROM iai_tool_blobs WHERE ref_count <= 0 AND last_referenced_at < ?",
+            Long.MAX_VALUE, deleter, now - BLOB_GRACE_MS);
+    }
+
+    /**
+     * Delete task runs and the conversations they created. Commits.
+     */
+    private int deleteTaskRuns(Connection conn, List<String> runIds, ArchiveWriter archive, Map<String, Long> deleted)
+            throws SQLException, IOException {
+        String in = placeholders(runIds.size());
+
+        List<String> conversationIds = selectIds(conn,
+            "SELECT conversation_id FROM iai_task_executions WHERE id IN (" + in + ") AND conversation_id IS NOT NULL",
+            0, runIds.toArray());
+
+        if (archive != null) {
+            archive(conn, archive, "iai_task_executions", "SELECT * FROM iai_task_executions WHERE id IN (" + in + ")", runIds);
+        }
+
+        int rows = executeUpdate(conn, "DELETE FROM iai_task_executions WHERE id IN (" + in + ")", runIds);
+        conn.commit();
+        count(deleted, "iai_task_executions", rows);
+
+        if (!conversationIds.isEmpty()) {
+            deleteConversations(conn, conversationIds, archive, deleted);
+        }
+        return rows;
+    }
+
+    /**
+     * Delete conversations with their messages, message tool payloads and debug logs. Commits.
+     * Messages go first, one batch per transaction; the conversation rows are deleted once they
+     * have none left. If the service stops part way the conversations are kept and the next
+     * run finishes them.
+     */
+    private int deleteConversations(Connection conn, List<String> conversationIds, ArchiveWriter archive, Map<String, Long> deleted)
+            throws SQLException, IOException {
+        String in = placeholders(conversationIds.size());
+
+        BatchDeleter messageDeleter = ids -> deleteMessages(conn, ids, archive, deleted);
+        deleteInBatches(conn,
+            "SELECT id FROM iai_messages WHERE conversation_id IN (" + in + ") ORDER BY timestamp ASC",
+            Long.MAX_VALUE, messageDeleter, conversationIds.toArray());
+        if (interrupted()) {
+            return 0;
+        }
+
+        if (archive != null) {
+            archive(conn, archive, "iai_conversations", "SELECT * FROM iai_conversations WHERE id IN (" + in + ")", conversationIds);
+        }
+
+        executeUpdate(conn, "UPDATE iai_task_executions SET conversation_id = NULL WHERE conversation_id IN (" + in + ")", conversationIds);
+        int rows = executeUpdate(conn, "DELETE FROM iai_conversations WHERE id IN (" + in + ")", conversationIds);
+        conn.commit();
+
+        count(deleted, "iai_conversations", rows);
+        return rows;
+    }
+
+    /**
+     * Delete messages with their tool payloads, after their debug logs in batches of their own. Commits.
+     * Children are deleted explicitly since SQLite does not enforce ON DELETE CASCADE by default.
+     */
+    private int deleteMessages(Connection conn, List<String> messageIds, ArchiveWriter archive, Map<String, Long> deleted)
+            throws SQLException, IOException {
+        String in = placeholders(messageIds.size());
+
+        // A turn can log several requests per message, so these are batched separately
+        BatchDeleter debugLogDeleter = ids -> deleteDebugLogs(conn, ids, archive, deleted);
+        deleteInBatches(conn,
+            "SELECT id FROM iai_debug_log WHERE message_id IN (" + in + ") ORDER BY timestamp ASC",
+            Long.MAX_VALUE, debugLogDeleter, messageIds.toArray());
+        if (interrupted()) {
+            return 0;
+        }
+
+        List<String> blobRefs = new ArrayList<>();
+        collectBlobReferences(conn, "SELECT tool_results FROM iai_message_tools WHERE message_id IN (" + in + ")", messageIds, blobRefs);
+
+        if (archive != null) {
+            archive(conn, archive, "iai_messages", "SELECT * FROM iai_messages WHERE id IN (" + in + ")", messageIds);
+            archive(conn, archive, "iai_message_tools", "SELECT * FROM iai_message_tools WHERE message_id IN (" + in + ")", messageIds);
+            archiveBlobs(conn, archive, blobRefs);
+        }
+
+        count(deleted, "iai_message_tools", executeUpdate(conn, "DELETE FROM iai_message_tools WHERE message_id IN (" + in + ")", messageIds));
+        int rows = executeUpdate(conn, "DELETE FROM iai_messages WHERE id IN (" + in + ")", messageIds);
+        ToolBlobDAO.release(conn, blobRefs);
+        conn.commit();
+
+        count(deleted, "iai_messages", rows);
+        return rows;
+    }
+
+    /**
+     * Delete debug log entries. Commits.
+     */
+    private int deleteDebugLogs(Connection conn, List<String> ids, ArchiveWriter archive, Map<String, Long> deleted)
+            throws SQLException, IOException {
+        String in = placeholders(ids.size());
+
+        List<String> blobRefs = new ArrayList<>();
+        collectBlobReferences(conn, "SELECT request_json FROM iai_debug_log WHERE id IN (" + in + ")", ids, blobRefs);
+
+        if (archive != null) {
+            archive(conn, archive, "iai_debug_log", "SELECT * FROM iai_debug_log WHERE id IN (" + in + ")", ids);
+            archiveBlobs(conn, archive, blobRefs);
+        }
+
+        int rows = executeUpdate(conn, "DELETE FROM iai_debug_log WHERE id IN (" + in + ")", ids);
+        ToolBlobDAO.release(conn, blobRefs);
+        conn.commit();
+
+        count(deleted, "iai_debug_log", rows);
+        return rows;
+    }
+
+    /**
+     * Repeatedly select up to one batch of ids and delete them until no rows match or the limit is reached.
+     */
+    private void deleteInBatches(Connection conn, String selectSql, long limit, BatchDeleter deleter, Object... params)
+            throws SQLException, IOException {
+        int batchSize = getBatchSize();
+        long total = 0;
+
+        while (total < limit && !stopping) {
+            int fetch = (int) Math.min(batchSize, limit - total);
+            List<String> ids = selectIds(conn, selectSql, fetch, params);
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            deleter.delete(ids);
+            total += ids.size();
+
+            if (ids.size() < fetch || !pause()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Hand a list of expired records to a deleter one batch at a time, pausing between batches.
+     */
+    private <T> void inBatches(List<T> items, Consumer<List<T>> deleter) {
+        int batchSize = getBatchSize();
+        for (int from = 0; from < items.size() && !stopping; from += batchSize) {
+            deleter.accept(items.subList(from, Math.min(items.size(), from + batchSize)));
+            if (from + batchSize < items.size() && !pause()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Estimate a table's logical size from its row count and the payload size of a sample of recent rows.
+     */
+    private long estimateTableBytes(Connection conn, String table, String orderColumn, String... payloadColumns)
+            throws SQLException {
+        long rows = countRows(conn, table);
+        if (rows == 0) {
+            return 0;
+        }
+
+        String sql = "SELECT " + String.join(", ", payloadColumns) + " FROM " + table + " ORDER BY " + orderColumn + " DESC";
+        long sampledBytes = 0;
+        int sampled = 0;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setMaxRows(SIZE_SAMPLE_ROWS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    for (int i = 1; i <= payloadColumns.length; i++) {
+                        String value = rs.getString(i);
+                        if (value != null) {
+                            sampledBytes += value.length();
+                        }
+                    }
+                    sampledBytes += ROW_OVERHEAD_BYTES;
+                    sampled++;
+                }
+            }
+        }
+
+        return sampled > 0 ? (sampledBytes / sampled) * rows : 0;
+    }
+
+    /**
+     * Write matching rows to the archive and flush before the caller deletes them.
+     */
+    private void archive(Connection conn, ArchiveWriter archive, String table, String sql, List<String> params)
+            throws SQLException, IOException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params.toArray());
+            try (ResultSet rs = stmt.executeQuery()) {
+                archive.writeRows(table, rs);
+            }
+        }
+        archive.flush();
+    }
+
+    /**
+     * Archive the tool blobs referenced by rows about to be deleted, so the archive is self-contained.
+     */
+    private void archiveBlobs(Connection conn, ArchiveWriter archive, List<String> blobRefs) throws SQLException, IOException {
+        List<String> hashes = new ArrayList<>(new LinkedHashSet<>(blobRefs));
+        int batchSize = getBatchSize();
+        for (int from = 0; from < hashes.size(); from += batchSize) {
+            List<String> chunk = hashes.subList(from, Math.min(hashes.size(), from + batchSize));
+            archive(conn, archive, "iai_tool_blobs",
+                "SELECT * FROM iai_tool_blobs WHERE hash IN (" + placeholders(chunk.size()) + ")", chunk);
+        }
+    }
+
+    /**
+     * Add the blob hashes referenced by the JSON payloads the query returns.
+     */
+    private void collectBlobReferences(Connection conn, String sql, List<String> params, List<String> into) throws SQLException {
+        for (String json : selectIds(conn, sql, 0, params.toArray())) {
+            ToolBlobDAO.collectReferences(json, into);
+        }
+    }
+
+    private List<String> selectIds(Connection conn, String sql, int maxRows, Object... params) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (maxRows > 0) {
+                stmt.setMaxRows(maxRows);
+            }
+            bind(stmt, params);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getString(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private long countRows(Connection conn, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM " + table);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private long sumColumn(Connection conn, String table, String column) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT SUM(" + column + ") FROM " + table);
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private int executeUpdate(Connection conn, String sql, List<String> params) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, params.toArray());
+            return stmt.executeUpdate();
+        }
+    }
+
+    private void bind(PreparedStatement stmt, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static void count(Map<String, Long> deleted, String table, int rows) {
+        if (rows > 0) {
+            deleted.merge(table, (long) rows, Long::sum);
+        }
+    }
+
+    private int getBatchSize() {
+        Integer batchSize = settings.getRetentionBatchSize();
+        return batchSize != null && batchSize > 0 ? Math.min(batchSize, MAX_BATCH_SIZE) : 100;
+    }
+
+    /**
+     * Sleep between batches.
+     *
+     * @return false if the service is stopping
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(BATCH_PAUSE_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !stopping;
+    }
+
+    /**
+     * Whether batching stopped early, leaving children that block deleting their parent rows.
+     */
+    private boolean interrupted() {
+        return stopping || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Get the directory archive files are written to.
+     */
+    private Path getArchiveDirectory() {
+        String dataPath = settings.getGatewayDataPath();
+        if (dataPath == null || dataPath.isEmpty()) {
+            return null;
+        }
+        return Paths.get(dataPath, "ignition-ai", "archive");
+    }
+}
@@ -0,0 +1,215 @@
+package com.iai.ignition.gateway.store;
+
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Segmented append-only log in a directory of memory-mapped {@link LogSegment} files.
+ *
+ * Records are only ever appended to the newest segment; a new segment is started when it
+ * fills up. Compaction copies live records into fresh segments and then drops the older
+ * ones. The manifest file records the first segment still in use, written atomically once
+ * a compaction's copies are on disk, so segments left behind by a crash (or by a delete that
+ * failed because the file was still mapped) are discarded on the next open instead of replayed.
+ *
+ * Not thread-safe: the owning store serializes writes and compaction, except {@link #force}.
+ */
+final class AppendOnlyLog {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.store.AppendOnlyLog");
+
+    private static final String MANIFEST = "store.manifest";
+    private static final String BASE_SEGMENT = "baseSegment";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final NavigableMap<Long, LogSegment> segments = new TreeMap<>();
+    private volatile LogSegment active;
+
+    AppendOnlyLog(Path directory, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Open the log, replaying every record in order.
+     */
+    void open(LogSegment.RecordVisitor visitor) throws IOException {
+        Files.createDirectories(directory);
+        long base = readBaseSegment();
+
+        NavigableMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                long id = LogSegment.parseId(path.getFileName().toString());
+                if (id >= 0) {
+                    files.put(id, path);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            if (file.getKey() < base) {
+                // Superseded by a completed compaction
+                deleteQuietly(file.getValue());
+                continue;
+            }
+
+            LogSegment segment = LogSegment.open(file.getValue(), file.getKey());
+            segments.put(file.getKey(), segment);
+            if (!segment.recover(visitor)) {
+                logger.warn("Log segment " + file.getValue().getFileName() + " ended in a damaged record (interrupted write?), truncated after the last valid record");
+            }
+        }
+
+        if (segments.isEmpty()) {
+            active = LogSegment.create(directory, Math.max(base, 1), segmentBytes);
+            segments.put(active.getId(), active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Append a record, starting a new segment if the current one is full.
+     */
+    LogLocation append(byte type, byte[] payload) throws IOException {
+        if (!active.hasRoom(payload.length)) {
+            roll(payload.length);
+        }
+        return active.append(type, payload);
+    }
+
+    /**
+     * Read the payload of a record.
+     */
+    byte[] read(LogLocation location) throws IOException {
+        LogSegment segment = segments.get(location.segmentId);
+        if (segment == null) {
+            throw new IOException("Log segment " + location.segmentId + " is no longer available");
+        }
+        return segment.read(location.offset);
+    }
+
+    /**
+     * Start a new segment for a compaction's copies.
+     *
+     * @return Id of the first segment that will hold the copies
+     */
+    long startCompaction() throws IOException {
+        roll(0);
+        return active.getId();
+    }
+
+    /**
+     * Drop all segments before the given one once the compacted copies have been appended.
+     */
+    void finishCompaction(long baseSegment) throws IOException {
+        force();
+        writeBaseSegment(baseSegment);
+
+        Iterator<LogSegment> it = segments.headMap(baseSegment, false).values().iterator();
+        while (it.hasNext()) {
+            LogSegment segment = it.next();
+            it.remove();
+            segment.close();
+            deleteQuietly(segment.getPath());
+        }
+    }
+
+    /**
+     * Bytes of segment files in use.
+     */
+    long getSizeBytes() {
+        long size = 0;
+        for (LogSegment segment : segments.values()) {
+            try {
+                size += Files.size(segment.getPath());
+            } catch (IOException e) {
+                // Size is informational only
+            }
+        }
+        return size;
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Write the active segment's mapped changes to disk. Safe to call concurrently with appends.
+     */
+    void force() {
+        active.force();
+    }
+
+    void close() {
+        force();
+        for (LogSegment segment : segments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.debug("Error closing log segment: " + e.getMessage());
+            }
+        }
+        segments.clear();
+    }
+
+    private void roll(int payloadLength) throws IOException {
+        active.force();
+        int capacity = Math.max(segmentBytes, 2 * LogSegment.HEADER_BYTES + 1 + payloadLength);
+        LogSegment next = LogSegment.create(directory, active.getId() + 1, capacity);
+        segments.put(next.getId(), next);
+        active = next;
+    }
+
+    private long readBaseSegment() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return 0;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(manifest)) {
+            properties.load(in);
+        }
+        try {
+            return Long.parseLong(properties.getProperty(BASE_SEGMENT, "0"));
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring unreadable store manifest: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writeBaseSegment(long baseSegment) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(BASE_SEGMENT, Long.toString(baseSegment));
+
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Ignition AI embedded store");
+        }
+        Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Still mapped (Windows) or locked; the manifest keeps it out of the log and it is retried on the next open
+            logger.debug("Could not delete old log segment " + path.getFileName() + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package com.iai.ignition.gateway.store;
+
+import com.iai.ignition.common.model.Conversation;
+import com.iai.ignition.common.model.DebugLog;
+import com.iai.ignition.common.model.Message;
+import com.iai.ignition.common.model.ScheduledTask;
+import com.iai.ignition.common.model.TaskExecution;
+import com.iai.ignition.gateway.metrics.ToolMetricsRollup;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Read-through cache in front of another {@link ConversationStore}.
+ *
+ * Conversations and scheduled tasks are kept in small LRU maps. Writes go to the backing store
+ * first and then update or evict the cached entry; entries also expire after a short time so
+ * changes made outside this store (retention, another gateway) are picked up. Callers always
+ * get copies, never the cached instances.
+ *
+ * {@link #touchConversation} only records the new last updated time; pending times are written
+ * to the backing store every few seconds and on shutdown, so a busy conversation costs one
+ * update per flush instead of one per message. Lists of conversations reflect pending times.
+ *
+ * Messages, debug logs and task executions are not cached.
+ *
+ * The store is replaced when the storage settings change. Turns and scheduled task runs hold
+ * the store they started with ({@link #acquire()}/{@link #release()}) and the old one is shut
+ * down when the last of them finishes.
+ */
+public class CachingConversationStore implements ConversationStore {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.store.CachingConversationStore");
+
+    private static final int MAX_CONVERSATIONS = 1000;
+    private static final int MAX_TASKS = 500;
+    private static final long ENTRY_TTL_MS = 60_000;
+    private static final long TOUCH_FLUSH_INTERVAL_MS = 5_000;
+
+    /**
+     * Cached value with the time it was loaded.
+     */
+    private static final class Cached<T> {
+        final T value;
+        final long loadedAt;
+
+        Cached(T value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - loadedAt > ENTRY_TTL_MS;
+        }
+    }
+
+    /**
+     * Access-ordered map that drops its least recently used entry past a maximum size.
+     * Not thread-safe; guarded by synchronizing on the map.
+     */
+    private static final class LruMap<T> extends LinkedHashMap<String, Cached<T>> {
+        private final int maxSize;
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached<T>> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private final ConversationStore delegate;
+    private final LruMap<Conversation> conversations = new LruMap<>(MAX_CONVERSATIONS);
+    private final LruMap<ScheduledTask> tasks = new LruMap<>(MAX_TASKS);
+    private final Map<String, Long> pendingTouches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+    private int holders;
+    private boolean retired;
+    private boolean shutDown;
+
+    public CachingConversationStore(ConversationStore delegate) {
+        this.delegate = delegate;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "IAI-StoreCache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushTouches, TOUCH_FLUSH_INTERVAL_MS, TOUCH_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The store this cache reads from and writes to.
+     */
+    public ConversationStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    /**
+     * Hold the store for the length of a turn or task run, so it is not shut down under it.
+     *
+     * @return false if the store has been retired; get the current one instead
+     */
+    public synchronized boolean acquire() {
+        if (retired) {
+            return false;
+        }
+        holders++;
+        return true;
+    }
+
+    /**
+     * Release a hold taken with {@link #acquire()}. Shuts the store down if it was retired
+     * and this was the last hold.
+     */
+    public void release() {
+        boolean last;
+        synchronized (this) {
+            holders--;
+            last = retired && holders == 0;
+        }
+        if (last) {
+            logger.debug("Last turn using a replaced conversation store finished, shutting it down");
+            shutdown();
+        }
+    }
+
+    /**
+     * Stop handing out the store and shut it down once nothing holds it.
+     */
+    public void retire() {
+        boolean idle;
+        synchronized (this) {
+            retired = true;
+            idle = holders == 0;
+        }
+        if (idle) {
+            shutdown();
+        }
+    }
+
+    @Override
+    public StoreSession openSession() throws StoreException {
+        return new CachingStoreSession(delegate.openSession());
+    }
+
+    // ---- Conversations ----
+
+    @Override
+    public boolean createConversation(Conversation conversation) {
+        boolean created = delegate.createConversation(conversation);
+        if (created) {
+            put(conversations, conversation.getId(), copy(conversation));
+        }
+        return created;
+    }
+
+    @Override
+    public Conversation findConversation(String id) {
+        Conversation cached = get(conversations, id);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        Conversation loaded = delegate.findConversation(id);
+        if (loaded == null) {
+            return null;
+        }
+        Long pending = pendingTouches.get(id);
+        if (pending != null && pending > loaded.getLastUpdatedAt()) {
+            loaded.setLastUpdatedAt(pending);
+        }
+        put(conversations, id, copy(loaded));
+        return loaded;
+    }
+
+    @Override
+    public List<Conversation> listConversationsByUser(String userName, int limit) {
+        return applyPendingTouches(delegate.listConversationsByUser(userName, limit));
+    }
+
+    @Override
+    public List<Conversation> listConversationsByProject(String projectName, int limit) {
+        return applyPendingTouches(delegate.listConversationsByProject(projectName, limit));
+    }
+
+    private List<Conversation> applyPendingTouches(List<Conversation> list) {
+        if (pendingTouches.isEmpty()) {
+            return list;
+        }
+        boolean changed = false;
+        for (Conversation conversation : list) {
+            Long pending = pendingTouches.get(conversation.getId());
+            if (pending != null && pending > conversation.getLastUpdatedAt()) {
+                conversation.setLastUpdatedAt(pending);
+                changed = true;
+            }
+        }
+        if (changed) {
+            list.sort(Comparator.comparingLong(Conversation::getLastUpdatedAt).reversed());
+        }
+        return list;
+    }
+
+    @Override
+    public boolean updateConversation(Conversation conversation) {
+        boolean updated = delegate.updateConversation(conversation);
+        if (updated) {
+            pendingTouches.computeIfPresent(conversation.getId(),
+                (id, pending) -> pending > conversation.getLastUpdatedAt() ? pending : null);
+            put(conversations, conversation.getId(), copy(conversation));
+        } else {
+            evict(conversations, conversation.getId());
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean touchConversation(String id, long lastUpdatedAt) {
+        pendingTouches.merge(id, lastUpdatedAt, Math::max);
+        synchronized (conversations) {
+            Cached<Conversation> cached = conversations.get(id);
+            if (cached != null && cached.value.getLastUpdatedAt() < lastUpdatedAt) {
+                cached.value.setLastUpdatedAt(lastUpdatedAt);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean deleteConversation(String id) {
+        pendingTouches.remove(id);
+        boolean deleted = delegate.deleteConversation(id);
+        evict(conversations, id);
+        return deleted;
+    }
+
+    /**
+     * Drop cached state for conversations deleted directly in the backing store, such as by retention.
+     */
+    public void evictConversations(List<String> ids) {
+        for (String id : ids) {
+            pendingTouches.remove(id);
+            evict(conversations, id);
+        }
+    }
+
+    /**
+     * Write pending last updated times to the backing store.
+     */
+    private void flushTouches() {
+        if (pendingTouches.isEmpty()) {
+            return;
+        }
+
+        int written = 0;
+        for (String id : pendingTouches.keySet()) {
+            Long lastUpdatedAt = pendingTouches.remove(id);
+            if (lastUpdatedAt == null) {
+                continue;
+            }
+            try {
+                Conversation conversation = get(conversations, id);
+                conversation = conversation != null ? copy(conversation) : delegate.findConversation(id);
+                if (conversation == null) {
+                    // Deleted since it was touched
+                    continue;
+                }
+                if (conversation.getLastUpdatedAt() < lastUpdatedAt) {
+                    conversation.setLastUpdatedAt(lastUpdatedAt);
+                }
+                if (delegate.updateConversation(conversation)) {
+                    written++;
+                } else {
+                    logger.warn("Could not write last updated time for conversation " + id);
+                }
+            } catch (Exception e) {
+                logger.error("Error writing last updated time for conversation " + id, e);
+            }
+        }
+        logger.trace("Flushed last updated time for " + written + " conversation(s)");
+    }
+
+    // ---- Messages and debug logs (not cached) ----
+
+    @Override
+    public boolean createMessage(Message message) {
+        return delegate.createMessage(message);
+    }
+
+    @Override
+    public List<Message> listMessages(String conversationId, int limit) {
+        return delegate.listMessages(conversationId, limit);
+    }
+
+    @Override
+    public List<Message> listMessagesWithTools(String conversationId, int limit) {
+        return delegate.listMessagesWithTools(conversationId, limit);
+    }
+
+    @Override
+    public Message findToolsForMessage(String messageId) {
+        return delegate.findToolsForMessage(messageId);
+    }
+
+    @Override
+    public int countMessages(String conversationId) {
+        return delegate.countMessages(conversationId);
+    }
+
+    @Override
+    public List<DebugLog> findDebugLogs(String conversationId) {
+        return delegate.findDebugLogs(conversationId);
+    }
+
+    // ---- Scheduled tasks ----
+
+    @Override
+    public boolean createTask(ScheduledTask task) {
+        boolean created = delegate.createTask(task);
+        if (created) {
+            put(tasks, task.getId(), copy(task));
+        }
+        return created;
+    }
+
+    @Override
+    public ScheduledTask getTask(String taskId) {
+        ScheduledTask cached = get(tasks, taskId);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        ScheduledTask loaded = delegate.getTask(taskId);
+        if (loaded != null) {
+            put(tasks, taskId, copy(loaded));
+        }
+        return loaded;
+    }
+
+    @Override
+    public List<ScheduledTask> getTasksByUser(String userName, String projectName) {
+        return delegate.getTasksByUser(userName, projectName);
+    }
+
+    @Override
+    public List<ScheduledTask> getActiveTasks() {
+        return delegate.getActiveTasks();
+    }
+
+    @Override
+    public boolean updateTaskStatus(String taskId, String status) {
+        return updateCachedTask(taskId, delegate.updateTaskStatus(taskId, status), task -> task.setStatus(status));
+    }
+
+    @Override
+    public boolean updateNextRunTime(String taskId, long nextRunAt, long lastRunAt) {
+        return updateCachedTask(taskId, delegate.updateNextRunTime(taskId, nextRunAt, lastRunAt), task -> {
+            task.setNextRunAt(nextRunAt);
+            task.setLastRunAt(lastRunAt);
+        });
+    }
+
+    @Override
+    public boolean updateTaskEnabled(String taskId, boolean enabled) {
+        return updateCachedTask(taskId, delegate.updateTaskEnabled(taskId, enabled), task -> task.setEnabled(enabled));
+    }
+
+    /**
+     * Apply a successful write to the cached task, or evict it if the write failed.
+     */
+    private boolean updateCachedTask(String taskId, boolean updated, Consumer<ScheduledTask> change) {
+        synchronized (tasks) {
+            Cached<ScheduledTask> cached = tasks.get(taskId);
+            if (cached != null) {
+                if (updated) {
+                    change.accept(cached.value);
+                } else {
+                    tasks.remove(taskId);
+                }
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean deleteTask(String taskId) {
+        boolean deleted = delegate.deleteTask(taskId);
+        evict(tasks, taskId);
+        return deleted;
+    }
+
+    @Override
+    public boolean recordExecution(TaskExecution execution) {
+        return delegate.recordExecution(execution);
+    }
+
+    @Override
+    public List<TaskExecution> getTaskExecutions(String taskId, int limit) {
+        return delegate.getTaskExecutions(taskId, limit);
+    }
+
+    @Override
+    public boolean recordToolMetrics(List<ToolMetricsRollup> rollups) {
+        return delegate.recordToolMetrics(rollups);
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (shutDown) {
+                return;
+            }
+            retired = true;
+            shutDown = true;
+        }
+
+        flusher.shutdown();
+        try {
+            if (!flusher.awaitTermination(10, TimeUnit.SECONDS)) {
+                flusher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            flusher.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        flushTouches();
+        delegate.shutdown();
+    }
+
+    // ---- Cache helpers ----
+
+    private static <T> T get(LruMap<T> map, String id) {
+        synchronized (map) {
+            Cached<T> cached = map.get(id);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.isExpired(System.currentTimeMillis())) {
+                map.remove(id);
+                return null;
+            }
+            return cached.value;
+        }
+    }
+
+    private static <T> void put(LruMap<T> map, String id, T value) {
+        synchronized (map) {
+            map.put(id, new Cached<>(value, System.currentTimeMillis()));
+        }
+    }
+
+    private static <T> void evict(LruMap<T> map, String id) {
+        synchronized (map) {
+            map.remove(id);
+        }
+    }
+
+    private static Conversation copy(Conversation c) {
+        return new Conversation(c.getId(), c.getUserName(), c.getProjectName(), c.getTitle(), c.getCreatedAt(), c.getLastUpdatedAt());
+    }
+
+    private static ScheduledTask copy(ScheduledTask t) {
+        ScheduledTask copy = new ScheduledTask(t.getId(), t.getUserName(), t.getProjectName(), t.getTaskDescription(),
+            t.getConversationId(), t.getPrompt(), t.getCronExpression(), t.getLastRunAt(), t.getNextRunAt(),
+            t.getStatus(), t.getResultStorage(), t.getCreatedAt(), t.isEnabled());
+        copy.setKeepRuns(t.getKeepRuns());
+        return copy;
+    }
+
+    /**
+     * Session over the backing store's session that keeps the conversation cache consistent
+     * with writes made through it.
+     */
+    private class CachingStoreSession implements StoreSession {
+
+        private final StoreSession session;
+
+        CachingStoreSession(StoreSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public boolean createConversation(Conversation conversation) throws StoreException {
+            return session.createConversation(conversation);
+        }
+
+        @Override
+        public Conversation findConversation(String id) throws StoreException {
+            return session.findConversation(id);
+        }
+
+        @Override
+        public boolean updateConversation(Conversation conversation) throws StoreException {
+            evict(conversations, conversation.getId());
+            return session.updateConversation(conversation);
+        }
+
+        @Override
+        public boolean createMessage(Message message) throws StoreException {
+            return session.createMessage(message);
+        }
+
+        @Override
+        public List<Message> listMessages(String conversationId, int limit) throws StoreException {
+            return session.listMessages(conversationId, limit);
+        }
+
+        @Override
+        public int createDebugLogs(List<DebugLog> debugLogs) {
+            return session.createDebugLogs(debugLogs);
+        }
+
+        @Override
+        public void commit() throws StoreException {
+            session.commit();
+        }
+
+        @Override
+        public void release() throws StoreException {
+            session.release();
+        }
+
+        @Override
+        public int getCheckoutCount() {
+            return session.getCheckoutCount();
+        }
+
+        @Override
+        public void close() {
+            session.close();
+        }
+    }
+}
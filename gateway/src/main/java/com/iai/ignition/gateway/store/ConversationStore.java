@@ -0,0 +1,143 @@
+package com.iai.ignition.gateway.store;
+
+import com.iai.ignition.common.model.Conversation;
+import com.iai.ignition.common.model.DebugLog;
+import com.iai.ignition.common.model.Message;
+import com.iai.ignition.common.model.ScheduledTask;
+import com.iai.ignition.common.model.TaskExecution;
+import com.iai.ignition.gateway.metrics.ToolMetricsRollup;
+
+import java.util.List;
+
+/**
+ * Persistence for conversations, messages, debug logs and scheduled tasks.
+ *
+ * Implementations: {@link JdbcConversationStore} over the configured database connection and
+ * {@link EmbeddedConversationStore}, an append-only log under the gateway data directory for
+ * gateways without a database. The active store is owned by the gateway hook.
+ *
+ * Single operations follow the DAO conventions: errors are logged and reported as false, null
+ * or an empty list. Operations that belong together go through a {@link StoreSession}.
+ */
+public interface ConversationStore {
+
+    /**
+     * Short backend name for logging and status ("database" or "embedded").
+     */
+    String getName();
+
+    /**
+     * Open a session for a group of related operations.
+     */
+    StoreSession openSession() throws StoreException;
+
+    // Conversations
+
+    boolean createConversation(Conversation conversation);
+
+    Conversation findConversation(String id);
+
+    List<Conversation> listConversationsByUser(String userName, int limit);
+
+    List<Conversation> listConversationsByProject(String projectName, int limit);
+
+    boolean updateConversation(Conversation conversation);
+
+    /**
+     * Record activity on a conversation by moving its last updated time forward.
+     * Stores may defer and coalesce these writes.
+     */
+    default boolean touchConversation(String id, long lastUpdatedAt) {
+        Conversation conversation = findConversation(id);
+        if (conversation == null) {
+            return false;
+        }
+        conversation.setLastUpdatedAt(lastUpdatedAt);
+        return updateConversation(conversation);
+    }
+
+    /**
+     * Delete a conversation with its messages and debug logs.
+     */
+    boolean deleteConversation(String id);
+
+    // Messages
+
+    boolean createMessage(Message message);
+
+    /**
+     * List messages for a conversation without their tool calls and results, ordered by timestamp.
+     *
+     * @param limit Maximum number of messages to return (0 for all)
+     */
+    List<Message> listMessages(String conversationId, int limit);
+
+    /**
+     * List messages for a conversation including their tool calls and results, ordered by timestamp.
+     *
+     * @param limit Maximum number of messages to return (0 for all)
+     */
+    List<Message> listMessagesWithTools(String conversationId, int limit);
+
+    /**
+     * Load only the tool calls and results of a message.
+     *
+     * @return A message holding only its ID, tool calls and tool results, or null if not found
+     */
+    Message findToolsForMessage(String messageId);
+
+    int countMessages(String conversationId);
+
+    // Debug logs
+
+    List<DebugLog> findDebugLogs(String conversationId);
+
+    // Scheduled tasks
+
+    boolean createTask(ScheduledTask task);
+
+    ScheduledTask getTask(String taskId);
+
+    List<ScheduledTask> getTasksByUser(String userName, String projectName);
+
+    /**
+     * Enabled tasks ordered by next run time.
+     */
+    List<ScheduledTask> getActiveTasks();
+
+    boolean updateTaskStatus(String taskId, String status);
+
+    boolean updateNextRunTime(String taskId, long nextRunAt, long lastRunAt);
+
+    boolean updateTaskEnabled(String taskId, boolean enabled);
+
+    /**
+     * Delete a task with its execution history.
+     */
+    boolean deleteTask(String taskId);
+
+    boolean recordExecution(TaskExecution execution);
+
+    /**
+     * Most recent executions of a task first.
+     *
+     * @param limit Maximum number of executions to return (0 for all)
+     */
+    List<TaskExecution> getTaskExecutions(String taskId, int limit);
+
+    // Tool metrics
+
+    /**
+     * Save periodic tool metrics rollups. Stores that don't keep metrics history ignore them.
+     *
+     * @return true if the rollups were saved
+     */
+    default boolean recordToolMetrics(List<ToolMetricsRollup> rollups) {
+        return false;
+    }
+
+    /**
+     * Flush and release the store. Called when the store is replaced or the module shuts down.
+     */
+    void shutdown();
+}
@@ -0,0 +1,1192 @@
+package com.iai.ignition.gateway.store;
+
+import com.iai.ignition.common.model.Conversation;
+import com.iai.ignition.common.model.DebugLog;
+import com.iai.ignition.common.model.Message;
+import com.iai.ignition.common.model.ScheduledTask;
+import com.iai.ignition.common.model.TaskExecution;
+import com.inductiveautomation.ignition.common.gson.Gson;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Conversation store kept in an {@link AppendOnlyLog} under the gateway data directory, for
+ * gateways without a database connection.
+ *
+ * Every change is appended as a record (a full entity as JSON, or a delete). Conversations and
+ * tasks are indexed in memory by value; messages, tool payloads, debug logs and task runs are
+ * indexed by their position in the log and read from the mapped segments on demand. The index
+ * is rebuilt by replaying the log on startup.
+ *
+ * Writes are visible and survive a gateway crash as soon as they return; they are flushed to
+ * disk once a second and on shutdown. Sessions are not transactional. The log is compacted in
+ * the background once most of it is dead space (superseded or deleted records).
+ *
+ * Retention finds expired records with the {@code findExpired} methods and writes delete
+ * records for them in batches; compaction then reclaims the space.
+ */
+public class EmbeddedConversationStore implements ConversationStore {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.store.EmbeddedConversationStore");
+    private static final Gson gson = new Gson();
+
+    private static final int SEGMENT_BYTES = 32 * 1024 * 1024;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    private static final long COMPACTION_CHECK_MINUTES = 10;
+
+    // Record types. Never renumber: they are persisted.
+    private static final byte CONVERSATION = 1;
+    private static final byte CONVERSATION_DELETE = 2;
+    private static final byte MESSAGE = 3;
+    private static final byte MESSAGE_TOOLS = 4;
+    private static final byte DEBUG_LOG = 5;
+    private static final byte TASK = 6;
+    private static final byte TASK_DELETE = 7;
+    private static final byte EXECUTION = 8;
+    private static final byte DEBUG_LOG_DELETE = 9;
+    private static final byte EXECUTION_DELETE = 10;
+
+    /**
+     * Index entry for a value kept in memory.
+     */
+    private static final class Indexed<T> {
+        final T value;
+        final LogLocation location;
+
+        Indexed(T value, LogLocation location) {
+            this.value = value;
+            this.location = location;
+        }
+    }
+
+    /**
+     * Index entry for a record read from the log on demand, ordered by a timestamp.
+     */
+    private static final class Entry {
+        final String id;
+        final long timestamp;
+        final LogLocation location;
+
+        Entry(String id, long timestamp, LogLocation location) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.location = location;
+        }
+    }
+
+    private static final Comparator<Entry> BY_TIMESTAMP = Comparator.comparingLong(e -> e.timestamp);
+
+    private final Path directory;
+    private final AppendOnlyLog log;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final Map<String, Indexed<Conversation>> conversations = new HashMap<>();
+    private final Map<String, List<Entry>> messagesByConversation = new HashMap<>();
+    private final Map<String, String> conversationByMessage = new HashMap<>();
+    private final Map<String, LogLocation> messageTools = new HashMap<>();
+    private final Map<String, List<Entry>> debugLogsByMessage = new HashMap<>();
+    private final Map<String, Indexed<ScheduledTask>> tasks = new HashMap<>();
+    private final Map<String, List<Entry>> executionsByTask = new HashMap<>();
+    private long totalBytes;
+    private long deadBytes;
+
+    private ScheduledExecutorService maintenance;
+
+    private EmbeddedConversationStore(Path directory) {
+        this.directory = directory;
+        this.log = new AppendOnlyLog(directory, SEGMENT_BYTES);
+    }
+
+    /**
+     * Open the store in a directory, replaying its log, and start background flushing and compaction.
+     *
+     * @param directory Store directory, created if missing
+     * @return The open store
+     */
+    public static EmbeddedConversationStore open(Path directory) throws IOException {
+        EmbeddedConversationStore store = new EmbeddedConversationStore(directory);
+        long start = System.currentTimeMillis();
+
+        store.log.open((type, payload, location) -> store.apply(type, store.decode(type, payload), location));
+
+        logger.info("Embedded conversation store opened at " + directory + " in " + (System.currentTimeMillis() - start) + "ms: "
+            + store.conversations.size() + " conversations, " + store.tasks.size() + " tasks, "
+            + store.log.getSegmentCount() + " segment(s)");
+
+        store.startMaintenance();
+        return store;
+    }
+
+    @Override
+    public String getName() {
+        return "embedded";
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public StoreSession openSession() {
+        return new EmbeddedStoreSession();
+    }
+
+    // ---- Conversations ----
+
+    @Override
+    public boolean createConversation(Conversation conversation) {
+        try {
+            return doCreateConversation(conversation);
+        } catch (IOException e) {
+            logger.error("Error creating conversation", e);
+            return false;
+        }
+    }
+
+    private boolean doCreateConversation(Conversation conversation) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (conversations.containsKey(conversation.getId())) {
+                return false;
+            }
+            write(CONVERSATION, conversation);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Conversation findConversation(String id) {
+        lock.readLock().lock();
+        try {
+            Indexed<Conversation> indexed = conversations.get(id);
+            return indexed != null ? copy(indexed.value, Conversation.class) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Conversation> listConversationsByUser(String userName, int limit) {
+        return listConversations(c -> userName != null && userName.equals(c.getUserName()), limit);
+    }
+
+    @Override
+    public List<Conversation> listConversationsByProject(String projectName, int limit) {
+        return listConversations(c -> projectName != null && projectName.equals(c.getProjectName()), limit);
+    }
+
+    private List<Conversation> listConversations(Predicate<Conversation> filter, int limit) {
+        lock.readLock().lock();
+        try {
+            return conversations.values().stream()
+                .map(indexed -> indexed.value)
+                .filter(filter)
+                .sorted(Comparator.comparingLong(Conversation::getLastUpdatedAt).reversed())
+                .limit(limit > 0 ? limit : Long.MAX_VALUE)
+                .map(c -> copy(c, Conversation.class))
+                .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateConversation(Conversation conversation) {
+        try {
+            return doUpdateConversation(conversation);
+        } catch (IOException e) {
+            logger.error("Error updating conversation", e);
+            return false;
+        }
+    }
+
+    private boolean doUpdateConversation(Conversation conversation) throws IOException {
+        lock.writeLock().lock();
+        try {
+            Indexed<Conversation> existing = conversations.get(conversation.getId());
+            if (existing == null) {
+                return false;
+            }
+            // Only title and last updated time change, as in the database store
+            Conversation updated = copy(existing.value, Conversation.class);
+            updated.setTitle(conversation.getTitle());
+            updated.setLastUpdatedAt(conversation.getLastUpdatedAt());
+            write(CONVERSATION, updated);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteConversation(String id) {
+        lock.writeLock().lock();
+        try {
+            if (!conversations.containsKey(id)) {
+                return false;
+            }
+            write(CONVERSATION_DELETE, id);
+            return true;
+        } catch (IOException e) {
+            logger.error("Error deleting conversation", e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find conversations outside an age, count or size limit, least recently updated first.
+     * The size of a conversation is the log space taken by its messages and their tool payloads.
+     *
+     * @param cutoff Conversations last updated before this are expired, or 0 for no age limit
+     * @param maxConversations Conversations to keep, or 0 for no limit
+     * @param maxBytes Message bytes to keep, or 0 for no limit
+     * @return The expired conversation ids, for {@link #deleteConversations}
+     */
+    public List<String> findExpiredConversations(long cutoff, int maxConversations, long maxBytes) {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> sizes = new HashMap<>();
+            long bytes = 0;
+            for (Map.Entry<String, List<Entry>> e : messagesByConversation.entrySet()) {
+                long size = 0;
+                for (Entry message : e.getValue()) {
+                    size += message.location.size;
+                    LogLocation tools = messageTools.get(message.id);
+                    if (tools != null) {
+                        size += tools.size;
+                    }
+                }
+                sizes.put(e.getKey(), size);
+                bytes += size;
+            }
+
+            List<Conversation> oldestFirst = conversations.values().stream()
+                .map(indexed -> indexed.value)
+                .sorted(Comparator.comparingLong(Conversation::getLastUpdatedAt))
+                .collect(Collectors.toList());
+
+            List<String> expired = new ArrayList<>();
+            int remaining = oldestFirst.size();
+            for (Conversation conversation : oldestFirst) {
+                if (!isExpired(conversation.getLastUpdatedAt(), cutoff, remaining, maxConversations, bytes, maxBytes)) {
+                    break;
+                }
+                expired.add(conversation.getId());
+                remaining--;
+                bytes -= sizes.getOrDefault(conversation.getId(), 0L);
+            }
+            return expired;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete conversations with their messages and debug logs, as {@link #deleteConversation} does
+     * for one. Conversations already gone are skipped.
+     *
+     * @return Conversations deleted
+     */
+    public int deleteConversations(List<String> ids) {
+        lock.writeLock().lock();
+        try {
+            int deleted = 0;
+            for (String id : ids) {
+                if (conversations.containsKey(id)) {
+                    write(CONVERSATION_DELETE, id);
+                    deleted++;
+                }
+            }
+            return deleted;
+        } catch (IOException e) {
+            logger.error("Error deleting conversations", e);
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---- Messages ----
+
+    @Override
+    public boolean createMessage(Message message) {
+        try {
+            return doCreateMessage(message);
+        } catch (IOException e) {
+            logger.error("Error creating message", e);
+            return false;
+        }
+    }
+
+    private boolean doCreateMessage(Message message) throws IOException {
+        Message content = new Message();
+        content.setId(message.getId());
+        content.setConversationId(message.getConversationId());
+        content.setRole(message.getRole());
+        content.setContent(message.getContent());
+        content.setInputTokens(message.getInputTokens());
+        content.setOutputTokens(message.getOutputTokens());
+        content.setTimestamp(message.getTimestamp());
+
+        lock.writeLock().lock();
+        try {
+            write(MESSAGE, content);
+
+            if (message.getToolCalls() != null || message.getToolResults() != null) {
+                Message tools = new Message();
+                tools.setId(message.getId());
+                tools.setToolCalls(message.getToolCalls());
+                tools.setToolResults(message.getToolResults());
+                write(MESSAGE_TOOLS, tools);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> listMessages(String conversationId, int limit) {
+        try {
+            return doListMessages(conversationId, limit, false);
+        } catch (IOException e) {
+            logger.error("Error listing messages by conversation", e);
+            return new ArrayList<>();
+        }
+    }
+
+    @Override
+    public List<Message> listMessagesWithTools(String conversationId, int limit) {
+        try {
+            return doListMessages(conversationId, limit, true);
+        } catch (IOException e) {
+            logger.error("Error listing messages with tools by conversation", e);
+            return new ArrayList<>();
+        }
+    }
+
+    private List<Message> doListMessages(String conversationId, int limit, boolean withTools) throws IOException {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            List<Entry> entries = messagesByConversation.get(conversationId);
+            if (entries == null) {
+                return messages;
+            }
+
+            // Oldest first, as the database store's ORDER BY timestamp ASC LIMIT
+            int count = limit > 0 ? Math.min(limit, entries.size()) : entries.size();
+            for (Entry entry : entries.subList(0, count)) {
+                Message message = read(entry.location, Message.class);
+                if (withTools) {
+                    attachTools(message);
+                }
+                messages.add(message);
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message findToolsForMessage(String messageId) {
+        lock.readLock().lock();
+        try {
+            LogLocation location = messageTools.get(messageId);
+            if (location != null) {
+                return read(location, Message.class);
+            }
+            if (conversationByMessage.containsKey(messageId)) {
+                // Message exists but has no tool payloads
+                Message message = new Message();
+                message.setId(messageId);
+                return message;
+            }
+            return null;
+        } catch (IOException e) {
+            logger.error("Error loading tools for message", e);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void attachTools(Message message) throws IOException {
+        LogLocation location = messageTools.get(message.getId());
+        if (location != null) {
+            Message tools = read(location, Message.class);
+            message.setToolCalls(tools.getToolCalls());
+            message.setToolResults(tools.getToolResults());
+        }
+    }
+
+    @Override
+    public int countMessages(String conversationId) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = messagesByConversation.get(conversationId);
+            return entries != null ? entries.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- Debug logs ----
+
+    private int doCreateDebugLogs(List<DebugLog> debugLogs) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (DebugLog debugLog : debugLogs) {
+                write(DEBUG_LOG, debugLog);
+            }
+            return debugLogs.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<DebugLog> findDebugLogs(String conversationId) {
+        lock.readLock().lock();
+        try {
+            List<Entry> logEntries = new ArrayList<>();
+            for (Entry message : messagesByConversation.getOrDefault(conversationId, new ArrayList<>())) {
+                logEntries.addAll(debugLogsByMessage.getOrDefault(message.id, new ArrayList<>()));
+            }
+            logEntries.sort(BY_TIMESTAMP);
+
+            List<DebugLog> logs = new ArrayList<>();
+            for (Entry entry : logEntries) {
+                logs.add(read(entry.location, DebugLog.class));
+            }
+            return logs;
+        } catch (IOException e) {
+            logger.error("Error querying debug logs for conversation", e);
+            return new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find debug log entries outside an age, count or size limit, oldest first.
+     *
+     * @param cutoff Entries logged before this are expired, or 0 for no age limit
+     * @param maxEntries Entries to keep, or 0 for no limit
+     * @param maxBytes Log bytes to keep, or 0 for no limit
+     * @return The expired entries' ids, message ids and timestamps, for {@link #deleteDebugLogs}
+     */
+    public List<DebugLog> findExpiredDebugLogs(long cutoff, int maxEntries, long maxBytes) {
+        lock.readLock().lock();
+        try {
+            List<DebugLog> all = new ArrayList<>();
+            long bytes = 0;
+            for (Map.Entry<String, List<Entry>> e : debugLogsByMessage.entrySet()) {
+                for (Entry entry : e.getValue()) {
+                    all.add(new DebugLog(entry.id, e.getKey(), null, null, entry.timestamp));
+                    bytes += entry.location.size;
+                }
+            }
+            all.sort(Comparator.comparingLong(DebugLog::getTimestamp));
+
+            List<DebugLog> expired = new ArrayList<>();
+            int remaining = all.size();
+            for (DebugLog debugLog : all) {
+                if (!isExpired(debugLog.getTimestamp(), cutoff, remaining, maxEntries, bytes, maxBytes)) {
+                    break;
+                }
+                expired.add(debugLog);
+                remaining--;
+                bytes -= locate(debugLogsByMessage.get(debugLog.getMessageId()), debugLog.getId(), debugLog.getTimestamp()).location.size;
+            }
+            return expired;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete debug log entries found by {@link #findExpiredDebugLogs}. Entries already gone are skipped.
+     *
+     * @return Entries deleted
+     */
+    public int deleteDebugLogs(List<DebugLog> debugLogs) {
+        lock.writeLock().lock();
+        try {
+            int deleted = 0;
+            for (DebugLog debugLog : debugLogs) {
+                if (locate(debugLogsByMessage.get(debugLog.getMessageId()), debugLog.getId(), debugLog.getTimestamp()) != null) {
+                    write(DEBUG_LOG_DELETE, new DebugLog(debugLog.getId(), debugLog.getMessageId(), null, null, debugLog.getTimestamp()));
+                    deleted++;
+                }
+            }
+            return deleted;
+        } catch (IOException e) {
+            logger.error("Error deleting debug logs", e);
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---- Scheduled tasks ----
+
+    @Override
+    public boolean createTask(ScheduledTask task) {
+        lock.writeLock().lock();
+        try {
+            if (tasks.containsKey(task.getId())) {
+                return false;
+            }
+            write(TASK, task);
+            return true;
+        } catch (IOException e) {
+            logger.error("Error creating scheduled task", e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ScheduledTask getTask(String taskId) {
+        lock.readLock().lock();
+        try {
+            Indexed<ScheduledTask> indexed = tasks.get(taskId);
+            return indexed != null ? copy(indexed.value, ScheduledTask.class) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ScheduledTask> getTasksByUser(String userName, String projectName) {
+        lock.readLock().lock();
+        try {
+            return tasks.values().stream()
+                .map(indexed -> indexed.value)
+                .filter(t -> userName != null && userName.equals(t.getUserName())
+                    && projectName != null && projectName.equals(t.getProjectName()))
+                .sorted(Comparator.comparingLong(ScheduledTask::getCreatedAt).reversed())
+                .map(t -> copy(t, ScheduledTask.class))
+                .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ScheduledTask> getActiveTasks() {
+        lock.readLock().lock();
+        try {
+            return tasks.values().stream()
+                .map(indexed -> indexed.value)
+                .filter(ScheduledTask::isEnabled)
+                .sorted(Comparator.comparingLong(ScheduledTask::getNextRunAt))
+                .map(t -> copy(t, ScheduledTask.class))
+                .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateTaskStatus(String taskId, String status) {
+        return updateTask(taskId, task -> task.setStatus(status));
+    }
+
+    @Override
+    public boolean updateNextRunTime(String taskId, long nextRunAt, long lastRunAt) {
+        return updateTask(taskId, task -> {
+            task.setNextRunAt(nextRunAt);
+            task.setLastRunAt(lastRunAt);
+        });
+    }
+
+    @Override
+    public boolean updateTaskEnabled(String taskId, boolean enabled) {
+        return updateTask(taskId, task -> task.setEnabled(enabled));
+    }
+
+    private boolean updateTask(String taskId, Consumer<ScheduledTask> change) {
+        lock.writeLock().lock();
+        try {
+            Indexed<ScheduledTask> existing = tasks.get(taskId);
+            if (existing == null) {
+                return false;
+            }
+            ScheduledTask updated = copy(existing.value, ScheduledTask.class);
+            change.accept(updated);
+            write(TASK, updated);
+            return true;
+        } catch (IOException e) {
+            logger.error("Error updating scheduled task", e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteTask(String taskId) {
+        lock.writeLock().lock();
+        try {
+            if (!tasks.containsKey(taskId)) {
+                return false;
+            }
+            write(TASK_DELETE, taskId);
+            return true;
+        } catch (IOException e) {
+            logger.error("Error deleting scheduled task", e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean recordExecution(TaskExecution execution) {
+        lock.writeLock().lock();
+        try {
+            write(EXECUTION, execution);
+            return true;
+        } catch (IOException e) {
+            logger.error("Error recording task execution", e);
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TaskExecution> getTaskExecutions(String taskId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<TaskExecution> executions = new ArrayList<>();
+            List<Entry> entries = executionsByTask.get(taskId);
+            if (entries == null) {
+                return executions;
+            }
+
+            // Most recent first
+            int count = limit > 0 ? Math.min(limit, entries.size()) : entries.size();
+            for (int i = entries.size() - 1; i >= entries.size() - count; i--) {
+                executions.add(read(entries.get(i).location, TaskExecution.class));
+            }
+            return executions;
+        } catch (IOException e) {
+            logger.error("Error getting task executions", e);
+            return new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find task runs past a task's run count or older than a cutoff, oldest first.
+     *
+     * @param cutoff Runs before this are expired, or 0 for no age limit
+     * @param defaultKeepRuns Runs to keep per task when the task does not set its own, or 0 for no limit
+     * @return The expired runs, for {@link #deleteTaskRuns}
+     */
+    public List<TaskExecution> findExpiredTaskRuns(long cutoff, int defaultKeepRuns) {
+        lock.readLock().lock();
+        try {
+            List<TaskExecution> expired = new ArrayList<>();
+            for (Map.Entry<String, List<Entry>> e : executionsByTask.entrySet()) {
+                Indexed<ScheduledTask> task = tasks.get(e.getKey());
+                Integer keepRuns = task != null ? task.value.getKeepRuns() : null;
+                int keep = keepRuns != null ? keepRuns : defaultKeepRuns;
+
+                List<Entry> runs = e.getValue();
+                int remaining = runs.size();
+                for (Entry run : runs) {
+                    if (!isExpired(run.timestamp, cutoff, remaining, keep, 0, 0)) {
+                        break;
+                    }
+                    expired.add(read(run.location, TaskExecution.class));
+                    remaining--;
+                }
+            }
+            expired.sort(Comparator.comparingLong(TaskExecution::getExecutedAt));
+            return expired;
+        } catch (IOException e) {
+            logger.error("Error finding expired task runs", e);
+            return new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete task runs found by {@link #findExpiredTaskRuns}. Runs already gone are skipped.
+     * The conversations the runs created are left to the caller.
+     *
+     * @return Runs deleted
+     */
+    public int deleteTaskRuns(List<TaskExecution> executions) {
+        lock.writeLock().lock();
+        try {
+            int deleted = 0;
+            for (TaskExecution execution : executions) {
+                if (locate(executionsByTask.get(execution.getTaskId()), execution.getId(), execution.getExecutedAt()) != null) {
+                    TaskExecution stub = new TaskExecution();
+                    stub.setId(execution.getId());
+                    stub.setTaskId(execution.getTaskId());
+                    stub.setExecutedAt(execution.getExecutedAt());
+                    write(EXECUTION_DELETE, stub);
+                    deleted++;
+                }
+            }
+            return deleted;
+        } catch (IOException e) {
+            logger.error("Error deleting task runs", e);
+            return 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Whether the oldest remaining record is outside an age, count or size limit (each 0 for none).
+     */
+    private static boolean isExpired(long timestamp, long cutoff, long count, long maxCount, long bytes, long maxBytes) {
+        return (cutoff > 0 && timestamp < cutoff)
+            || (maxCount > 0 && count > maxCount)
+            || (maxBytes > 0 && bytes > maxBytes);
+    }
+
+    // ---- Log and index ----
+
+    /**
+     * Append a record and apply it to the index. Caller holds the write lock.
+     */
+    private void write(byte type, Object value) throws IOException {
+        byte[] payload = encode(value);
+        LogLocation location = log.append(type, payload);
+        apply(type, value, location);
+    }
+
+    private byte[] encode(Object value) {
+        String text = value instanceof String ? (String) value : gson.toJson(value);
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Object decode(byte type, byte[] payload) {
+        String text = new String(payload, StandardCharsets.UTF_8);
+        switch (type) {
+            case CONVERSATION:
+                return gson.fromJson(text, Conversation.class);
+            case MESSAGE:
+            case MESSAGE_TOOLS:
+                return gson.fromJson(text, Message.class);
+            case DEBUG_LOG:
+            case DEBUG_LOG_DELETE:
+                return gson.fromJson(text, DebugLog.class);
+            case TASK:
+                return gson.fromJson(text, ScheduledTask.class);
+            case EXECUTION:
+            case EXECUTION_DELETE:
+                return gson.fromJson(text, TaskExecution.class);
+            default:
+                return text;
+        }
+    }
+
+    private <T> T read(LogLocation location, Class<T> type) throws IOException {
+        return gson.fromJson(new String(log.read(location), StandardCharsets.UTF_8), type);
+    }
+
+    private <T> T copy(T value, Class<T> type) {
+        return gson.fromJson(gson.toJson(value), type);
+    }
+
+    /**
+     * Apply a record to the in-memory index, used both for new writes and when replaying the log.
+     */
+    private void apply(byte type, Object value, LogLocation location) {
+        totalBytes += location.size;
+
+        switch (type) {
+            case CONVERSATION: {
+                Conversation conversation = (Conversation) value;
+                Indexed<Conversation> previous = conversations.put(conversation.getId(), new Indexed<>(conversation, location));
+                if (previous != null) {
+                    deadBytes += previous.location.size;
+                }
+                break;
+            }
+            case CONVERSATION_DELETE: {
+                String id = (String) value;
+                Indexed<Conversation> previous = conversations.remove(id);
+                if (previous != null) {
+                    deadBytes += previous.location.size;
+                }
+                List<Entry> messages = messagesByConversation.remove(id);
+                if (messages != null) {
+                    for (Entry message : messages) {
+                        deadBytes += message.location.size;
+                        conversationByMessage.remove(message.id);
+                        LogLocation tools = messageTools.remove(message.id);
+                        if (tools != null) {
+                            deadBytes += tools.size;
+                        }
+                        List<Entry> logs = debugLogsByMessage.remove(message.id);
+                        if (logs != null) {
+                            for (Entry entry : logs) {
+                                deadBytes += entry.location.size;
+                            }
+                        }
+                    }
+                }
+                // The delete record itself is not needed after compaction
+                deadBytes += location.size;
+                break;
+            }
+            case MESSAGE: {
+                Message message = (Message) value;
+                conversationByMessage.put(message.getId(), message.getConversationId());
+                replaced(insertSorted(messagesByConversation.computeIfAbsent(message.getConversationId(), k -> new ArrayList<>()),
+                    new Entry(message.getId(), message.getTimestamp(), location)));
+                break;
+            }
+            case MESSAGE_TOOLS: {
+                LogLocation previous = messageTools.put(((Message) value).getId(), location);
+                if (previous != null) {
+                    deadBytes += previous.size;
+                }
+                break;
+            }
+            case DEBUG_LOG: {
+                DebugLog debugLog = (DebugLog) value;
+                replaced(insertSorted(debugLogsByMessage.computeIfAbsent(debugLog.getMessageId(), k -> new ArrayList<>()),
+                    new Entry(debugLog.getId(), debugLog.getTimestamp(), location)));
+                break;
+            }
+            case TASK: {
+                ScheduledTask task = (ScheduledTask) value;
+                Indexed<ScheduledTask> previous = tasks.put(task.getId(), new Indexed<>(task, location));
+                if (previous != null) {
+                    deadBytes += previous.location.size;
+                }
+                break;
+            }
+            case TASK_DELETE: {
+                String id = (String) value;
+                Indexed<ScheduledTask> previous = tasks.remove(id);
+                if (previous != null) {
+                    deadBytes += previous.location.size;
+                }
+                List<Entry> executions = executionsByTask.remove(id);
+                if (executions != null) {
+                    for (Entry entry : executions) {
+                        deadBytes += entry.location.size;
+                    }
+                }
+                deadBytes += location.size;
+                break;
+            }
+            case EXECUTION: {
+                TaskExecution execution = (TaskExecution) value;
+                replaced(insertSorted(executionsByTask.computeIfAbsent(execution.getTaskId(), k -> new ArrayList<>()),
+                    new Entry(execution.getId(), execution.getExecutedAt(), location)));
+                break;
+            }
+            case DEBUG_LOG_DELETE: {
+                DebugLog debugLog = (DebugLog) value;
+                List<Entry> logs = debugLogsByMessage.get(debugLog.getMessageId());
+                replaced(remove(logs, debugLog.getId(), debugLog.getTimestamp()));
+                if (logs != null && logs.isEmpty()) {
+                    debugLogsByMessage.remove(debugLog.getMessageId());
+                }
+                deadBytes += location.size;
+                break;
+            }
+            case EXECUTION_DELETE: {
+                TaskExecution execution = (TaskExecution) value;
+                replaced(remove(executionsByTask.get(execution.getTaskId()), execution.getId(), execution.getExecutedAt()));
+                deadBytes += location.size;
+                break;
+            }
+            default:
+                logger.warn("Skipping unknown record type " + type + " in embedded store log");
+                deadBytes += location.size;
+        }
+    }
+
+    private void replaced(Entry previous) {
+        if (previous != null) {
+            deadBytes += previous.location.size;
+        }
+    }
+
+    /**
+     * Insert keeping timestamp order; entries almost always arrive in order, so scan from the end.
+     *
+     * An entry with the same id replaces the existing one. Messages, debug logs and executions
+     * are written once, so this only happens on replay after a compaction was interrupted,
+     * when both the old record and its copy are still in the log. A copy has the same
+     * timestamp as its original, so only entries with an equal timestamp are checked.
+     *
+     * @return The replaced entry, or null
+     */
+    private static Entry insertSorted(List<Entry> entries, Entry entry) {
+        int index = entries.size();
+        while (index > 0 && entries.get(index - 1).timestamp > entry.timestamp) {
+            index--;
+        }
+        for (int i = index - 1; i >= 0 && entries.get(i).timestamp == entry.timestamp; i--) {
+            if (entries.get(i).id.equals(entry.id)) {
+                return entries.set(i, entry);
+            }
+        }
+        entries.add(index, entry);
+        return null;
+    }
+
+    /**
+     * Find an entry by id, scanning only the entries with its timestamp.
+     *
+     * @return The entry, or null if the list is null or does not contain it
+     */
+    private static Entry locate(List<Entry> entries, String id, long timestamp) {
+        int index = entries != null ? indexOf(entries, id, timestamp) : -1;
+        return index >= 0 ? entries.get(index) : null;
+    }
+
+    /**
+     * Remove an entry by id.
+     *
+     * @return The removed entry, or null if the list is null or does not contain it
+     */
+    private static Entry remove(List<Entry> entries, String id, long timestamp) {
+        int index = entries != null ? indexOf(entries, id, timestamp) : -1;
+        return index >= 0 ? entries.remove(index) : null;
+    }
+
+    private static int indexOf(List<Entry> entries, String id, long timestamp) {
+        int index = entries.size();
+        while (index > 0 && entries.get(index - 1).timestamp > timestamp) {
+            index--;
+        }
+        for (int i = index - 1; i >= 0 && entries.get(i).timestamp == timestamp; i--) {
+            if (entries.get(i).id.equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ---- Maintenance ----
+
+    private void startMaintenance() {
+        maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "IAI-EmbeddedStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::flushSafely, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::compactIfNeeded, COMPACTION_CHECK_MINUTES, COMPACTION_CHECK_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private void flushSafely() {
+        try {
+            log.force();
+        } catch (Exception e) {
+            logger.error("Error flushing embedded store", e);
+        }
+    }
+
+    /**
+     * Compact when dead records make up more than half the log and at least one segment's worth.
+     */
+    private void compactIfNeeded() {
+        long dead;
+        long total;
+        lock.readLock().lock();
+        try {
+            dead = deadBytes;
+            total = totalBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (dead >= SEGMENT_BYTES && dead * 2 > total) {
+            try {
+                compact();
+            } catch (Exception e) {
+                logger.error("Embedded store compaction failed", e);
+            }
+        }
+    }
+
+    /**
+     * Copy live records into new segments and drop the old ones. Blocks other store
+     * operations while it runs.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            long start = System.currentTimeMillis();
+            long before = totalBytes;
+
+            long baseSegment = log.startCompaction();
+            totalBytes = 0;
+            deadBytes = 0;
+
+            // Parents before children so a partial copy replays sensibly
+            for (Map.Entry<String, Indexed<Conversation>> e : conversations.entrySet()) {
+                e.setValue(new Indexed<>(e.getValue().value, copyRecord(CONVERSATION, e.getValue().location)));
+            }
+            for (Map.Entry<String, Indexed<ScheduledTask>> e : tasks.entrySet()) {
+                e.setValue(new Indexed<>(e.getValue().value, copyRecord(TASK, e.getValue().location)));
+            }
+            copyEntries(MESSAGE, messagesByConversation);
+            for (Map.Entry<String, LogLocation> e : messageTools.entrySet()) {
+                e.setValue(copyRecord(MESSAGE_TOOLS, e.getValue()));
+            }
+            copyEntries(DEBUG_LOG, debugLogsByMessage);
+            copyEntries(EXECUTION, executionsByTask);
+
+            log.finishCompaction(baseSegment);
+
+            logger.info("Embedded store compacted from " + before + " to " + totalBytes + " bytes in "
+                + (System.currentTimeMillis() - start) + "ms");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void copyEntries(byte type, Map<String, List<Entry>> index) throws IOException {
+        for (List<Entry> entries : index.values()) {
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                entries.set(i, new Entry(entry.id, entry.timestamp, copyRecord(type, entry.location)));
+            }
+        }
+    }
+
+    private LogLocation copyRecord(byte type, LogLocation location) throws IOException {
+        LogLocation copied = log.append(type, log.read(location));
+        totalBytes += copied.size;
+        return copied;
+    }
+
+    @Override
+    public void shutdown() {
+        if (maintenance != null) {
+            maintenance.shutdown();
+            try {
+                if (!maintenance.awaitTermination(10, TimeUnit.SECONDS)) {
+                    maintenance.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                maintenance.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            log.close();
+            logger.info("Embedded conversation store closed");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Session that applies each write immediately; there is nothing to commit or release.
+     */
+    private class EmbeddedStoreSession implements StoreSession {
+
+        @Override
+        public boolean createConversation(Conversation conversation) throws StoreException {
+            try {
+                return doCreateConversation(conversation);
+            } catch (IOException e) {
+                throw new StoreException("Error creating conversation", e);
+            }
+        }
+
+        @Override
+        public Conversation findConversation(String id) {
+            return EmbeddedConversationStore.this.findConversation(id);
+        }
+
+        @Override
+        public boolean updateConversation(Conversation conversation) throws StoreException {
+            try {
+                return doUpdateConversation(conversation);
+            } catch (IOException e) {
+                throw new StoreException("Error updating conversation", e);
+            }
+        }
+
+        @Override
+        public boolean createMessage(Message message) throws StoreException {
+            try {
+                return doCreateMessage(message);
+            } catch (IOException e) {
+                throw new StoreException("Error creating message", e);
+            }
+        }
+
+        @Override
+        public List<Message> listMessages(String conversationId, int limit) throws StoreException {
+            try {
+                return doListMessages(conversationId, limit, false);
+            } catch (IOException e) {
+                throw new StoreException("Error listing messages by conversation", e);
+            }
+        }
+
+        @Override
+        public int createDebugLogs(List<DebugLog> debugLogs) {
+            try {
+                return doCreateDebugLogs(debugLogs);
+            } catch (IOException e) {
+                logger.error("Failed to save debug logs", e);
+                return 0;
+            }
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public int getCheckoutCount() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
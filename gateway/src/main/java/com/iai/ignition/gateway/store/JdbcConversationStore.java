@@ -0,0 +1,282 @@
+package com.iai.ignition.gateway.store;
+
+import com.iai.ignition.common.model.Conversation;
+import com.iai.ignition.common.model.DebugLog;
+import com.iai.ignition.common.model.Message;
+import com.iai.ignition.common.model.ScheduledTask;
+import com.iai.ignition.common.model.TaskExecution;
+import com.iai.ignition.gateway.metrics.ToolMetricsRollup;
+import com.iai.ignition.gateway.database.ConversationDAO;
+import com.iai.ignition.gateway.database.DebugLogDAO;
+import com.iai.ignition.gateway.database.MessageDAO;
+import com.iai.ignition.gateway.database.TaskDAO;
+import com.iai.ignition.gateway.database.ToolMetricsDAO;
+import com.iai.ignition.gateway.database.UnitOfWork;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.DatasourceManager;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.List;
+
+/**
+ * Conversation store backed by the iai_* tables in a gateway database connection.
+ * Delegates to the static DAOs; sessions are {@link UnitOfWork}s.
+ */
+public class JdbcConversationStore implements ConversationStore {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.store.JdbcConversationStore");
+
+    private final DatasourceManager datasourceManager;
+    private final String databaseConnectionName;
+
+    public JdbcConversationStore(DatasourceManager datasourceManager, String databaseConnectionName) {
+        this.datasourceManager = datasourceManager;
+        this.databaseConnectionName = databaseConnectionName;
+    }
+
+    /**
+     * Name of the database connection this store uses.
+     */
+    public String getDatabaseConnectionName() {
+        return databaseConnectionName;
+    }
+
+    @Override
+    public String getName() {
+        return "database";
+    }
+
+    @Override
+    public StoreSession openSession() throws StoreException {
+        try {
+            return new JdbcStoreSession(UnitOfWork.open(datasourceManager, databaseConnectionName));
+        } catch (SQLException e) {
+            throw new StoreException("Unable to open database session: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean createConversation(Conversation conversation) {
+        return ConversationDAO.create(datasourceManager, databaseConnectionName, conversation);
+    }
+
+    @Override
+    public Conversation findConversation(String id) {
+        return ConversationDAO.findById(datasourceManager, databaseConnectionName, id);
+    }
+
+    @Override
+    public List<Conversation> listConversationsByUser(String userName, int limit) {
+        return ConversationDAO.listByUser(datasourceManager, databaseConnectionName, userName, limit);
+    }
+
+    @Override
+    public List<Conversation> listConversationsByProject(String projectName, int limit) {
+        return ConversationDAO.listByProject(datasourceManager, databaseConnectionName, projectName, limit);
+    }
+
+    @Override
+    public boolean updateConversation(Conversation conversation) {
+        return ConversationDAO.update(datasourceManager, databaseConnectionName, conversation);
+    }
+
+    @Override
+    public boolean deleteConversation(String id) {
+        return ConversationDAO.delete(datasourceManager, databaseConnectionName, id);
+    }
+
+    @Override
+    public boolean createMessage(Message message) {
+        return MessageDAO.create(datasourceManager, databaseConnectionName, message);
+    }
+
+    @Override
+    public List<Message> listMessages(String conversationId, int limit) {
+        return MessageDAO.listByConversation(datasourceManager, databaseConnectionName, conversationId, limit);
+    }
+
+    @Override
+    public List<Message> listMessagesWithTools(String conversationId, int limit) {
+        return MessageDAO.listByConversationWithTools(datasourceManager, databaseConnectionName, conversationId, limit);
+    }
+
+    @Override
+    public Message findToolsForMessage(String messageId) {
+        return MessageDAO.findToolsForMessage(datasourceManager, databaseConnectionName, messageId);
+    }
+
+    @Override
+    public int countMessages(String conversationId) {
+        return MessageDAO.countByConversation(datasourceManager, databaseConnectionName, conversationId);
+    }
+
+    @Override
+    public List<DebugLog> findDebugLogs(String conversationId) {
+        return DebugLogDAO.findByConversationId(datasourceManager, databaseConnectionName, conversationId);
+    }
+
+    @Override
+    public boolean createTask(ScheduledTask task) {
+        return TaskDAO.createTask(datasourceManager, databaseConnectionName, task);
+    }
+
+    @Override
+    public ScheduledTask getTask(String taskId) {
+        return TaskDAO.getTask(datasourceManager, databaseConnectionName, taskId);
+    }
+
+    @Override
+    public List<ScheduledTask> getTasksByUser(String userName, String projectName) {
+        return TaskDAO.getTasksByUser(datasourceManager, databaseConnectionName, userName, projectName);
+    }
+
+    @Override
+    public List<ScheduledTask> getActiveTasks() {
+        return TaskDAO.getActiveTasks(datasourceManager, databaseConnectionName);
+    }
+
+    @Override
+    public boolean updateTaskStatus(String taskId, String status) {
+        return TaskDAO.updateTaskStatus(datasourceManager, databaseConnectionName, taskId, status);
+    }
+
+    @Override
+    public boolean updateNextRunTime(String taskId, long nextRunAt, long lastRunAt) {
+        return TaskDAO.updateNextRunTime(datasourceManager, databaseConnectionName, taskId, nextRunAt, lastRunAt);
+    }
+
+    @Override
+    public boolean updateTaskEnabled(String taskId, boolean enabled) {
+        return TaskDAO.updateTaskEnabled(datasourceManager, databaseConnectionName, taskId, enabled);
+    }
+
+    @Override
+    public boolean deleteTask(String taskId) {
+        return TaskDAO.deleteTask(datasourceManager, databaseConnectionName, taskId);
+    }
+
+    @Override
+    public boolean recordExecution(TaskExecution execution) {
+        return TaskDAO.recordExecution(datasourceManager, databaseConnectionName, execution);
+    }
+
+    @Override
+    public List<TaskExecution> getTaskExecutions(String taskId, int limit) {
+        return TaskDAO.getTaskExecutions(datasourceManager, databaseConnectionName, taskId, limit);
+    }
+
+    @Override
+    public boolean recordToolMetrics(List<ToolMetricsRollup> rollups) {
+        return ToolMetricsDAO.insertRollups(datasourceManager, databaseConnectionName, rollups);
+    }
+
+    @Override
+    public void shutdown() {
+        // Connections are pooled by the gateway, nothing to release
+    }
+
+    /**
+     * Session over a {@link UnitOfWork}.
+     */
+    private static class JdbcStoreSession implements StoreSession {
+
+        private final UnitOfWork uow;
+
+        JdbcStoreSession(UnitOfWork uow) {
+            this.uow = uow;
+        }
+
+        @Override
+        public boolean createConversation(Conversation conversation) throws StoreException {
+            try {
+                return ConversationDAO.create(uow, conversation);
+            } catch (SQLException e) {
+                throw new StoreException("Error creating conversation", e);
+            }
+        }
+
+        @Override
+        public Conversation findConversation(String id) throws StoreException {
+            try {
+                return ConversationDAO.findById(uow, id);
+            } catch (SQLException e) {
+                throw new StoreException("Error finding conversation by ID", e);
+            }
+        }
+
+        @Override
+        public boolean updateConversation(Conversation conversation) throws StoreException {
+            try {
+                return ConversationDAO.update(uow, conversation);
+            } catch (SQLException e) {
+                throw new StoreException("Error updating conversation", e);
+            }
+        }
+
+        @Override
+        public boolean createMessage(Message message) throws StoreException {
+            try {
+                return MessageDAO.create(uow, message);
+            } catch (SQLException e) {
+                throw new StoreException("Error creating message", e);
+            }
+        }
+
+        @Override
+        public List<Message> listMessages(String conversationId, int limit) throws StoreException {
+            try {
+                return MessageDAO.listByConversation(uow, conversationId, limit);
+            } catch (SQLException e) {
+                throw new StoreException("Error listing messages by conversation", e);
+            }
+        }
+
+        @Override
+        public int createDebugLogs(List<DebugLog> debugLogs) {
+            Savepoint beforeDebugLogs = null;
+            try {
+                beforeDebugLogs = uow.setSavepoint();
+                return DebugLogDAO.createAll(uow, debugLogs);
+            } catch (SQLException e) {
+                logger.error("Failed to save debug logs", e);
+                if (beforeDebugLogs != null) {
+                    try {
+                        uow.rollback(beforeDebugLogs);
+                    } catch (SQLException rollbackError) {
+                        logger.error("Error rolling back debug logs", rollbackError);
+                    }
+                }
+                return 0;
+            }
+        }
+
+        @Override
+        public void commit() throws StoreException {
+            try {
+                uow.commit();
+            } catch (SQLException e) {
+                throw new StoreException("Error committing unit of work", e);
+            }
+        }
+
+        @Override
+        public void release() throws StoreException {
+            try {
+                uow.release();
+            } catch (SQLException e) {
+                throw new StoreException("Error releasing unit of work", e);
+            }
+        }
+
+        @Override
+        public int getCheckoutCount() {
+            return uow.getCheckoutCount();
+        }
+
+        @Override
+        public void close() {
+            uow.close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.iai.ignition.gateway.store;
+
+/**
+ * Position of a record in the embedded store's log.
+ */
+final class LogLocation {
+
+    final long segmentId;
+    final int offset;
+
+    /**
+     * Size of the whole record including its header, used for dead space accounting.
+     */
+    final int size;
+
+    LogLocation(long segmentId, int offset, int size) {
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.size = size;
+    }
+}
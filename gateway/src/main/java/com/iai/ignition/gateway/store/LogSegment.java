@@ -0,0 +1,197 @@
+package com.iai.ignition.gateway.store;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped, append-only segment file of the embedded store's log.
+ *
+ * Record layout: {@code [int length][int crc32][byte type][payload]}, where length counts the
+ * type byte and payload and the CRC covers the same bytes. Files are preallocated and
+ * zero-filled, so a zero length marks the end of the written region. A record that is cut
+ * short or fails its CRC (an interrupted write) ends the segment; {@link #recover} discards
+ * it and everything after it.
+ */
+final class LogSegment {
+
+    /**
+     * Bytes before the type byte: length and CRC.
+     */
+    static final int HEADER_BYTES = 8;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    @FunctionalInterface
+    interface RecordVisitor {
+        void visit(byte type, byte[] payload, LogLocation location) throws IOException;
+    }
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+
+    private LogSegment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Create and map a new, empty segment file.
+     */
+    static LogSegment create(Path directory, long id, int capacity) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Mapping beyond the end of the file extends it with zeros
+            return new LogSegment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Map an existing segment file. Call {@link #recover} before appending.
+     */
+    static LogSegment open(Path path, long id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Log segment too large: " + path);
+            }
+            return new LogSegment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static String fileName(long id) {
+        return String.format("%s%016d%s", PREFIX, id, SUFFIX);
+    }
+
+    /**
+     * Segment id from a file name, or -1 if the file is not a segment.
+     */
+    static long parseId(String fileName) {
+        if (!fileName.startsWith(PREFIX) || !fileName.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(PREFIX.length(), fileName.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Replay the segment's valid records in order and position the segment for appending
+     * after the last one. A damaged record and everything after it is zeroed.
+     *
+     * @return false if a damaged record was found
+     */
+    boolean recover(RecordVisitor visitor) throws IOException {
+        int capacity = buffer.capacity();
+        int position = 0;
+        boolean clean = true;
+
+        while (position + HEADER_BYTES <= capacity) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || length > capacity - position - HEADER_BYTES) {
+                clean = false;
+                break;
+            }
+
+            byte[] body = new byte[length];
+            buffer.get(position + HEADER_BYTES, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                clean = false;
+                break;
+            }
+
+            byte[] payload = new byte[length - 1];
+            System.arraycopy(body, 1, payload, 0, payload.length);
+            visitor.visit(body[0], payload, new LogLocation(id, position, HEADER_BYTES + length));
+            position += HEADER_BYTES + length;
+        }
+
+        writePosition = position;
+        if (!clean) {
+            for (int i = position; i < capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+        return clean;
+    }
+
+    /**
+     * Whether a record with the given payload size fits, leaving room for the end marker.
+     */
+    boolean hasRoom(int payloadLength) {
+        return (long) writePosition + HEADER_BYTES + 1 + payloadLength + HEADER_BYTES <= buffer.capacity();
+    }
+
+    /**
+     * Append a record. The caller must check {@link #hasRoom} first.
+     */
+    LogLocation append(byte type, byte[] payload) {
+        int length = 1 + payload.length;
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        int offset = writePosition;
+        buffer.put(offset + HEADER_BYTES, type);
+        buffer.put(offset + HEADER_BYTES + 1, payload);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        // Length last, so a record that is only partly written reads as the end of the log or fails its CRC
+        buffer.putInt(offset, length);
+
+        writePosition += HEADER_BYTES + length;
+        return new LogLocation(id, offset, HEADER_BYTES + length);
+    }
+
+    /**
+     * Read the payload of the record at an offset.
+     */
+    byte[] read(int offset) {
+        int length = buffer.getInt(offset);
+        byte[] payload = new byte[length - 1];
+        buffer.get(offset + HEADER_BYTES + 1, payload);
+        return payload;
+    }
+
+    /**
+     * Write mapped changes to disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Path getPath() {
+        return path;
+    }
+}
@@ -0,0 +1,16 @@
+package com.iai.ignition.gateway.store;
+
+/**
+ * Raised when a {@link ConversationStore} operation fails.
+ * Wraps the backend's own exception (SQLException, IOException).
+ */
+public class StoreException extends Exception {
+
+    public StoreException(String message) {
+        super(message);
+    }
+
+    public StoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,60 @@
+package com.iai.ignition.gateway.store;
+
+import com.iai.ignition.common.model.Conversation;
+import com.iai.ignition.common.model.DebugLog;
+import com.iai.ignition.common.model.Message;
+
+import java.util.List;
+
+/**
+ * A group of store operations that belong together, such as one chat turn.
+ *
+ * For the database backend this is a {@link com.iai.ignition.gateway.database.UnitOfWork}:
+ * writes are grouped into transactions, {@link #commit()} makes them durable and
+ * {@link #release()} also returns the connection while the caller waits on something slow.
+ * Backends without transactions apply writes immediately and treat both as no-ops.
+ */
+public interface StoreSession extends AutoCloseable {
+
+    boolean createConversation(Conversation conversation) throws StoreException;
+
+    Conversation findConversation(String id) throws StoreException;
+
+    boolean updateConversation(Conversation conversation) throws StoreException;
+
+    boolean createMessage(Message message) throws StoreException;
+
+    /**
+     * List messages without their tool calls and results (see {@link ConversationStore#listMessages}).
+     */
+    List<Message> listMessages(String conversationId, int limit) throws StoreException;
+
+    /**
+     * Save debug logs. A failure here is logged and discarded without affecting the other
+     * writes in the session, since debug logging must never fail a conversation.
+     *
+     * @return Number of entries saved
+     */
+    int createDebugLogs(List<DebugLog> debugLogs);
+
+    /**
+     * Make pending writes durable.
+     */
+    void commit() throws StoreException;
+
+    /**
+     * Commit and give up any held resources until the next operation.
+     */
+    void release() throws StoreException;
+
+    /**
+     * Number of times a backend connection was acquired by this session (0 for backends without connections).
+     */
+    int getCheckoutCount();
+
+    /**
+     * Discard uncommitted writes, where supported, and release resources.
+     */
+    @Override
+    void close();
+}
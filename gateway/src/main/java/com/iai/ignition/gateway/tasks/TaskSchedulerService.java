@@ -1,12 +1,12 @@
 package com.iai.ignition.gateway.tasks;
 
 import com.iai.ignition.common.model.*;
+import com.iai.ignition.gateway.GatewayHook;
 import com.iai.ignition.gateway.llm.ClaudeAPIClient;
-import com.iai.ignition.gateway.database.ConversationDAO;
-import com.iai.ignition.gateway.database.MessageDAO;
-import com.iai.ignition.gateway.database.TaskDAO;
 import com.iai.ignition.gateway.endpoints.ConversationEndpoints;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.store.CachingConversationStore;
+import com.iai.ignition.gateway.store.ConversationStore;
 import com.iai.ignition.gateway.tools.ToolRegistry;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
@@ -17,7 +17,7 @@ import java.util.concurrent.*;
 
 /**
  * Service for scheduling and executing recurring AI tasks.
- * Loads active tasks from database and schedules them using cron expressions.
+ * Loads active tasks from the conversation store and schedules them using cron expressions.
  */
 public class TaskSchedulerService {
 
@@ -42,17 +42,14 @@ public class TaskSchedulerService {
         logger.info("Starting TaskSchedulerService");
 
         try {
-            String dbConnection = settings.getDatabaseConnection();
-            if (dbConnection == null || dbConnection.isEmpty()) {
-                logger.warn("Database connection not configured, task scheduling disabled");
+            ConversationStore store = GatewayHook.getConversationStore();
+            if (store == null) {
+                logger.warn("Conversation storage not available, task scheduling disabled");
                 return;
             }
 
-            // Load active tasks from database
-            List<ScheduledTask> activeTasks = TaskDAO.getActiveTasks(
-                gatewayContext.getDatasourceManager(),
-                dbConnection
-            );
+            // Load active tasks from the store
+            List<ScheduledTask> activeTasks = store.getActiveTasks();
 
             logger.info("Loaded " + activeTasks.size() + " active tasks");
 
@@ -119,9 +116,7 @@ public class TaskSchedulerService {
                 delay = nextRun - now;
 
                 // Update next run time in database
-                TaskDAO.updateNextRunTime(
-                    gatewayContext.getDatasourceManager(),
-                    settings.getDatabaseConnection(),
+                store().updateNextRunTime(
                     taskId,
                     nextRun,
                     task.getLastRunAt() != null ? task.getLastRunAt() : 0
@@ -169,18 +164,14 @@ public class TaskSchedulerService {
             long now = System.currentTimeMillis();
 
             // Update task in database
-            TaskDAO.updateNextRunTime(
-                gatewayContext.getDatasourceManager(),
-                settings.getDatabaseConnection(),
+            store().updateNextRunTime(
                 taskId,
                 nextRun,
                 now
             );
 
             // Reload task from database to get updated state
-            ScheduledTask updatedTask = TaskDAO.getTask(
-                gatewayContext.getDatasourceManager(),
-                settings.getDatabaseConnection(),
+            ScheduledTask updatedTask = store().getTask(
                 taskId
             );
 
@@ -194,9 +185,7 @@ public class TaskSchedulerService {
 
             // Try to reschedule anyway
             try {
-                ScheduledTask updatedTask = TaskDAO.getTask(
-                    gatewayContext.getDatasourceManager(),
-                    settings.getDatabaseConnection(),
+                ScheduledTask updatedTask = store().getTask(
                     taskId
                 );
 
@@ -214,9 +203,26 @@ public class TaskSchedulerService {
 
     /**
      * Execute a scheduled task.
-     * Creates a conversation, sends the prompt, and calls the AI.
+     * Holds the conversation store until the run is recorded, so a storage settings change
+     * does not shut it down under the task.
      */
     private void executeTask(ScheduledTask task) {
+        CachingConversationStore store = GatewayHook.acquireConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available");
+        }
+        try {
+            runTask(task, store);
+        } finally {
+            store.release();
+        }
+    }
+
+    /**
+     * Run a scheduled task against the given store.
+     * Creates a conversation, sends the prompt, and calls the AI.
+     */
+    private void runTask(ScheduledTask task, ConversationStore store) {
         String taskId = task.getId();
         long startTime = System.currentTimeMillis();
 
@@ -228,7 +234,7 @@ public class TaskSchedulerService {
         execution.setExecutedAt(startTime);
 
         try {
-            String dbConnection = settings.getDatabaseConnection();
+            IAISettings settings = currentSettings();
 
             // Always create new conversation for each task execution (prevents token limit issues)
             Conversation conversation = new Conversation();
@@ -239,7 +245,7 @@ public class TaskSchedulerService {
             conversation.setCreatedAt(startTime);
             conversation.setLastUpdatedAt(startTime);
 
-            ConversationDAO.create(gatewayContext.getDatasourceManager(), dbConnection, conversation);
+            store.createConversation(conversation);
 
             execution.setConversationId(conversation.getId());
 
@@ -251,27 +257,34 @@ public class TaskSchedulerService {
             userMessage.setContent(task.getPrompt());
             userMessage.setTimestamp(startTime);
 
-            MessageDAO.create(gatewayContext.getDatasourceManager(), dbConnection, userMessage);
+            store.createMessage(userMessage);
 
             // Initialize Claude API client
             ClaudeAPIClient claudeClient = new ClaudeAPIClient(settings.getApiKey());
 
-            // Initialize tool registry
-            ToolRegistry toolRegistry = new ToolRegistry(gatewayContext, settings);
+            // Shared tool registry, rebuilt when settings change; held until the task's turn ends
+            ToolRegistry toolRegistry = GatewayHook.acquireToolRegistry();
+            if (toolRegistry == null) {
+                throw new IllegalStateException("Tool registry not available");
+            }
 
             // Process message with AI (using full ConversationEndpoints logic)
             // Note: processWithAI() already saves the assistant message to the database
-            Message assistantMessage = ConversationEndpoints.processWithAI(
-                gatewayContext,
-                settings,
-                claudeClient,
-                toolRegistry,
-                conversation,
-                dbConnection,
-                false, // Disable auto-compaction for tasks
-                180000, // Not used when compaction disabled
-                30 // Not used when compaction disabled
-            );
+            try {
+                ConversationEndpoints.processWithAI(
+                    gatewayContext,
+                    settings,
+                    claudeClient,
+                    toolRegistry,
+                    conversation,
+                    store,
+                    false, // Disable auto-compaction for tasks
+                    180000, // Not used when compaction disabled
+                    30 // Not used when compaction disabled
+                );
+            } finally {
+                toolRegistry.release();
+            }
 
             // Record successful execution (message already saved by processWithAI)
             execution.setStatus("SUCCESS");
@@ -290,9 +303,7 @@ public class TaskSchedulerService {
 
         // Save execution record
         try {
-            TaskDAO.recordExecution(
-                gatewayContext.getDatasourceManager(),
-                settings.getDatabaseConnection(),
+            store.recordExecution(
                 execution
             );
         } catch (Exception e) {
@@ -300,6 +311,25 @@ public class TaskSchedulerService {
         }
     }
 
+    /**
+     * Get the latest saved settings, falling back to those the scheduler was started with.
+     */
+    private IAISettings currentSettings() {
+        IAISettings snapshot = GatewayHook.getSettingsSnapshot();
+        return snapshot != null ? snapshot : settings;
+    }
+
+    /**
+     * Get the active conversation store.
+     */
+    private ConversationStore store() {
+        ConversationStore store = GatewayHook.getConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available");
+        }
+        return store;
+    }
+
     /**
      * Calculate next run time based on cron expression.
      * Supports standard 5-field cron format: minute hour dayOfMonth month dayOfWeek
@@ -0,0 +1,128 @@
+package com.iai.ignition.gateway.tools;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.util.Map;
+
+/**
+ * Meta-tool for attaching tools that tool routing left out of the request.
+ *
+ * Called with tool names, it reports which of them were enabled; the conversation endpoint
+ * attaches those tools to the rest of the turn. Called without names, it lists every
+ * registered tool with a one-line summary.
+ */
+public class RequestToolsTool implements IAITool {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.RequestToolsTool");
+
+    public static final String NAME = "request_tools";
+
+    private final ToolRegistry toolRegistry;
+
+    public RequestToolsTool(ToolRegistry toolRegistry) {
+        this.toolRegistry = toolRegistry;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDescription() {
+        StringBuilder description = new StringBuilder(
+            "Enable tools that are not attached to this request. Only tools relevant to the user's message are attached; " +
+            "call this with the names of any other tools you need and they will be available on your next step. " +
+            "Call with no names to list all tools with a summary. Registered tools: "
+        );
+
+        boolean first = true;
+        for (String name : toolRegistry.getAllTools().keySet()) {
+            if (NAME.equals(name)) {
+                continue;
+            }
+            if (!first) {
+                description.append(", ");
+            }
+            description.append(name);
+            first = false;
+        }
+
+        return description.toString();
+    }
+
+    @Override
+    public JsonObject getParameterSchema() {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+
+        JsonObject tools = new JsonObject();
+        tools.addProperty("type", "array");
+        JsonObject items = new JsonObject();
+        items.addProperty("type", "string");
+        tools.add("items", items);
+        tools.addProperty("description", "Names of the tools to enable. Omit to list all tools.");
+        properties.add("tools", tools);
+
+        schema.add("properties", properties);
+        schema.add("required", new JsonArray());
+        return schema;
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        JsonObject result = new JsonObject();
+
+        if (!params.has("tools") || !params.get("tools").isJsonArray() || params.getAsJsonArray("tools").size() == 0) {
+            JsonArray catalog = new JsonArray();
+            for (Map.Entry<String, IAITool> entry : toolRegistry.getAllTools().entrySet()) {
+                if (NAME.equals(entry.getKey())) {
+                    continue;
+                }
+                JsonObject tool = new JsonObject();
+                tool.addProperty("name", entry.getKey());
+                tool.addProperty("summary", firstSentence(entry.getValue().getDescription()));
+                catalog.add(tool);
+            }
+            result.add("tools", catalog);
+            result.addProperty("count", catalog.size());
+            return result;
+        }
+
+        JsonArray enabled = new JsonArray();
+        JsonArray unknown = new JsonArray();
+        for (JsonElement element : params.getAsJsonArray("tools")) {
+            String name = element.getAsString();
+            if (toolRegistry.hasTool(name)) {
+                enabled.add(name);
+            } else {
+                unknown.add(name);
+            }
+        }
+
+        logger.debug("Tools requested: enabled=" + enabled + ", unknown=" + unknown);
+
+        result.add("enabled", enabled);
+        if (unknown.size() > 0) {
+            result.add("unknown", unknown);
+        }
+        result.addProperty("message", enabled.size() > 0
+            ? "Enabled tools are available from your next step"
+            : "No matching tools; call with no names to list available tools");
+        return result;
+    }
+
+    private static String firstSentence(String description) {
+        if (description == null) {
+            return "";
+        }
+        int end = description.indexOf(". ");
+        return end >= 0 ? description.substring(0, end + 1) : description;
+    }
+}
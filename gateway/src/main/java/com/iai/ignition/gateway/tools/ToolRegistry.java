@@ -1,41 +1,81 @@
 package com.iai.ignition.gateway.tools;
 
+import com.iai.ignition.common.llm.LLMRequest;
 import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.metrics.ToolMetrics;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.database.FanOutQueryTool;
+import com.iai.ignition.gateway.tools.database.QueryCostGuard;
+import com.iai.ignition.gateway.tools.database.QueryResultCache;
+import com.iai.ignition.gateway.tools.database.SchemaCatalogCache;
+import com.iai.ignition.gateway.tools.filesystem.ProjectResourceIndexes;
+import com.iai.ignition.gateway.tools.history.AlarmJournalTool;
+import com.iai.ignition.gateway.tools.history.TagHistoryTool;
+import com.iai.ignition.gateway.tools.result.FetchMoreTool;
+import com.iai.ignition.gateway.tools.result.ResultCursorCache;
 import com.iai.ignition.gateway.tools.scripting.ScriptExecutor;
 import com.iai.ignition.gateway.tools.scripting.ListSystemFunctionsTool;
 import com.iai.ignition.gateway.tools.scripting.ExecuteSystemFunctionTool;
 import com.iai.ignition.gateway.tools.tasks.CreateScheduledTaskTool;
 import com.iai.ignition.gateway.tools.tasks.ListScheduledTasksTool;
 import com.iai.ignition.gateway.tools.tasks.ManageScheduledTaskTool;
+import com.iai.ignition.gateway.util.TokenCounter;
+import com.inductiveautomation.ignition.common.gson.Gson;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLTimeoutException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Registry for all available IAI tools.
  * Manages tool discovery, registration, and execution.
+ *
+ * One registry is shared by all conversations for the lifetime of a settings record (see
+ * {@link com.iai.ignition.gateway.GatewayHook#getToolRegistry()}), so tools must be safe to
+ * call concurrently. The registry is replaced when settings change; turns hold the registry
+ * they started with ({@link #acquire()}/{@link #release()}) and the old one is shut down when
+ * the last of them finishes.
  */
 public class ToolRegistry {
 
     private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.ToolRegistry");
+    private static final Gson gson = new Gson();
 
-    private final Map<String, IAITool> tools = new HashMap<>();
+    private final Map<String, IAITool> tools = new ConcurrentHashMap<>();
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final ToolMetrics metrics;
+    private final ToolRouter router;
+    private final ToolResultMemo memo = new ToolResultMemo();
+    private final ResultCursorCache cursors = new ResultCursorCache();
+    private ProjectResourceIndexes resourceIndexes;
     private ScriptExecutor scriptExecutor;
+    private SchemaCatalogCache schemaCache;
+    private QueryResultCache queryCache;
+    private FanOutQueryTool fanOutQuery;
+    private volatile List<LLMRequest.ToolDefinition> llmToolDefinitions;
+    private int holders;
+    private boolean retired;
+    private boolean shutDown;
 
     /**
      * Create a tool registry.
      *
      * @param gatewayContext The gateway context
      * @param settings The module settings
+     * @param metrics Gateway-wide tool metrics that executions are recorded in
      */
-    public ToolRegistry(GatewayContext gatewayContext, IAISettings settings) {
+    public ToolRegistry(GatewayContext gatewayContext, IAISettings settings, ToolMetrics metrics) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.metrics = metrics;
+        this.router = new ToolRouter(gatewayContext);
         discoverAndRegisterTools();
     }
 
@@ -44,21 +84,36 @@ public class ToolRegistry {
      * Tools are conditionally registered based on settings.
      */
     private void discoverAndRegisterTools() {
-        // Core Meta-Tools (3 tools)
+        // Core Meta-Tools (3 tools); the file tools share one index of project resources
+        resourceIndexes = new ProjectResourceIndexes(settings);
         registerTool(new com.iai.ignition.gateway.tools.conversation.QueryConversationMemoryTool(gatewayContext, settings));
-        registerTool(new com.iai.ignition.gateway.tools.filesystem.ProjectFilesTool(gatewayContext, settings));
-        registerTool(new com.iai.ignition.gateway.tools.filesystem.SearchResourcesTool(gatewayContext, settings));
+        registerTool(new com.iai.ignition.gateway.tools.filesystem.ProjectFilesTool(gatewayContext, settings, resourceIndexes));
+        registerTool(new com.iai.ignition.gateway.tools.filesystem.SearchResourcesTool(gatewayContext, settings, resourceIndexes));
 
-        // Database tools are gated by enableDatabaseTools setting (6 tools)
+        // Database tools are gated by enableDatabaseTools setting (9 tools)
         if (settings.getEnableDatabaseTools()) {
+            schemaCache = new SchemaCatalogCache(gatewayContext, settings.getSchemaCacheTtlMinutes());
+            schemaCache.start(settings.getSchemaCacheRefreshMinutes());
+            queryCache = new QueryResultCache(settings.getQueryCacheTtlSeconds(), settings.getQueryCacheTtlOverrides(),
+                settings.getQueryCacheMaxMB());
+            QueryCostGuard costGuard = new QueryCostGuard(settings.getQueryCostGuardMode(), settings.getQueryCostMaxRows(),
+                settings.getQueryCostMaxCost());
             registerTool(new com.iai.ignition.gateway.tools.database.ListDatabasesTool(gatewayContext, settings));
-            registerTool(new com.iai.ignition.gateway.tools.database.ListTablesTool(gatewayContext, settings));
-            registerTool(new com.iai.ignition.gateway.tools.database.DescribeTableTool(gatewayContext, settings));
-            registerTool(new com.iai.ignition.gateway.tools.database.QueryTableTool(gatewayContext, settings));
-            registerTool(new com.iai.ignition.gateway.tools.database.ExecuteNamedQueryTool(gatewayContext, settings));
-            registerTool(new com.iai.ignition.gateway.tools.database.ExecuteSqlQueryTool(gatewayContext, settings));
+            registerTool(new com.iai.ignition.gateway.tools.database.ListTablesTool(gatewayContext, settings, schemaCache));
+            registerTool(new com.iai.ignition.gateway.tools.database.DescribeTableTool(gatewayContext, settings, schemaCache));
+            registerTool(new com.iai.ignition.gateway.tools.database.QueryTableTool(gatewayContext, settings, cursors, queryCache));
+            registerTool(new com.iai.ignition.gateway.tools.database.ProfileTableTool(gatewayContext, settings, schemaCache, queryCache));
+            registerTool(new com.iai.ignition.gateway.tools.database.AggregateTableTool(gatewayContext, settings, schemaCache, queryCache));
+            registerTool(new com.iai.ignition.gateway.tools.database.ExecuteNamedQueryTool(gatewayContext, settings, cursors,
+                new com.iai.ignition.gateway.tools.database.NamedQueryCatalog(settings)));
+            registerTool(new com.iai.ignition.gateway.tools.database.ExecuteSqlQueryTool(gatewayContext, settings, cursors, queryCache, costGuard));
+            fanOutQuery = new FanOutQueryTool(gatewayContext, settings, cursors, queryCache, costGuard);
+            registerTool(fanOutQuery);
         }
 
+        // Reads further pages of results that tools opened a cursor for
+        registerTool(new FetchMoreTool(settings, cursors));
+
         // System function execution tools (gated by AllowSystemFunctionExecution) (2 tools)
         if (settings.getAllowSystemFunctionExecution()) {
             scriptExecutor = new ScriptExecutor(gatewayContext, settings);
@@ -66,11 +121,22 @@ public class ToolRegistry {
             registerTool(new ExecuteSystemFunctionTool(gatewayContext, settings, scriptExecutor));
         }
 
+        // Historian tools (2 tools); alarm analytics reads the journal's tables, so it needs database access
+        registerTool(new TagHistoryTool(gatewayContext, settings));
+        if (settings.getEnableDatabaseTools()) {
+            registerTool(new AlarmJournalTool(gatewayContext, settings));
+        }
+
         // Scheduled task management tools (3 tools - always available)
         registerTool(new CreateScheduledTaskTool(gatewayContext, settings));
         registerTool(new ListScheduledTasksTool(gatewayContext, settings));
         registerTool(new ManageScheduledTaskTool(gatewayContext, settings));
 
+        // Lets the model add tools that routing left out of a request
+        if (settings.getEnableToolRouting()) {
+            registerTool(new RequestToolsTool(this));
+        }
+
         logger.info("IAI tools registered: " + tools.size() + " available");
     }
 
@@ -96,6 +162,92 @@ public class ToolRegistry {
         }
 
         tools.put(name, tool);
+        llmToolDefinitions = null;
+    }
+
+    /**
+     * Prepare tools ahead of the first conversation (catalogs, tool definitions) so the first
+     * turn doesn't pay for it. Failures are logged; the tool prepares itself on first use instead.
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        for (IAITool tool : tools.values()) {
+            try {
+                tool.warmUp();
+            } catch (Exception e) {
+                logger.warn("Warm-up failed for tool " + tool.getName() + ": " + e.getMessage());
+            }
+        }
+        getLLMToolDefinitions();
+        logger.info("IAI tools warmed up in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Hold the registry for the length of a turn, so it is not shut down under it.
+     *
+     * @return false if the registry has been retired; get the current one instead
+     */
+    public synchronized boolean acquire() {
+        if (retired) {
+            return false;
+        }
+        holders++;
+        return true;
+    }
+
+    /**
+     * Release a hold taken with {@link #acquire()}. Shuts the registry down if it was retired
+     * and this was the last hold.
+     */
+    public void release() {
+        boolean last;
+        synchronized (this) {
+            holders--;
+            last = retired && holders == 0 && !shutDown;
+            shutDown |= last;
+        }
+        if (last) {
+            logger.debug("Last turn using a replaced tool registry finished, shutting it down");
+            shutdown();
+        }
+    }
+
+    /**
+     * Stop handing out the registry and shut it down once no turn holds it.
+     */
+    public void retire() {
+        boolean idle;
+        synchronized (this) {
+            retired = true;
+            idle = holders == 0 && !shutDown;
+            shutDown |= idle;
+        }
+        if (idle) {
+            shutdown();
+        }
+    }
+
+    /**
+     * Release resources held by tools. Turns still using this registry may fail their
+     * remaining system function calls; use {@link #retire()} to wait for them.
+     */
+    public void shutdown() {
+        if (scriptExecutor != null) {
+            scriptExecutor.shutdown();
+        }
+        if (schemaCache != null) {
+            schemaCache.shutdown();
+        }
+        if (fanOutQuery != null) {
+            fanOutQuery.shutdown();
+        }
+        if (resourceIndexes != null) {
+            resourceIndexes.shutdown();
+        }
+        if (queryCache != null) {
+            queryCache.invalidateAll();
+        }
+        cursors.clear();
     }
 
     /**
@@ -137,48 +289,229 @@ public class ToolRegistry {
         return definitions;
     }
 
+    /**
+     * Get tool definitions in the form sent with each LLM request.
+     * Built once per registry and shared; callers must not modify the list or its elements.
+     *
+     * @return Unmodifiable list of tool definitions
+     */
+    @SuppressWarnings("unchecked")
+    public List<LLMRequest.ToolDefinition> getLLMToolDefinitions() {
+        List<LLMRequest.ToolDefinition> definitions = llmToolDefinitions;
+        if (definitions != null) {
+            return definitions;
+        }
+
+        definitions = new ArrayList<>();
+        for (Map<String, Object> toolDef : getToolDefinitions()) {
+            LLMRequest.ToolDefinition td = new LLMRequest.ToolDefinition();
+            td.setName((String) toolDef.get("name"));
+            td.setDescription((String) toolDef.get("description"));
+            // Convert JsonObject to Map for input_schema
+            Object inputSchema = toolDef.get("input_schema");
+            if (inputSchema instanceof JsonObject) {
+                String json = gson.toJson(inputSchema);
+                td.setInputSchema(gson.fromJson(json, Map.class));
+            } else if (inputSchema instanceof Map) {
+                td.setInputSchema((Map<String, Object>) inputSchema);
+            }
+            definitions.add(td);
+        }
+
+        definitions = Collections.unmodifiableList(definitions);
+        llmToolDefinitions = definitions;
+        return definitions;
+    }
+
+    /**
+     * Get tool definitions for a subset of tools, in registry order.
+     *
+     * @param names Names of the tools to include; unknown names are ignored
+     * @return List of the matching shared tool definitions
+     */
+    public List<LLMRequest.ToolDefinition> getLLMToolDefinitions(Collection<String> names) {
+        List<LLMRequest.ToolDefinition> definitions = new ArrayList<>();
+        for (LLMRequest.ToolDefinition definition : getLLMToolDefinitions()) {
+            if (names.contains(definition.getName())) {
+                definitions.add(definition);
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Discard all memoized tool results, after a change made outside the tools.
+     */
+    public void invalidateMemoizedResults() {
+        memo.invalidateAll();
+    }
+
+    /**
+     * Discard a conversation's memoized tool results.
+     */
+    public void invalidateMemoizedResults(String conversationId) {
+        memo.invalidateConversation(conversationId);
+    }
+
+    /**
+     * Get the cache of read-only query results.
+     *
+     * @return The cache, or null if database tools are disabled
+     */
+    public QueryResultCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Release a conversation's open result cursors.
+     */
+    public void closeResultCursors(String conversationId) {
+        cursors.closeConversation(conversationId);
+    }
+
+    /**
+     * Get the router that chooses which tools to attach to each request.
+     */
+    public ToolRouter getRouter() {
+        return router;
+    }
+
     /**
      * Execute a tool by name with the given parameters.
+     * Safe to call concurrently, including for calls sharing one context.
+     * Results of idempotent calls are memoized per conversation for the tool's TTL; a call with
+     * side effects discards the calling conversation's memoized results and, for the datasources
+     * and tables it may have written, every conversation's memoized results that read them, the
+     * cached schema catalogs and the cached query results.
      *
      * @param toolName The name of the tool to execute
      * @param params The parameters as a JSON object
-     * @param conversationId The current conversation ID (for context-aware tools)
-     * @param userName The current user name from conversation context
-     * @param projectName The current project name from conversation context
+     * @param context The calling conversation, deadline, token budget and cancellation
      * @return The result as a JSON object
-     * @throws Exception if tool not found or execution fails
+     * @throws Exception if tool not found, the context is cancelled or past its deadline, or execution fails
      */
-    public JsonObject executeTool(String toolName, JsonObject params, String conversationId, String userName, String projectName) throws Exception {
+    public JsonObject executeTool(String toolName, JsonObject params, ToolInvocationContext context) throws Exception {
         IAITool tool = getTool(toolName);
         if (tool == null) {
             throw new IllegalArgumentException("Tool not found: " + toolName);
         }
 
-        // Set conversation ID for memory tool
-        if (tool instanceof com.iai.ignition.gateway.tools.conversation.QueryConversationMemoryTool) {
-            ((com.iai.ignition.gateway.tools.conversation.QueryConversationMemoryTool) tool)
-                .setConversationId(conversationId);
-        }
+        context.checkActive();
 
-        // Set context for task management tools
-        if (tool instanceof com.iai.ignition.gateway.tools.tasks.CreateScheduledTaskTool) {
-            ((com.iai.ignition.gateway.tools.tasks.CreateScheduledTaskTool) tool)
-                .setContext(userName, projectName);
-        }
-        if (tool instanceof com.iai.ignition.gateway.tools.tasks.ListScheduledTasksTool) {
-            ((com.iai.ignition.gateway.tools.tasks.ListScheduledTasksTool) tool)
-                .setContext(userName, projectName);
+        // Repeated read-only calls within a conversation reuse the earlier result
+        String conversationId = context.getConversationId();
+        boolean memoize = conversationId != null && tool.isIdempotent(params);
+        if (memoize) {
+            JsonObject memoized = memo.get(conversationId, toolName, params);
+            if (memoized != null) {
+                logger.debug("Tool " + toolName + " answered from conversation memo");
+                context.recordTokens(TokenCounter.estimateTokens(memoized.toString()));
+                return memoized;
+            }
         }
+        boolean sideEffects = tool.hasSideEffects(params);
 
+        String target = metricsTarget(tool, params);
+        long start = System.nanoTime();
         try {
-            JsonObject result = tool.execute(params);
+            JsonObject result = tool.execute(params, context);
+            String json = result.toString();
+            int tokens = TokenCounter.estimateTokens(json);
+            context.recordTokens(tokens);
+            metrics.record(toolName, target, System.nanoTime() - start, ToolMetrics.Outcome.SUCCESS,
+                json.getBytes(StandardCharsets.UTF_8).length, tokens);
+
+            if (sideEffects) {
+                invalidateAfterWrite(tool, params, conversationId);
+            } else if (memoize && !result.has("error")) {
+                memo.put(conversationId, toolName, params, result, tool.getResultTtlMillis(params));
+            }
             return result;
         } catch (Exception e) {
+            metrics.record(toolName, target, System.nanoTime() - start, outcomeOf(e), 0, 0);
+            if (sideEffects) {
+                // A failed write may still have changed something
+                invalidateAfterWrite(tool, params, conversationId);
+            }
             logger.error("Error executing tool: " + toolName, e);
             throw e;
         }
     }
 
+    /**
+     * Drop results a write may have made stale. The calling conversation's memoized results are
+     * always dropped; for the databases the tool says it wrote ({@link IAITool#getWrittenTables})
+     * so are every conversation's memoized results that read them, their schema catalogs and
+     * their cached query results. A write that may have touched any database drops all of these.
+     */
+    private void invalidateAfterWrite(IAITool tool, JsonObject params, String conversationId) {
+        Map<String, Set<String>> written;
+        try {
+            written = tool.getWrittenTables(params);
+        } catch (Exception e) {
+            // Malformed parameters; assume the worst
+            written = null;
+        }
+
+        if (written == null) {
+            memo.invalidateAll();
+            if (schemaCache != null) {
+                schemaCache.invalidateAll();
+            }
+            if (queryCache != null) {
+                queryCache.invalidateAll();
+            }
+            return;
+        }
+
+        // Task changes and tag writes only affect what the calling conversation has seen of them
+        if (conversationId != null) {
+            memo.invalidateConversation(conversationId);
+        } else {
+            memo.invalidateAll();
+        }
+
+        for (Map.Entry<String, Set<String>> entry : written.entrySet()) {
+            String datasource = entry.getKey();
+            memo.invalidateDatasource(datasource);
+            // A write may be DDL; the statement isn't classified, so the catalog is reloaded either way
+            if (schemaCache != null) {
+                schemaCache.invalidate(datasource);
+            }
+            if (queryCache == null) {
+                continue;
+            }
+            if (entry.getValue() == null || entry.getValue().isEmpty()) {
+                queryCache.invalidateDatasource(datasource);
+            } else {
+                for (String table : entry.getValue()) {
+                    queryCache.invalidateTable(datasource, table);
+                }
+            }
+        }
+    }
+
+    private static String metricsTarget(IAITool tool, JsonObject params) {
+        try {
+            return tool.getMetricsTarget(params);
+        } catch (Exception e) {
+            // Malformed parameters; the tool reports them when it runs
+            return null;
+        }
+    }
+
+    /**
+     * Classify a failed call, counting query, function and deadline timeouts separately from errors.
+     */
+    private static ToolMetrics.Outcome outcomeOf(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof SQLTimeoutException) {
+                return ToolMetrics.Outcome.TIMEOUT;
+            }
+        }
+        return ToolMetrics.Outcome.ERROR;
+    }
+
     /**
      * Check if a tool is registered.
      *
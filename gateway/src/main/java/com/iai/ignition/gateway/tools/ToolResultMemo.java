@@ -0,0 +1,193 @@
+package com.iai.ignition.gateway.tools;
+
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.gson.JsonPrimitive;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Conversation-scoped memo of idempotent tool results.
+ *
+ * Results are keyed by tool name and canonical parameters (object keys sorted), so calls that
+ * differ only in key order share an entry. Each entry expires after its tool's TTL. Memory is
+ * bounded: least recently used conversations and entries are dropped first. Entries remember
+ * the databases their call named ("database", "databases" or, for any database,
+ * "database_pattern") so a write to one database drops them in every conversation.
+ *
+ * Results are copied in and out, so callers may modify what they get back.
+ */
+public class ToolResultMemo {
+
+    private static final int MAX_CONVERSATIONS = 200;
+    private static final int MAX_ENTRIES_PER_CONVERSATION = 64;
+
+    private final Map<String, Map<String, Entry>> byConversation = new LinkedHashMap<String, Map<String, Entry>>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Entry>> eldest) {
+            return size() > MAX_CONVERSATIONS;
+        }
+    };
+
+    /**
+     * Get a memoized result.
+     *
+     * @return A copy of the result, or null if there is none or it has expired
+     */
+    public synchronized JsonObject get(String conversationId, String toolName, JsonObject params) {
+        Map<String, Entry> entries = byConversation.get(conversationId);
+        if (entries == null) {
+            return null;
+        }
+
+        String key = key(toolName, params);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.result.deepCopy();
+    }
+
+    /**
+     * Memoize a result.
+     *
+     * @param ttlMillis How long the result stays valid; 0 or less does nothing
+     */
+    public synchronized void put(String conversationId, String toolName, JsonObject params, JsonObject result, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+
+        Map<String, Entry> entries = byConversation.computeIfAbsent(conversationId, id -> new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > MAX_ENTRIES_PER_CONVERSATION;
+            }
+        });
+        entries.put(key(toolName, params), new Entry(result.deepCopy(), System.currentTimeMillis() + ttlMillis,
+            datasourcesOf(params)));
+    }
+
+    /**
+     * Drop every memoized result of one conversation.
+     */
+    public synchronized void invalidateConversation(String conversationId) {
+        byConversation.remove(conversationId);
+    }
+
+    /**
+     * Drop the memoized results of every conversation that read a datasource, e.g. its table
+     * listings and descriptions, after it was written. Names are matched case-insensitively.
+     */
+    public synchronized void invalidateDatasource(String datasourceName) {
+        String name = datasourceName.toLowerCase(Locale.ROOT);
+        for (Map<String, Entry> entries : byConversation.values()) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                Set<String> datasources = it.next().datasources;
+                if (datasources == null || datasources.contains(name)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop every memoized result. Used after a call that may have changed gateway state,
+     * which any conversation's results could reflect.
+     */
+    public synchronized void invalidateAll() {
+        byConversation.clear();
+    }
+
+    /**
+     * The lowercased datasource names a call reads: an empty set if it names none, or null if
+     * it may read any (a name pattern).
+     */
+    static Set<String> datasourcesOf(JsonObject params) {
+        if (params == null) {
+            return Collections.emptySet();
+        }
+        if (params.has("database_pattern")) {
+            return null;
+        }
+        Set<String> names = new TreeSet<>();
+        if (params.has("database") && params.get("database").isJsonPrimitive()) {
+            names.add(params.get("database").getAsString().toLowerCase(Locale.ROOT));
+        }
+        if (params.has("databases") && params.get("databases").isJsonArray()) {
+            for (JsonElement name : params.getAsJsonArray("databases")) {
+                if (name.isJsonPrimitive()) {
+                    names.add(name.getAsString().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return names;
+    }
+
+    static String key(String toolName, JsonObject params) {
+        StringBuilder key = new StringBuilder(toolName).append(':');
+        appendCanonical(params != null ? params : new JsonObject(), key);
+        return key.toString();
+    }
+
+    /**
+     * Write JSON with object keys in sorted order.
+     */
+    private static void appendCanonical(JsonElement element, StringBuilder out) {
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> sorted = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> member : element.getAsJsonObject().entrySet()) {
+                sorted.put(member.getKey(), member.getValue());
+            }
+
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<String, JsonElement> member : sorted.entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                out.append(new JsonPrimitive(member.getKey())).append(':');
+                appendCanonical(member.getValue(), out);
+                first = false;
+            }
+            out.append('}');
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            out.append('[');
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendCanonical(array.get(i), out);
+            }
+            out.append(']');
+        } else {
+            out.append(element.toString());
+        }
+    }
+
+    private static final class Entry {
+        private final JsonObject result;
+        private final long expiresAt;
+        private final Set<String> datasources;
+
+        private Entry(JsonObject result, long expiresAt, Set<String> datasources) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+            this.datasources = datasources;
+        }
+    }
+}
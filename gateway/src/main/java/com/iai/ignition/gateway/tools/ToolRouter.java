@@ -0,0 +1,232 @@
+package com.iai.ignition.gateway.tools;
+
+import com.iai.ignition.gateway.tools.result.FetchMoreTool;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.util.*;
+
+/**
+ * Chooses which tools to attach to a request.
+ *
+ * Every tool schema is resent on every LLM iteration, so each turn only gets the tools that
+ * look relevant: tools whose keywords appear in the recent user messages, tools the
+ * conversation used recently, and the always-on meta-tools. Tools the gateway can't back
+ * (database tools without any datasource) are left out. If nothing matches, a small general
+ * set is used. The model can add any other registered tool with {@link RequestToolsTool}.
+ *
+ * Selection is only an optimization of what is sent: the registry still executes any
+ * registered tool by name.
+ */
+public class ToolRouter {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.ToolRouter");
+
+    private static final int MAX_CONVERSATIONS = 500;
+    private static final int MAX_RECENT_TOOLS = 8;
+
+    /**
+     * Tools attached to every request.
+     */
+    private static final List<String> ALWAYS = Arrays.asList(
+        "query_conversation_memory",
+        RequestToolsTool.NAME,
+        FetchMoreTool.NAME
+    );
+
+    /**
+     * Tools attached when nothing else matched.
+     */
+    private static final List<String> FALLBACK = Arrays.asList(
+        "project_files",
+        "search_resources",
+        "list_system_functions"
+    );
+
+    private static final List<String> DATABASE_TOOLS = Arrays.asList(
+        "list_databases",
+        "list_tables",
+        "describe_table",
+        "query_table",
+        "profile_table",
+        "aggregate_table",
+        "execute_named_query",
+        "execute_sql_query",
+        "fan_out_query"
+    );
+
+    /**
+     * Keyword prefixes per group of tools. A message word matches a keyword if it starts with it.
+     */
+    private static final List<ToolGroup> GROUPS = Arrays.asList(
+        new ToolGroup(
+            Arrays.asList("project_files", "search_resources"),
+            Arrays.asList("view", "window", "script", "module", "perspective", "vision", "file", "project",
+                "component", "screen", "page", "popup", "resource", "named", "binding", "template")
+        ),
+        new ToolGroup(
+            Collections.singletonList("search_resources"),
+            Arrays.asList("search", "find", "where", "contain", "referenc", "usage", "uses", "locate", "grep",
+                "mention", "occurr")
+        ),
+        new ToolGroup(
+            DATABASE_TOOLS,
+            Arrays.asList("database", "db", "table", "sql", "query", "queries", "column", "schema", "row",
+                "select", "datasource", "record", "join", "average", "statistic", "stats", "median", "percentil",
+                "typical", "distribut", "aggregat", "profil", "shift", "compar", "across", "plant")
+        ),
+        new ToolGroup(
+            Arrays.asList("list_system_functions", "execute_system_function"),
+            Arrays.asList("tag", "alarm", "histor", "write", "read", "value", "system", "gateway", "device",
+                "opc", "function", "execut", "run", "trend", "status", "current", "user", "role", "audit")
+        ),
+        new ToolGroup(
+            Collections.singletonList("query_tag_history"),
+            Arrays.asList("histor", "trend", "chart", "plot", "yesterday", "spike", "drift", "downsampl", "series", "since")
+        ),
+        new ToolGroup(
+            Collections.singletonList("analyze_alarm_journal"),
+            Arrays.asList("alarm", "flood", "chatter", "nuisance", "acknowledg", "ack", "standing", "journal", "priorit")
+        ),
+        new ToolGroup(
+            Arrays.asList("create_scheduled_task", "list_scheduled_tasks", "manage_scheduled_task"),
+            Arrays.asList("schedul", "task", "every", "daily", "hourly", "weekly", "cron", "remind", "recurr",
+                "job", "pause", "resume")
+        )
+    );
+
+    private final GatewayContext gatewayContext;
+    private final Map<String, Deque<String>> recentByConversation = new LinkedHashMap<String, Deque<String>>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Deque<String>> eldest) {
+            return size() > MAX_CONVERSATIONS;
+        }
+    };
+
+    /**
+     * Create a router.
+     *
+     * @param gatewayContext The gateway context, used to check which capabilities are configured
+     */
+    public ToolRouter(GatewayContext gatewayContext) {
+        this.gatewayContext = gatewayContext;
+    }
+
+    /**
+     * Select the tools to attach to a request.
+     *
+     * @param conversationId The conversation, for its recent tool use
+     * @param text Recent user message text
+     * @param available Names of all registered tools
+     * @return Names of the selected tools, a subset of available
+     */
+    public Set<String> select(String conversationId, String text, Collection<String> available) {
+        Set<String> selected = new LinkedHashSet<>();
+        Set<String> words = tokenize(text);
+        String lowerText = text != null ? text.toLowerCase() : "";
+
+        for (ToolGroup group : GROUPS) {
+            if (group.matches(words)) {
+                selected.addAll(group.tools);
+            }
+        }
+
+        // Tools mentioned by name
+        for (String name : available) {
+            if (lowerText.contains(name)) {
+                selected.add(name);
+            }
+        }
+
+        if (selected.isEmpty()) {
+            selected.addAll(FALLBACK);
+        }
+
+        selected.addAll(getRecentTools(conversationId));
+
+        if (!hasDatasources()) {
+            selected.removeAll(DATABASE_TOOLS);
+            selected.remove("analyze_alarm_journal");
+        }
+
+        selected.addAll(ALWAYS);
+        selected.retainAll(available);
+
+        logger.debug("Routed " + selected.size() + " of " + available.size() + " tools: " + selected);
+        return selected;
+    }
+
+    /**
+     * Remember that a conversation used a tool, so it stays attached to later turns.
+     */
+    public void recordToolUse(String conversationId, String toolName) {
+        if (conversationId == null || toolName == null || ALWAYS.contains(toolName)) {
+            return;
+        }
+
+        synchronized (recentByConversation) {
+            Deque<String> recent = recentByConversation.computeIfAbsent(conversationId, id -> new ArrayDeque<>());
+            recent.remove(toolName);
+            recent.addFirst(toolName);
+            while (recent.size() > MAX_RECENT_TOOLS) {
+                recent.removeLast();
+            }
+        }
+    }
+
+    private List<String> getRecentTools(String conversationId) {
+        if (conversationId == null) {
+            return Collections.emptyList();
+        }
+
+        synchronized (recentByConversation) {
+            Deque<String> recent = recentByConversation.get(conversationId);
+            return recent != null ? new ArrayList<>(recent) : Collections.emptyList();
+        }
+    }
+
+    private boolean hasDatasources() {
+        try {
+            return !gatewayContext.getDatasourceManager().getDatasources().isEmpty();
+        } catch (Exception e) {
+            // Can't tell; keep database tools rather than hide them
+            logger.debug("Could not check datasources for tool routing: " + e.getMessage());
+            return true;
+        }
+    }
+
+    private static Set<String> tokenize(String text) {
+        Set<String> words = new HashSet<>();
+        if (text == null) {
+            return words;
+        }
+
+        for (String word : text.toLowerCase().split("[^a-z0-9_]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static final class ToolGroup {
+        private final List<String> tools;
+        private final List<String> keywords;
+
+        private ToolGroup(List<String> tools, List<String> keywords) {
+            this.tools = tools;
+            this.keywords = keywords;
+        }
+
+        private boolean matches(Set<String> words) {
+            for (String word : words) {
+                for (String keyword : keywords) {
+                    if (word.startsWith(keyword)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
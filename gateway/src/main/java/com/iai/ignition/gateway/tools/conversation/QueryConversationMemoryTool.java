@@ -2,8 +2,10 @@ package com.iai.ignition.gateway.tools.conversation;
 
 import com.iai.ignition.common.model.Message;
 import com.iai.ignition.common.tools.IAITool;
-import com.iai.ignition.gateway.database.MessageDAO;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.GatewayHook;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.store.ConversationStore;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
@@ -21,21 +23,12 @@ public class QueryConversationMemoryTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
-    private String currentConversationId;
 
     public QueryConversationMemoryTool(GatewayContext gatewayContext, IAISettings settings) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
     }
 
-    /**
-     * Set the current conversation ID for this tool instance.
-     * Called by ToolRegistry before each use.
-     */
-    public void setConversationId(String conversationId) {
-        this.currentConversationId = conversationId;
-    }
-
     @Override
     public String getName() {
         return "query_conversation_memory";
@@ -77,6 +70,12 @@ public class QueryConversationMemoryTool implements IAITool {
 
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
+        throw new IllegalStateException("Conversation memory query requires a conversation context");
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        String currentConversationId = context.getConversationId();
         if (currentConversationId == null || currentConversationId.isEmpty()) {
             throw new IllegalStateException("Conversation ID not set for memory query");
         }
@@ -86,12 +85,13 @@ public class QueryConversationMemoryTool implements IAITool {
 
         logger.debug("Querying conversation memory: query=" + query + ", lookback=" + lookback);
 
-        String dbConnection = settings.getDatabaseConnection();
+        ConversationStore store = GatewayHook.getConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available. Check the module's database connection and storage backend settings");
+        }
 
         // Load recent messages
-        List<Message> messages = MessageDAO.listByConversation(
-            gatewayContext.getDatasourceManager(),
-            dbConnection,
+        List<Message> messages = store.listMessages(
             currentConversationId,
             lookback
         );
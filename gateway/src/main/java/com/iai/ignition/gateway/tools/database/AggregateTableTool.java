@@ -0,0 +1,364 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.database.SqlDialect;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tool for grouped aggregates computed by the database: counts, sums, averages, extremes and
+ * (where the database has percentile_cont) percentiles, optionally per time bucket and per
+ * group column. Returns one row per group instead of the rows behind it.
+ */
+public class AggregateTableTool implements IAITool {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.AggregateTableTool");
+
+    private static final int MAX_GROUPS = 1000;
+    private static final int MAX_AGGREGATES = 10;
+
+    /**
+     * count, count(col), sum(col), p95(col), count_distinct(col)
+     */
+    private static final Pattern AGGREGATE = Pattern.compile("^\\s*([a-z_0-9]+)\\s*(?:\\(\\s*(\\*|[^()]*?)\\s*\\))?\\s*$",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern PERCENTILE = Pattern.compile("p(\\d{1,2}(?:\\.\\d+)?)");
+
+    private static final Pattern BUCKET = Pattern.compile("^\\s*(\\d{1,6})\\s*([smhd])\\s*$", Pattern.CASE_INSENSITIVE);
+
+    private final GatewayContext gatewayContext;
+    private final IAISettings settings;
+    private final SchemaCatalogCache schemaCache;
+    private final QueryResultCache queryCache;
+
+    public AggregateTableTool(GatewayContext gatewayContext, IAISettings settings, SchemaCatalogCache schemaCache, QueryResultCache queryCache) {
+        this.gatewayContext = gatewayContext;
+        this.settings = settings;
+        this.schemaCache = schemaCache;
+        this.queryCache = queryCache;
+    }
+
+    @Override
+    public String getName() {
+        return "aggregate_table";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Compute grouped statistics in the database and return one row per group, e.g. count per shift " +
+                "(time_column with bucket '8h'), average per line (group_by), or daily maximum. Prefer this over " +
+                "reading raw rows with query_table. Numeric time columns are taken as epoch milliseconds, as in " +
+                "tag history tables. Enforces queryTimeoutSeconds setting.";
+    }
+
+    @Override
+    public JsonObject getParameterSchema() {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+
+        JsonObject database = new JsonObject();
+        database.addProperty("type", "string");
+        database.addProperty("description", "The database connection name");
+        properties.add("database", database);
+
+        JsonObject tableName = new JsonObject();
+        tableName.addProperty("type", "string");
+        tableName.addProperty("description", "The table name, optionally schema-qualified");
+        properties.add("table_name", tableName);
+
+        JsonObject aggregates = new JsonObject();
+        aggregates.addProperty("type", "array");
+        JsonObject aggregateItem = new JsonObject();
+        aggregateItem.addProperty("type", "string");
+        aggregates.add("items", aggregateItem);
+        aggregates.addProperty("description", "Aggregates to compute: count, count(col), count_distinct(col), sum(col), " +
+                "avg(col), min(col), max(col), or a percentile such as p50(col) or p95(col) (PostgreSQL and Oracle " +
+                "only). Default: [\"count\"]");
+        properties.add("aggregates", aggregates);
+
+        JsonObject groupBy = new JsonObject();
+        groupBy.addProperty("type", "array");
+        JsonObject groupItem = new JsonObject();
+        groupItem.addProperty("type", "string");
+        groupBy.add("items", groupItem);
+        groupBy.addProperty("description", "Columns to group by");
+        properties.add("group_by", groupBy);
+
+        JsonObject timeColumn = new JsonObject();
+        timeColumn.addProperty("type", "string");
+        timeColumn.addProperty("description", "Timestamp column to bucket by (requires bucket)");
+        properties.add("time_column", timeColumn);
+
+        JsonObject bucket = new JsonObject();
+        bucket.addProperty("type", "string");
+        bucket.addProperty("description", "Time bucket length: a number and s, m, h or d, e.g. '15m', '1h', '8h', '1d'. " +
+                "Buckets are aligned to midnight UTC.");
+        properties.add("bucket", bucket);
+
+        JsonObject filters = new JsonObject();
+        filters.addProperty("type", "string");
+        filters.addProperty("description", "Optional WHERE clause (without 'WHERE' keyword)");
+        properties.add("filters", filters);
+
+        JsonObject limit = new JsonObject();
+        limit.addProperty("type", "integer");
+        limit.addProperty("description", "Maximum number of groups to return (default: 100, max: " + MAX_GROUPS + "). " +
+                "Time-bucketed results are ordered by time, others by the first aggregate, largest first.");
+        limit.addProperty("default", 100);
+        properties.add("limit", limit);
+
+        JsonObject refresh = new JsonObject();
+        refresh.addProperty("type", "boolean");
+        refresh.addProperty("description", "Query the database again instead of reusing an earlier result in this conversation (default: false)");
+        properties.add("refresh", refresh);
+
+        schema.add("properties", properties);
+
+        JsonArray required = new JsonArray();
+        required.add("database");
+        required.add("table_name");
+        schema.add("required", required);
+
+        return schema;
+    }
+
+    /**
+     * Results reflect live data, so they are memoized only for as long as the database's query
+     * results may be cached (QueryCacheTtlSeconds and its overrides, 0 by default), and not
+     * when refresh is set.
+     */
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        boolean refresh = params.has("refresh") && params.get("refresh").getAsBoolean();
+        return !refresh && getResultTtlMillis(params) > 0;
+    }
+
+    @Override
+    public long getResultTtlMillis(JsonObject params) {
+        return params.has("database") ? queryCache.getTtlMillis(params.get("database").getAsString()) : 0;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        if (!params.has("database") || !params.has("table_name")) {
+            return null;
+        }
+        return params.get("database").getAsString() + "." + params.get("table_name").getAsString();
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        String databaseName = params.get("database").getAsString();
+        String tableName = params.get("table_name").getAsString();
+        String filters = params.has("filters") ? params.get("filters").getAsString() : null;
+        String timeColumnName = params.has("time_column") ? params.get("time_column").getAsString() : null;
+        String bucket = params.has("bucket") ? params.get("bucket").getAsString() : null;
+        int limit = params.has("limit") ? params.get("limit").getAsInt() : 100;
+        limit = Math.min(Math.max(1, limit), MAX_GROUPS);
+
+        if ((timeColumnName == null) != (bucket == null)) {
+            throw new IllegalArgumentException("time_column and bucket must be given together");
+        }
+        int bucketSeconds = bucket != null ? parseBucket(bucket) : 0;
+
+        logger.debug("Aggregating table: " + databaseName + "." + tableName);
+
+        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(databaseName);
+        if (datasource == null) {
+            throw new IllegalArgumentException("Database not found: " + databaseName);
+        }
+        SchemaCatalog.Table table = TableAggregates.resolveTable(schemaCache, databaseName, tableName);
+
+        try (Connection conn = datasource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(settings.getQueryTimeoutSeconds());
+            SqlDialect dialect = SqlDialect.detect(conn);
+
+            // Group expressions, then aggregates; GROUP BY repeats the expressions since aliases aren't portable there
+            List<String> labels = new ArrayList<>();
+            List<String> groups = new ArrayList<>();
+            List<String> selects = new ArrayList<>();
+
+            if (timeColumnName != null) {
+                SchemaCatalog.Column timeColumn = TableAggregates.resolveColumn(table, timeColumnName);
+                String col = dialect.quoteIdentifier(timeColumn.getName());
+                boolean epochMillis = TableAggregates.kindOf(timeColumn.getType(), dialect) == TableAggregates.Kind.NUMERIC;
+                String expr;
+                try {
+                    expr = epochMillis ? dialect.epochMillisBucket(col, bucketSeconds) : dialect.timeBucket(col, bucketSeconds);
+                } catch (UnsupportedOperationException e) {
+                    throw new IllegalArgumentException(e.getMessage());
+                }
+                labels.add("bucket");
+                groups.add(expr);
+            }
+            if (params.has("group_by") && params.get("group_by").isJsonArray()) {
+                for (JsonElement name : params.getAsJsonArray("group_by")) {
+                    SchemaCatalog.Column column = TableAggregates.resolveColumn(table, name.getAsString());
+                    labels.add(column.getName());
+                    groups.add(dialect.quoteIdentifier(column.getName()));
+                }
+            }
+            selects.addAll(groups);
+
+            List<String> aggregateSpecs = new ArrayList<>();
+            if (params.has("aggregates") && params.get("aggregates").isJsonArray()) {
+                for (JsonElement spec : params.getAsJsonArray("aggregates")) {
+                    aggregateSpecs.add(spec.getAsString());
+                }
+            }
+            if (aggregateSpecs.isEmpty()) {
+                aggregateSpecs.add("count");
+            }
+            if (aggregateSpecs.size() > MAX_AGGREGATES) {
+                throw new IllegalArgumentException("At most " + MAX_AGGREGATES + " aggregates can be computed at once");
+            }
+            for (String spec : aggregateSpecs) {
+                labels.add(spec.trim());
+                selects.add(aggregate(spec, table, dialect));
+            }
+
+            StringBuilder sql = new StringBuilder("SELECT ").append(String.join(", ", selects))
+                .append(" FROM ").append(dialect.qualifiedName(table.getSchema(), table.getName()))
+                .append(TableAggregates.where(filters, null));
+            if (!groups.isEmpty()) {
+                sql.append(" GROUP BY ").append(String.join(", ", groups));
+            }
+            // Ordinals: by time, or by the first aggregate with the largest groups first
+            if (timeColumnName != null) {
+                sql.append(" ORDER BY 1");
+            } else {
+                sql.append(" ORDER BY ").append(groups.size() + 1).append(" DESC");
+            }
+
+            TabularResultEncoder result = new TabularResultEncoder();
+            try (ResultSet rs = stmt.executeQuery(dialect.page(sql.toString(), 0, limit + 1))) {
+                for (int i = 0; i < labels.size(); i++) {
+                    result.addColumn(labels.get(i), rs.getMetaData().getColumnTypeName(i + 1));
+                }
+                while (rs.next()) {
+                    if (result.getRowCount() >= limit) {
+                        result.setTruncated("Results limited to " + limit + " groups");
+                        break;
+                    }
+                    Object[] values = new Object[labels.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = rs.getObject(i + 1);
+                    }
+                    result.addRow(values);
+                }
+            }
+
+            JsonObject json = new JsonObject();
+            json.addProperty("database", databaseName);
+            json.addProperty("table_name", table.getQualifiedName());
+            if (bucket != null) {
+                json.addProperty("bucket", bucket.trim());
+            }
+            return result.writeTo(json);
+        }
+    }
+
+    /**
+     * SQL for one aggregate specification.
+     */
+    private static String aggregate(String spec, SchemaCatalog.Table table, SqlDialect dialect) {
+        Matcher matcher = AGGREGATE.matcher(spec);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid aggregate: " + spec + ". Use e.g. count, avg(col) or p95(col).");
+        }
+        String function = matcher.group(1).toLowerCase(Locale.ROOT);
+        String argument = matcher.group(2);
+
+        if (argument == null || argument.equals("*")) {
+            if (!function.equals("count")) {
+                throw new IllegalArgumentException("Aggregate " + function + " needs a column: " + spec);
+            }
+            return "COUNT(*)";
+        }
+
+        String col = dialect.quoteIdentifier(TableAggregates.resolveColumn(table, argument).getName());
+        switch (function) {
+            case "count":
+                return "COUNT(" + col + ")";
+            case "count_distinct":
+                return "COUNT(DISTINCT " + col + ")";
+            case "sum":
+                return "SUM(" + col + ")";
+            case "avg":
+                // Avoids integer averages on SQL Server
+                return "AVG(1.0 * " + col + ")";
+            case "min":
+                return "MIN(" + col + ")";
+            case "max":
+                return "MAX(" + col + ")";
+            default:
+                Matcher percentile = PERCENTILE.matcher(function);
+                if (percentile.matches()) {
+                    String expr = dialect.percentile(col, Double.parseDouble(percentile.group(1)) / 100);
+                    if (expr == null) {
+                        throw new IllegalArgumentException("Percentiles per group are not supported on this database. " +
+                            "Use profile_table for percentiles of the whole table or a filtered part of it.");
+                    }
+                    return expr;
+                }
+                throw new IllegalArgumentException("Unknown aggregate: " + function +
+                    ". Use count, count_distinct, sum, avg, min, max or pNN.");
+        }
+    }
+
+    /**
+     * Bucket length in seconds, from e.g. "15m" or "8h".
+     */
+    private static int parseBucket(String bucket) {
+        Matcher matcher = BUCKET.matcher(bucket);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Invalid bucket: " + bucket + ". Use a number and s, m, h or d, e.g. '1h'.");
+        }
+
+        long amount = Long.parseLong(matcher.group(1));
+        long seconds;
+        switch (matcher.group(2).toLowerCase(Locale.ROOT)) {
+            case "s":
+                seconds = amount;
+                break;
+            case "m":
+                seconds = amount * 60;
+                break;
+            case "h":
+                seconds = amount * 3600;
+                break;
+            default:
+                seconds = amount * 86400;
+                break;
+        }
+        if (seconds < 1 || seconds > 366L * 86400) {
+            throw new IllegalArgumentException("Bucket must be between 1 second and 366 days: " + bucket);
+        }
+        return (int) seconds;
+    }
+}
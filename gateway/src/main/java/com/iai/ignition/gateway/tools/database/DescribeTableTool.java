@@ -9,8 +9,7 @@ import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
+import java.util.List;
 
 /**
  * Tool for describing a database table's schema.
@@ -21,10 +20,12 @@ public class DescribeTableTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final SchemaCatalogCache schemaCache;
 
-    public DescribeTableTool(GatewayContext gatewayContext, IAISettings settings) {
+    public DescribeTableTool(GatewayContext gatewayContext, IAISettings settings, SchemaCatalogCache schemaCache) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.schemaCache = schemaCache;
     }
 
     @Override
@@ -51,9 +52,14 @@ public class DescribeTableTool implements IAITool {
 
         JsonObject tableName = new JsonObject();
         tableName.addProperty("type", "string");
-        tableName.addProperty("description", "The table name to describe");
+        tableName.addProperty("description", "The table name to describe, optionally schema-qualified");
         properties.add("table_name", tableName);
 
+        JsonObject refresh = new JsonObject();
+        refresh.addProperty("type", "boolean");
+        refresh.addProperty("description", "Re-read the schema instead of using the cached catalog (default: false)");
+        properties.add("refresh", refresh);
+
         schema.add("properties", properties);
 
         JsonArray required = new JsonArray();
@@ -64,6 +70,25 @@ public class DescribeTableTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        return !(params.has("refresh") && params.get("refresh").getAsBoolean());
+    }
+
+    @Override
+    public long getResultTtlMillis() {
+        // Schema metadata scans are expensive and rarely change
+        return 5 * 60_000L;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        if (!params.has("database") || !params.has("table_name")) {
+            return null;
+        }
+        return params.get("database").getAsString() + "." + params.get("table_name").getAsString();
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
         String databaseName = params.get("database").getAsString();
@@ -71,47 +96,51 @@ public class DescribeTableTool implements IAITool {
 
         logger.debug("Describing table: " + databaseName + "." + tableName);
 
-        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(databaseName);
-        if (datasource == null) {
-            throw new IllegalArgumentException("Database not found: " + databaseName);
+        boolean refresh = params.has("refresh") && params.get("refresh").getAsBoolean();
+        SchemaCatalog catalog = schemaCache.get(databaseName, refresh);
+        SchemaCatalog.Table table = catalog.findTable(tableName);
+        if (table == null) {
+            throw new IllegalArgumentException("Table not found: " + tableName + " in " + databaseName +
+                ". Use list_tables to see available tables.");
         }
 
         JsonArray columns = new JsonArray();
-
-        try (Connection conn = datasource.getConnection()) {
-            DatabaseMetaData metadata = conn.getMetaData();
-
-            // Get columns
-            try (ResultSet rs = metadata.getColumns(null, null, tableName, "%")) {
-                while (rs.next()) {
-                    JsonObject column = new JsonObject();
-                    column.addProperty("name", rs.getString("COLUMN_NAME"));
-                    column.addProperty("type", rs.getString("TYPE_NAME"));
-                    column.addProperty("size", rs.getInt("COLUMN_SIZE"));
-                    column.addProperty("nullable", rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable);
-                    String defaultValue = rs.getString("COLUMN_DEF");
-                    if (defaultValue != null) {
-                        column.addProperty("default", defaultValue);
-                    }
-                    columns.add(column);
-                }
+        for (SchemaCatalog.Column col : table.getColumns()) {
+            JsonObject column = new JsonObject();
+            column.addProperty("name", col.getName());
+            column.addProperty("type", col.getType());
+            column.addProperty("size", col.getSize());
+            column.addProperty("nullable", col.isNullable());
+            if (col.getDefaultValue() != null) {
+                column.addProperty("default", col.getDefaultValue());
             }
+            columns.add(column);
+        }
 
-            // Get primary keys
-            JsonArray primaryKeys = new JsonArray();
-            try (ResultSet rs = metadata.getPrimaryKeys(null, null, tableName)) {
-                while (rs.next()) {
-                    primaryKeys.add(rs.getString("COLUMN_NAME"));
-                }
+        // Primary keys are read once per table and kept with the catalog
+        List<String> keys;
+        if (catalog.hasPrimaryKeys(table)) {
+            keys = catalog.getPrimaryKeys(table, null);
+        } else {
+            Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(databaseName);
+            if (datasource == null) {
+                throw new IllegalArgumentException("Database not found: " + databaseName);
             }
+            try (Connection conn = datasource.getConnection()) {
+                keys = catalog.getPrimaryKeys(table, conn);
+            }
+        }
+        JsonArray primaryKeys = new JsonArray();
+        for (String key : keys) {
+            primaryKeys.add(key);
+        }
 
-            JsonObject result = new JsonObject();
-            result.addProperty("database", databaseName);
-            result.addProperty("table_name", tableName);
-            result.add("columns", columns);
-            result.add("primary_keys", primaryKeys);
+        JsonObject result = new JsonObject();
+        result.addProperty("database", databaseName);
+        result.addProperty("table_name", table.getQualifiedName());
+        result.add("columns", columns);
+        result.add("primary_keys", primaryKeys);
 
-            return result;
-        }
+        return result;
     }
 }
@@ -1,14 +1,23 @@
 package com.iai.ignition.gateway.tools.database;
 
 import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.ResultCursorCache;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
 /**
  * Tool for executing a named query.
+ * The query is read from the project's resources and run as a prepared statement with its
+ * value parameters bound, so parameter values never become part of the SQL text. Statements
+ * are prepared on a pooled connection for each call and closed when it is returned; reuse of the
+ * server-side statement is left to the driver's statement cache, which the unchanged SQL text of
+ * a query lets it hit.
  */
 public class ExecuteNamedQueryTool implements IAITool {
 
@@ -16,10 +25,15 @@ public class ExecuteNamedQueryTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final ResultCursorCache cursors;
+    private final NamedQueryCatalog namedQueries;
 
-    public ExecuteNamedQueryTool(GatewayContext gatewayContext, IAISettings settings) {
+    public ExecuteNamedQueryTool(GatewayContext gatewayContext, IAISettings settings, ResultCursorCache cursors,
+            NamedQueryCatalog namedQueries) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.cursors = cursors;
+        this.namedQueries = namedQueries;
     }
 
     @Override
@@ -29,8 +43,10 @@ public class ExecuteNamedQueryTool implements IAITool {
 
     @Override
     public String getDescription() {
-        return "Execute a named query with parameters. Returns query results. Note: This requires Ignition's " +
-                "named query execution API which may not be directly available in Gateway context.";
+        return "Execute a named query (Query or Scalar Query type) with parameters. Parameters are bound by name and " +
+                "converted to the types the query declares; dates may be epoch milliseconds or ISO strings. Returns " +
+                "the first page of results; if has_more is true, use fetch_more with the returned cursor for further rows. " +
+                "Update queries are not run.";
     }
 
     @Override
@@ -50,6 +66,16 @@ public class ExecuteNamedQueryTool implements IAITool {
         queryParams.addProperty("description", "Query parameters as key-value pairs");
         properties.add("params", queryParams);
 
+        JsonObject projectName = new JsonObject();
+        projectName.addProperty("type", "string");
+        projectName.addProperty("description", "The project containing the query (default: the current conversation's project)");
+        properties.add("project_name", projectName);
+
+        JsonObject database = new JsonObject();
+        database.addProperty("type", "string");
+        database.addProperty("description", "Database connection to use if the query does not name one (project default database)");
+        properties.add("database", database);
+
         schema.add("properties", properties);
 
         JsonArray required = new JsonArray();
@@ -59,32 +85,60 @@ public class ExecuteNamedQueryTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        return params.has("query_name") ? params.get("query_name").getAsString() : null;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
-        String queryName = params.get("query_name").getAsString();
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
 
-        logger.debug("Executing named query: " + queryName);
-
-        // Note: Named query execution from Gateway scope in Ignition 8.1 has limitations:
-        // 1. Named queries are project-scoped, requiring a project context
-        // 2. The NamedQueryManager requires project name to be specified
-        // 3. Gateway scope may not have access to all project resources
-        //
-        // For Gateway-side execution, options include:
-        // 1. Read the named query .sql file from the project resources
-        // 2. Extract the SQL and parameters
-        // 3. Execute using execute_sql_query tool or direct database connection
-        //
-        // Alternative: Provide project name and use project-scoped APIs if available,
-        // or simply read and parse the named query files from the filesystem.
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        String queryName = params.get("query_name").getAsString();
+        JsonObject values = params.has("params") && params.get("params").isJsonObject()
+            ? params.getAsJsonObject("params") : new JsonObject();
+
+        String projectName = params.has("project_name") ? params.get("project_name").getAsString() : context.getProjectName();
+        if (projectName == null || projectName.isEmpty()) {
+            throw new IllegalArgumentException("project_name is required when the conversation has no project");
+        }
+
+        logger.debug("Executing named query: " + queryName + " in project " + projectName);
+
+        NamedQueryCatalog.NamedQuery query = namedQueries.get(projectName, queryName);
+        if (!query.isEnabled()) {
+            throw new IllegalArgumentException("Named query is disabled: " + queryName);
+        }
+        if ("UpdateQuery".equalsIgnoreCase(query.getType())) {
+            throw new IllegalArgumentException("Update queries are not executed by this tool: " + queryName);
+        }
+
+        String databaseName = query.getDatabase();
+        if (databaseName == null) {
+            if (!params.has("database")) {
+                throw new IllegalArgumentException("Named query " + queryName +
+                    " uses the project default database; pass database to choose the connection");
+            }
+            databaseName = params.get("database").getAsString();
+        }
+
+        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(databaseName);
+        if (datasource == null) {
+            throw new IllegalArgumentException("Database not found: " + databaseName);
+        }
+
+        String sql = query.render(values);
+        TabularResultEncoder table = StreamingQuery.run(datasource, sql, stmt -> query.bind(stmt, values),
+            settings.getMaxCursorRows(), settings.getMaxResultBufferKB() * 1024L, settings.getQueryTimeoutSeconds(), context);
 
         JsonObject result = new JsonObject();
         result.addProperty("query_name", queryName);
-        result.addProperty("info", "Named query execution from Gateway scope requires project context not readily available in Ignition 8.1 SDK");
-        result.addProperty("suggestion", "Use read_named_query tool to get the SQL, then use execute_sql_query tool to run it, or provide project context");
-        result.add("rows", new JsonArray());
-        result.addProperty("count", 0);
-
-        return result;
+        result.addProperty("project", projectName);
+        result.addProperty("database", databaseName);
+        return cursors.firstPage(result, table, context.getConversationId(), getName(), settings.getResultPageRows(),
+            ResultCursorCache.pageBytes(settings.getMaxToolResultSizeKB(), context.getRemainingTokens()));
     }
 }
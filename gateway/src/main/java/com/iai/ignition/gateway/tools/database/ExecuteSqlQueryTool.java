@@ -1,14 +1,15 @@
 package com.iai.ignition.gateway.tools.database;
 
 import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.ResultCursorCache;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
-import java.sql.*;
 import java.util.regex.Pattern;
 
 /**
@@ -22,10 +23,17 @@ public class ExecuteSqlQueryTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final ResultCursorCache cursors;
+    private final QueryResultCache queryCache;
+    private final QueryCostGuard costGuard;
 
-    public ExecuteSqlQueryTool(GatewayContext gatewayContext, IAISettings settings) {
+    public ExecuteSqlQueryTool(GatewayContext gatewayContext, IAISettings settings, ResultCursorCache cursors,
+            QueryResultCache queryCache, QueryCostGuard costGuard) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.cursors = cursors;
+        this.queryCache = queryCache;
+        this.costGuard = costGuard;
     }
 
     @Override
@@ -36,7 +44,9 @@ public class ExecuteSqlQueryTool implements IAITool {
     @Override
     public String getDescription() {
         return "Execute an ad-hoc SQL SELECT query. Only SELECT statements are allowed for safety. " +
-                "Returns query results. Enforces queryTimeoutSeconds setting.";
+                "Returns the first page of results; if has_more is true, use fetch_more with the returned cursor " +
+                "for further rows. Enforces queryTimeoutSeconds setting. Queries the planner estimates to be too " +
+                "expensive may be limited or not run; the result's cost_guard then explains why and may include the plan.";
     }
 
     @Override
@@ -56,6 +66,13 @@ public class ExecuteSqlQueryTool implements IAITool {
         query.addProperty("description", "The SQL SELECT query to execute");
         properties.add("query", query);
 
+        JsonObject useCache = new JsonObject();
+        useCache.addProperty("type", "boolean");
+        useCache.addProperty("description", "Allow a recent cached result of the same query, if the database's results are " +
+                "cached (default: true). Set to false when the data must be current.");
+        useCache.addProperty("default", true);
+        properties.add("use_cache", useCache);
+
         schema.add("properties", properties);
 
         JsonArray required = new JsonArray();
@@ -66,10 +83,21 @@ public class ExecuteSqlQueryTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        return params.has("database") ? params.get("database").getAsString() : null;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
         String databaseName = params.get("database").getAsString();
         String query = params.get("query").getAsString();
+        boolean useCache = !params.has("use_cache") || params.get("use_cache").getAsBoolean();
 
         logger.debug("Executing SQL query on database: " + databaseName);
 
@@ -83,54 +111,23 @@ public class ExecuteSqlQueryTool implements IAITool {
             throw new IllegalArgumentException("Database not found: " + databaseName);
         }
 
-        JsonArray rows = new JsonArray();
-
-        try (Connection conn = datasource.getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            stmt.setQueryTimeout(settings.getQueryTimeoutSeconds());
-
-            try (ResultSet rs = stmt.executeQuery(query)) {
-                ResultSetMetaData rsmd = rs.getMetaData();
-                int columnCount = rsmd.getColumnCount();
-
-                // Build column info
-                JsonArray columns = new JsonArray();
-                for (int i = 1; i <= columnCount; i++) {
-                    JsonObject col = new JsonObject();
-                    col.addProperty("name", rsmd.getColumnName(i));
-                    col.addProperty("type", rsmd.getColumnTypeName(i));
-                    columns.add(col);
-                }
-
-                // Build rows
-                int rowCount = 0;
-                while (rs.next() && rowCount < 1000) { // Limit to 1000 rows
-                    JsonObject row = new JsonObject();
-                    for (int i = 1; i <= columnCount; i++) {
-                        String columnName = rsmd.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        if (value != null) {
-                            row.addProperty(columnName, value.toString());
-                        }
-                    }
-                    rows.add(row);
-                    rowCount++;
-                }
-
-                JsonObject result = new JsonObject();
-                result.addProperty("database", databaseName);
-                result.add("columns", columns);
-                result.add("rows", rows);
-                result.addProperty("count", rows.size());
-
-                if (rowCount >= 1000) {
-                    result.addProperty("truncated", true);
-                    result.addProperty("message", "Results limited to 1000 rows");
-                }
-
-                return result;
-            }
+        // Expensive queries are caught from their plan before they load the database
+        QueryCostGuard.Verdict verdict = costGuard.check(databaseName, datasource, query, settings.getQueryTimeoutSeconds());
+        JsonObject result = new JsonObject();
+        result.addProperty("database", databaseName);
+        if (verdict.getAction() == QueryCostGuard.Action.PLAN) {
+            verdict.writeTo(result);
+            return result;
         }
+
+        int maxRows = verdict.getAction() == QueryCostGuard.Action.LIMIT ? settings.getResultPageRows() : settings.getMaxCursorRows();
+        QueryResultCache.Lookup lookup = queryCache.getOrLoad(databaseName, query, maxRows, useCache, () ->
+            StreamingQuery.run(datasource, query, maxRows, settings.getMaxResultBufferKB() * 1024L,
+                settings.getQueryTimeoutSeconds(), context));
+
+        verdict.writeTo(result);
+        lookup.writeTo(result);
+        return cursors.firstPage(result, lookup.getTable(), context.getConversationId(), getName(), settings.getResultPageRows(),
+            ResultCursorCache.pageBytes(settings.getMaxToolResultSizeKB(), context.getRemainingTokens()));
     }
 }
@@ -0,0 +1,438 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.ResultCursorCache;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonNull;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Tool for running one SELECT against several databases at once, e.g. one database per line or area.
+ *
+ * Databases are queried concurrently on a pool shared by all calls, each with its own timeout.
+ * Rows are merged into one result with a "source" column; columns are matched by name, so
+ * databases whose tables differ slightly still merge. A database that fails or times out is
+ * reported in "sources" and does not fail the call. The {@link QueryCostGuard} checks the
+ * query's plan on each database in that database's task, within its timeout; a database where
+ * the guard would not run it reports the plan or refusal in "sources" instead.
+ */
+public class FanOutQueryTool implements IAITool {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.FanOutQueryTool");
+    private static final Pattern SELECT_PATTERN = Pattern.compile("^\\s*SELECT\\s+", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Allowance for getting a connection and reading rows on top of the statement timeout.
+     */
+    private static final long GRACE_MILLIS = 5000;
+
+    private final GatewayContext gatewayContext;
+    private final IAISettings settings;
+    private final ResultCursorCache cursors;
+    private final QueryResultCache queryCache;
+    private final QueryCostGuard costGuard;
+    private final int concurrency;
+    private final ExecutorService executor;
+
+    public FanOutQueryTool(GatewayContext gatewayContext, IAISettings settings, ResultCursorCache cursors,
+            QueryResultCache queryCache, QueryCostGuard costGuard) {
+        this.gatewayContext = gatewayContext;
+        this.settings = settings;
+        this.cursors = cursors;
+        this.queryCache = queryCache;
+        this.costGuard = costGuard;
+        this.concurrency = Math.max(1, settings.getFanOutConcurrency());
+        // Bounds the connections all fan-out calls take from the datasource pools together
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "IAI-FanOutQuery-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "fan_out_query";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Run the same SQL SELECT query on several databases concurrently and return the merged rows with a " +
+                "'source' column naming the database. Use this instead of repeated execute_sql_query calls to compare " +
+                "lines, areas or plants that each have their own database. Choose databases by name list or by a " +
+                "pattern with * wildcards (see list_databases). Databases that fail or time out are reported in " +
+                "'sources' with their error; the rest are still returned. A database where the query is estimated to be " +
+                "too expensive may be limited or not run; its entry in 'sources' then has a cost_guard. If has_more is true, use fetch_more with " +
+                "the returned cursor for further rows.";
+    }
+
+    @Override
+    public JsonObject getParameterSchema() {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+
+        JsonObject databases = new JsonObject();
+        databases.addProperty("type", "array");
+        JsonObject items = new JsonObject();
+        items.addProperty("type", "string");
+        databases.add("items", items);
+        databases.addProperty("description", "Database connection names to query");
+        properties.add("databases", databases);
+
+        JsonObject pattern = new JsonObject();
+        pattern.addProperty("type", "string");
+        pattern.addProperty("description", "Query every database whose name matches this pattern, " +
+                "case-insensitive with * and ? wildcards (e.g. 'Line*_Prod'). Used if databases is not given.");
+        properties.add("database_pattern", pattern);
+
+        JsonObject query = new JsonObject();
+        query.addProperty("type", "string");
+        query.addProperty("description", "The SQL SELECT query to run on each database");
+        properties.add("query", query);
+
+        JsonObject timeout = new JsonObject();
+        timeout.addProperty("type", "integer");
+        timeout.addProperty("description", "Timeout per database in seconds (default and maximum: the query timeout setting)");
+        properties.add("timeout_seconds", timeout);
+
+        JsonObject useCache = new JsonObject();
+        useCache.addProperty("type", "boolean");
+        useCache.addProperty("description", "Allow recent cached results of the same query, for databases whose results are " +
+                "cached (default: true)");
+        useCache.addProperty("default", true);
+        properties.add("use_cache", useCache);
+
+        schema.add("properties", properties);
+
+        JsonArray required = new JsonArray();
+        required.add("query");
+        schema.add("required", required);
+
+        return schema;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        if (params.has("database_pattern")) {
+            return params.get("database_pattern").getAsString();
+        }
+        return params.has("databases") ? params.get("databases").getAsJsonArray().size() + " databases" : null;
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        String query = params.get("query").getAsString();
+        boolean useCache = !params.has("use_cache") || params.get("use_cache").getAsBoolean();
+        int timeoutSeconds = settings.getQueryTimeoutSeconds();
+        if (params.has("timeout_seconds")) {
+            timeoutSeconds = Math.max(1, Math.min(params.get("timeout_seconds").getAsInt(), timeoutSeconds));
+        }
+
+        if (!SELECT_PATTERN.matcher(query).find()) {
+            throw new IllegalArgumentException("Only SELECT queries are allowed. Query must start with SELECT.");
+        }
+
+        Map<String, Datasource> datasources = resolveDatasources(params);
+        int maxDatabases = settings.getFanOutMaxDatabases();
+        if (datasources.size() > maxDatabases) {
+            throw new IllegalArgumentException(datasources.size() + " databases selected; at most " + maxDatabases +
+                " can be queried in one call. Narrow the list or pattern.");
+        }
+
+        logger.debug("Fan-out query on " + datasources.size() + " databases");
+
+        // Row and byte budgets are shared so the merged result is no larger than one query's
+        int maxRows = Math.max(1, settings.getMaxCursorRows() / datasources.size());
+        long maxBytes = Math.max(1024L, settings.getMaxResultBufferKB() * 1024L / datasources.size());
+        int statementTimeout = timeoutSeconds;
+
+        Map<String, Future<Outcome>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Datasource> entry : datasources.entrySet()) {
+            String name = entry.getKey();
+            Datasource datasource = entry.getValue();
+            futures.put(name, executor.submit(() -> run(name, datasource, query, maxRows, maxBytes, statementTimeout,
+                useCache, context)));
+        }
+
+        // Databases queued behind others get their own timeout once they start
+        int waves = (datasources.size() + concurrency - 1) / concurrency;
+        long deadline = System.currentTimeMillis() + waves * (timeoutSeconds * 1000L + GRACE_MILLIS);
+
+        Map<String, TabularResultEncoder> tables = new LinkedHashMap<>();
+        JsonArray sources = new JsonArray();
+        int notRun = 0;
+        try {
+            for (Map.Entry<String, Future<Outcome>> entry : futures.entrySet()) {
+                JsonObject source = new JsonObject();
+                source.addProperty("database", entry.getKey());
+                try {
+                    Outcome outcome = await(entry.getValue(), deadline, context);
+                    if (outcome.refusal != null) {
+                        notRun++;
+                        source.addProperty("status", "rejected");
+                        source.addProperty("error", outcome.refusal);
+                    } else if (outcome.lookup == null) {
+                        notRun++;
+                        source.addProperty("status", "not_run");
+                        outcome.verdict.writeTo(source);
+                    } else {
+                        TabularResultEncoder table = outcome.lookup.getTable();
+                        tables.put(entry.getKey(), table);
+                        source.addProperty("status", "ok");
+                        source.addProperty("rows", table.getRowCount());
+                        outcome.verdict.writeTo(source);
+                        if (table.isTruncated()) {
+                            source.addProperty("truncated", true);
+                            source.addProperty("message", table.getTruncationMessage());
+                        }
+                        if (outcome.lookup.isHit()) {
+                            source.addProperty("cached", true);
+                        }
+                    }
+                } catch (TimeoutException e) {
+                    entry.getValue().cancel(true);
+                    source.addProperty("status", "timeout");
+                    source.addProperty("error", "No result within " + timeoutSeconds + " seconds");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof TimeoutException) {
+                        source.addProperty("status", "timeout");
+                        source.addProperty("error", "No result within " + timeoutSeconds + " seconds");
+                    } else {
+                        logger.debug("Fan-out query failed on " + entry.getKey(), cause);
+                        source.addProperty("status", "error");
+                        source.addProperty("error", cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+                    }
+                }
+                sources.add(source);
+            }
+        } finally {
+            // Cancelled or failed calls must not leave queries running for nobody
+            for (Future<Outcome> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+
+        TabularResultEncoder merged = merge(tables);
+        int failed = datasources.size() - tables.size() - notRun;
+
+        JsonObject result = new JsonObject();
+        result.add("sources", sources);
+        result.addProperty("databases_queried", datasources.size());
+        result.addProperty("databases_failed", failed);
+        if (notRun > 0) {
+            result.addProperty("databases_not_run", notRun);
+        }
+        return cursors.firstPage(result, merged, context.getConversationId(), getName(), settings.getResultPageRows(),
+            ResultCursorCache.pageBytes(settings.getMaxToolResultSizeKB(), context.getRemainingTokens()));
+    }
+
+    /**
+     * Check one database's plan and, if the cost guard allows, run the query on it. Runs on the
+     * pool, so plans are checked concurrently and the EXPLAIN counts against the database's timeout.
+     */
+    private Outcome run(String name, Datasource datasource, String query, int maxRows, long maxBytes, int timeoutSeconds,
+                        boolean useCache, ToolInvocationContext context) throws Exception {
+        long started = System.currentTimeMillis();
+        QueryCostGuard.Verdict verdict;
+        try {
+            verdict = costGuard.check(name, datasource, query, timeoutSeconds);
+        } catch (IllegalArgumentException e) {
+            // Plans differ per database, so one over its limits does not stop the others
+            return new Outcome(null, null, e.getMessage());
+        }
+        if (verdict.getAction() == QueryCostGuard.Action.PLAN) {
+            return new Outcome(verdict, null, null);
+        }
+
+        int remaining = timeoutSeconds - (int) ((System.currentTimeMillis() - started) / 1000);
+        if (remaining <= 0) {
+            throw new TimeoutException();
+        }
+        int rowLimit = verdict.getAction() == QueryCostGuard.Action.LIMIT
+            ? Math.min(maxRows, settings.getResultPageRows()) : maxRows;
+        QueryResultCache.Lookup lookup = queryCache.getOrLoad(name, query, rowLimit, useCache, () ->
+            StreamingQuery.run(datasource, query, rowLimit, maxBytes, remaining, context));
+        return new Outcome(verdict, lookup, null);
+    }
+
+    /**
+     * Release the query threads. Queries still running are interrupted.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Map<String, Datasource> resolveDatasources(JsonObject params) {
+        Map<String, Datasource> resolved = new LinkedHashMap<>();
+
+        if (params.has("databases") && params.get("databases").isJsonArray()
+                && params.getAsJsonArray("databases").size() > 0) {
+            List<String> missing = new ArrayList<>();
+            for (JsonElement element : params.getAsJsonArray("databases")) {
+                String name = element.getAsString();
+                Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(name);
+                if (datasource == null) {
+                    missing.add(name);
+                } else {
+                    resolved.put(datasource.getName(), datasource);
+                }
+            }
+            if (!missing.isEmpty()) {
+                throw new IllegalArgumentException("Database not found: " + String.join(", ", missing));
+            }
+            return resolved;
+        }
+
+        if (!params.has("database_pattern")) {
+            throw new IllegalArgumentException("Either databases or database_pattern is required");
+        }
+        String pattern = params.get("database_pattern").getAsString();
+        Pattern regex = globToRegex(pattern);
+        for (Datasource datasource : gatewayContext.getDatasourceManager().getDatasources()) {
+            if (regex.matcher(datasource.getName()).matches()) {
+                resolved.put(datasource.getName(), datasource);
+            }
+        }
+        if (resolved.isEmpty()) {
+            throw new IllegalArgumentException("No database matches " + pattern + ". Use list_databases to see available databases.");
+        }
+        return resolved;
+    }
+
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    /**
+     * Wait for a query, checking for cancellation of the tool call while it runs.
+     */
+    private static Outcome await(Future<Outcome> future, long deadline, ToolInvocationContext context) throws Exception {
+        while (true) {
+            context.checkActive();
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            try {
+                return future.get(Math.min(remaining, 1000), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Poll again
+            }
+        }
+    }
+
+    /**
+     * Merge per-database rows under the union of their columns, matched case-insensitively.
+     * Rows of databases that lack a column get null for it.
+     */
+    private static TabularResultEncoder merge(Map<String, TabularResultEncoder> tables) {
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        List<String> names = new ArrayList<>();
+        List<String> types = new ArrayList<>();
+        for (TabularResultEncoder table : tables.values()) {
+            for (int c = 0; c < table.getColumns().size(); c++) {
+                String name = table.getColumns().get(c).getAsString();
+                if (positions.putIfAbsent(name.toLowerCase(Locale.ROOT), names.size()) == null) {
+                    names.add(name);
+                    types.add(table.getTypes().get(c).getAsString());
+                }
+            }
+        }
+
+        TabularResultEncoder merged = new TabularResultEncoder();
+        merged.addColumn(positions.containsKey("source") ? "_source" : "source", "VARCHAR");
+        for (int c = 0; c < names.size(); c++) {
+            merged.addColumn(names.get(c), types.get(c));
+        }
+
+        List<String> truncated = new ArrayList<>();
+        for (Map.Entry<String, TabularResultEncoder> entry : tables.entrySet()) {
+            TabularResultEncoder table = entry.getValue();
+            int[] mapping = new int[table.getColumns().size()];
+            for (int c = 0; c < mapping.length; c++) {
+                mapping[c] = positions.get(table.getColumns().get(c).getAsString().toLowerCase(Locale.ROOT));
+            }
+
+            for (JsonElement element : table.getRows()) {
+                JsonArray row = element.getAsJsonArray();
+                JsonElement[] values = new JsonElement[names.size()];
+                for (int c = 0; c < mapping.length; c++) {
+                    // Duplicate names within one result keep the first value
+                    if (values[mapping[c]] == null) {
+                        values[mapping[c]] = row.get(c);
+                    }
+                }
+
+                JsonArray out = new JsonArray();
+                out.add(entry.getKey());
+                for (JsonElement value : values) {
+                    out.add(value != null ? value : JsonNull.INSTANCE);
+                }
+                merged.addEncodedRow(out);
+            }
+            if (table.isTruncated()) {
+                truncated.add(entry.getKey());
+            }
+        }
+
+        if (!truncated.isEmpty()) {
+            merged.setTruncated("Rows limited per database for " + String.join(", ", truncated) + "; see sources");
+        }
+        return merged;
+    }
+
+    /**
+     * What happened on one database: the rows, the plan it was not run with, or the guard's refusal.
+     */
+    private static final class Outcome {
+        final QueryCostGuard.Verdict verdict;
+        final QueryResultCache.Lookup lookup;
+        final String refusal;
+
+        Outcome(QueryCostGuard.Verdict verdict, QueryResultCache.Lookup lookup, String refusal) {
+            this.verdict = verdict;
+            this.lookup = lookup;
+            this.refusal = refusal;
+        }
+    }
+}
@@ -44,6 +44,17 @@ public class ListDatabasesTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        return true;
+    }
+
+    @Override
+    public long getResultTtlMillis() {
+        // Connections rarely change
+        return 5 * 60_000L;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
         logger.debug("Listing available databases");
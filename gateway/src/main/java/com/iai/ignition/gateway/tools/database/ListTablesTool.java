@@ -5,12 +5,11 @@ import com.iai.ignition.gateway.records.IAISettings;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
-import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
-import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.ResultSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 /**
  * Tool for listing tables in a database.
@@ -21,10 +20,12 @@ public class ListTablesTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final SchemaCatalogCache schemaCache;
 
-    public ListTablesTool(GatewayContext gatewayContext, IAISettings settings) {
+    public ListTablesTool(GatewayContext gatewayContext, IAISettings settings, SchemaCatalogCache schemaCache) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.schemaCache = schemaCache;
     }
 
     @Override
@@ -34,7 +35,8 @@ public class ListTablesTool implements IAITool {
 
     @Override
     public String getDescription() {
-        return "List all tables in a database. Returns table names and types.";
+        return "List tables in a database. Returns table names and types. Use pattern to filter large databases " +
+                "(e.g. 'alarm' or 'sqlt_data_*').";
     }
 
     @Override
@@ -49,6 +51,16 @@ public class ListTablesTool implements IAITool {
         database.addProperty("description", "The database connection name");
         properties.add("database", database);
 
+        JsonObject pattern = new JsonObject();
+        pattern.addProperty("type", "string");
+        pattern.addProperty("description", "Optional case-insensitive table name filter: a substring, or a pattern with * and ? wildcards");
+        properties.add("pattern", pattern);
+
+        JsonObject refresh = new JsonObject();
+        refresh.addProperty("type", "boolean");
+        refresh.addProperty("description", "Re-read the schema instead of using the cached catalog (default: false). Only needed after tables were created or dropped.");
+        properties.add("refresh", refresh);
+
         schema.add("properties", properties);
 
         JsonArray required = new JsonArray();
@@ -58,36 +70,94 @@ public class ListTablesTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        return !isRefresh(params);
+    }
+
+    @Override
+    public long getResultTtlMillis() {
+        // Schema metadata scans are expensive and rarely change
+        return 5 * 60_000L;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        return params.has("database") ? params.get("database").getAsString() : null;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
         String databaseName = params.get("database").getAsString();
+        String patternText = params.has("pattern") ? params.get("pattern").getAsString() : null;
 
         logger.debug("Listing tables for database: " + databaseName);
 
-        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(databaseName);
-        if (datasource == null) {
-            throw new IllegalArgumentException("Database not found: " + databaseName);
+        SchemaCatalog catalog = schemaCache.get(databaseName, isRefresh(params));
+        Pattern pattern = compilePattern(patternText);
+
+        // Names that exist in more than one schema are listed schema-qualified
+        Set<String> seen = new HashSet<>();
+        Set<String> duplicated = new HashSet<>();
+        for (SchemaCatalog.Table table : catalog.getTables()) {
+            if (!seen.add(table.getName())) {
+                duplicated.add(table.getName());
+            }
         }
 
         JsonArray tables = new JsonArray();
-
-        try (Connection conn = datasource.getConnection()) {
-            DatabaseMetaData metadata = conn.getMetaData();
-            try (ResultSet rs = metadata.getTables(null, null, "%", new String[]{"TABLE"})) {
-                while (rs.next()) {
-                    JsonObject table = new JsonObject();
-                    table.addProperty("name", rs.getString("TABLE_NAME"));
-                    table.addProperty("type", rs.getString("TABLE_TYPE"));
-                    tables.add(table);
-                }
+        for (SchemaCatalog.Table table : catalog.getTables()) {
+            if (pattern != null && !pattern.matcher(table.getName()).find()) {
+                continue;
             }
+            JsonObject tableJson = new JsonObject();
+            tableJson.addProperty("name", duplicated.contains(table.getName()) ? table.getQualifiedName() : table.getName());
+            tableJson.addProperty("type", table.getType());
+            tables.add(tableJson);
         }
 
         JsonObject result = new JsonObject();
         result.addProperty("database", databaseName);
         result.add("tables", tables);
         result.addProperty("count", tables.size());
+        if (pattern != null) {
+            result.addProperty("pattern", patternText);
+            result.addProperty("total_tables", catalog.getTables().size());
+        }
 
         return result;
     }
+
+    private static boolean isRefresh(JsonObject params) {
+        return params.has("refresh") && params.get("refresh").getAsBoolean();
+    }
+
+    /**
+     * Compile a table name filter: wildcards match the whole name, plain text any part of it.
+     *
+     * @return The pattern, or null to match every table
+     */
+    static Pattern compilePattern(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return null;
+        }
+
+        String trimmed = text.trim();
+        if (trimmed.indexOf('*') < 0 && trimmed.indexOf('?') < 0 && trimmed.indexOf('%') < 0) {
+            return Pattern.compile(Pattern.quote(trimmed), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+
+        StringBuilder regex = new StringBuilder("^");
+        for (char c : trimmed.toCharArray()) {
+            if (c == '*' || c == '%') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        regex.append('$');
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
 }
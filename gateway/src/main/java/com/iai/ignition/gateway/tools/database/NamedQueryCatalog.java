@@ -0,0 +1,434 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.gateway.records.IAISettings;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.gson.JsonParser;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Parsed named query definitions, read from project resources on the gateway's disk.
+ *
+ * A named query is a folder holding resource.json (database, type, parameters) and, in
+ * Ignition 8.1, query.sql. Folders are looked up under ignition/named-query and then under
+ * com.inductiveautomation.ignition.common.script.data/queries. Definitions are cached per
+ * project and query path, and re-read when either file's modification time changes.
+ *
+ * Value parameters (:name) become JDBC placeholders when the query is parsed; query string
+ * parameters ({name}) are substituted as text and only accept numbers and identifiers that
+ * are not SQL keywords. A query without query string parameters renders to the same SQL text on
+ * every call, so the driver's or pool's prepared statement cache can reuse its statement.
+ */
+public class NamedQueryCatalog {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.NamedQueryCatalog");
+
+    private static final String[] QUERY_FOLDERS = {
+        "ignition/named-query",
+        "com.inductiveautomation.ignition.common.script.data/queries"
+    };
+
+    /**
+     * Values allowed for {name} substitution: a comma-separated list of identifiers (optionally
+     * qualified) and numbers, so no operators, literals, comments or second statements can be
+     * spliced in. Identifiers that are SQL keywords are refused separately, see
+     * {@link #QUERY_STRING_KEYWORDS}.
+     */
+    private static final String QUERY_STRING_TOKEN = "(?:[A-Za-z_][A-Za-z0-9_.]*|-?[0-9]+(?:\\.[0-9]+)?)";
+    private static final Pattern QUERY_STRING_VALUE = Pattern.compile(
+        "\\s*" + QUERY_STRING_TOKEN + "(?:\\s*,\\s*" + QUERY_STRING_TOKEN + ")*\\s*");
+
+    /**
+     * Keywords refused in query string values, where they could change the statement or its
+     * clauses. ASC, DESC, NULL, TRUE and FALSE stay allowed for sort direction and flag values.
+     */
+    private static final Set<String> QUERY_STRING_KEYWORDS = new HashSet<>(Arrays.asList(
+        "SELECT", "INSERT", "UPDATE", "DELETE", "MERGE", "UPSERT", "REPLACE", "TRUNCATE", "DROP", "CREATE", "ALTER",
+        "RENAME", "GRANT", "REVOKE", "EXEC", "EXECUTE", "CALL", "DECLARE", "SET", "USE", "BEGIN", "COMMIT", "ROLLBACK",
+        "SHUTDOWN", "WAITFOR", "INTO", "FROM", "WHERE", "JOIN", "ON", "USING", "UNION", "INTERSECT", "EXCEPT", "MINUS",
+        "WITH", "AND", "OR", "NOT", "IN", "IS", "LIKE", "BETWEEN", "EXISTS", "ANY", "SOME", "ALL", "CASE", "WHEN",
+        "THEN", "ELSE", "END", "GROUP", "HAVING", "ORDER", "BY", "LIMIT", "OFFSET", "FETCH", "TOP", "AS", "DISTINCT",
+        "LOAD_FILE", "OUTFILE", "DUMPFILE", "SLEEP", "BENCHMARK", "PG_SLEEP", "XP_CMDSHELL"
+    ));
+
+    /**
+     * Parameter types by the numeric code 8.1 stores in resource.json (Ignition's DataType order).
+     */
+    private static final String[] SQL_TYPE_CODES = {
+        "Int1", "Int2", "Int4", "Int8", "Float4", "Float8", "Boolean", "String", "DateTime", "Text"
+    };
+
+    private final IAISettings settings;
+    private final Map<String, NamedQuery> queries = new ConcurrentHashMap<>();
+
+    public NamedQueryCatalog(IAISettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Get a named query, parsing it if it is not cached or its files changed.
+     *
+     * @param projectName The project
+     * @param queryPath The query path within the project, e.g. "Production/ByLine"
+     * @throws IllegalArgumentException if the project or query does not exist
+     */
+    public NamedQuery get(String projectName, String queryPath) throws IOException {
+        String path = queryPath.replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+                throw new IllegalArgumentException("Invalid named query path: " + queryPath);
+            }
+        }
+        if (projectName.contains("/") || projectName.contains("\\") || projectName.contains("..")) {
+            throw new IllegalArgumentException("Invalid project name: " + projectName);
+        }
+
+        Path projectDir = projectDir(projectName);
+        if (!Files.isDirectory(projectDir)) {
+            throw new IllegalArgumentException("Project not found: " + projectName);
+        }
+
+        Path queryDir = null;
+        for (String folder : QUERY_FOLDERS) {
+            Path candidate = projectDir.resolve(folder).resolve(path);
+            if (Files.isRegularFile(candidate.resolve("resource.json"))) {
+                queryDir = candidate;
+                break;
+            }
+        }
+        if (queryDir == null) {
+            throw new IllegalArgumentException("Named query not found: " + queryPath + " in project " + projectName +
+                ". Use project_files with action list_queries to see available queries.");
+        }
+
+        Path resourceFile = queryDir.resolve("resource.json");
+        Path sqlFile = queryDir.resolve("query.sql");
+        long resourceModified = Files.getLastModifiedTime(resourceFile).toMillis();
+        long sqlModified = Files.exists(sqlFile) ? Files.getLastModifiedTime(sqlFile).toMillis() : 0;
+
+        String key = projectName + "/" + path;
+        NamedQuery cached = queries.get(key);
+        if (cached != null && cached.resourceModified == resourceModified && cached.sqlModified == sqlModified) {
+            return cached;
+        }
+
+        NamedQuery query = parse(path, resourceFile, sqlFile, resourceModified, sqlModified);
+        queries.put(key, query);
+        logger.debug("Parsed named query " + key + " with " + query.placeholders.size() + " placeholders");
+        return query;
+    }
+
+    /**
+     * Drop every cached definition.
+     */
+    public void clear() {
+        queries.clear();
+    }
+
+    private Path projectDir(String projectName) {
+        String gatewayDataPath = settings.getGatewayDataPath();
+        if (gatewayDataPath == null || gatewayDataPath.isEmpty()) {
+            gatewayDataPath = System.getProperty("ignition.home", "/usr/local/bin/ignition") + "/data";
+        }
+        return Paths.get(gatewayDataPath, "projects", projectName);
+    }
+
+    @SuppressWarnings("deprecation")
+    static NamedQuery parse(String name, Path resourceFile, Path sqlFile, long resourceModified, long sqlModified) throws IOException {
+        JsonObject resource = new JsonParser().parse(new String(Files.readAllBytes(resourceFile), StandardCharsets.UTF_8))
+            .getAsJsonObject();
+        // Ignition 8 resources keep the query settings in "attributes"
+        JsonObject attributes = resource.has("attributes") ? resource.getAsJsonObject("attributes") : resource;
+
+        String sql;
+        if (Files.exists(sqlFile)) {
+            sql = new String(Files.readAllBytes(sqlFile), StandardCharsets.UTF_8);
+        } else if (attributes.has("query")) {
+            sql = attributes.get("query").getAsString();
+        } else {
+            throw new IllegalArgumentException("Named query has no SQL: " + name);
+        }
+
+        String database = string(attributes, "database");
+        String type = string(attributes, "type");
+        boolean enabled = !attributes.has("enabled") || attributes.get("enabled").getAsBoolean();
+
+        Map<String, String> sqlTypes = new LinkedHashMap<>();
+        if (attributes.has("parameters") && attributes.get("parameters").isJsonArray()) {
+            for (JsonElement element : attributes.getAsJsonArray("parameters")) {
+                JsonObject parameter = element.getAsJsonObject();
+                String identifier = string(parameter, "identifier");
+                if (identifier != null) {
+                    String sqlType = sqlTypeName(string(parameter, "sqlType"));
+                    sqlTypes.put(identifier, sqlType != null ? sqlType : "String");
+                }
+            }
+        }
+
+        List<String> placeholders = new ArrayList<>();
+        String jdbcSql = replacePlaceholders(sql, placeholders);
+        return new NamedQuery(name, database, type != null ? type : "Query", enabled, jdbcSql, placeholders, sqlTypes,
+            resourceModified, sqlModified);
+    }
+
+    /**
+     * The type name of a parameter's sqlType: 8.1 stores a numeric code, older exports a name.
+     *
+     * @return The name, or the value unchanged if it is neither a known code nor a number
+     */
+    static String sqlTypeName(String sqlType) {
+        if (sqlType == null || !sqlType.matches("[0-9]+")) {
+            return sqlType;
+        }
+        int code = Integer.parseInt(sqlType);
+        return code < SQL_TYPE_CODES.length ? SQL_TYPE_CODES[code] : sqlType;
+    }
+
+    private static String string(JsonObject json, String name) {
+        if (!json.has(name) || json.get(name).isJsonNull()) {
+            return null;
+        }
+        String value = json.get(name).getAsString().trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Replace :name parameters with ? placeholders, skipping string literals, quoted identifiers,
+     * comments and PostgreSQL :: casts.
+     *
+     * @param placeholders Receives the parameter name of each placeholder, in order
+     */
+    static String replacePlaceholders(String sql, List<String> placeholders) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int n = sql.length();
+        int i = 0;
+
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = sql.indexOf(c, i + 1);
+                while (end >= 0 && end + 1 < n && sql.charAt(end + 1) == c) {
+                    end = sql.indexOf(c, end + 2);
+                }
+                end = end < 0 ? n : end + 1;
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                end = end < 0 ? n : end;
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                end = end < 0 ? n : end + 2;
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == ':' && i + 1 < n && sql.charAt(i + 1) == ':') {
+                out.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < n && (Character.isLetter(sql.charAt(i + 1)) || sql.charAt(i + 1) == '_')) {
+                int end = i + 1;
+                while (end < n && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_')) {
+                    end++;
+                }
+                placeholders.add(sql.substring(i + 1, end));
+                out.append('?');
+                i = end;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * A parsed named query.
+     */
+    public static final class NamedQuery {
+        private final String name;
+        private final String database;
+        private final String type;
+        private final boolean enabled;
+        private final String jdbcSql;
+        private final List<String> placeholders;
+        private final Map<String, String> sqlTypes;
+        private final List<String> queryStrings;
+        private final long resourceModified;
+        private final long sqlModified;
+
+        private NamedQuery(String name, String database, String type, boolean enabled, String jdbcSql,
+                           List<String> placeholders, Map<String, String> sqlTypes, long resourceModified, long sqlModified) {
+            this.name = name;
+            this.database = database;
+            this.type = type;
+            this.enabled = enabled;
+            this.jdbcSql = jdbcSql;
+            this.placeholders = Collections.unmodifiableList(placeholders);
+            this.sqlTypes = Collections.unmodifiableMap(sqlTypes);
+            List<String> queryStrings = new ArrayList<>();
+            for (String parameter : sqlTypes.keySet()) {
+                if (jdbcSql.contains("{" + parameter + "}")) {
+                    queryStrings.add(parameter);
+                }
+            }
+            this.queryStrings = Collections.unmodifiableList(queryStrings);
+            this.resourceModified = resourceModified;
+            this.sqlModified = sqlModified;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The configured database, or null for the project's default database
+         */
+        public String getDatabase() {
+            return database;
+        }
+
+        /**
+         * @return Query, ScalarQuery or UpdateQuery
+         */
+        public String getType() {
+            return type;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * @return Declared parameter names and their Ignition SQL types
+         */
+        public Map<String, String> getParameters() {
+            return sqlTypes;
+        }
+
+        /**
+         * SQL to prepare for a call: query string parameters substituted, value parameters as ?.
+         * Without query string parameters this is the parsed SQL itself, identical for every call.
+         *
+         * @param values Parameter values by name
+         * @throws IllegalArgumentException if a query string value is missing or not a plain name or number
+         */
+        public String render(JsonObject values) {
+            String sql = jdbcSql;
+            for (String parameter : queryStrings) {
+                if (!values.has(parameter) || values.get(parameter).isJsonNull()) {
+                    throw new IllegalArgumentException("Missing parameter: " + parameter);
+                }
+                String value = values.get(parameter).getAsString();
+                if (!QUERY_STRING_VALUE.matcher(value).matches()) {
+                    throw new IllegalArgumentException("Query string parameter " + parameter +
+                        " only accepts a comma-separated list of names and numbers: " + value);
+                }
+                for (String part : value.split("[\\s,.]+")) {
+                    if (QUERY_STRING_KEYWORDS.contains(part.toUpperCase(Locale.ROOT))) {
+                        throw new IllegalArgumentException("Query string parameter " + parameter +
+                            " does not accept the SQL keyword " + part);
+                    }
+                }
+                sql = sql.replace("{" + parameter + "}", value);
+            }
+            return sql;
+        }
+
+        /**
+         * Bind value parameters to a statement prepared from {@link #render}.
+         *
+         * @param values Parameter values by name
+         * @throws IllegalArgumentException if a value is missing or has the wrong type
+         */
+        public void bind(PreparedStatement stmt, JsonObject values) throws SQLException {
+            for (int i = 0; i < placeholders.size(); i++) {
+                String parameter = placeholders.get(i);
+                if (!values.has(parameter)) {
+                    throw new IllegalArgumentException("Missing parameter: " + parameter + ". Expected: " + sqlTypes.keySet());
+                }
+                bindValue(stmt, i + 1, parameter, sqlTypes.getOrDefault(parameter, ""), values.get(parameter));
+            }
+        }
+
+        private static void bindValue(PreparedStatement stmt, int index, String parameter, String sqlType,
+                                      JsonElement value) throws SQLException {
+            String type = sqlType.toLowerCase();
+            if (value == null || value.isJsonNull()) {
+                stmt.setNull(index, type.startsWith("int") ? Types.BIGINT : type.startsWith("float") ? Types.DOUBLE
+                    : type.startsWith("bool") ? Types.BOOLEAN : type.startsWith("date") ? Types.TIMESTAMP : Types.VARCHAR);
+                return;
+            }
+
+            try {
+                if (type.startsWith("int")) {
+                    stmt.setLong(index, value.getAsLong());
+                } else if (type.startsWith("float")) {
+                    stmt.setDouble(index, value.getAsDouble());
+                } else if (type.startsWith("bool")) {
+                    stmt.setBoolean(index, value.getAsBoolean());
+                } else if (type.startsWith("date")) {
+                    stmt.setTimestamp(index, timestamp(value));
+                } else if (type.isEmpty() && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()) {
+                    // Undeclared parameter; keep the JSON type
+                    stmt.setObject(index, value.getAsNumber());
+                } else if (type.isEmpty() && value.isJsonPrimitive() && value.getAsJsonPrimitive().isBoolean()) {
+                    stmt.setBoolean(index, value.getAsBoolean());
+                } else {
+                    stmt.setString(index, value.getAsString());
+                }
+            } catch (NumberFormatException | UnsupportedOperationException | IllegalStateException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid value for parameter " + parameter +
+                    (sqlType.isEmpty() ? "" : " (" + sqlType + ")") + ": " + value);
+            }
+        }
+
+        /**
+         * A DateTime parameter from epoch milliseconds, an ISO instant, "yyyy-MM-dd HH:mm:ss" or a date.
+         */
+        private static Timestamp timestamp(JsonElement value) {
+            if (value.getAsJsonPrimitive().isNumber()) {
+                return new Timestamp(value.getAsLong());
+            }
+            String text = value.getAsString().trim();
+            if (text.endsWith("Z") || text.matches(".*[+-]\\d{2}:\\d{2}$")) {
+                return Timestamp.from(Instant.parse(text));
+            }
+            if (text.length() == 10) {
+                return Timestamp.valueOf(LocalDate.parse(text).atStartOfDay());
+            }
+            try {
+                return Timestamp.valueOf(text.replace('T', ' '));
+            } catch (IllegalArgumentException e) {
+                throw new DateTimeParseException("Unrecognized date", text, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.database.SqlDialect;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Tool for summarizing a table's columns without reading its rows.
+ *
+ * Counts, null counts, MIN/MAX/AVG and percentiles of numeric columns, MIN/MAX of temporal
+ * columns and the most frequent values of text and boolean columns are computed by the
+ * database. Percentiles take one statement per column: percentile_cont as an aggregate or, on
+ * SQL Server, as a window function; elsewhere the nearest-rank values are picked from one
+ * ROW_NUMBER() ranking. Percentiles are computed for at most {@link #MAX_PERCENTILE_COLUMNS}
+ * columns per call.
+ */
+public class ProfileTableTool implements IAITool {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.ProfileTableTool");
+
+    private static final int MAX_COLUMNS = 30;
+    private static final int MAX_TOP_K = 20;
+    private static final int MAX_PERCENTILES = 5;
+    private static final int MAX_PERCENTILE_COLUMNS = 10;
+
+    private final GatewayContext gatewayContext;
+    private final IAISettings settings;
+    private final SchemaCatalogCache schemaCache;
+    private final QueryResultCache queryCache;
+
+    public ProfileTableTool(GatewayContext gatewayContext, IAISettings settings, SchemaCatalogCache schemaCache, QueryResultCache queryCache) {
+        this.gatewayContext = gatewayContext;
+        this.settings = settings;
+        this.schemaCache = schemaCache;
+        this.queryCache = queryCache;
+    }
+
+    @Override
+    public String getName() {
+        return "profile_table";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Summarize a table's columns in the database instead of reading rows: row count, null counts, " +
+                "min/max/avg and percentiles of numeric columns, min/max of date columns and the most frequent " +
+                "values of text columns. Use this for 'typical value' or 'what values occur' questions. " +
+                "Enforces queryTimeoutSeconds setting per statement.";
+    }
+
+    @Override
+    public JsonObject getParameterSchema() {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+
+        JsonObject database = new JsonObject();
+        database.addProperty("type", "string");
+        database.addProperty("description", "The database connection name");
+        properties.add("database", database);
+
+        JsonObject tableName = new JsonObject();
+        tableName.addProperty("type", "string");
+        tableName.addProperty("description", "The table name to profile, optionally schema-qualified");
+        properties.add("table_name", tableName);
+
+        JsonObject columns = new JsonObject();
+        columns.addProperty("type", "array");
+        JsonObject columnItem = new JsonObject();
+        columnItem.addProperty("type", "string");
+        columns.add("items", columnItem);
+        columns.addProperty("description", "Columns to profile (default: all, up to " + MAX_COLUMNS + ")");
+        properties.add("columns", columns);
+
+        JsonObject filters = new JsonObject();
+        filters.addProperty("type", "string");
+        filters.addProperty("description", "Optional WHERE clause (without 'WHERE' keyword) selecting the rows to profile");
+        properties.add("filters", filters);
+
+        JsonObject percentiles = new JsonObject();
+        percentiles.addProperty("type", "array");
+        JsonObject percentileItem = new JsonObject();
+        percentileItem.addProperty("type", "number");
+        percentiles.add("items", percentileItem);
+        percentiles.addProperty("description", "Percentiles of numeric columns, as fractions between 0 and 1 " +
+                "(default: [0.5, 0.9]; empty for none)");
+        properties.add("percentiles", percentiles);
+
+        JsonObject topK = new JsonObject();
+        topK.addProperty("type", "integer");
+        topK.addProperty("description", "Most frequent values to list per text column (default: 5, 0 for none)");
+        topK.addProperty("default", 5);
+        properties.add("top_k", topK);
+
+        JsonObject refresh = new JsonObject();
+        refresh.addProperty("type", "boolean");
+        refresh.addProperty("description", "Query the database again instead of reusing an earlier result in this conversation (default: false)");
+        properties.add("refresh", refresh);
+
+        schema.add("properties", properties);
+
+        JsonArray required = new JsonArray();
+        required.add("database");
+        required.add("table_name");
+        schema.add("required", required);
+
+        return schema;
+    }
+
+    /**
+     * Results reflect live data, so they are memoized only for as long as the database's query
+     * results may be cached (QueryCacheTtlSeconds and its overrides, 0 by default), and not
+     * when refresh is set.
+     */
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        boolean refresh = params.has("refresh") && params.get("refresh").getAsBoolean();
+        return !refresh && getResultTtlMillis(params) > 0;
+    }
+
+    @Override
+    public long getResultTtlMillis(JsonObject params) {
+        return params.has("database") ? queryCache.getTtlMillis(params.get("database").getAsString()) : 0;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        if (!params.has("database") || !params.has("table_name")) {
+            return null;
+        }
+        return params.get("database").getAsString() + "." + params.get("table_name").getAsString();
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        String databaseName = params.get("database").getAsString();
+        String tableName = params.get("table_name").getAsString();
+        String filters = params.has("filters") ? params.get("filters").getAsString() : null;
+        int topK = params.has("top_k") ? Math.min(Math.max(0, params.get("top_k").getAsInt()), MAX_TOP_K) : 5;
+        List<Double> fractions = parsePercentiles(params);
+
+        logger.debug("Profiling table: " + databaseName + "." + tableName);
+
+        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(databaseName);
+        if (datasource == null) {
+            throw new IllegalArgumentException("Database not found: " + databaseName);
+        }
+
+        SchemaCatalog.Table table = TableAggregates.resolveTable(schemaCache, databaseName, tableName);
+        List<SchemaCatalog.Column> columns = new ArrayList<>();
+        int omitted = 0;
+        if (params.has("columns") && params.get("columns").isJsonArray() && params.getAsJsonArray("columns").size() > 0) {
+            for (JsonElement name : params.getAsJsonArray("columns")) {
+                SchemaCatalog.Column column = TableAggregates.resolveColumn(table, name.getAsString());
+                if (!columns.contains(column)) {
+                    columns.add(column);
+                }
+            }
+            if (columns.size() > MAX_COLUMNS) {
+                throw new IllegalArgumentException("At most " + MAX_COLUMNS + " columns can be profiled at once");
+            }
+        } else {
+            for (SchemaCatalog.Column column : table.getColumns()) {
+                if (columns.size() < MAX_COLUMNS) {
+                    columns.add(column);
+                } else {
+                    omitted++;
+                }
+            }
+        }
+
+        JsonObject result = new JsonObject();
+        result.addProperty("database", databaseName);
+        result.addProperty("table_name", table.getQualifiedName());
+
+        try (Connection conn = datasource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(settings.getQueryTimeoutSeconds());
+            SqlDialect dialect = SqlDialect.detect(conn);
+            String from = " FROM " + dialect.qualifiedName(table.getSchema(), table.getName());
+
+            List<TableAggregates.Kind> kinds = new ArrayList<>();
+            for (SchemaCatalog.Column column : columns) {
+                kinds.add(TableAggregates.kindOf(column.getType(), dialect));
+            }
+
+            // Counts, MIN, MAX and AVG of every column in one scan
+            StringBuilder select = new StringBuilder("SELECT COUNT(*)");
+            for (int i = 0; i < columns.size(); i++) {
+                String col = dialect.quoteIdentifier(columns.get(i).getName());
+                select.append(", COUNT(").append(col).append(')');
+                if (kinds.get(i) == TableAggregates.Kind.NUMERIC || kinds.get(i) == TableAggregates.Kind.TEMPORAL) {
+                    select.append(", MIN(").append(col).append("), MAX(").append(col).append(')');
+                }
+                if (kinds.get(i) == TableAggregates.Kind.NUMERIC) {
+                    select.append(", AVG(1.0 * ").append(col).append(')');
+                }
+            }
+
+            long rowCount;
+            List<JsonObject> profiles = new ArrayList<>();
+            List<Long> nonNullCounts = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery(select + from + TableAggregates.where(filters, null))) {
+                rs.next();
+                rowCount = rs.getLong(1);
+                int index = 2;
+                for (int i = 0; i < columns.size(); i++) {
+                    JsonObject profile = new JsonObject();
+                    profile.addProperty("type", columns.get(i).getType());
+                    long nonNull = rs.getLong(index++);
+                    nonNullCounts.add(nonNull);
+                    profile.addProperty("nulls", rowCount - nonNull);
+                    if (kinds.get(i) == TableAggregates.Kind.NUMERIC || kinds.get(i) == TableAggregates.Kind.TEMPORAL) {
+                        profile.add("min", TabularResultEncoder.encodeValue(rs.getObject(index++)));
+                        profile.add("max", TabularResultEncoder.encodeValue(rs.getObject(index++)));
+                    }
+                    if (kinds.get(i) == TableAggregates.Kind.NUMERIC) {
+                        Object avg = rs.getObject(index++);
+                        profile.add("avg", TabularResultEncoder.encodeValue(avg != null ? ((Number) avg).doubleValue() : null));
+                    }
+                    profiles.add(profile);
+                }
+            }
+            context.checkActive();
+
+            // Each column's percentiles sort it, so only the first columns get them
+            int percentileColumns = 0;
+            int percentilesOmitted = 0;
+            for (int i = 0; i < columns.size(); i++) {
+                String col = dialect.quoteIdentifier(columns.get(i).getName());
+                long nonNull = nonNullCounts.get(i);
+                if (nonNull == 0) {
+                    continue;
+                }
+
+                if (kinds.get(i) == TableAggregates.Kind.NUMERIC && !fractions.isEmpty()) {
+                    if (percentileColumns++ < MAX_PERCENTILE_COLUMNS) {
+                        profiles.get(i).add("percentiles", percentiles(stmt, dialect, col, from, filters, fractions, nonNull));
+                        context.checkActive();
+                    } else {
+                        percentilesOmitted++;
+                    }
+                }
+                if (kinds.get(i) == TableAggregates.Kind.CATEGORICAL && topK > 0) {
+                    profiles.get(i).add("top_values", topValues(stmt, dialect, col, from, filters, topK));
+                    context.checkActive();
+                }
+            }
+
+            result.addProperty("row_count", rowCount);
+            JsonObject columnProfiles = new JsonObject();
+            for (int i = 0; i < columns.size(); i++) {
+                columnProfiles.add(columns.get(i).getName(), profiles.get(i));
+            }
+            result.add("columns", columnProfiles);
+            if (omitted > 0) {
+                result.addProperty("columns_omitted", omitted);
+            }
+            if (percentilesOmitted > 0) {
+                result.addProperty("percentiles_omitted", "Percentiles are computed for at most " + MAX_PERCENTILE_COLUMNS +
+                    " numeric columns per call; " + percentilesOmitted + " more were skipped. Name columns to profile them.");
+            }
+        }
+
+        return result;
+    }
+
+    private static List<Double> parsePercentiles(JsonObject params) {
+        List<Double> fractions = new ArrayList<>();
+        if (!params.has("percentiles") || !params.get("percentiles").isJsonArray()) {
+            fractions.add(0.5);
+            fractions.add(0.9);
+            return fractions;
+        }
+
+        for (JsonElement value : params.getAsJsonArray("percentiles")) {
+            double fraction = value.getAsDouble();
+            // Accept 90 as well as 0.9
+            if (fraction > 1 && fraction <= 100) {
+                fraction = fraction / 100;
+            }
+            if (fraction < 0 || fraction > 1) {
+                throw new IllegalArgumentException("Percentiles must be between 0 and 1: " + value);
+            }
+            fractions.add(fraction);
+        }
+        if (fractions.size() > MAX_PERCENTILES) {
+            throw new IllegalArgumentException("At most " + MAX_PERCENTILES + " percentiles can be computed at once");
+        }
+        return fractions;
+    }
+
+    /**
+     * Percentiles of a column, all in one statement: percentile_cont as an aggregate where the
+     * database has it, as a window function on SQL Server, and otherwise the nearest-rank values
+     * picked from one ranking of the column.
+     */
+    private static JsonObject percentiles(Statement stmt, SqlDialect dialect, String col, String from, String filters,
+                                          List<Double> fractions, long nonNull) throws Exception {
+        JsonObject percentiles = new JsonObject();
+
+        boolean aggregate = dialect.percentile(col, 0.5) != null;
+        if (aggregate || dialect.percentileOverAll(col, 0.5) != null) {
+            // The window form has the same value on every row, so only the first is read
+            StringBuilder select = new StringBuilder(aggregate ? "SELECT " : "SELECT TOP 1 ");
+            for (int i = 0; i < fractions.size(); i++) {
+                double fraction = fractions.get(i);
+                select.append(i > 0 ? ", " : "")
+                    .append(aggregate ? dialect.percentile(col, fraction) : dialect.percentileOverAll(col, fraction));
+            }
+            try (ResultSet rs = stmt.executeQuery(select + from + TableAggregates.where(filters, null))) {
+                boolean found = rs.next();
+                for (int i = 0; i < fractions.size(); i++) {
+                    percentiles.add(label(fractions.get(i)), TabularResultEncoder.encodeValue(found ? rs.getObject(i + 1) : null));
+                }
+            }
+            return percentiles;
+        }
+
+        // Nearest rank: one sort numbers the non-null values and the wanted ranks are picked from it
+        Set<Long> ranks = new LinkedHashSet<>();
+        for (double fraction : fractions) {
+            ranks.add(rank(fraction, nonNull));
+        }
+        String ranked = "SELECT iai_rank, iai_value FROM (SELECT " + col + " AS iai_value, ROW_NUMBER() OVER (ORDER BY " +
+            col + ") AS iai_rank" + from + TableAggregates.where(filters, col + " IS NOT NULL") + ") iai_ranked" +
+            " WHERE iai_rank IN (" + ranks.stream().map(String::valueOf).collect(Collectors.joining(", ")) + ")";
+        Map<Long, Object> values = new HashMap<>();
+        try (ResultSet rs = stmt.executeQuery(ranked)) {
+            while (rs.next()) {
+                values.put(rs.getLong(1), rs.getObject(2));
+            }
+        }
+        for (double fraction : fractions) {
+            percentiles.add(label(fraction), TabularResultEncoder.encodeValue(values.get(rank(fraction, nonNull))));
+        }
+        return percentiles;
+    }
+
+    private static long rank(double fraction, long nonNull) {
+        return Math.max(1, (long) Math.ceil(fraction * nonNull));
+    }
+
+    /**
+     * Most frequent values of a column, as [value, count] pairs.
+     */
+    private static JsonArray topValues(Statement stmt, SqlDialect dialect, String col, String from, String filters,
+                                       int topK) throws Exception {
+        String ordered = "SELECT " + col + ", COUNT(*)" + from + TableAggregates.where(filters, null) +
+            " GROUP BY " + col + " ORDER BY COUNT(*) DESC";
+
+        JsonArray values = new JsonArray();
+        try (ResultSet rs = stmt.executeQuery(dialect.page(ordered, 0, topK))) {
+            while (rs.next()) {
+                JsonArray pair = new JsonArray();
+                pair.add(TabularResultEncoder.encodeValue(rs.getObject(1)));
+                pair.add(rs.getLong(2));
+                values.add(pair);
+            }
+        }
+        return values;
+    }
+
+    private static String label(double fraction) {
+        double percent = fraction * 100;
+        return "p" + (percent == Math.rint(percent) ? String.valueOf((long) percent) : String.valueOf(percent));
+    }
+}
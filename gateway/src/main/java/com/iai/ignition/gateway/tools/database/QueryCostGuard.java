@@ -0,0 +1,200 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.gateway.database.SqlDialect;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the planner's estimate for a query before the database tools run it.
+ *
+ * The query is explained (see {@link QueryPlanEstimate}) and compared with the row and cost
+ * limits. A query over a limit is handled according to the mode:
+ * <ul>
+ *   <li>OFF - queries are not explained</li>
+ *   <li>LIMIT - a query that would return too many rows runs with its row limit cut to one
+ *   page; one that would examine too many rows or cost too much is handled as in PLAN, since
+ *   fetching fewer rows does not make its scan any cheaper</li>
+ *   <li>PLAN - the query is not run; the plan is returned so the model can narrow it</li>
+ *   <li>REJECT - the tool call fails</li>
+ * </ul>
+ * Estimates are cached per datasource and {@link SqlNormalizer#normalize(String) normalized}
+ * query. Queries on databases without EXPLAIN support, or that cannot be explained, run as before.
+ */
+public class QueryCostGuard {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.QueryCostGuard");
+
+    private static final int MAX_ESTIMATES = 500;
+    private static final long ESTIMATE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * What a tool does with a query after the check.
+     */
+    public enum Action {
+        RUN,
+        LIMIT,
+        PLAN
+    }
+
+    private final String mode;
+    private final long maxRows;
+    private final long maxCost;
+    private final Map<String, QueryPlanEstimate> estimates = new LinkedHashMap<String, QueryPlanEstimate>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QueryPlanEstimate> eldest) {
+            return size() > MAX_ESTIMATES;
+        }
+    };
+
+    /**
+     * Create a guard.
+     *
+     * @param mode OFF, LIMIT, PLAN or REJECT
+     * @param maxRows Estimated rows returned or examined above which a query is over the limit; 0 for no limit
+     * @param maxCost Planner cost above which a query is over the limit; 0 for no limit
+     */
+    public QueryCostGuard(String mode, int maxRows, int maxCost) {
+        this.mode = mode != null ? mode.trim().toUpperCase() : "OFF";
+        this.maxRows = Math.max(0, maxRows);
+        this.maxCost = Math.max(0, maxCost);
+    }
+
+    /**
+     * Check a query before running it.
+     *
+     * @param datasourceName The datasource name
+     * @param datasource The datasource
+     * @param select A single SELECT statement, as it will be run
+     * @param timeoutSeconds Timeout for the EXPLAIN
+     * @return What to do with the query
+     * @throws IllegalArgumentException if the mode is REJECT and the query is over a limit
+     */
+    public Verdict check(String datasourceName, Datasource datasource, String select, int timeoutSeconds) {
+        if ("OFF".equals(mode) || (maxRows == 0 && maxCost == 0)) {
+            return Verdict.RUN;
+        }
+
+        QueryPlanEstimate estimate = estimate(datasourceName, datasource, select, timeoutSeconds);
+        if (estimate == null) {
+            return Verdict.RUN;
+        }
+
+        List<String> reasons = new ArrayList<>();
+        // Only too many rows returned is fixed by a lower row limit
+        boolean expensive = false;
+        if (maxRows > 0 && estimate.getRows() > maxRows) {
+            reasons.add("estimated " + Math.round(estimate.getRows()) + " rows returned (limit " + maxRows + ")");
+        }
+        if (maxRows > 0 && estimate.getExaminedRows() > maxRows) {
+            reasons.add("estimated " + Math.round(estimate.getExaminedRows()) + " rows examined (limit " + maxRows + ")");
+            expensive = true;
+        }
+        if (maxCost > 0 && estimate.getCost() > maxCost) {
+            reasons.add("estimated cost " + Math.round(estimate.getCost()) + " (limit " + maxCost + ")");
+            expensive = true;
+        }
+        if (reasons.isEmpty()) {
+            return Verdict.RUN;
+        }
+
+        logger.info("Query on " + datasourceName + " over cost limits (" + mode + "): " + String.join(", ", reasons));
+        switch (mode) {
+            case "REJECT":
+                throw new IllegalArgumentException("Query rejected by the cost guard: " + String.join(", ", reasons) +
+                    (estimate.getFullScans().isEmpty() ? "" : "; full scans of " + String.join(", ", estimate.getFullScans())) +
+                    ". Add filters on indexed columns, aggregate in SQL or avoid cross joins.");
+            case "PLAN":
+                return new Verdict(Action.PLAN, estimate, reasons);
+            default:
+                return new Verdict(expensive ? Action.PLAN : Action.LIMIT, estimate, reasons);
+        }
+    }
+
+    /**
+     * Get the cached estimate of a query, or explain it.
+     *
+     * @return The estimate, or null if the database cannot explain the query
+     */
+    private QueryPlanEstimate estimate(String datasourceName, Datasource datasource, String select, int timeoutSeconds) {
+        String key = datasourceName + '\n' + SqlNormalizer.normalize(select);
+        synchronized (estimates) {
+            QueryPlanEstimate cached = estimates.get(key);
+            if (cached != null && System.currentTimeMillis() - cached.getEstimatedAt() < ESTIMATE_TTL_MILLIS) {
+                return cached;
+            }
+        }
+
+        try (Connection conn = datasource.getConnection()) {
+            SqlDialect dialect = SqlDialect.detect(conn);
+            if (!QueryPlanEstimate.isSupported(dialect)) {
+                return null;
+            }
+
+            QueryPlanEstimate estimate = QueryPlanEstimate.explain(conn, dialect, select, timeoutSeconds);
+            synchronized (estimates) {
+                estimates.put(key, estimate);
+            }
+            return estimate;
+        } catch (Exception e) {
+            // The query itself reports real errors; an EXPLAIN that fails for other reasons (permissions) shouldn't block it
+            logger.debug("Could not explain query on " + datasourceName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Outcome of {@link #check}.
+     */
+    public static final class Verdict {
+        static final Verdict RUN = new Verdict(Action.RUN, null, Collections.emptyList());
+
+        private final Action action;
+        private final QueryPlanEstimate estimate;
+        private final List<String> reasons;
+
+        private Verdict(Action action, QueryPlanEstimate estimate, List<String> reasons) {
+            this.action = action;
+            this.estimate = estimate;
+            this.reasons = reasons;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * Add "cost_guard" to a tool result for a query that was over a limit: what was done,
+         * why, the estimate and, if the query was not run, its plan.
+         */
+        public void writeTo(JsonObject result) {
+            if (action == Action.RUN) {
+                return;
+            }
+
+            JsonObject guard = new JsonObject();
+            guard.addProperty("action", action == Action.PLAN ? "not_run" : "limited");
+            JsonArray why = new JsonArray();
+            reasons.forEach(why::add);
+            guard.add("reasons", why);
+            guard.add("estimate", estimate.toJson(action == Action.PLAN));
+            if (action == Action.PLAN) {
+                guard.addProperty("message", "The query was not run. Review the plan, then narrow it with filters on " +
+                    "indexed columns, aggregation in SQL or fewer joins.");
+            } else {
+                guard.addProperty("message", "Rows were limited to one page because of the estimate. Narrow the " +
+                    "query to read more.");
+            }
+            result.add("cost_guard", guard);
+        }
+    }
+}
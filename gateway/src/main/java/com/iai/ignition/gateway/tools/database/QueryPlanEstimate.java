@@ -0,0 +1,394 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.gateway.database.SqlDialect;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.gson.JsonParser;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The planner's estimate for a SELECT, read with the dialect's EXPLAIN without running the query.
+ *
+ * What is known depends on the database: PostgreSQL and SQL Server estimate the rows returned
+ * and a total cost in their own units, MySQL estimates the rows each table access examines, and
+ * SQLite only describes the plan. Unknown figures are -1. Full scans are listed by table for all
+ * four, and the plan is kept as one line per step for showing to the model.
+ */
+public final class QueryPlanEstimate {
+
+    /**
+     * Plan lines kept; larger plans are cut off.
+     */
+    private static final int MAX_PLAN_LINES = 40;
+
+    private static final int MAX_PLAN_LINE_LENGTH = 200;
+
+    /**
+     * Object an SQL Server scan reads: [database].[schema].[table], then the index if any.
+     */
+    private static final Pattern SQLSERVER_OBJECT = Pattern.compile("OBJECT:\\(\\[[^\\]]*\\]\\.\\[[^\\]]*\\]\\.\\[([^\\]]*)\\]");
+
+    private final SqlDialect dialect;
+    private final double rows;
+    private final double examinedRows;
+    private final double cost;
+    private final Set<String> fullScans;
+    private final List<String> plan;
+    private final long estimatedAt;
+
+    private QueryPlanEstimate(SqlDialect dialect, double rows, double examinedRows, double cost,
+                              Set<String> fullScans, List<String> plan) {
+        this.dialect = dialect;
+        this.rows = rows;
+        this.examinedRows = examinedRows;
+        this.cost = cost;
+        this.fullScans = Collections.unmodifiableSet(fullScans);
+        this.plan = Collections.unmodifiableList(plan);
+        this.estimatedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Whether EXPLAIN is supported for a dialect.
+     */
+    public static boolean isSupported(SqlDialect dialect) {
+        switch (dialect) {
+            case POSTGRESQL:
+            case MYSQL:
+            case SQLSERVER:
+            case SQLITE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Explain a query.
+     *
+     * @param conn An open connection
+     * @param dialect The connection's dialect, one that {@link #isSupported(SqlDialect) is supported}
+     * @param select A single SELECT statement
+     * @param timeoutSeconds Timeout for the EXPLAIN
+     * @throws SQLException if the database cannot explain the query
+     */
+    static QueryPlanEstimate explain(Connection conn, SqlDialect dialect, String select, int timeoutSeconds) throws SQLException {
+        String sql = select.trim();
+        while (sql.endsWith(";")) {
+            sql = sql.substring(0, sql.length() - 1).trim();
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.setQueryTimeout(timeoutSeconds);
+            switch (dialect) {
+                case POSTGRESQL:
+                    return explainPostgres(stmt, sql);
+                case MYSQL:
+                    return explainMySql(stmt, sql);
+                case SQLSERVER:
+                    return explainSqlServer(stmt, sql);
+                case SQLITE:
+                    return explainSqlite(stmt, sql);
+                default:
+                    throw new SQLException("EXPLAIN is not supported for " + dialect);
+            }
+        }
+    }
+
+    private static QueryPlanEstimate explainPostgres(Statement stmt, String sql) throws SQLException {
+        String json;
+        try (ResultSet rs = stmt.executeQuery("EXPLAIN (FORMAT JSON) " + sql)) {
+            if (!rs.next()) {
+                throw new SQLException("EXPLAIN returned no plan");
+            }
+            json = rs.getString(1);
+        }
+
+        JsonObject root = new JsonParser().parse(json).getAsJsonArray().get(0).getAsJsonObject().getAsJsonObject("Plan");
+        Set<String> fullScans = new LinkedHashSet<>();
+        List<String> plan = new ArrayList<>();
+        addPostgresNode(root, 0, fullScans, plan);
+
+        return new QueryPlanEstimate(SqlDialect.POSTGRESQL, number(root, "Plan Rows"), -1, number(root, "Total Cost"),
+            fullScans, plan);
+    }
+
+    private static void addPostgresNode(JsonObject node, int depth, Set<String> fullScans, List<String> plan) {
+        String type = node.has("Node Type") ? node.get("Node Type").getAsString() : "?";
+        String relation = node.has("Relation Name") ? node.get("Relation Name").getAsString() : null;
+        if ("Seq Scan".equals(type) && relation != null) {
+            fullScans.add(relation);
+        }
+
+        StringBuilder line = new StringBuilder(type);
+        if (relation != null) {
+            line.append(" on ").append(relation);
+        }
+        if (node.has("Index Name")) {
+            line.append(" using ").append(node.get("Index Name").getAsString());
+        }
+        line.append(" (rows=").append(format(number(node, "Plan Rows")))
+            .append(" cost=").append(format(number(node, "Total Cost"))).append(')');
+        addLine(plan, depth, line.toString());
+
+        if (node.has("Plans")) {
+            for (JsonElement child : node.getAsJsonArray("Plans")) {
+                addPostgresNode(child.getAsJsonObject(), depth + 1, fullScans, plan);
+            }
+        }
+    }
+
+    /**
+     * MySQL's tabular EXPLAIN has one row per table access, joined as nested loops, so rows
+     * examined multiply along the plan. The product over-counts plans with several SELECTs,
+     * which errs on the side of caution.
+     */
+    private static QueryPlanEstimate explainMySql(Statement stmt, String sql) throws SQLException {
+        Set<String> fullScans = new LinkedHashSet<>();
+        List<String> plan = new ArrayList<>();
+        double examined = 1;
+        double returned = 1;
+
+        try (ResultSet rs = stmt.executeQuery("EXPLAIN " + sql)) {
+            boolean hasFiltered = hasColumn(rs, "filtered");
+            while (rs.next()) {
+                String table = rs.getString("table");
+                String type = rs.getString("type");
+                String key = rs.getString("key");
+                double rows = Math.max(1, rs.getDouble("rows"));
+                double filtered = 100;
+                if (hasFiltered) {
+                    filtered = rs.getDouble("filtered");
+                    if (rs.wasNull() || filtered <= 0) {
+                        filtered = 100;
+                    }
+                }
+
+                examined *= rows;
+                returned *= rows * filtered / 100;
+                if ("ALL".equals(type) && table != null) {
+                    fullScans.add(table);
+                }
+
+                String extra = rs.getString("Extra");
+                addLine(plan, 0, table + " " + type + (key != null ? " using " + key : "") + " (rows=" + format(rows) +
+                    (hasFiltered ? " filtered=" + format(filtered) + "%" : "") + ")" + (extra != null ? " " + extra : ""));
+            }
+        }
+
+        return new QueryPlanEstimate(SqlDialect.MYSQL, returned, examined, -1, fullScans, plan);
+    }
+
+    /**
+     * SQL Server returns the estimated plan instead of running the statement while SHOWPLAN_ALL
+     * is on. The first row describes the whole statement.
+     */
+    private static QueryPlanEstimate explainSqlServer(Statement stmt, String sql) throws SQLException {
+        Set<String> fullScans = new LinkedHashSet<>();
+        List<String> plan = new ArrayList<>();
+        double rows = -1;
+        double cost = -1;
+
+        stmt.execute("SET SHOWPLAN_ALL ON");
+        try {
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                boolean first = true;
+                while (rs.next()) {
+                    double estimateRows = rs.getDouble("EstimateRows");
+                    double subtreeCost = rs.getDouble("TotalSubtreeCost");
+                    if (first) {
+                        rows = estimateRows;
+                        cost = subtreeCost;
+                        first = false;
+                        continue;
+                    }
+
+                    String op = rs.getString("PhysicalOp");
+                    if ("Table Scan".equals(op) || "Clustered Index Scan".equals(op) || "Index Scan".equals(op)) {
+                        String argument = rs.getString("Argument");
+                        Matcher matcher = SQLSERVER_OBJECT.matcher(argument != null ? argument : "");
+                        if (matcher.find()) {
+                            fullScans.add(matcher.group(1));
+                        }
+                    }
+                    String text = rs.getString("StmtText");
+                    addLine(plan, 0, (text != null ? stripTrailing(text) : op) +
+                        " (rows=" + format(estimateRows) + " cost=" + format(subtreeCost) + ")");
+                }
+            }
+        } finally {
+            // The connection goes back to the pool; it must run statements again
+            stmt.execute("SET SHOWPLAN_ALL OFF");
+        }
+
+        return new QueryPlanEstimate(SqlDialect.SQLSERVER, rows, -1, cost, fullScans, plan);
+    }
+
+    private static QueryPlanEstimate explainSqlite(Statement stmt, String sql) throws SQLException {
+        Set<String> fullScans = new LinkedHashSet<>();
+        List<String> plan = new ArrayList<>();
+        Map<Integer, Integer> depths = new HashMap<>();
+
+        try (ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            boolean hasParent = hasColumn(rs, "parent");
+            while (rs.next()) {
+                String detail = rs.getString("detail");
+                int depth = 0;
+                if (hasParent) {
+                    depth = depths.getOrDefault(rs.getInt("parent"), -1) + 1;
+                    depths.put(rs.getInt("id"), depth);
+                }
+
+                // "SCAN t" or "SCAN TABLE t" reads every row; "SCAN t USING COVERING INDEX i" reads an index
+                if (detail != null && detail.startsWith("SCAN ") && !detail.contains(" USING ")) {
+                    String table = detail.substring(5).trim();
+                    if (table.startsWith("TABLE ")) {
+                        table = table.substring(6).trim();
+                    }
+                    int space = table.indexOf(' ');
+                    fullScans.add(space > 0 ? table.substring(0, space) : table);
+                }
+                addLine(plan, depth, detail);
+            }
+        }
+
+        return new QueryPlanEstimate(SqlDialect.SQLITE, -1, -1, -1, fullScans, plan);
+    }
+
+    private static boolean hasColumn(ResultSet rs, String name) throws SQLException {
+        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+            if (name.equalsIgnoreCase(rs.getMetaData().getColumnLabel(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double number(JsonObject node, String name) {
+        return node.has(name) ? node.get(name).getAsDouble() : -1;
+    }
+
+    private static void addLine(List<String> plan, int depth, String text) {
+        if (plan.size() == MAX_PLAN_LINES) {
+            plan.add("...");
+            return;
+        } else if (plan.size() > MAX_PLAN_LINES) {
+            return;
+        }
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            line.append("  ");
+        }
+        line.append(text);
+        if (line.length() > MAX_PLAN_LINE_LENGTH) {
+            line.setLength(MAX_PLAN_LINE_LENGTH - 3);
+            line.append("...");
+        }
+        plan.add(line.toString());
+    }
+
+    private static String stripTrailing(String text) {
+        int end = text.length();
+        while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static String format(double value) {
+        if (value < 0) {
+            return "?";
+        }
+        return value == Math.rint(value) && value < 1e15 ? String.valueOf((long) value) : String.format("%.2f", value);
+    }
+
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * @return Estimated rows returned, or -1 if the database doesn't estimate them
+     */
+    public double getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Estimated rows read to produce the result, or -1 if the database doesn't estimate them
+     */
+    public double getExaminedRows() {
+        return examinedRows;
+    }
+
+    /**
+     * @return Total planner cost in the database's own units, or -1 if it doesn't report one
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    /**
+     * @return Tables read in full
+     */
+    public Set<String> getFullScans() {
+        return fullScans;
+    }
+
+    /**
+     * @return The plan, one line per step
+     */
+    public List<String> getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return When the estimate was made (epoch millis)
+     */
+    public long getEstimatedAt() {
+        return estimatedAt;
+    }
+
+    /**
+     * The estimate as reported to the model.
+     *
+     * @param includePlan Whether to include the plan lines
+     */
+    public JsonObject toJson(boolean includePlan) {
+        JsonObject json = new JsonObject();
+        json.addProperty("dialect", dialect.name());
+        if (rows >= 0) {
+            json.addProperty("estimated_rows", Math.round(rows));
+        }
+        if (examinedRows >= 0) {
+            json.addProperty("estimated_rows_examined", Math.round(examinedRows));
+        }
+        if (cost >= 0) {
+            json.addProperty("estimated_cost", cost);
+        }
+        if (!fullScans.isEmpty()) {
+            JsonArray scans = new JsonArray();
+            fullScans.forEach(scans::add);
+            json.add("full_scans", scans);
+        }
+        if (includePlan) {
+            JsonArray lines = new JsonArray();
+            plan.forEach(lines::add);
+            json.add("plan", lines);
+        }
+        return json;
+    }
+}
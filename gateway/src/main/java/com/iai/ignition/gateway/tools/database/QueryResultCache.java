@@ -0,0 +1,293 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in cache of query results for the database tools, shared by all conversations.
+ *
+ * Results are keyed by datasource, row limit and {@link SqlNormalizer#normalize(String) canonical}
+ * SQL, so the same question asked again (by an operator or a scheduled report) within the
+ * datasource's TTL is answered without touching the database. Memory is bounded by the
+ * approximate size of the cached rows; least recently used results are dropped first.
+ * Entries remember the tables they read so they can be invalidated per table.
+ *
+ * Cached tables are shared between callers and must not be modified.
+ */
+public class QueryResultCache {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.QueryResultCache");
+
+    private final long defaultTtlMillis;
+    private final Map<String, Long> ttlOverrides;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Create a cache.
+     *
+     * @param defaultTtlSeconds TTL for datasources without an override; 0 disables caching for them
+     * @param ttlOverrides Per-datasource TTLs as "name=seconds" pairs separated by commas (may be null)
+     * @param maxMegabytes Bound on the size of all cached results
+     */
+    public QueryResultCache(int defaultTtlSeconds, String ttlOverrides, int maxMegabytes) {
+        this.defaultTtlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, defaultTtlSeconds));
+        this.ttlOverrides = parseOverrides(ttlOverrides);
+        this.maxBytes = Math.max(0, maxMegabytes) * 1024L * 1024L;
+    }
+
+    /**
+     * Whether results of a datasource are cached at all.
+     */
+    public boolean isEnabled(String datasourceName) {
+        return maxBytes > 0 && ttlMillis(datasourceName) > 0;
+    }
+
+    /**
+     * How long results of a datasource may be reused, from the default TTL or its override.
+     *
+     * @return The TTL, or 0 if results of the datasource are not reused
+     */
+    public long getTtlMillis(String datasourceName) {
+        return ttlMillis(datasourceName);
+    }
+
+    /**
+     * Get a cached result, or run the query and cache what it returns.
+     *
+     * @param datasourceName The datasource
+     * @param sql The query as the tool will run it
+     * @param maxRows Row limit the query runs with, part of the key
+     * @param useCache false to bypass the cache for this call (the fresh result is still cached)
+     * @param loader Runs the query on a miss
+     * @return The rows and whether they came from the cache
+     */
+    public Lookup getOrLoad(String datasourceName, String sql, int maxRows, boolean useCache, Loader loader) throws Exception {
+        if (!isEnabled(datasourceName)) {
+            return new Lookup(loader.load(), false, false, 0);
+        }
+
+        String key = datasourceName + '\n' + maxRows + '\n' + SqlNormalizer.normalize(sql);
+        long now = System.currentTimeMillis();
+
+        if (useCache) {
+            synchronized (this) {
+                Entry entry = entries.get(key);
+                if (entry != null && entry.expiresAt > now) {
+                    hits++;
+                    return new Lookup(entry.table, true, true, now - entry.loadedAt);
+                }
+                if (entry != null) {
+                    remove(key);
+                }
+                misses++;
+            }
+        }
+
+        TabularResultEncoder table = loader.load();
+        put(key, datasourceName, sql, table, now);
+        return new Lookup(table, true, false, 0);
+    }
+
+    private synchronized void put(String key, String datasourceName, String sql, TabularResultEncoder table, long loadedAt) {
+        long bytes = table.getEncodedBytes() + key.length();
+        if (bytes > maxBytes / 4) {
+            // One result shouldn't push out most of the cache
+            logger.debug("Query result of " + bytes + " bytes too large to cache");
+            return;
+        }
+
+        remove(key);
+        Entry entry = new Entry(datasourceName, SqlNormalizer.referencedTables(sql), table, bytes,
+            loadedAt, loadedAt + ttlMillis(datasourceName));
+        entries.put(key, entry);
+        cachedBytes += bytes;
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            cachedBytes -= eldest.bytes;
+            it.remove();
+        }
+    }
+
+    /**
+     * Drop cached results of a datasource that read a table.
+     *
+     * @param datasourceName The datasource
+     * @param table Table name, with or without schema; matched case-insensitively
+     * @return Number of results dropped
+     */
+    public synchronized int invalidateTable(String datasourceName, String table) {
+        String name = table.toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        if (dot >= 0) {
+            name = name.substring(dot + 1);
+        }
+
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.datasourceName.equals(datasourceName) && entry.tables.contains(name)) {
+                cachedBytes -= entry.bytes;
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Drop cached results of a datasource.
+     *
+     * @return Number of results dropped
+     */
+    public synchronized int invalidateDatasource(String datasourceName) {
+        int removed = 0;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.datasourceName.equals(datasourceName)) {
+                cachedBytes -= entry.bytes;
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Drop every cached result.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        cachedBytes = 0;
+    }
+
+    /**
+     * Entry count, size and hit rate.
+     */
+    public synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("entries", entries.size());
+        json.addProperty("bytes", cachedBytes);
+        json.addProperty("maxBytes", maxBytes);
+        json.addProperty("hits", hits);
+        json.addProperty("misses", misses);
+        return json;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            cachedBytes -= entry.bytes;
+        }
+    }
+
+    private long ttlMillis(String datasourceName) {
+        Long override = ttlOverrides.get(datasourceName.toLowerCase(Locale.ROOT));
+        return override != null ? override : defaultTtlMillis;
+    }
+
+    private static Map<String, Long> parseOverrides(String text) {
+        Map<String, Long> overrides = new HashMap<>();
+        if (text == null || text.trim().isEmpty()) {
+            return overrides;
+        }
+
+        for (String pair : text.split(",")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                logger.warn("Ignoring query cache TTL override without '=': " + pair.trim());
+                continue;
+            }
+            try {
+                long seconds = Long.parseLong(pair.substring(eq + 1).trim());
+                overrides.put(pair.substring(0, eq).trim().toLowerCase(Locale.ROOT), TimeUnit.SECONDS.toMillis(Math.max(0, seconds)));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring query cache TTL override with invalid seconds: " + pair.trim());
+            }
+        }
+        return overrides;
+    }
+
+    /**
+     * Runs a query on a cache miss.
+     */
+    public interface Loader {
+        TabularResultEncoder load() throws Exception;
+    }
+
+    /**
+     * Result of {@link #getOrLoad}.
+     */
+    public static final class Lookup {
+        private final TabularResultEncoder table;
+        private final boolean cacheEnabled;
+        private final boolean hit;
+        private final long ageMillis;
+
+        private Lookup(TabularResultEncoder table, boolean cacheEnabled, boolean hit, long ageMillis) {
+            this.table = table;
+            this.cacheEnabled = cacheEnabled;
+            this.hit = hit;
+            this.ageMillis = ageMillis;
+        }
+
+        public TabularResultEncoder getTable() {
+            return table;
+        }
+
+        public boolean isHit() {
+            return hit;
+        }
+
+        /**
+         * Add "cache" metadata to a tool result, if the datasource is cached: whether the rows
+         * came from the cache and, if so, how old they are.
+         */
+        public void writeTo(JsonObject result) {
+            if (!cacheEnabled) {
+                return;
+            }
+            JsonObject cache = new JsonObject();
+            cache.addProperty("hit", hit);
+            if (hit) {
+                cache.addProperty("age_seconds", TimeUnit.MILLISECONDS.toSeconds(ageMillis));
+            }
+            result.add("cache", cache);
+        }
+    }
+
+    private static final class Entry {
+        private final String datasourceName;
+        private final Set<String> tables;
+        private final TabularResultEncoder table;
+        private final long bytes;
+        private final long loadedAt;
+        private final long expiresAt;
+
+        private Entry(String datasourceName, Set<String> tables, TabularResultEncoder table, long bytes,
+                      long loadedAt, long expiresAt) {
+            this.datasourceName = datasourceName;
+            this.tables = tables;
+            this.table = table;
+            this.bytes = bytes;
+            this.loadedAt = loadedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,14 +1,15 @@
 package com.iai.ignition.gateway.tools.database;
 
 import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.ResultCursorCache;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 import com.inductiveautomation.ignition.gateway.datasource.Datasource;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
-import java.sql.*;
 
 /**
  * Tool for querying a database table with optional filters.
@@ -19,10 +20,15 @@ public class QueryTableTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final ResultCursorCache cursors;
+    private final QueryResultCache queryCache;
 
-    public QueryTableTool(GatewayContext gatewayContext, IAISettings settings) {
+    public QueryTableTool(GatewayContext gatewayContext, IAISettings settings, ResultCursorCache cursors,
+            QueryResultCache queryCache) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.cursors = cursors;
+        this.queryCache = queryCache;
     }
 
     @Override
@@ -32,7 +38,8 @@ public class QueryTableTool implements IAITool {
 
     @Override
     public String getDescription() {
-        return "Query a database table with optional WHERE clause filters. Returns rows with all columns. " +
+        return "Query a database table with optional WHERE clause filters. Returns the first page of rows with all " +
+                "columns; if has_more is true, use fetch_more with the returned cursor for further rows. " +
                 "Enforces queryTimeoutSeconds setting.";
     }
 
@@ -60,10 +67,17 @@ public class QueryTableTool implements IAITool {
 
         JsonObject limit = new JsonObject();
         limit.addProperty("type", "integer");
-        limit.addProperty("description", "Maximum number of rows to return (default: 100)");
+        limit.addProperty("description", "Maximum number of rows to read, across all pages (default: 100)");
         limit.addProperty("default", 100);
         properties.add("limit", limit);
 
+        JsonObject useCache = new JsonObject();
+        useCache.addProperty("type", "boolean");
+        useCache.addProperty("description", "Allow a recent cached result of the same query, if the database's results are " +
+                "cached (default: true). Set to false when the data must be current.");
+        useCache.addProperty("default", true);
+        properties.add("use_cache", useCache);
+
         schema.add("properties", properties);
 
         JsonArray required = new JsonArray();
@@ -74,12 +88,27 @@ public class QueryTableTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        if (!params.has("database") || !params.has("table_name")) {
+            return null;
+        }
+        return params.get("database").getAsString() + "." + params.get("table_name").getAsString();
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
         String databaseName = params.get("database").getAsString();
         String tableName = params.get("table_name").getAsString();
         String filters = params.has("filters") ? params.get("filters").getAsString() : null;
         int limit = params.has("limit") ? params.get("limit").getAsInt() : 100;
+        limit = Math.min(Math.max(1, limit), settings.getMaxCursorRows());
+        boolean useCache = !params.has("use_cache") || params.get("use_cache").getAsBoolean();
 
         logger.debug("Querying table: " + databaseName + "." + tableName);
 
@@ -92,39 +121,18 @@ public class QueryTableTool implements IAITool {
         if (filters != null && !filters.isEmpty()) {
             sql.append(" WHERE ").append(filters);
         }
-        sql.append(" LIMIT ").append(limit);
-
-        JsonArray rows = new JsonArray();
-
-        try (Connection conn = datasource.getConnection();
-             Statement stmt = conn.createStatement()) {
-
-            stmt.setQueryTimeout(settings.getQueryTimeoutSeconds());
-
-            try (ResultSet rs = stmt.executeQuery(sql.toString())) {
-                ResultSetMetaData rsmd = rs.getMetaData();
-                int columnCount = rsmd.getColumnCount();
-
-                while (rs.next()) {
-                    JsonObject row = new JsonObject();
-                    for (int i = 1; i <= columnCount; i++) {
-                        String columnName = rsmd.getColumnName(i);
-                        Object value = rs.getObject(i);
-                        if (value != null) {
-                            row.addProperty(columnName, value.toString());
-                        }
-                    }
-                    rows.add(row);
-                }
-            }
-        }
+
+        String select = sql.toString();
+        int maxRows = limit;
+        QueryResultCache.Lookup lookup = queryCache.getOrLoad(databaseName, select, maxRows, useCache, () ->
+            StreamingQuery.run(datasource, select, maxRows, settings.getMaxResultBufferKB() * 1024L,
+                settings.getQueryTimeoutSeconds(), context));
 
         JsonObject result = new JsonObject();
         result.addProperty("database", databaseName);
         result.addProperty("table_name", tableName);
-        result.add("rows", rows);
-        result.addProperty("count", rows.size());
-
-        return result;
+        lookup.writeTo(result);
+        return cursors.firstPage(result, lookup.getTable(), context.getConversationId(), getName(), settings.getResultPageRows(),
+            ResultCursorCache.pageBytes(settings.getMaxToolResultSizeKB(), context.getRemainingTokens()));
     }
 }
@@ -0,0 +1,248 @@
+package com.iai.ignition.gateway.tools.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Snapshot of one datasource's tables and their columns.
+ *
+ * Loaded with one getTables and one getColumns call for the whole database instead of one
+ * call per table. Primary keys have no bulk metadata call, so they are read per table on
+ * first use and kept with the snapshot. Snapshots are immutable apart from that and safe to
+ * share between threads.
+ */
+public final class SchemaCatalog {
+
+    private final String datasourceName;
+    private final long loadedAt;
+    private final Map<String, Table> tables;
+    private final Map<String, Table> tablesByLowerName;
+    private final Map<String, List<String>> primaryKeys = new ConcurrentHashMap<>();
+
+    private SchemaCatalog(String datasourceName, long loadedAt, Map<String, Table> tables) {
+        this.datasourceName = datasourceName;
+        this.loadedAt = loadedAt;
+        this.tables = tables;
+        this.tablesByLowerName = new LinkedHashMap<>();
+        for (Table table : tables.values()) {
+            tablesByLowerName.putIfAbsent(table.getName().toLowerCase(Locale.ROOT), table);
+            if (table.getSchema() != null) {
+                tablesByLowerName.putIfAbsent(table.getQualifiedName().toLowerCase(Locale.ROOT), table);
+            }
+        }
+    }
+
+    /**
+     * Read the tables and columns of a database.
+     *
+     * @param datasourceName Name of the datasource the connection belongs to
+     * @param conn An open connection
+     */
+    static SchemaCatalog load(String datasourceName, Connection conn) throws SQLException {
+        DatabaseMetaData metadata = conn.getMetaData();
+        Map<String, Table> tables = new LinkedHashMap<>();
+
+        try (ResultSet rs = metadata.getTables(null, null, "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                Table table = new Table(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"), rs.getString("TABLE_TYPE"));
+                tables.putIfAbsent(key(table.getSchema(), table.getName()), table);
+            }
+        }
+
+        // Columns of every table in one call; columns of views and other object types are skipped
+        try (ResultSet rs = metadata.getColumns(null, null, "%", "%")) {
+            while (rs.next()) {
+                Table table = tables.get(key(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME")));
+                if (table == null) {
+                    continue;
+                }
+                table.columns.add(new Column(
+                    rs.getString("COLUMN_NAME"),
+                    rs.getString("TYPE_NAME"),
+                    rs.getInt("COLUMN_SIZE"),
+                    rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable,
+                    rs.getString("COLUMN_DEF")
+                ));
+            }
+        }
+
+        return new SchemaCatalog(datasourceName, System.currentTimeMillis(), tables);
+    }
+
+    private static String key(String schema, String name) {
+        return schema != null ? schema + "." + name : name;
+    }
+
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    /**
+     * @return When the snapshot was read (epoch millis)
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    public Collection<Table> getTables() {
+        return Collections.unmodifiableCollection(tables.values());
+    }
+
+    /**
+     * Find a table by name, optionally schema-qualified. Exact matches win over case-insensitive ones;
+     * an unqualified name that exists in several schemas matches the first one listed.
+     *
+     * @return The table, or null if there is none
+     */
+    public Table findTable(String name) {
+        for (Table table : tables.values()) {
+            if (table.getName().equals(name) || table.getQualifiedName().equals(name)) {
+                return table;
+            }
+        }
+        return tablesByLowerName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Primary key columns of a table, read on first use.
+     *
+     * @param table A table of this catalog
+     * @param conn An open connection to the datasource, used if the keys are not cached yet
+     */
+    public List<String> getPrimaryKeys(Table table, Connection conn) throws SQLException {
+        String key = key(table.getSchema(), table.getName());
+        List<String> keys = primaryKeys.get(key);
+        if (keys != null) {
+            return keys;
+        }
+
+        List<String> loaded = new ArrayList<>();
+        try (ResultSet rs = conn.getMetaData().getPrimaryKeys(null, table.getSchema(), table.getName())) {
+            while (rs.next()) {
+                loaded.add(rs.getString("COLUMN_NAME"));
+            }
+        }
+        keys = Collections.unmodifiableList(loaded);
+        primaryKeys.put(key, keys);
+        return keys;
+    }
+
+    /**
+     * Whether primary keys of a table have been read already.
+     */
+    public boolean hasPrimaryKeys(Table table) {
+        return primaryKeys.containsKey(key(table.getSchema(), table.getName()));
+    }
+
+    /**
+     * A table and its columns.
+     */
+    public static final class Table {
+        private final String schema;
+        private final String name;
+        private final String type;
+        private final List<Column> columns = new ArrayList<>();
+
+        private Table(String schema, String name, String type) {
+            this.schema = schema;
+            this.name = name;
+            this.type = type;
+        }
+
+        /**
+         * @return The schema, or null if the database has none
+         */
+        public String getSchema() {
+            return schema;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return schema.name, or the name if there is no schema
+         */
+        public String getQualifiedName() {
+            return key(schema, name);
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public List<Column> getColumns() {
+            return Collections.unmodifiableList(columns);
+        }
+
+        /**
+         * Find a column by name; exact matches win over case-insensitive ones.
+         *
+         * @return The column, or null if there is none
+         */
+        public Column findColumn(String name) {
+            Column match = null;
+            for (Column column : columns) {
+                if (column.getName().equals(name)) {
+                    return column;
+                }
+                if (match == null && column.getName().equalsIgnoreCase(name)) {
+                    match = column;
+                }
+            }
+            return match;
+        }
+    }
+
+    /**
+     * A column as reported by DatabaseMetaData.getColumns.
+     */
+    public static final class Column {
+        private final String name;
+        private final String type;
+        private final int size;
+        private final boolean nullable;
+        private final String defaultValue;
+
+        private Column(String name, String type, int size, boolean nullable, String defaultValue) {
+            this.name = name;
+            this.type = type;
+            this.size = size;
+            this.nullable = nullable;
+            this.defaultValue = defaultValue;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public boolean isNullable() {
+            return nullable;
+        }
+
+        /**
+         * @return The column default, or null if there is none
+         */
+        public String getDefaultValue() {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-datasource cache of {@link SchemaCatalog}s for the schema tools.
+ *
+ * A datasource's catalog is loaded on first use and kept until it is older than the TTL or
+ * invalidated. Catalogs in the cache are reloaded in the background on a fixed interval, so
+ * requests rarely wait for a metadata scan; if a background reload fails, the previous
+ * catalog is kept until it expires.
+ */
+public class SchemaCatalogCache {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.SchemaCatalogCache");
+
+    private final GatewayContext gatewayContext;
+    private final long ttlMillis;
+    private final Map<String, SchemaCatalog> catalogs = new ConcurrentHashMap<>();
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Create a cache.
+     *
+     * @param gatewayContext The gateway context, for datasources
+     * @param ttlMinutes Minutes a catalog may be used after it was loaded
+     */
+    public SchemaCatalogCache(GatewayContext gatewayContext, int ttlMinutes) {
+        this.gatewayContext = gatewayContext;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(Math.max(1, ttlMinutes));
+    }
+
+    /**
+     * Get the catalog of a datasource, loading it if it is missing or expired.
+     *
+     * @param datasourceName The datasource name
+     * @param forceRefresh Reload even if a current catalog is cached
+     * @throws IllegalArgumentException if the datasource does not exist
+     * @throws SQLException if the metadata cannot be read
+     */
+    public SchemaCatalog get(String datasourceName, boolean forceRefresh) throws SQLException {
+        SchemaCatalog catalog = catalogs.get(datasourceName);
+        if (catalog != null && !forceRefresh && !isExpired(catalog)) {
+            return catalog;
+        }
+
+        synchronized (loadLocks.computeIfAbsent(datasourceName, name -> new Object())) {
+            // Another caller may have loaded it while we waited
+            SchemaCatalog current = catalogs.get(datasourceName);
+            if (current != null && current != catalog && !isExpired(current)) {
+                return current;
+            }
+            return load(datasourceName);
+        }
+    }
+
+    /**
+     * Drop the cached catalog of a datasource; the next request reloads it.
+     */
+    public void invalidate(String datasourceName) {
+        catalogs.remove(datasourceName);
+    }
+
+    /**
+     * Drop every cached catalog.
+     */
+    public void invalidateAll() {
+        catalogs.clear();
+    }
+
+    /**
+     * Start background refresh of cached catalogs.
+     *
+     * @param intervalMinutes Minutes between refreshes; 0 or less only loads catalogs on demand
+     */
+    public synchronized void start(int intervalMinutes) {
+        if (intervalMinutes <= 0) {
+            logger.debug("Schema catalog background refresh disabled");
+            return;
+        }
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "IAI-SchemaCatalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshAll, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+        logger.debug("Schema catalogs refreshed every " + intervalMinutes + " minutes");
+    }
+
+    /**
+     * Stop background refresh and drop all catalogs.
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        catalogs.clear();
+    }
+
+    private boolean isExpired(SchemaCatalog catalog) {
+        return System.currentTimeMillis() - catalog.getLoadedAt() > ttlMillis;
+    }
+
+    private SchemaCatalog load(String datasourceName) throws SQLException {
+        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(datasourceName);
+        if (datasource == null) {
+            catalogs.remove(datasourceName);
+            throw new IllegalArgumentException("Database not found: " + datasourceName);
+        }
+
+        long start = System.currentTimeMillis();
+        try (Connection conn = datasource.getConnection()) {
+            SchemaCatalog catalog = SchemaCatalog.load(datasourceName, conn);
+            catalogs.put(datasourceName, catalog);
+            logger.debug("Loaded schema catalog for " + datasourceName + ": " + catalog.getTables().size() +
+                " tables in " + (System.currentTimeMillis() - start) + "ms");
+            return catalog;
+        }
+    }
+
+    /**
+     * Reload every cached catalog, catching all errors.
+     */
+    private void refreshAll() {
+        for (String datasourceName : new ArrayList<>(catalogs.keySet())) {
+            try {
+                synchronized (loadLocks.computeIfAbsent(datasourceName, name -> new Object())) {
+                    load(datasourceName);
+                }
+            } catch (Exception e) {
+                logger.warn("Schema catalog refresh failed for " + datasourceName + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.iai.ignition.gateway.tools.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Canonical text of SQL statements, for recognising the same query written differently.
+ *
+ * Comments and a trailing semicolon are dropped, whitespace is collapsed, keywords are
+ * upper-cased and spacing around punctuation is made uniform. String literals and quoted
+ * identifiers are kept exactly, so queries that can return different rows never share a
+ * canonical form. Unquoted identifiers keep their case, since some databases treat it as
+ * significant.
+ */
+public final class SqlNormalizer {
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+        "SELECT", "FROM", "WHERE", "AND", "OR", "NOT", "IN", "IS", "NULL", "LIKE", "BETWEEN", "EXISTS",
+        "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "OUTER", "CROSS", "ON", "USING", "AS",
+        "GROUP", "BY", "ORDER", "HAVING", "ASC", "DESC", "LIMIT", "OFFSET", "TOP", "DISTINCT",
+        "UNION", "ALL", "INTERSECT", "EXCEPT", "CASE", "WHEN", "THEN", "ELSE", "END", "WITH",
+        "FETCH", "FIRST", "NEXT", "ROWS", "ROW", "ONLY", "TRUE", "FALSE", "CAST", "OVER", "PARTITION",
+        "COUNT", "SUM", "AVG", "MIN", "MAX"
+    ));
+
+    private static final Set<String> TABLE_LIST_ENDS = new HashSet<>(Arrays.asList(
+        "WHERE", "GROUP", "ORDER", "HAVING", "LIMIT", "OFFSET", "UNION", "INTERSECT", "EXCEPT", "FETCH",
+        "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "CROSS", "ON", "USING"
+    ));
+
+    private SqlNormalizer() {
+    }
+
+    /**
+     * Canonical form of a statement.
+     */
+    public static String normalize(String sql) {
+        StringBuilder out = new StringBuilder();
+        Token previous = null;
+        for (Token token : tokenize(sql)) {
+            if (previous != null && needsSpace(previous, token)) {
+                out.append(' ');
+            }
+            out.append(token.text);
+            previous = token;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Names of the tables a SELECT reads, from its FROM and JOIN clauses: unquoted, without
+     * schema and lower-cased. Best effort; derived tables and functions are skipped.
+     */
+    public static Set<String> referencedTables(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        List<Token> tokens = tokenize(sql);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.type != TokenType.WORD) {
+                continue;
+            }
+
+            if (token.text.equals("JOIN")) {
+                addTable(tokens, i + 1, tables);
+            } else if (token.text.equals("FROM")) {
+                // FROM a, b x, schema.c
+                int j = i + 1;
+                while (j < tokens.size()) {
+                    j = addTable(tokens, j, tables);
+                    while (j < tokens.size() && !tokens.get(j).text.equals(",") && !tokens.get(j).text.equals(")")
+                        && !(tokens.get(j).type == TokenType.WORD && TABLE_LIST_ENDS.contains(tokens.get(j).text))) {
+                        j++;
+                    }
+                    if (j >= tokens.size() || !tokens.get(j).text.equals(",")) {
+                        break;
+                    }
+                    j++;
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Names of the tables a data-changing statement writes: the target of INSERT INTO, UPDATE,
+     * DELETE FROM, MERGE INTO and TRUNCATE TABLE, in the same form as {@link #referencedTables}.
+     * Best effort; empty if no target is recognised, e.g. for a stored procedure call.
+     */
+    public static Set<String> writtenTables(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        List<Token> tokens = tokenize(sql);
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Token token = tokens.get(i);
+            if (token.type != TokenType.WORD) {
+                continue;
+            }
+
+            String word = token.text.toUpperCase(Locale.ROOT);
+            int target = i + 1;
+            if (word.equals("INSERT") || word.equals("MERGE") || word.equals("REPLACE")) {
+                if (!isWord(tokens, target, "INTO")) {
+                    continue;
+                }
+                target++;
+            } else if (word.equals("DELETE")) {
+                if (isWord(tokens, target, "FROM")) {
+                    target++;
+                }
+            } else if (word.equals("TRUNCATE")) {
+                if (isWord(tokens, target, "TABLE")) {
+                    target++;
+                }
+            } else if (!word.equals("UPDATE")) {
+                continue;
+            }
+            // INSERT INTO t (a, b): the parenthesis after a write target is its column list
+            addTable(tokens, target, tables, true);
+        }
+        return tables;
+    }
+
+    private static boolean isWord(List<Token> tokens, int index, String word) {
+        return index < tokens.size() && tokens.get(index).type == TokenType.WORD
+            && tokens.get(index).text.equalsIgnoreCase(word);
+    }
+
+    /**
+     * Add the table name starting at a token, if it is one.
+     *
+     * @return Index of the token after the name
+     */
+    private static int addTable(List<Token> tokens, int start, Set<String> tables) {
+        return addTable(tokens, start, tables, false);
+    }
+
+    /**
+     * @param columnList Whether a "(" after the name starts a column list rather than function arguments
+     */
+    private static int addTable(List<Token> tokens, int start, Set<String> tables, boolean columnList) {
+        String last = null;
+        int i = start;
+        while (i < tokens.size()) {
+            Token token = tokens.get(i);
+            if (token.type == TokenType.WORD && !KEYWORDS.contains(token.text)) {
+                last = token.text;
+            } else if (token.type == TokenType.QUOTED_IDENTIFIER) {
+                last = token.text.substring(1, token.text.length() - 1);
+            } else {
+                break;
+            }
+            i++;
+            if (i < tokens.size() && tokens.get(i).text.equals(".")) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        // A name followed by "(" is a table-valued function
+        if (last != null && (columnList || !(i < tokens.size() && tokens.get(i).text.equals("(")))) {
+            tables.add(last.toLowerCase(Locale.ROOT));
+        }
+        return i;
+    }
+
+    private static boolean needsSpace(Token previous, Token token) {
+        String p = previous.text;
+        String t = token.text;
+        if (t.equals(",") || t.equals(")") || t.equals(".") || p.equals("(") || p.equals(".")) {
+            return false;
+        }
+        // Function calls: COUNT(*), coalesce(a, b)
+        if (t.equals("(") && previous.type == TokenType.WORD) {
+            return false;
+        }
+        return true;
+    }
+
+    private enum TokenType {
+        WORD,
+        NUMBER,
+        STRING,
+        QUOTED_IDENTIFIER,
+        SYMBOL
+    }
+
+    private static final class Token {
+        private final TokenType type;
+        private final String text;
+
+        private Token(TokenType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+    }
+
+    private static List<Token> tokenize(String sql) {
+        List<Token> tokens = new ArrayList<>();
+        int n = sql.length();
+        int i = 0;
+
+        while (i < n) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '-' && i + 1 < n && sql.charAt(i + 1) == '-') {
+                while (i < n && sql.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '\'') {
+                int end = endOfQuoted(sql, i, '\'');
+                tokens.add(new Token(TokenType.STRING, sql.substring(i, end)));
+                i = end;
+            } else if (c == '"' || c == '`') {
+                int end = endOfQuoted(sql, i, c);
+                tokens.add(new Token(TokenType.QUOTED_IDENTIFIER, sql.substring(i, end)));
+                i = end;
+            } else if (c == '[') {
+                int end = sql.indexOf(']', i + 1);
+                end = end < 0 ? n : end + 1;
+                tokens.add(new Token(TokenType.QUOTED_IDENTIFIER, sql.substring(i, end)));
+                i = end;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < n && Character.isDigit(sql.charAt(i + 1)))) {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.'
+                    || ((sql.charAt(i) == '+' || sql.charAt(i) == '-') && (sql.charAt(i - 1) == 'e' || sql.charAt(i - 1) == 'E')))) {
+                    i++;
+                }
+                tokens.add(new Token(TokenType.NUMBER, sql.substring(start, i).toLowerCase(Locale.ROOT)));
+            } else if (Character.isLetter(c) || c == '_' || c == '@' || c == '#' || c == '$') {
+                int start = i;
+                while (i < n && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_'
+                    || sql.charAt(i) == '@' || sql.charAt(i) == '#' || sql.charAt(i) == '$')) {
+                    i++;
+                }
+                String word = sql.substring(start, i);
+                String upper = word.toUpperCase(Locale.ROOT);
+                tokens.add(new Token(TokenType.WORD, KEYWORDS.contains(upper) || TABLE_LIST_ENDS.contains(upper) ? upper : word));
+            } else {
+                // Two-character operators stay together
+                if (i + 1 < n) {
+                    String two = sql.substring(i, i + 2);
+                    if (two.equals("<=") || two.equals(">=") || two.equals("<>") || two.equals("!=")
+                        || two.equals("||") || two.equals("::")) {
+                        tokens.add(new Token(TokenType.SYMBOL, two));
+                        i += 2;
+                        continue;
+                    }
+                }
+                tokens.add(new Token(TokenType.SYMBOL, String.valueOf(c)));
+                i++;
+            }
+        }
+
+        // A trailing semicolon doesn't change the statement
+        while (!tokens.isEmpty() && tokens.get(tokens.size() - 1).text.equals(";")) {
+            tokens.remove(tokens.size() - 1);
+        }
+        return tokens;
+    }
+
+    /**
+     * End (exclusive) of a quoted string or identifier, where a doubled quote is an escaped quote.
+     */
+    private static int endOfQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return sql.length();
+    }
+}
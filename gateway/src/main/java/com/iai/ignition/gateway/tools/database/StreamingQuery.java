@@ -0,0 +1,213 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.database.SqlDialect;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Runs a SELECT for a row-returning tool without holding more of the result in memory than
+ * the tool will use.
+ *
+ * The row limit is set with Statement.setMaxRows, which the PostgreSQL, MySQL and SQL Server
+ * drivers pass to the server; the SQL itself is never rewritten, so any valid SELECT runs as
+ * written. The fetch size is set so the driver streams instead of buffering the whole result
+ * set, and rows are encoded as they are read. Reading stops at the row limit or
+ * once the encoded rows reach the byte budget, whichever comes first; the result is then
+ * marked truncated.
+ */
+public final class StreamingQuery {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.database.StreamingQuery");
+
+    /**
+     * Rows between cancellation and deadline checks.
+     */
+    private static final int CHECK_INTERVAL_ROWS = 500;
+
+    /**
+     * Rows per driver round trip, where the driver lets us choose.
+     */
+    private static final int FETCH_ROWS = 500;
+
+    private StreamingQuery() {
+    }
+
+    /**
+     * Sets the parameters of a prepared query.
+     */
+    public interface Binder {
+        void bind(PreparedStatement stmt) throws SQLException;
+    }
+
+    /**
+     * Receives the rows of {@link #scan}.
+     */
+    public interface RowHandler {
+        void row(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Run a query and encode its rows.
+     *
+     * @param datasource The datasource to query
+     * @param select A single SELECT statement
+     * @param maxRows Maximum rows to read
+     * @param maxBytes Maximum approximate size of the encoded rows
+     * @param timeoutSeconds Query timeout
+     * @param context The calling tool invocation, checked for cancellation while reading
+     * @return The encoded rows, marked truncated if a limit was reached
+     */
+    public static TabularResultEncoder run(Datasource datasource, String select, int maxRows, long maxBytes,
+                                           int timeoutSeconds, ToolInvocationContext context) throws Exception {
+        return run(datasource, select, null, maxRows, maxBytes, timeoutSeconds, context);
+    }
+
+    /**
+     * Run a parameterized query and encode its rows.
+     *
+     * @param datasource The datasource to query
+     * @param select A single SELECT statement with ? placeholders
+     * @param binder Sets the placeholders, or null if there are none
+     * @param maxRows Maximum rows to read
+     * @param maxBytes Maximum approximate size of the encoded rows
+     * @param timeoutSeconds Query timeout
+     * @param context The calling tool invocation, checked for cancellation while reading
+     * @return The encoded rows, marked truncated if a limit was reached
+     */
+    public static TabularResultEncoder run(Datasource datasource, String select, Binder binder, int maxRows, long maxBytes,
+                                           int timeoutSeconds, ToolInvocationContext context) throws Exception {
+        return execute(datasource, select, binder, maxRows, timeoutWithin(timeoutSeconds, context),
+            rs -> read(rs, maxRows, maxBytes, context));
+    }
+
+    /**
+     * Stream every row of a query to a handler without keeping any of them, for tools that
+     * aggregate in a single pass.
+     *
+     * @param datasource The datasource to query
+     * @param select A single SELECT statement with ? placeholders
+     * @param binder Sets the placeholders, or null if there are none
+     * @param timeoutSeconds Query timeout
+     * @param context The calling tool invocation, checked for cancellation while reading
+     * @param handler Called once per row; must not advance the result set
+     * @return The number of rows read
+     */
+    public static long scan(Datasource datasource, String select, Binder binder, int timeoutSeconds,
+                            ToolInvocationContext context, RowHandler handler) throws Exception {
+        return execute(datasource, select, binder, 0, timeoutWithin(timeoutSeconds, context), rs -> {
+            long rows = 0;
+            while (rs.next()) {
+                handler.row(rs);
+                if (++rows % CHECK_INTERVAL_ROWS == 0) {
+                    context.checkActive();
+                }
+            }
+            logger.debug("Scanned " + rows + " rows");
+            return rows;
+        });
+    }
+
+    /**
+     * The query timeout, shortened to what is left of the turn's deadline.
+     */
+    static int timeoutWithin(int timeoutSeconds, ToolInvocationContext context) throws Exception {
+        context.checkActive();
+        long remaining = context.getRemainingMillis();
+        if (remaining == Long.MAX_VALUE) {
+            return timeoutSeconds;
+        }
+        int remainingSeconds = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000));
+        return timeoutSeconds > 0 ? Math.min(timeoutSeconds, remainingSeconds) : remainingSeconds;
+    }
+
+    private interface Reader<T> {
+        T read(ResultSet rs) throws Exception;
+    }
+
+    /**
+     * Run a query with the driver set up to stream, and read its result.
+     *
+     * @param maxRows Row limit set on the statement, or 0 for none
+     */
+    private static <T> T execute(Datasource datasource, String select, Binder binder, int maxRows, int timeoutSeconds,
+                                 Reader<T> reader) throws Exception {
+        try (Connection conn = datasource.getConnection()) {
+            SqlDialect dialect = SqlDialect.detect(conn);
+
+            boolean originalAutoCommit = conn.getAutoCommit();
+            boolean transaction = dialect.streamsOnlyInTransaction() && originalAutoCommit;
+            if (transaction) {
+                conn.setAutoCommit(false);
+            }
+
+            // Ad-hoc SQL isn't prepared, so a literal ? stays an operator
+            try (Statement stmt = binder != null ? conn.prepareStatement(select) : conn.createStatement()) {
+                stmt.setQueryTimeout(timeoutSeconds);
+                if (maxRows > 0) {
+                    // One extra row tells a result that fits the limit from one that was cut off
+                    stmt.setMaxRows(maxRows + 1);
+                }
+                int fetchSize = dialect.streamingFetchSize(FETCH_ROWS);
+                if (fetchSize != 0) {
+                    stmt.setFetchSize(fetchSize);
+                }
+
+                if (binder != null) {
+                    binder.bind((PreparedStatement) stmt);
+                }
+
+                try (ResultSet rs = binder != null ? ((PreparedStatement) stmt).executeQuery() : stmt.executeQuery(select)) {
+                    return reader.read(rs);
+                }
+            } finally {
+                if (transaction) {
+                    // Read-only; nothing to keep
+                    rollbackQuietly(conn);
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    private static TabularResultEncoder read(ResultSet rs, int maxRows, long maxBytes, ToolInvocationContext context) throws Exception {
+        TabularResultEncoder table = TabularResultEncoder.forResultSet(rs.getMetaData());
+
+        while (rs.next()) {
+            if (table.getRowCount() >= maxRows) {
+                table.setTruncated("Results limited to " + maxRows + " rows");
+                break;
+            }
+            table.addRow(rs);
+
+            if (table.getEncodedBytes() >= maxBytes) {
+                if (rs.next()) {
+                    table.setTruncated("Results limited to " + (maxBytes / 1024) + " KB (" + table.getRowCount() + " rows)");
+                }
+                break;
+            }
+            if (table.getRowCount() % CHECK_INTERVAL_ROWS == 0) {
+                context.checkActive();
+            }
+        }
+
+        logger.debug("Read " + table.getRowCount() + " rows, about " + table.getEncodedBytes() + " bytes" +
+            (table.isTruncated() ? " (truncated)" : ""));
+        return table;
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.debug("Rollback after streaming read failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.gateway.database.SqlDialect;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * SQL building blocks shared by the tools that compute statistics in the database
+ * ({@link ProfileTableTool}, {@link AggregateTableTool}).
+ *
+ * Table and column names come from the schema catalog and are quoted for the dialect, so only
+ * the optional filter is model-written SQL, as with query_table.
+ */
+final class TableAggregates {
+
+    /**
+     * How a column can be summarized, from its type name.
+     */
+    enum Kind {
+        /**
+         * MIN, MAX, AVG and percentiles
+         */
+        NUMERIC,
+        /**
+         * MIN and MAX
+         */
+        TEMPORAL,
+        /**
+         * Most frequent values
+         */
+        CATEGORICAL,
+        /**
+         * Null count only (binary, large objects, JSON, geometry)
+         */
+        OTHER
+    }
+
+    private static final Set<String> NUMERIC_TYPES = new HashSet<>(Arrays.asList(
+        "TINYINT", "SMALLINT", "MEDIUMINT", "INT", "INTEGER", "BIGINT", "INT2", "INT4", "INT8",
+        "DECIMAL", "NUMERIC", "NUMBER", "FLOAT", "FLOAT4", "FLOAT8", "REAL", "DOUBLE",
+        "MONEY", "SMALLMONEY", "SERIAL", "SMALLSERIAL", "BIGSERIAL"
+    ));
+
+    private static final Set<String> TEMPORAL_TYPES = new HashSet<>(Arrays.asList(
+        "DATE", "TIME", "TIMETZ", "TIMESTAMP", "TIMESTAMPTZ", "DATETIME", "DATETIME2", "SMALLDATETIME", "DATETIMEOFFSET"
+    ));
+
+    private static final Set<String> CATEGORICAL_TYPES = new HashSet<>(Arrays.asList(
+        "CHAR", "VARCHAR", "NCHAR", "NVARCHAR", "VARCHAR2", "NVARCHAR2", "CHARACTER", "BPCHAR", "CITEXT",
+        "TEXT", "TINYTEXT", "MEDIUMTEXT", "ENUM", "BIT", "BOOL", "BOOLEAN", "UUID", "UNIQUEIDENTIFIER"
+    ));
+
+    private TableAggregates() {
+    }
+
+    /**
+     * Classify a column by its type name as reported by the driver.
+     */
+    static Kind kindOf(String typeName, SqlDialect dialect) {
+        if (typeName == null) {
+            return Kind.OTHER;
+        }
+
+        // "int identity", "varchar(50)", "int unsigned", "character varying"
+        String type = typeName.trim().toUpperCase(Locale.ROOT);
+        int end = 0;
+        while (end < type.length() && (Character.isLetterOrDigit(type.charAt(end)) || type.charAt(end) == '_')) {
+            end++;
+        }
+        String base = type.substring(0, end);
+
+        if (NUMERIC_TYPES.contains(base)) {
+            return Kind.NUMERIC;
+        }
+        if (TEMPORAL_TYPES.contains(base)) {
+            return Kind.TEMPORAL;
+        }
+        if (base.equals("TEXT") && dialect == SqlDialect.SQLSERVER) {
+            // Legacy SQL Server text can't be grouped
+            return Kind.OTHER;
+        }
+        if (CATEGORICAL_TYPES.contains(base)) {
+            return Kind.CATEGORICAL;
+        }
+        return Kind.OTHER;
+    }
+
+    /**
+     * Find a table in a datasource's catalog.
+     *
+     * @throws IllegalArgumentException if the table does not exist
+     */
+    static SchemaCatalog.Table resolveTable(SchemaCatalogCache schemaCache, String databaseName, String tableName) throws SQLException {
+        SchemaCatalog.Table table = schemaCache.get(databaseName, false).findTable(tableName);
+        if (table == null) {
+            throw new IllegalArgumentException("Table not found: " + tableName + " in " + databaseName +
+                ". Use list_tables to see available tables.");
+        }
+        return table;
+    }
+
+    /**
+     * Find a column of a table.
+     *
+     * @throws IllegalArgumentException if the column does not exist
+     */
+    static SchemaCatalog.Column resolveColumn(SchemaCatalog.Table table, String columnName) {
+        SchemaCatalog.Column column = table.findColumn(columnName);
+        if (column == null) {
+            throw new IllegalArgumentException("Column not found: " + columnName + " in " + table.getQualifiedName() +
+                ". Use describe_table to see its columns.");
+        }
+        return column;
+    }
+
+    /**
+     * WHERE clause combining the model's filter with a condition of our own.
+     *
+     * @param filters Model-written condition, or null
+     * @param condition Additional condition, or null
+     * @return The clause with a leading space, or an empty string
+     */
+    static String where(String filters, String condition) {
+        boolean hasFilters = filters != null && !filters.trim().isEmpty();
+        if (hasFilters && condition != null) {
+            // The line break keeps a trailing line comment in the filter from swallowing the condition
+            return " WHERE (" + filters + "\n) AND " + condition;
+        }
+        if (hasFilters) {
+            return " WHERE " + filters + "\n";
+        }
+        return condition != null ? " WHERE " + condition : "";
+    }
+}
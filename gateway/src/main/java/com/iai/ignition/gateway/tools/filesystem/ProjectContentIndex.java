@@ -0,0 +1,638 @@
+package com.iai.ignition.gateway.tools.filesystem;
+
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Trigram index over the text resources of a project: scripts, Perspective views, named
+ * query SQL and Vision XML.
+ *
+ * Each file's lowercased text is split into the three-character sequences it contains, and
+ * every trigram maps to the set of files containing it. A search takes the trigrams its query
+ * requires and reads only the files that contain all of them. File contents are not kept;
+ * candidates are read from disk to find the matching lines.
+ *
+ * Runs of more than {@value #MAX_ENCODED_RUN} base64 characters without whitespace that look
+ * encoded (embedded images and other encoded data: upper and lower case mixed with digits, and
+ * not split by slashes into path segments) and control characters are not indexed, so text
+ * found only inside them does not make a file a candidate. Long paths and URLs are indexed. A file with more than
+ * {@value #MAX_FILE_TRIGRAMS} distinct trigrams is not indexed by trigram and is a candidate for
+ * every search.
+ *
+ * The index follows its {@link ProjectResourceIndex}: before each search, files whose size or
+ * modification time changed are re-read (and left as they are if their content hash is
+ * unchanged), new files are added and deleted ones dropped.
+ */
+public final class ProjectContentIndex {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.filesystem.ProjectContentIndex");
+
+    /**
+     * Larger files are not indexed or searched.
+     */
+    static final long MAX_FILE_BYTES = 2L * 1024 * 1024;
+
+    /**
+     * Longer runs of base64 characters are left out of a file's trigrams if they look encoded.
+     */
+    static final int MAX_ENCODED_RUN = 100;
+
+    /**
+     * Runs whose slash-separated segments are no longer than this on average are paths or URLs.
+     * Base64 has a slash every 64 characters on average.
+     */
+    private static final int MAX_PATH_SEGMENT = 32;
+
+    /**
+     * Files with more distinct trigrams are searched without narrowing.
+     */
+    static final int MAX_FILE_TRIGRAMS = 50_000;
+
+    private final ProjectResourceIndex resources;
+
+    private final Map<String, Document> documents = new HashMap<>();
+    private final List<Document> byId = new ArrayList<>();
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    private final Map<Long, Posting> postings = new HashMap<>();
+    private final Set<Document> unindexed = new HashSet<>();
+
+    ProjectContentIndex(ProjectResourceIndex resources) {
+        this.resources = resources;
+    }
+
+    ProjectResourceIndex getResourceIndex() {
+        return resources;
+    }
+
+    /**
+     * Whether a file is a text resource this index covers.
+     */
+    static boolean isTextResource(ProjectResourceIndex.Entry entry) {
+        if (entry.isDirectory()) {
+            return false;
+        }
+        String name = entry.getName();
+        return name.endsWith(".py") || name.equals("view.json") || name.endsWith(".sql") || name.endsWith(".xml");
+    }
+
+    /**
+     * Bring the index up to date with the resource index.
+     *
+     * @return Files re-read
+     */
+    synchronized int sync() {
+        Set<String> present = new HashSet<>();
+        int read = 0;
+        for (ProjectResourceIndex.Entry entry : resources.list("", Integer.MAX_VALUE, ProjectContentIndex::isTextResource)) {
+            String path = entry.getPath();
+            Document document = documents.get(path);
+            if (document != null && document.size == entry.getSize() && document.modified == entry.getModified()) {
+                present.add(path);
+                continue;
+            }
+            if (entry.getSize() > MAX_FILE_BYTES) {
+                remove(document);
+                continue;
+            }
+
+            try {
+                byte[] content = Files.readAllBytes(resources.getRoot().resolve(path));
+                read++;
+                String hash = resources.getContentHash(entry, content);
+                present.add(path);
+                if (document != null && hash.equals(document.hash)) {
+                    // Saved without changes
+                    document.size = entry.getSize();
+                    document.modified = entry.getModified();
+                    continue;
+                }
+                remove(document);
+                add(new Document(path, entry.getResourceType(), entry.getSize(), entry.getModified(), hash),
+                    documentTrigrams(new String(content, StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                // Deleted or unreadable since it was listed
+                logger.trace("Could not index " + path + ": " + e.getMessage());
+                remove(document);
+            }
+        }
+
+        if (present.size() < documents.size()) {
+            for (Document document : new ArrayList<>(documents.values())) {
+                if (!present.contains(document.path)) {
+                    remove(document);
+                }
+            }
+        }
+        return read;
+    }
+
+    private void add(Document document, long[] trigrams) {
+        Integer free = freeIds.poll();
+        document.id = free != null ? free : byId.size();
+        if (free != null) {
+            byId.set(document.id, document);
+        } else {
+            byId.add(document);
+        }
+        document.trigrams = trigrams;
+        if (trigrams == null) {
+            unindexed.add(document);
+        } else {
+            for (long trigram : trigrams) {
+                postings.computeIfAbsent(trigram, t -> new Posting()).add(document.id);
+            }
+        }
+        documents.put(document.path, document);
+    }
+
+    private void remove(Document document) {
+        if (document == null) {
+            return;
+        }
+        if (document.trigrams == null) {
+            unindexed.remove(document);
+        } else {
+            for (long trigram : document.trigrams) {
+                Posting files = postings.get(trigram);
+                if (files != null) {
+                    files.remove(document.id);
+                    if (files.size == 0) {
+                        postings.remove(trigram);
+                    }
+                }
+            }
+        }
+        documents.remove(document.path);
+        byId.set(document.id, null);
+        freeIds.push(document.id);
+    }
+
+    /**
+     * Files that may contain every one of the given literals, in path order.
+     *
+     * @param literals Text the file must contain (any case); literals shorter than three
+     *                 characters don't narrow the search
+     * @param filter Files to consider
+     */
+    synchronized List<Candidate> candidates(List<String> literals, Predicate<String> filter) {
+        Set<Long> required = new HashSet<>();
+        for (String literal : literals) {
+            for (long trigram : trigrams(literal)) {
+                required.add(trigram);
+            }
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        if (required.isEmpty()) {
+            for (Document document : documents.values()) {
+                if (filter.test(document.type)) {
+                    candidates.add(new Candidate(document.path, document.type));
+                }
+            }
+            candidates.sort(Comparator.comparing(Candidate::getPath));
+            return candidates;
+        }
+
+        for (Document document : unindexed) {
+            if (filter.test(document.type)) {
+                candidates.add(new Candidate(document.path, document.type));
+            }
+        }
+        List<Posting> lists = new ArrayList<>();
+        for (long trigram : required) {
+            Posting files = postings.get(trigram);
+            if (files == null) {
+                lists.clear();
+                break;
+            }
+            lists.add(files);
+        }
+        if (!lists.isEmpty()) {
+            // Walk the shortest list and look each file up in the others
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            Posting shortest = lists.get(0);
+            for (int i = 0; i < shortest.size; i++) {
+                int id = shortest.ids[i];
+                boolean all = true;
+                for (int l = 1; l < lists.size() && all; l++) {
+                    all = lists.get(l).contains(id);
+                }
+                Document document = all ? byId.get(id) : null;
+                if (document != null && filter.test(document.type)) {
+                    candidates.add(new Candidate(document.path, document.type));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparing(Candidate::getPath));
+        return candidates;
+    }
+
+    /**
+     * Number of indexed files.
+     */
+    synchronized int size() {
+        return documents.size();
+    }
+
+    /**
+     * Distinct trigrams of the lowercased text, sorted.
+     */
+    static long[] trigrams(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.length() < 3) {
+            return new long[0];
+        }
+        long[] trigrams = new long[lower.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = trigram(lower, i);
+        }
+        return distinct(trigrams, trigrams.length);
+    }
+
+    /**
+     * Distinct trigrams of a file's lowercased text, sorted, leaving out encoded base64 runs and
+     * control characters.
+     *
+     * @return The trigrams, or null if there are more than {@value #MAX_FILE_TRIGRAMS}
+     */
+    static long[] documentTrigrams(String text) {
+        if (text.length() < 3) {
+            return new long[0];
+        }
+        TrigramBuffer trigrams = new TrigramBuffer(text.length());
+        // Index of the first character of the current text run, i.e. after the last skipped one
+        int runStart = 0;
+        int i = 0;
+        // Encoded runs are found before lowercasing, which would hide their mixed case
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (isBase64(c)) {
+                int end = i;
+                while (end < text.length() && isBase64(text.charAt(end))) {
+                    end++;
+                }
+                if (end - i > MAX_ENCODED_RUN && isEncoded(text, i, end)) {
+                    trigrams.addRun(text, runStart, i);
+                    runStart = end;
+                }
+                i = end;
+            } else if (c < ' ' && c != '\t' && c != '\n' && c != '\r') {
+                trigrams.addRun(text, runStart, i);
+                runStart = ++i;
+            } else {
+                i++;
+            }
+        }
+        trigrams.addRun(text, runStart, text.length());
+
+        long[] distinct = distinct(trigrams.values, trigrams.count);
+        return distinct.length > MAX_FILE_TRIGRAMS ? null : distinct;
+    }
+
+    /**
+     * Whether a run of base64 characters looks like encoded data rather than a long identifier,
+     * path or URL: upper and lower case letters mixed with digits, and no slashes splitting it
+     * into path segments.
+     */
+    private static boolean isEncoded(String text, int start, int end) {
+        boolean upper = false;
+        boolean lower = false;
+        boolean digit = false;
+        int slashes = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                upper = true;
+            } else if (c >= 'a' && c <= 'z') {
+                lower = true;
+            } else if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c == '/') {
+                slashes++;
+            }
+        }
+        return upper && lower && digit && (end - start) / (slashes + 1) > MAX_PATH_SEGMENT;
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    private static long[] distinct(long[] trigrams, int count) {
+        Arrays.sort(trigrams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /**
+     * Trigrams of a document's indexed runs, each lowercased on its own.
+     */
+    private static final class TrigramBuffer {
+        long[] values;
+        int count;
+
+        TrigramBuffer(int capacity) {
+            values = new long[capacity];
+        }
+
+        void addRun(String text, int start, int end) {
+            if (end - start < 3) {
+                return;
+            }
+            // Lowercasing can lengthen a few characters
+            String lower = text.substring(start, end).toLowerCase(Locale.ROOT);
+            if (count + lower.length() > values.length) {
+                values = Arrays.copyOf(values, Math.max(values.length * 2, count + lower.length()));
+            }
+            for (int i = 0; i + 3 <= lower.length(); i++) {
+                values[count++] = trigram(lower, i);
+            }
+        }
+    }
+
+    private static boolean isBase64(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '+' || c == '/' || c == '=';
+    }
+
+    /**
+     * Literal runs every match of a regular expression must contain, for narrowing a search.
+     *
+     * Conservative: text inside groups and character classes, optional characters and escapes
+     * other than quoted metacharacters and {@code \Q...\E} are left out. An expression with
+     * alternatives or comments mode yields none, and so does any construct not recognized here:
+     * a literal that isn't really required would drop files that match.
+     */
+    static List<String> requiredLiterals(String regex) {
+        List<String> literals = new ArrayList<>();
+        if (regex.indexOf('|') >= 0) {
+            return literals;
+        }
+
+        StringBuilder run = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= regex.length()) {
+                        return new ArrayList<>();
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    if (!Character.isLetterOrDigit(escaped)) {
+                        if (depth == 0) {
+                            run.append(escaped);
+                        }
+                        i += 2;
+                        continue;
+                    }
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", i + 2);
+                        if (end < 0) {
+                            end = regex.length();
+                        }
+                        if (depth == 0) {
+                            run.append(regex, i + 2, end);
+                        }
+                        i = end + 2;
+                        continue;
+                    }
+                    endRun(run, literals);
+                    i = skipEscape(regex, i + 1);
+                    if (i < 0) {
+                        return new ArrayList<>();
+                    }
+                    continue;
+                case '[':
+                    endRun(run, literals);
+                    i++;
+                    if (i < regex.length() && regex.charAt(i) == '^') {
+                        i++;
+                    }
+                    if (i < regex.length() && regex.charAt(i) == ']') {
+                        i++;
+                    }
+                    while (i < regex.length() && regex.charAt(i) != ']') {
+                        i += regex.charAt(i) == '\\' ? 2 : 1;
+                    }
+                    i++;
+                    continue;
+                case '(':
+                    endRun(run, literals);
+                    if (i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                        // Inline flags, e.g. (?i) or (?x:...); in comments mode whitespace isn't literal
+                        int end = i + 2;
+                        while (end < regex.length() && (Character.isLetter(regex.charAt(end)) || regex.charAt(end) == '-')) {
+                            if (regex.charAt(end) == 'x') {
+                                return new ArrayList<>();
+                            }
+                            end++;
+                        }
+                        if (end < regex.length() && regex.charAt(end) == ')' && end > i + 2) {
+                            // Applies to the rest of the enclosing group without opening one
+                            i = end + 1;
+                            continue;
+                        }
+                    }
+                    depth++;
+                    break;
+                case ')':
+                    endRun(run, literals);
+                    depth = Math.max(0, depth - 1);
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The preceding character may be absent
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    endRun(run, literals);
+                    if (c == '{') {
+                        while (i < regex.length() && regex.charAt(i) != '}') {
+                            i++;
+                        }
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    endRun(run, literals);
+                    break;
+                default:
+                    if (depth == 0) {
+                        run.append(c);
+                    }
+            }
+            i++;
+        }
+        endRun(run, literals);
+        return literals;
+    }
+
+    /**
+     * Skip an escape other than a quoted metacharacter or {@code \Q}.
+     *
+     * @param i Index of the character after the backslash
+     * @return Index after the escape, or -1 if it isn't recognized
+     */
+    private static int skipEscape(String regex, int i) {
+        char c = regex.charAt(i);
+        switch (c) {
+            case 'x':
+                // \xhh or \x{h...h}
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '{') {
+                    return skipBraces(regex, i + 1);
+                }
+                return skipDigits(regex, i + 1, 2, 2, 16);
+            case 'u':
+                return skipDigits(regex, i + 1, 4, 4, 16);
+            case '0':
+                // \0n, \0nn or \0mnn
+                int digits = i + 1 < regex.length() && regex.charAt(i + 1) <= '3' ? 3 : 2;
+                return skipDigits(regex, i + 1, 1, digits, 8);
+            case 'c':
+                return i + 1 < regex.length() ? i + 2 : -1;
+            case 'k':
+                if (i + 1 >= regex.length() || regex.charAt(i + 1) != '<') {
+                    return -1;
+                }
+                int close = regex.indexOf('>', i + 2);
+                return close < 0 ? -1 : close + 1;
+            case 'p':
+            case 'P':
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '{') {
+                    return skipBraces(regex, i + 1);
+                }
+                return i + 1 < regex.length() ? i + 2 : -1;
+            case 'N':
+                return i + 1 < regex.length() && regex.charAt(i + 1) == '{' ? skipBraces(regex, i + 1) : -1;
+            case 'b':
+                // \b or \b{g}
+                return i + 1 < regex.length() && regex.charAt(i + 1) == '{' ? skipBraces(regex, i + 1) : i + 1;
+            default:
+                if (c >= '1' && c <= '9') {
+                    // Back reference
+                    return skipDigits(regex, i, 1, Integer.MAX_VALUE, 10);
+                }
+                return "tnrfaedDsSwWBAGZzhHvVRX".indexOf(c) >= 0 ? i + 1 : -1;
+        }
+    }
+
+    private static int skipBraces(String regex, int open) {
+        int close = regex.indexOf('}', open);
+        return close < 0 ? -1 : close + 1;
+    }
+
+    private static int skipDigits(String regex, int i, int min, int max, int radix) {
+        int end = i;
+        while (end < regex.length() && end - i < max && Character.digit(regex.charAt(end), radix) >= 0) {
+            end++;
+        }
+        return end - i < min ? -1 : end;
+    }
+
+    private static void endRun(StringBuilder run, List<String> literals) {
+        if (run.length() >= 3) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /**
+     * A file that may match a search.
+     */
+    static final class Candidate {
+        private final String path;
+        private final String type;
+
+        Candidate(String path, String type) {
+            this.path = path;
+            this.type = type;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        String getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Ids of the files containing a trigram, sorted.
+     */
+    private static final class Posting {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+                size--;
+            }
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+    }
+
+    private static final class Document {
+        final String path;
+        final String type;
+        final String hash;
+        long size;
+        long modified;
+        int id;
+        /**
+         * Null if the file has too many trigrams to index
+         */
+        long[] trigrams;
+
+        Document(String path, String type, long size, long modified, String hash) {
+            this.path = path;
+            this.type = type;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+}
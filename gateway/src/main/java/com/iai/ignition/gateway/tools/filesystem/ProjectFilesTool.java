@@ -10,8 +10,6 @@ import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.stream.Stream;
 
 /**
  * Consolidated tool for project file operations.
@@ -25,10 +23,12 @@ public class ProjectFilesTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final ProjectResourceIndexes indexes;
 
-    public ProjectFilesTool(GatewayContext gatewayContext, IAISettings settings) {
+    public ProjectFilesTool(GatewayContext gatewayContext, IAISettings settings, ProjectResourceIndexes indexes) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.indexes = indexes;
     }
 
     @Override
@@ -97,6 +97,22 @@ public class ProjectFilesTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        return true;
+    }
+
+    @Override
+    public long getResultTtlMillis() {
+        // Project files may be edited in the Designer, keep short
+        return 60_000L;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        return params.has("action") ? params.get("action").getAsString() : null;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
         String action = params.get("action").getAsString();
@@ -104,33 +120,26 @@ public class ProjectFilesTool implements IAITool {
 
         logger.debug("project_files: action=" + action + ", project=" + projectName);
 
-        String gatewayDataPath = settings.getGatewayDataPath();
-        if (gatewayDataPath == null || gatewayDataPath.isEmpty()) {
-            gatewayDataPath = System.getProperty("ignition.home", "/usr/local/bin/ignition") + "/data";
-        }
-
-        Path projectPath = Paths.get(gatewayDataPath, "projects", projectName);
-
-        if (!Files.exists(projectPath)) {
-            throw new IllegalArgumentException("Project not found: " + projectName);
-        }
+        // Listings come from the project's index; reads go to disk
+        ProjectResourceIndex index = indexes.project(projectName);
+        Path projectPath = index.getRoot();
 
         switch (action) {
             case "list_views":
-                return listViews(projectPath, params.has("resource_type") ? params.get("resource_type").getAsString() : "perspective");
+                return listViews(index, params.has("resource_type") ? params.get("resource_type").getAsString() : "perspective");
 
             case "read_view":
                 return readView(projectPath, params.get("resource_name").getAsString(),
                                params.has("resource_type") ? params.get("resource_type").getAsString() : "perspective");
 
             case "list_scripts":
-                return listScripts(projectPath);
+                return listScripts(index);
 
             case "read_script":
                 return readScript(projectPath, params.get("resource_name").getAsString());
 
             case "list_queries":
-                return listQueries(projectPath);
+                return listQueries(index);
 
             case "read_query":
                 return readQuery(projectPath, params.get("resource_name").getAsString());
@@ -139,27 +148,25 @@ public class ProjectFilesTool implements IAITool {
                 return readFile(projectPath, params.get("file_path").getAsString());
 
             case "get_structure":
-                return getStructure(projectPath);
+                return getStructure(index);
 
             case "get_metadata":
-                return getMetadata(projectPath, params.get("file_path").getAsString());
+                return getMetadata(index, params.get("file_path").getAsString());
 
             default:
                 throw new IllegalArgumentException("Unknown action: " + action);
         }
     }
 
-    private JsonObject listViews(Path projectPath, String resourceType) throws Exception {
-        Path viewsPath = "perspective".equals(resourceType)
-            ? projectPath.resolve("com.inductiveautomation.perspective/views")
-            : projectPath.resolve("com.inductiveautomation.vision/windows");
+    private JsonObject listViews(ProjectResourceIndex index, String resourceType) throws Exception {
+        String viewsPath = "perspective".equals(resourceType)
+            ? "com.inductiveautomation.perspective/views"
+            : "com.inductiveautomation.vision/windows";
 
         JsonArray views = new JsonArray();
-        if (Files.exists(viewsPath)) {
-            try (Stream<Path> paths = Files.walk(viewsPath, 2)) {
-                paths.filter(p -> p.toString().endsWith(".json") || p.toString().endsWith(".xml"))
-                     .forEach(p -> views.add(viewsPath.relativize(p).toString()));
-            }
+        for (ProjectResourceIndex.Entry entry : index.list(viewsPath, 2,
+                e -> e.getName().endsWith(".json") || e.getName().endsWith(".xml"))) {
+            views.add(entry.getPath().substring(viewsPath.length() + 1));
         }
 
         JsonObject result = new JsonObject();
@@ -187,15 +194,12 @@ public class ProjectFilesTool implements IAITool {
         return result;
     }
 
-    private JsonObject listScripts(Path projectPath) throws Exception {
-        Path scriptsPath = projectPath.resolve("ignition/script-python");
+    private JsonObject listScripts(ProjectResourceIndex index) throws Exception {
+        String scriptsPath = "ignition/script-python";
 
         JsonArray scripts = new JsonArray();
-        if (Files.exists(scriptsPath)) {
-            try (Stream<Path> paths = Files.walk(scriptsPath)) {
-                paths.filter(p -> p.toString().endsWith(".py"))
-                     .forEach(p -> scripts.add(scriptsPath.relativize(p).toString()));
-            }
+        for (ProjectResourceIndex.Entry entry : index.list(scriptsPath, Integer.MAX_VALUE, e -> e.getName().endsWith(".py"))) {
+            scripts.add(entry.getPath().substring(scriptsPath.length() + 1));
         }
 
         JsonObject result = new JsonObject();
@@ -219,15 +223,11 @@ public class ProjectFilesTool implements IAITool {
         return result;
     }
 
-    private JsonObject listQueries(Path projectPath) throws Exception {
-        Path queriesPath = projectPath.resolve("com.inductiveautomation.ignition.common.script.data/queries");
-
+    private JsonObject listQueries(ProjectResourceIndex index) throws Exception {
         JsonArray queries = new JsonArray();
-        if (Files.exists(queriesPath)) {
-            try (Stream<Path> paths = Files.list(queriesPath)) {
-                paths.filter(Files::isDirectory)
-                     .forEach(p -> queries.add(p.getFileName().toString()));
-            }
+        for (ProjectResourceIndex.Entry entry : index.list("com.inductiveautomation.ignition.common.script.data/queries", 1,
+                ProjectResourceIndex.Entry::isDirectory)) {
+            queries.add(entry.getName());
         }
 
         JsonObject result = new JsonObject();
@@ -267,14 +267,13 @@ public class ProjectFilesTool implements IAITool {
         return result;
     }
 
-    private JsonObject getStructure(Path projectPath) throws Exception {
+    private JsonObject getStructure(ProjectResourceIndex index) throws Exception {
         JsonArray structure = new JsonArray();
 
-        if (Files.exists(projectPath)) {
-            try (Stream<Path> paths = Files.walk(projectPath, 2)) {
-                paths.filter(Files::isDirectory)
-                     .forEach(p -> structure.add(projectPath.relativize(p).toString()));
-            }
+        // The project folder itself, as listed before the index existed
+        structure.add("");
+        for (ProjectResourceIndex.Entry entry : index.list("", 2, ProjectResourceIndex.Entry::isDirectory)) {
+            structure.add(entry.getPath());
         }
 
         JsonObject result = new JsonObject();
@@ -283,18 +282,21 @@ public class ProjectFilesTool implements IAITool {
         return result;
     }
 
-    private JsonObject getMetadata(Path projectPath, String filePath) throws Exception {
-        Path file = projectPath.resolve(filePath);
-
-        if (!Files.exists(file)) {
+    private JsonObject getMetadata(ProjectResourceIndex index, String filePath) throws Exception {
+        ProjectResourceIndex.Entry entry = index.get(filePath);
+        if (entry == null) {
             throw new IllegalArgumentException("File not found: " + filePath);
         }
 
         JsonObject result = new JsonObject();
         result.addProperty("path", filePath);
-        result.addProperty("size", Files.size(file));
-        result.addProperty("is_directory", Files.isDirectory(file));
-        result.addProperty("last_modified", Files.getLastModifiedTime(file).toMillis());
+        result.addProperty("size", entry.getSize());
+        result.addProperty("is_directory", entry.isDirectory());
+        result.addProperty("last_modified", entry.getModified());
+        result.addProperty("resource_type", entry.getResourceType());
+        if (!entry.isDirectory()) {
+            result.addProperty("content_hash", index.getContentHash(entry));
+        }
         return result;
     }
 }
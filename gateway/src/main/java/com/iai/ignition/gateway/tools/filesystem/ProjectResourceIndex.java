@@ -0,0 +1,547 @@
+package com.iai.ignition.gateway.tools.filesystem;
+
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of the files and directories under one root, such as a project folder.
+ *
+ * The tree is walked once; after that {@link ProjectResourceIndexes} reports changed paths
+ * from a WatchService and only those are re-read. Entries are kept sorted by their path
+ * relative to the root (with '/' separators), so prefix lookups are range scans. Content
+ * hashes are computed on first use and kept until the file's size or modification time
+ * changes.
+ *
+ * A rebuild walks the tree into a new map and publishes it in one assignment, so lookups never
+ * see a partly built index; change events that arrive during the walk are applied to the new
+ * map before it is published.
+ */
+public final class ProjectResourceIndex {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.filesystem.ProjectResourceIndex");
+
+    private final Path root;
+    private final int maxDepth;
+    private final ProjectResourceIndexes watcher;
+    private volatile NavigableMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+    private volatile boolean stale = true;
+    private volatile boolean unwatched;
+    private volatile int generation;
+    private volatile long builtAt;
+
+    /**
+     * Paths changed while a rebuild walks the tree, or null when none is running.
+     */
+    private List<Path> pendingEvents;
+    private final Object eventLock = new Object();
+
+    /**
+     * @param root The directory to index
+     * @param maxDepth Directory levels below the root to index
+     * @param watcher Registers indexed directories for change events; may be null for an index
+     *                that is rebuilt on demand only
+     */
+    ProjectResourceIndex(Path root, int maxDepth, ProjectResourceIndexes watcher) {
+        this.root = root;
+        this.maxDepth = maxDepth;
+        this.watcher = watcher;
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * @return When the tree was last walked in full (epoch millis)
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * Number of indexed files and directories.
+     */
+    public int size() {
+        ensureBuilt();
+        return entries.size();
+    }
+
+    /**
+     * Drop the index so the next lookup walks the tree again, e.g. after missed change events.
+     */
+    void invalidate() {
+        generation++;
+        stale = true;
+    }
+
+    /**
+     * Note that a directory of the index could not be watched, so changes below it may be
+     * missed and the index should be rebuilt periodically. Cleared by the next rebuild.
+     */
+    void markUnwatched() {
+        unwatched = true;
+    }
+
+    /**
+     * @return Whether changes may go unreported since the last rebuild
+     */
+    boolean isUnwatched() {
+        return watcher == null || unwatched;
+    }
+
+    private void ensureBuilt() {
+        if (!stale) {
+            return;
+        }
+        synchronized (this) {
+            if (stale) {
+                rebuild();
+            }
+        }
+    }
+
+    private void rebuild() {
+        long start = System.currentTimeMillis();
+        int startGeneration = generation;
+        unwatched = false;
+        synchronized (eventLock) {
+            pendingEvents = new ArrayList<>();
+        }
+
+        NavigableMap<String, Entry> fresh = new ConcurrentSkipListMap<>();
+        if (Files.isDirectory(root)) {
+            walk(root, fresh);
+        }
+
+        // Apply the events that arrived during the walk, then publish once no more are queued
+        while (true) {
+            List<Path> events;
+            synchronized (eventLock) {
+                events = pendingEvents;
+                if (events.isEmpty()) {
+                    entries = fresh;
+                    pendingEvents = null;
+                    break;
+                }
+                pendingEvents = new ArrayList<>();
+            }
+            for (Path path : events) {
+                apply(path, fresh);
+            }
+        }
+
+        builtAt = System.currentTimeMillis();
+        // Invalidated again during the walk (missed events); the next lookup rebuilds
+        stale = generation != startGeneration;
+        logger.debug("Indexed " + fresh.size() + " entries under " + root + " in " + (builtAt - start) + "ms");
+    }
+
+    private void walk(Path start, NavigableMap<String, Entry> target) {
+        try {
+            int startDepth = start.equals(root) ? 0 : root.relativize(start).getNameCount();
+            Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth - startDepth, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (!dir.equals(root)) {
+                        put(dir, attrs, target);
+                    }
+                    if (watcher != null && depth(dir) < maxDepth) {
+                        watcher.register(ProjectResourceIndex.this, dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    // Directories at the depth limit are visited as files
+                    put(file, attrs, target);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    logger.trace("Skipping unreadable path " + file + ": " + e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            logger.debug("Could not index " + start + ": " + e.getMessage());
+        }
+    }
+
+    private int depth(Path path) {
+        return path.equals(root) ? 0 : root.relativize(path).getNameCount();
+    }
+
+    private void put(Path path, BasicFileAttributes attrs, NavigableMap<String, Entry> target) {
+        String relative = relative(path);
+        Entry previous = target.get(relative);
+        if (previous == null) {
+            // Rebuilding; the published index may still have the hash
+            previous = entries.get(relative);
+        }
+        Entry entry = new Entry(relative, attrs.isDirectory(), attrs.size(), attrs.lastModifiedTime().toMillis());
+        if (previous != null && previous.size == entry.size && previous.modified == entry.modified) {
+            // Unchanged; keep the computed hash
+            entry.hash = previous.hash;
+        }
+        target.put(relative, entry);
+    }
+
+    private String relative(Path path) {
+        return root.relativize(path).toString().replace('\\', '/');
+    }
+
+    /**
+     * Re-read one path after a change event: add, update or remove it, and for a new
+     * directory everything below it.
+     */
+    void refresh(Path path) {
+        if (!path.startsWith(root) || path.equals(root) || depth(path) > maxDepth) {
+            return;
+        }
+        synchronized (eventLock) {
+            if (pendingEvents != null) {
+                pendingEvents.add(path);
+                return;
+            }
+        }
+        if (!stale) {
+            apply(path, entries);
+        }
+    }
+
+    private void apply(Path path, NavigableMap<String, Entry> target) {
+        String relative = relative(path);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Entry previous = target.get(relative);
+            if (attrs.isDirectory() && (previous == null || !previous.directory)) {
+                walk(path, target);
+            } else {
+                put(path, attrs, target);
+            }
+        } catch (NoSuchFileException e) {
+            target.remove(relative);
+            // Everything below a removed directory
+            target.subMap(relative + "/", relative + "/\uffff").clear();
+        } catch (IOException e) {
+            logger.trace("Could not refresh " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the entry for a path relative to the root.
+     *
+     * @return The entry, or null if it is not indexed
+     */
+    public Entry get(String relativePath) {
+        ensureBuilt();
+        return entries.get(normalize(relativePath));
+    }
+
+    /**
+     * Entries below a directory, in path order.
+     *
+     * @param directory Path relative to the root, or "" for everything
+     * @param maxRelativeDepth Levels below the directory to include
+     * @param filter Entries to include
+     */
+    public List<Entry> list(String directory, int maxRelativeDepth, Predicate<Entry> filter) {
+        ensureBuilt();
+        String prefix = normalize(directory);
+        prefix = prefix.isEmpty() ? "" : prefix + "/";
+        int baseDepth = prefix.isEmpty() ? 0 : prefix.split("/").length;
+
+        List<Entry> matches = new ArrayList<>();
+        NavigableMap<String, Entry> index = entries;
+        Map<String, Entry> range = prefix.isEmpty() ? index : index.subMap(prefix, prefix + "\uffff");
+        for (Entry entry : range.values()) {
+            if (entry.depth() - baseDepth <= maxRelativeDepth && filter.test(entry)) {
+                matches.add(entry);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find entries by name or path.
+     *
+     * A query with * or ? is a glob: matched against the relative path if it contains '/',
+     * otherwise against the name ('**' crosses directories, '*' does not). Any other query is
+     * matched against names, best first: exact, prefix, substring, then names containing the
+     * query's characters in order; a path containing the query ranks last.
+     *
+     * @param directory Only entries below this directory (relative, "" for all)
+     * @param query The name, glob or fragment to find
+     * @param filter Entries to consider
+     * @param limit Maximum entries to return
+     */
+    public List<Entry> find(String directory, String query, Predicate<Entry> filter, int limit) {
+        List<Entry> candidates = list(directory, Integer.MAX_VALUE, filter);
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+
+        if (query.indexOf('*') >= 0 || query.indexOf('?') >= 0) {
+            Pattern glob = globToRegex(lowerQuery);
+            boolean matchPath = query.indexOf('/') >= 0;
+            List<Entry> matches = new ArrayList<>();
+            for (Entry entry : candidates) {
+                String subject = (matchPath ? entry.path : entry.getName()).toLowerCase(Locale.ROOT);
+                if (glob.matcher(subject).matches()) {
+                    matches.add(entry);
+                    if (matches.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+            return matches;
+        }
+
+        List<Scored> scored = new ArrayList<>();
+        for (Entry entry : candidates) {
+            int score = score(entry, lowerQuery);
+            if (score > 0) {
+                scored.add(new Scored(entry, score));
+            }
+        }
+        scored.sort(Comparator.comparingInt((Scored s) -> -s.score).thenComparing(s -> s.entry.path));
+
+        List<Entry> matches = new ArrayList<>();
+        for (Scored s : scored.subList(0, Math.min(limit, scored.size()))) {
+            matches.add(s.entry);
+        }
+        return matches;
+    }
+
+    private static int score(Entry entry, String query) {
+        String name = entry.getName().toLowerCase(Locale.ROOT);
+        if (name.equals(query)) {
+            return 1000;
+        }
+        if (name.startsWith(query)) {
+            return 800;
+        }
+        int index = name.indexOf(query);
+        if (index >= 0) {
+            return 600 - Math.min(index, 100);
+        }
+
+        // Characters in order, e.g. "mtrst" for "MotorStatus"; tighter matches score higher
+        int position = 0;
+        int gaps = 0;
+        for (int i = 0; i < query.length(); i++) {
+            int found = name.indexOf(query.charAt(i), position);
+            if (found < 0) {
+                gaps = -1;
+                break;
+            }
+            gaps += found - position;
+            position = found + 1;
+        }
+        if (gaps >= 0 && query.length() >= 2) {
+            return Math.max(201, 400 - gaps * 10);
+        }
+
+        return entry.path.toLowerCase(Locale.ROOT).contains(query) ? 100 : 0;
+    }
+
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String normalize(String relativePath) {
+        String path = relativePath.replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        return path;
+    }
+
+    /**
+     * SHA-256 of a file's content, computed on first use.
+     *
+     * @return The hex digest, or null for directories
+     */
+    public String getContentHash(Entry entry) throws IOException {
+        if (entry.directory) {
+            return null;
+        }
+        String hash = entry.hash;
+        if (hash == null) {
+            hash = hash(root.resolve(entry.path));
+            entry.hash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * SHA-256 of content the caller has already read from an entry's file. The hash is kept on
+     * the entry when the content is the size the entry was listed with.
+     *
+     * @return The hex digest
+     */
+    String getContentHash(Entry entry, byte[] content) {
+        MessageDigest digest = sha256();
+        digest.update(content);
+        String hash = hex(digest.digest());
+        if (!entry.directory && content.length == entry.size) {
+            entry.hash = hash;
+        }
+        return hash;
+    }
+
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * An indexed file or directory.
+     */
+    public static final class Entry {
+        private final String path;
+        private final boolean directory;
+        private final long size;
+        private final long modified;
+        private volatile String hash;
+
+        private Entry(String path, boolean directory, long size, long modified) {
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * @return Path relative to the index root, with '/' separators
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public String getName() {
+            int slash = path.lastIndexOf('/');
+            return slash >= 0 ? path.substring(slash + 1) : path;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return Last modification time (epoch millis)
+         */
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * Levels below the index root; 1 for a direct child.
+         */
+        public int depth() {
+            int depth = 1;
+            for (int i = 0; i < path.length(); i++) {
+                if (path.charAt(i) == '/') {
+                    depth++;
+                }
+            }
+            return depth;
+        }
+
+        /**
+         * The kind of Ignition resource the entry belongs to, from where it is stored.
+         *
+         * @return view, window, script, query, or file
+         */
+        public String getResourceType() {
+            if (path.startsWith("com.inductiveautomation.perspective/views/")) {
+                return "view";
+            }
+            if (path.startsWith("com.inductiveautomation.vision/windows/")) {
+                return "window";
+            }
+            if (path.startsWith("ignition/script-python/")) {
+                return "script";
+            }
+            if (path.startsWith("ignition/named-query/") || path.startsWith("com.inductiveautomation.ignition.common.script.data/queries/")) {
+                return "query";
+            }
+            return "file";
+        }
+    }
+
+    private static final class Scored {
+        final Entry entry;
+        final int score;
+
+        Scored(Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+}
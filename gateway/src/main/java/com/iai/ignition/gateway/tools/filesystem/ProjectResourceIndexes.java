@@ -0,0 +1,218 @@
+package com.iai.ignition.gateway.tools.filesystem;
+
+import com.iai.ignition.gateway.records.IAISettings;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The resource indexes of the gateway's projects and of its installation folder, kept current
+ * by one WatchService, and the content indexes of the projects' text resources.
+ *
+ * An index is built on first use and then updated path by path from change events, so
+ * searches and listings don't touch the disk. If the WatchService is unavailable or drops
+ * events, the affected indexes are rebuilt on their next use instead; without a WatchService,
+ * or if one of an index's directories could not be registered with it, indexes older than
+ * {@link #UNWATCHED_MAX_AGE_MILLIS} are rebuilt.
+ */
+public class ProjectResourceIndexes {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.filesystem.ProjectResourceIndexes");
+
+    /**
+     * Levels of the installation folder indexed for gateway-wide file searches.
+     */
+    private static final int GATEWAY_DEPTH = 3;
+
+    private static final long UNWATCHED_MAX_AGE_MILLIS = 60_000L;
+
+    private final IAISettings settings;
+    private final Map<String, ProjectResourceIndex> projects = new ConcurrentHashMap<>();
+    private final Map<String, ProjectContentIndex> contents = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Registration> registrations = new ConcurrentHashMap<>();
+    private volatile ProjectResourceIndex gateway;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    public ProjectResourceIndexes(IAISettings settings) {
+        this.settings = settings;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            watchThread = new Thread(this::processEvents, "IAI-ResourceIndexWatcher");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("File change notifications unavailable, resource indexes will be refreshed periodically: " + e.getMessage());
+            watchService = null;
+        }
+    }
+
+    /**
+     * The gateway's data folder, where projects are stored.
+     */
+    public String getGatewayDataPath() {
+        String gatewayDataPath = settings.getGatewayDataPath();
+        if (gatewayDataPath == null || gatewayDataPath.isEmpty()) {
+            gatewayDataPath = System.getProperty("ignition.home", "/usr/local/bin/ignition") + "/data";
+        }
+        return gatewayDataPath;
+    }
+
+    /**
+     * Get the index of a project.
+     *
+     * @throws IllegalArgumentException if the project does not exist
+     */
+    public ProjectResourceIndex project(String projectName) {
+        if (projectName.contains("/") || projectName.contains("\\") || projectName.equals("..")) {
+            throw new IllegalArgumentException("Invalid project name: " + projectName);
+        }
+        Path projectPath = Paths.get(getGatewayDataPath(), "projects", projectName);
+        if (!Files.isDirectory(projectPath)) {
+            projects.remove(projectName);
+            contents.remove(projectName);
+            throw new IllegalArgumentException("Project not found: " + projectName);
+        }
+
+        ProjectResourceIndex index = projects.computeIfAbsent(projectName,
+            name -> new ProjectResourceIndex(projectPath, Integer.MAX_VALUE, watchService != null ? this : null));
+        return checkAge(index);
+    }
+
+    /**
+     * Get the content index of a project, up to date with its files.
+     *
+     * @throws IllegalArgumentException if the project does not exist
+     */
+    public ProjectContentIndex content(String projectName) {
+        ProjectResourceIndex resources = project(projectName);
+        ProjectContentIndex index = contents.compute(projectName,
+            (name, existing) -> existing != null && existing.getResourceIndex() == resources ? existing : new ProjectContentIndex(resources));
+        int read = index.sync();
+        if (read > 0) {
+            logger.trace("Indexed " + read + " changed files of project " + projectName);
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of the top levels of the gateway installation folder.
+     */
+    public ProjectResourceIndex gateway() {
+        ProjectResourceIndex index = gateway;
+        if (index == null) {
+            synchronized (this) {
+                if (gateway == null) {
+                    Path gatewayPath = Paths.get(getGatewayDataPath()).toAbsolutePath().getParent();
+                    gateway = new ProjectResourceIndex(gatewayPath, GATEWAY_DEPTH, watchService != null ? this : null);
+                }
+                index = gateway;
+            }
+        }
+        return checkAge(index);
+    }
+
+    private ProjectResourceIndex checkAge(ProjectResourceIndex index) {
+        if (index.isUnwatched() && index.getBuiltAt() > 0
+                && System.currentTimeMillis() - index.getBuiltAt() > UNWATCHED_MAX_AGE_MILLIS) {
+            index.invalidate();
+        }
+        return index;
+    }
+
+    /**
+     * Watch a directory of an index for changes to its entries.
+     */
+    void register(ProjectResourceIndex index, Path directory) {
+        WatchService service = watchService;
+        if (service == null) {
+            return;
+        }
+        try {
+            WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            registrations.put(key, new Registration(index, directory));
+        } catch (IOException | ClosedWatchServiceException e) {
+            // Changes below it would go unnoticed; rebuild the index by age instead
+            logger.debug("Could not watch " + directory + ", its index will be refreshed periodically: " + e.getMessage());
+            index.markUnwatched();
+        }
+    }
+
+    private void processEvents() {
+        WatchService service = watchService;
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Registration registration = registrations.get(key);
+            if (registration != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.debug("Missed file changes under " + registration.index.getRoot() + ", index will be rebuilt");
+                        registration.index.invalidate();
+                    } else {
+                        registration.index.refresh(registration.directory.resolve((Path) event.context()));
+                    }
+                }
+            }
+
+            if (!key.reset()) {
+                // The directory is gone; its parent's delete event has updated the index
+                registrations.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drop every index. They are rebuilt on their next use.
+     */
+    public void invalidateAll() {
+        projects.values().forEach(ProjectResourceIndex::invalidate);
+        if (gateway != null) {
+            gateway.invalidate();
+        }
+    }
+
+    /**
+     * Stop watching for changes and release the indexes.
+     */
+    public void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("Error closing watch service: " + e.getMessage());
+            }
+        }
+        registrations.clear();
+        projects.clear();
+        contents.clear();
+        gateway = null;
+    }
+
+    private static final class Registration {
+        final ProjectResourceIndex index;
+        final Path directory;
+
+        Registration(ProjectResourceIndex index, Path directory) {
+            this.index = index;
+            this.directory = directory;
+        }
+    }
+}
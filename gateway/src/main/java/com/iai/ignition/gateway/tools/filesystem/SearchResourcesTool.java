@@ -1,32 +1,48 @@
 package com.iai.ignition.gateway.tools.filesystem;
 
 import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
 import com.iai.ignition.gateway.records.IAISettings;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.stream.Stream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Consolidated tool for searching resources.
  * Replaces: search_project_files, find_resource_by_name,
  * search_project_resources, search_gateway_files.
+ *
+ * The content scope searches inside scripts, views, named queries and Vision windows through
+ * a {@link ProjectContentIndex}, reading only the files that contain the query's trigrams.
  */
 public class SearchResourcesTool implements IAITool {
 
     private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.filesystem.SearchResourcesTool");
 
+    private static final int DEFAULT_CONTENT_RESULTS = 50;
+    private static final int MAX_CONTENT_RESULTS = 200;
+    private static final int MAX_SNIPPET_CHARS = 200;
+
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
+    private final ProjectResourceIndexes indexes;
 
-    public SearchResourcesTool(GatewayContext gatewayContext, IAISettings settings) {
+    public SearchResourcesTool(GatewayContext gatewayContext, IAISettings settings, ProjectResourceIndexes indexes) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
+        this.indexes = indexes;
     }
 
     @Override
@@ -38,8 +54,12 @@ public class SearchResourcesTool implements IAITool {
     public String getDescription() {
         return "Search for files and resources by name or pattern. " +
                "Scopes: project (search project files), gateway (search Gateway installation), " +
-               "resource (find views/scripts/queries by name). " +
-               "Supports wildcards and pattern matching.";
+               "resource (find views/scripts/queries by name), " +
+               "content (find text inside scripts, views, named query SQL and Vision windows, returning " +
+               "file, line and snippet for each hit - use it to find where a tag path or function is used " +
+               "instead of reading files one by one). " +
+               "Globs like '*.py' or 'views/**/Motor*' match names or paths; other queries are matched " +
+               "loosely and ranked, exact names first.";
     }
 
     @Override
@@ -51,7 +71,8 @@ public class SearchResourcesTool implements IAITool {
 
         JsonObject query = new JsonObject();
         query.addProperty("type", "string");
-        query.addProperty("description", "Search query (filename pattern, resource name, or keyword)");
+        query.addProperty("description", "Search query (filename pattern, resource name, or keyword; " +
+            "for content scope, the text or regular expression to find)");
         properties.add("query", query);
 
         JsonObject scope = new JsonObject();
@@ -61,20 +82,39 @@ public class SearchResourcesTool implements IAITool {
         scopeEnum.add("project");
         scopeEnum.add("gateway");
         scopeEnum.add("resource");
+        scopeEnum.add("content");
         scope.add("enum", scopeEnum);
         scope.addProperty("default", "project");
         properties.add("scope", scope);
 
         JsonObject projectName = new JsonObject();
         projectName.addProperty("type", "string");
-        projectName.addProperty("description", "Project name (required for project scope)");
+        projectName.addProperty("description", "Project name (required for project and resource scope; " +
+            "content scope defaults to the current project)");
         properties.add("project_name", projectName);
 
         JsonObject resourceType = new JsonObject();
         resourceType.addProperty("type", "string");
-        resourceType.addProperty("description", "Resource type to search: view, script, query (for resource scope)");
+        resourceType.addProperty("description", "Resource type to search: view, script, query (for resource scope; " +
+            "content scope also accepts window and searches all types by default)");
         properties.add("resource_type", resourceType);
 
+        JsonObject regex = new JsonObject();
+        regex.addProperty("type", "boolean");
+        regex.addProperty("description", "Content scope: treat the query as a Java regular expression (default: false)");
+        properties.add("regex", regex);
+
+        JsonObject caseSensitive = new JsonObject();
+        caseSensitive.addProperty("type", "boolean");
+        caseSensitive.addProperty("description", "Content scope: match case (default: false)");
+        properties.add("case_sensitive", caseSensitive);
+
+        JsonObject maxResults = new JsonObject();
+        maxResults.addProperty("type", "integer");
+        maxResults.addProperty("description", "Content scope: maximum matching lines to return (default: "
+            + DEFAULT_CONTENT_RESULTS + ", max: " + MAX_CONTENT_RESULTS + ")");
+        properties.add("max_results", maxResults);
+
         schema.add("properties", properties);
 
         JsonArray required = new JsonArray();
@@ -84,59 +124,67 @@ public class SearchResourcesTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        return true;
+    }
+
+    @Override
+    public long getResultTtlMillis() {
+        // Project files may be edited in the Designer, keep short
+        return 60_000L;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
         String query = params.get("query").getAsString().toLowerCase();
         String scope = params.has("scope") ? params.get("scope").getAsString() : "project";
 
         logger.debug("search_resources: query=" + query + ", scope=" + scope);
 
-        String gatewayDataPath = settings.getGatewayDataPath();
-        if (gatewayDataPath == null || gatewayDataPath.isEmpty()) {
-            gatewayDataPath = System.getProperty("ignition.home", "/usr/local/bin/ignition") + "/data";
-        }
-
         switch (scope) {
             case "project":
                 if (!params.has("project_name")) {
                     throw new IllegalArgumentException("project_name required for project scope");
                 }
-                return searchProject(query, gatewayDataPath, params.get("project_name").getAsString());
+                return searchProject(query, params.get("project_name").getAsString());
 
             case "gateway":
-                return searchGateway(query, gatewayDataPath);
+                return searchGateway(query);
 
             case "resource":
                 if (!params.has("project_name") || !params.has("resource_type")) {
                     throw new IllegalArgumentException("project_name and resource_type required for resource scope");
                 }
-                return searchResource(query, gatewayDataPath, params.get("project_name").getAsString(),
+                return searchResource(query, params.get("project_name").getAsString(),
                                     params.get("resource_type").getAsString());
 
+            case "content":
+                String projectName = params.has("project_name") ? params.get("project_name").getAsString() : context.getProjectName();
+                if (projectName == null || projectName.isEmpty()) {
+                    throw new IllegalArgumentException("project_name required for content scope");
+                }
+                return searchContent(params.get("query").getAsString(), projectName, params, context);
+
             default:
                 throw new IllegalArgumentException("Unknown scope: " + scope);
         }
     }
 
-    private JsonObject searchProject(String query, String gatewayDataPath, String projectName) throws Exception {
-        Path projectPath = Paths.get(gatewayDataPath, "projects", projectName);
-
-        if (!Files.exists(projectPath)) {
-            throw new IllegalArgumentException("Project not found: " + projectName);
-        }
+    private JsonObject searchProject(String query, String projectName) throws Exception {
+        ProjectResourceIndex index = indexes.project(projectName);
 
         JsonArray matches = new JsonArray();
-
-        try (Stream<Path> paths = Files.walk(projectPath)) {
-            paths.filter(Files::isRegularFile)
-                 .filter(p -> p.getFileName().toString().toLowerCase().contains(query))
-                 .limit(100)
-                 .forEach(p -> {
-                     JsonObject match = new JsonObject();
-                     match.addProperty("path", projectPath.relativize(p).toString());
-                     match.addProperty("name", p.getFileName().toString());
-                     matches.add(match);
-                 });
+        for (ProjectResourceIndex.Entry entry : index.find("", query, e -> !e.isDirectory(), 100)) {
+            JsonObject match = new JsonObject();
+            match.addProperty("path", entry.getPath());
+            match.addProperty("name", entry.getName());
+            matches.add(match);
         }
 
         JsonObject result = new JsonObject();
@@ -149,21 +197,16 @@ public class SearchResourcesTool implements IAITool {
         return result;
     }
 
-    private JsonObject searchGateway(String query, String gatewayDataPath) throws Exception {
-        Path gatewayPath = Paths.get(gatewayDataPath).getParent();
+    private JsonObject searchGateway(String query) throws Exception {
+        ProjectResourceIndex index = indexes.gateway();
+        Path gatewayPath = index.getRoot();
 
         JsonArray matches = new JsonArray();
-
-        try (Stream<Path> paths = Files.walk(gatewayPath, 3)) {
-            paths.filter(Files::isRegularFile)
-                 .filter(p -> p.getFileName().toString().toLowerCase().contains(query))
-                 .limit(50)
-                 .forEach(p -> {
-                     JsonObject match = new JsonObject();
-                     match.addProperty("path", p.toString());
-                     match.addProperty("name", p.getFileName().toString());
-                     matches.add(match);
-                 });
+        for (ProjectResourceIndex.Entry entry : index.find("", query, e -> !e.isDirectory(), 50)) {
+            JsonObject match = new JsonObject();
+            match.addProperty("path", gatewayPath.resolve(entry.getPath()).toString());
+            match.addProperty("name", entry.getName());
+            matches.add(match);
         }
 
         JsonObject result = new JsonObject();
@@ -175,42 +218,31 @@ public class SearchResourcesTool implements IAITool {
         return result;
     }
 
-    private JsonObject searchResource(String query, String gatewayDataPath, String projectName, String resourceType) throws Exception {
-        Path projectPath = Paths.get(gatewayDataPath, "projects", projectName);
-
-        if (!Files.exists(projectPath)) {
-            throw new IllegalArgumentException("Project not found: " + projectName);
-        }
+    private JsonObject searchResource(String query, String projectName, String resourceType) throws Exception {
+        ProjectResourceIndex index = indexes.project(projectName);
 
-        Path searchPath;
+        String searchPath;
         switch (resourceType) {
             case "view":
-                searchPath = projectPath.resolve("com.inductiveautomation.perspective/views");
+                searchPath = "com.inductiveautomation.perspective/views";
                 break;
             case "script":
-                searchPath = projectPath.resolve("ignition/script-python");
+                searchPath = "ignition/script-python";
                 break;
             case "query":
-                searchPath = projectPath.resolve("com.inductiveautomation.ignition.common.script.data/queries");
+                searchPath = "com.inductiveautomation.ignition.common.script.data/queries";
                 break;
             default:
                 throw new IllegalArgumentException("Unknown resource type: " + resourceType);
         }
 
         JsonArray matches = new JsonArray();
-
-        if (Files.exists(searchPath)) {
-            try (Stream<Path> paths = Files.walk(searchPath)) {
-                paths.filter(p -> p.getFileName().toString().toLowerCase().contains(query))
-                     .limit(50)
-                     .forEach(p -> {
-                         JsonObject match = new JsonObject();
-                         match.addProperty("path", searchPath.relativize(p).toString());
-                         match.addProperty("name", p.getFileName().toString());
-                         match.addProperty("type", resourceType);
-                         matches.add(match);
-                     });
-            }
+        for (ProjectResourceIndex.Entry entry : index.find(searchPath, query, e -> true, 50)) {
+            JsonObject match = new JsonObject();
+            match.addProperty("path", entry.getPath().substring(searchPath.length() + 1));
+            match.addProperty("name", entry.getName());
+            match.addProperty("type", resourceType);
+            matches.add(match);
         }
 
         JsonObject result = new JsonObject();
@@ -223,4 +255,157 @@ public class SearchResourcesTool implements IAITool {
 
         return result;
     }
+
+    private JsonObject searchContent(String query, String projectName, JsonObject params, ToolInvocationContext context) throws Exception {
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("query must not be empty");
+        }
+        boolean regex = params.has("regex") && params.get("regex").getAsBoolean();
+        boolean caseSensitive = params.has("case_sensitive") && params.get("case_sensitive").getAsBoolean();
+        String resourceType = params.has("resource_type") ? params.get("resource_type").getAsString() : null;
+        int maxResults = params.has("max_results") ? params.get("max_results").getAsInt() : DEFAULT_CONTENT_RESULTS;
+        maxResults = Math.max(1, Math.min(maxResults, MAX_CONTENT_RESULTS));
+
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex ? query : Pattern.quote(query),
+                caseSensitive ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid regular expression: " + e.getDescription());
+        }
+
+        ProjectContentIndex index = indexes.content(projectName);
+        List<String> literals = regex ? ProjectContentIndex.requiredLiterals(query) : Collections.singletonList(query);
+        List<ProjectContentIndex.Candidate> candidates = index.candidates(literals,
+            type -> resourceType == null || resourceType.equals(type));
+        Path projectPath = index.getResourceIndex().getRoot();
+
+        JsonArray matches = new JsonArray();
+        int filesMatched = 0;
+        boolean truncated = false;
+        for (ProjectContentIndex.Candidate candidate : candidates) {
+            context.checkActive();
+            String content;
+            try {
+                content = new String(Files.readAllBytes(projectPath.resolve(candidate.getPath())), StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+
+            boolean matched = false;
+            String[] lines = content.split("\\r?\\n", -1);
+            for (int i = 0; i < lines.length; i++) {
+                Matcher matcher = pattern.matcher(new DeadlineCharSequence(lines[i], context));
+                try {
+                    if (!matcher.find()) {
+                        continue;
+                    }
+                } catch (DeadlineCharSequence.DeadlineExceeded e) {
+                    throw e.getCause();
+                }
+                if (matches.size() >= maxResults) {
+                    truncated = true;
+                    break;
+                }
+                JsonObject match = new JsonObject();
+                match.addProperty("path", candidate.getPath());
+                match.addProperty("type", candidate.getType());
+                match.addProperty("line", i + 1);
+                match.addProperty("snippet", snippet(lines[i], matcher.start(), matcher.end()));
+                matches.add(match);
+                matched = true;
+            }
+            if (matched) {
+                filesMatched++;
+            }
+            if (truncated) {
+                break;
+            }
+        }
+
+        JsonObject result = new JsonObject();
+        result.addProperty("query", query);
+        result.addProperty("scope", "content");
+        result.addProperty("project", projectName);
+        result.addProperty("files_indexed", index.size());
+        result.addProperty("candidate_files", candidates.size());
+        result.addProperty("files_matched", filesMatched);
+        result.addProperty("matches", matches.size());
+        result.addProperty("truncated", truncated);
+        result.add("results", matches);
+
+        return result;
+    }
+
+    /**
+     * A line that checks the tool call is still active every {@value #CHECK_INTERVAL} character
+     * reads, so that a regular expression which backtracks heavily stops at the deadline.
+     */
+    private static final class DeadlineCharSequence implements CharSequence {
+        private static final int CHECK_INTERVAL = 4096;
+
+        private final String text;
+        private final ToolInvocationContext context;
+        private int reads;
+
+        DeadlineCharSequence(String text, ToolInvocationContext context) {
+            this.text = text;
+            this.context = context;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads == CHECK_INTERVAL) {
+                reads = 0;
+                try {
+                    context.checkActive();
+                } catch (TimeoutException e) {
+                    throw new DeadlineExceeded(e);
+                }
+            }
+            return text.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return text.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+        /**
+         * Carries the deadline's TimeoutException out of the matcher.
+         */
+        static final class DeadlineExceeded extends RuntimeException {
+            DeadlineExceeded(TimeoutException cause) {
+                super(cause);
+            }
+
+            @Override
+            public synchronized TimeoutException getCause() {
+                return (TimeoutException) super.getCause();
+            }
+        }
+    }
+
+    /**
+     * The matching line, shortened around the match if it is long.
+     */
+    private static String snippet(String line, int start, int end) {
+        String trimmed = line.trim();
+        if (trimmed.length() <= MAX_SNIPPET_CHARS) {
+            return trimmed;
+        }
+        int from = Math.max(0, start - MAX_SNIPPET_CHARS / 3);
+        int to = Math.min(line.length(), Math.max(end, from + MAX_SNIPPET_CHARS));
+        return (from > 0 ? "..." : "") + line.substring(from, to).trim() + (to < line.length() ? "..." : "");
+    }
 }
@@ -0,0 +1,388 @@
+package com.iai.ignition.gateway.tools.history;
+
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Alarm statistics computed in one pass over journal events in time order.
+ *
+ * Alarms that were already active at the start of the range are {@link #seedActive seeded}
+ * first, so their clear and acknowledgement in the range are measured and they are reported if
+ * still active at its end. Only per-source counters, at most {@link #MAX_ACTIVE} active alarms
+ * and at most {@link #MAX_AWAITING_ACK} cleared alarms waiting for their acknowledgement are
+ * kept, so the memory used depends on the number of alarm sources, not on the number of events,
+ * even when clears are missing from the journal or filtered out. Follows the ISA-18.2
+ * conventions: an alarm chatters when it activates 3 times within a minute, and an operator is
+ * flooded by more than 10 activations in 10 minutes.
+ */
+final class AlarmJournalAnalyzer {
+
+    /**
+     * Journal event types.
+     */
+    static final int ACTIVE = 0;
+    static final int CLEAR = 1;
+    static final int ACKNOWLEDGE = 2;
+
+    private static final String[] PRIORITIES = {"Diagnostic", "Low", "Medium", "High", "Critical"};
+
+    private static final long CHATTER_WINDOW_MILLIS = 60_000;
+    private static final int CHATTER_ACTIVATIONS = 3;
+    private static final long FLOOD_WINDOW_MILLIS = 600_000;
+    private static final int FLOOD_ACTIVATIONS = 10;
+
+    /**
+     * Cleared, unacknowledged alarms kept to measure their time to acknowledge. Beyond this the
+     * oldest are dropped and their acknowledgement is not measured.
+     */
+    static final int MAX_AWAITING_ACK = 10_000;
+
+    /**
+     * Active alarms kept to measure their time to clear and report them as still active. Beyond
+     * this the oldest are dropped, counted as not tracked, and their clear is not measured.
+     */
+    static final int MAX_ACTIVE = 10_000;
+
+    private final long end;
+    private final long standingMillis;
+
+    private final Map<String, SourceStats> sources = new HashMap<>();
+    private final Map<String, ActiveEvent> active = new LinkedHashMap<String, ActiveEvent>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ActiveEvent> eldest) {
+            if (size() > MAX_ACTIVE) {
+                untrackedActive++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private long untrackedActive;
+    private final Map<String, ActiveEvent> awaitingAck = new LinkedHashMap<String, ActiveEvent>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ActiveEvent> eldest) {
+            if (size() > MAX_AWAITING_ACK) {
+                unmeasuredAcks++;
+                return true;
+            }
+            return false;
+        }
+    };
+    private long unmeasuredAcks;
+    private long seeded;
+    private final long[] activationsByPriority = new long[PRIORITIES.length];
+
+    private long events;
+    private long activations;
+    private long acknowledgements;
+    private long clears;
+    private final Duration timeToAck = new Duration();
+    private final Duration timeToClear = new Duration();
+
+    private long floodWindow = -1;
+    private int floodWindowCount;
+    private int peakWindowCount;
+    private long peakWindowStart;
+    private long floodWindows;
+
+    /**
+     * @param end End of the analyzed range (epoch millis); alarms still active then are measured up to it
+     * @param standingMillis How long an alarm must stay active to count as standing
+     */
+    AlarmJournalAnalyzer(long end, long standingMillis) {
+        this.end = end;
+        this.standingMillis = standingMillis;
+    }
+
+    /**
+     * Add an alarm that went active before the range and had not cleared by its start. Call
+     * before the first {@link #add}; seeded alarms count towards {@link #MAX_ACTIVE}.
+     *
+     * @param eventId The alarm event's id
+     * @param source The alarm source path
+     * @param since When it went active (epoch millis)
+     * @param acknowledged Whether it was acknowledged before the range
+     */
+    void seedActive(String eventId, String source, long since, boolean acknowledged) {
+        if (eventId == null) {
+            return;
+        }
+        ActiveEvent event = new ActiveEvent(source, since);
+        event.acknowledged = acknowledged;
+        active.put(eventId, event);
+        seeded++;
+    }
+
+    /**
+     * Add a journal event.
+     *
+     * @param eventId The alarm event's id, shared by its active, acknowledge and clear events
+     * @param source The alarm source path
+     * @param displayPath The display path, or null
+     * @param priority Priority as stored (0 Diagnostic to 4 Critical)
+     * @param type {@link #ACTIVE}, {@link #CLEAR} or {@link #ACKNOWLEDGE}
+     * @param time Event time (epoch millis)
+     */
+    void add(String eventId, String source, String displayPath, int priority, int type, long time) {
+        events++;
+        SourceStats stats = sources.computeIfAbsent(source, SourceStats::new);
+        if (displayPath != null && !displayPath.isEmpty()) {
+            stats.displayPath = displayPath;
+        }
+        stats.priority = Math.max(stats.priority, priority);
+
+        switch (type) {
+            case ACTIVE:
+                activations++;
+                stats.activations++;
+                activationsByPriority[Math.max(0, Math.min(PRIORITIES.length - 1, priority))]++;
+                stats.recordActivation(time);
+                recordFlood(time);
+                if (eventId != null) {
+                    active.put(eventId, new ActiveEvent(source, time));
+                }
+                break;
+            case ACKNOWLEDGE:
+                acknowledgements++;
+                ActiveEvent acked = eventId != null ? active.get(eventId) : null;
+                if (acked == null && eventId != null) {
+                    acked = awaitingAck.remove(eventId);
+                }
+                // Events that went active before the seeded lookback have no start to measure from
+                if (acked != null && !acked.acknowledged) {
+                    acked.acknowledged = true;
+                    timeToAck.add(time - acked.since);
+                    stats.timeToAck.add(time - acked.since);
+                }
+                break;
+            case CLEAR:
+                clears++;
+                ActiveEvent cleared = eventId != null ? active.get(eventId) : null;
+                if (cleared != null && !cleared.cleared) {
+                    cleared.cleared = true;
+                    timeToClear.add(time - cleared.since);
+                    stats.timeToClear.add(time - cleared.since);
+                    active.remove(eventId);
+                    // Kept, within a bound, until acknowledged so the acknowledgement is measured too
+                    if (!cleared.acknowledged) {
+                        awaitingAck.put(eventId, cleared);
+                    }
+                }
+                break;
+            default:
+        }
+    }
+
+    private void recordFlood(long time) {
+        long window = time / FLOOD_WINDOW_MILLIS;
+        if (window != floodWindow) {
+            floodWindow = window;
+            floodWindowCount = 0;
+        }
+        floodWindowCount++;
+        if (floodWindowCount == FLOOD_ACTIVATIONS + 1) {
+            floodWindows++;
+        }
+        if (floodWindowCount > peakWindowCount) {
+            peakWindowCount = floodWindowCount;
+            peakWindowStart = window * FLOOD_WINDOW_MILLIS;
+        }
+    }
+
+    /**
+     * Add the aggregates to a tool result.
+     *
+     * @param topN Entries in each ranked list
+     * @return The result
+     */
+    JsonObject writeTo(JsonObject result, int topN) {
+        result.addProperty("events_read", events);
+        result.addProperty("activations", activations);
+        result.addProperty("acknowledgements", acknowledgements);
+        result.addProperty("clears", clears);
+        result.addProperty("distinct_sources", sources.size());
+
+        JsonObject byPriority = new JsonObject();
+        for (int i = PRIORITIES.length - 1; i >= 0; i--) {
+            byPriority.addProperty(PRIORITIES[i], activationsByPriority[i]);
+        }
+        result.add("activations_by_priority", byPriority);
+
+        JsonObject ackTimes = timeToAck.toJson();
+        if (unmeasuredAcks > 0) {
+            ackTimes.addProperty("not_measured", unmeasuredAcks);
+        }
+        result.add("time_to_acknowledge", ackTimes);
+        result.add("time_to_clear", timeToClear.toJson());
+
+        // Most frequent alarms
+        List<SourceStats> ranked = new ArrayList<>(sources.values());
+        ranked.removeIf(stats -> stats.activations == 0);
+        ranked.sort(Comparator.comparingLong((SourceStats stats) -> stats.activations).reversed());
+        TabularResultEncoder top = new TabularResultEncoder();
+        top.addColumn("source", "VARCHAR");
+        top.addColumn("display_path", "VARCHAR");
+        top.addColumn("priority", "VARCHAR");
+        top.addColumn("activations", "BIGINT");
+        top.addColumn("mean_ack_seconds", "DOUBLE");
+        top.addColumn("mean_clear_seconds", "DOUBLE");
+        for (SourceStats stats : ranked.subList(0, Math.min(topN, ranked.size()))) {
+            top.addRow(stats.source, stats.displayPath, priorityName(stats.priority), stats.activations,
+                stats.timeToAck.meanSeconds(), stats.timeToClear.meanSeconds());
+        }
+        result.add("top_sources", top.writeTo(new JsonObject()));
+
+        // Chattering: sorted by the worst minute, then by total activations
+        List<SourceStats> chattering = new ArrayList<>();
+        for (SourceStats stats : sources.values()) {
+            if (stats.maxPerMinute >= CHATTER_ACTIVATIONS) {
+                chattering.add(stats);
+            }
+        }
+        chattering.sort(Comparator.comparingInt((SourceStats stats) -> stats.maxPerMinute)
+            .thenComparingLong(stats -> stats.activations).reversed());
+        TabularResultEncoder chatter = new TabularResultEncoder();
+        chatter.addColumn("source", "VARCHAR");
+        chatter.addColumn("max_activations_per_minute", "INTEGER");
+        chatter.addColumn("activations", "BIGINT");
+        for (SourceStats stats : chattering.subList(0, Math.min(topN, chattering.size()))) {
+            chatter.addRow(stats.source, stats.maxPerMinute, stats.activations);
+        }
+        JsonObject chatterResult = chatter.writeTo(new JsonObject());
+        chatterResult.addProperty("chattering_sources", chattering.size());
+        result.add("chattering", chatterResult);
+
+        JsonObject flood = new JsonObject();
+        flood.addProperty("window_minutes", FLOOD_WINDOW_MILLIS / 60_000);
+        flood.addProperty("threshold", FLOOD_ACTIVATIONS);
+        flood.addProperty("flood_windows", floodWindows);
+        flood.addProperty("peak_activations", peakWindowCount);
+        if (peakWindowCount > 0) {
+            flood.add("peak_window_start", TabularResultEncoder.encodeValue(new Date(peakWindowStart)));
+        }
+        result.add("flood", flood);
+
+        // Still active at the end of the range, longest first
+        List<ActiveEvent> stillActive = new ArrayList<>(active.values());
+        stillActive.sort(Comparator.comparingLong(event -> event.since));
+        long standing = stillActive.stream().filter(event -> end - event.since >= standingMillis).count();
+        TabularResultEncoder standingTable = new TabularResultEncoder();
+        standingTable.addColumn("source", "VARCHAR");
+        standingTable.addColumn("active_since", "TIMESTAMP");
+        standingTable.addColumn("active_hours", "DOUBLE");
+        standingTable.addColumn("acknowledged", "BOOLEAN");
+        for (ActiveEvent event : stillActive.subList(0, Math.min(topN, stillActive.size()))) {
+            standingTable.addRow(event.source, new Date(event.since), SeriesDownsampler.round((end - event.since) / 3_600_000.0),
+                event.acknowledged);
+        }
+        JsonObject standingResult = standingTable.writeTo(new JsonObject());
+        standingResult.addProperty("still_active", stillActive.size());
+        standingResult.addProperty("active_at_start", seeded);
+        if (untrackedActive > 0) {
+            // Oldest first, so these are the longest standing, or alarms whose clear is missing
+            standingResult.addProperty("not_tracked", untrackedActive);
+        }
+        standingResult.addProperty("standing", standing);
+        standingResult.addProperty("standing_hours", SeriesDownsampler.round(standingMillis / 3_600_000.0));
+        result.add("standing_alarms", standingResult);
+
+        return result;
+    }
+
+    /**
+     * Priority name for a stored priority, or the number if it is out of range.
+     */
+    static String priorityName(int priority) {
+        return priority >= 0 && priority < PRIORITIES.length ? PRIORITIES[priority] : String.valueOf(priority);
+    }
+
+    /**
+     * Stored priority for a name or number.
+     *
+     * @throws IllegalArgumentException if the text is neither
+     */
+    static int priorityOf(String text) {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            if (PRIORITIES[i].equalsIgnoreCase(text.trim())) {
+                return i;
+            }
+        }
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown priority: " + text + ". Use Diagnostic, Low, Medium, High or Critical.");
+        }
+    }
+
+    private static final class SourceStats {
+        final String source;
+        String displayPath;
+        int priority;
+        long activations;
+        int maxPerMinute;
+        final Deque<Long> recentActivations = new ArrayDeque<>();
+        final Duration timeToAck = new Duration();
+        final Duration timeToClear = new Duration();
+
+        SourceStats(String source) {
+            this.source = source;
+        }
+
+        void recordActivation(long time) {
+            recentActivations.addLast(time);
+            while (time - recentActivations.peekFirst() > CHATTER_WINDOW_MILLIS) {
+                recentActivations.removeFirst();
+            }
+            maxPerMinute = Math.max(maxPerMinute, recentActivations.size());
+        }
+    }
+
+    private static final class ActiveEvent {
+        final String source;
+        final long since;
+        boolean acknowledged;
+        boolean cleared;
+
+        ActiveEvent(String source, long since) {
+            this.source = source;
+            this.since = since;
+        }
+    }
+
+    private static final class Duration {
+        long count;
+        long totalMillis;
+        long maxMillis;
+
+        void add(long millis) {
+            long value = Math.max(0, millis);
+            count++;
+            totalMillis += value;
+            maxMillis = Math.max(maxMillis, value);
+        }
+
+        Number meanSeconds() {
+            return count > 0 ? SeriesDownsampler.round(totalMillis / 1000.0 / count) : null;
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.addProperty("count", count);
+            if (count > 0) {
+                json.addProperty("mean_seconds", meanSeconds());
+                json.addProperty("max_seconds", SeriesDownsampler.round(maxMillis / 1000.0));
+            }
+            return json;
+        }
+    }
+}
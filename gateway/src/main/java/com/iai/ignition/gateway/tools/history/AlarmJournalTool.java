@@ -0,0 +1,246 @@
+package com.iai.ignition.gateway.tools.history;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.database.StreamingQuery;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.datasource.Datasource;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Tool for alarm statistics over a time range of a database alarm journal.
+ *
+ * The journal's event table is streamed in time order through {@link AlarmJournalAnalyzer},
+ * so a week of alarm floods is read in one pass and only the aggregates are returned.
+ * Reads the table layout the database alarm journal creates: one row per active, clear and
+ * acknowledge event with eventid, source, displaypath, priority, eventtype and eventtime.
+ *
+ * Alarms already active at the start of the range are found with a grouped query over the
+ * lookback before it (lookback_hours, default {@value #DEFAULT_LOOKBACK_HOURS}, at most
+ * {@value #MAX_LOOKBACK_HOURS}): every event id that went active in the lookback and has no
+ * clear event before the start. Alarms that went active before the lookback are not seen; their
+ * clear and acknowledgement in the range are counted but not measured, and they are not reported
+ * as still active.
+ */
+public class AlarmJournalTool implements IAITool {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.history.AlarmJournalTool");
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)?");
+    private static final String DEFAULT_TABLE = "alarm_events";
+    private static final int DEFAULT_LOOKBACK_HOURS = 168;
+    private static final int MAX_LOOKBACK_HOURS = 2160;
+
+    private final GatewayContext gatewayContext;
+    private final IAISettings settings;
+
+    public AlarmJournalTool(GatewayContext gatewayContext, IAISettings settings) {
+        this.gatewayContext = gatewayContext;
+        this.settings = settings;
+    }
+
+    @Override
+    public String getName() {
+        return "analyze_alarm_journal";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Alarm statistics for a time range, computed on the gateway from every event in a database alarm " +
+                "journal: activations by priority, most frequent alarm sources, chattering alarms (3+ activations " +
+                "in a minute), mean and max time to acknowledge and to clear, alarm floods (more than 10 activations " +
+                "in 10 minutes) and alarms still active at the end of the range. Returns only aggregates, so " +
+                "prefer it over listing journal events for frequency, flood or nuisance-alarm questions.";
+    }
+
+    @Override
+    public JsonObject getParameterSchema() {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+
+        JsonObject database = new JsonObject();
+        database.addProperty("type", "string");
+        database.addProperty("description", "The database connection the alarm journal stores events in");
+        properties.add("database", database);
+
+        JsonObject table = new JsonObject();
+        table.addProperty("type", "string");
+        table.addProperty("description", "The journal's event table (default: '" + DEFAULT_TABLE + "')");
+        properties.add("table", table);
+
+        JsonObject startTime = new JsonObject();
+        startTime.addProperty("type", "string");
+        startTime.addProperty("description", "Range start: ISO-8601, gateway local 'yyyy-MM-dd HH:mm:ss', " +
+                "or relative to now like '-24h', '-7d' (default: '-24h')");
+        properties.add("start_time", startTime);
+
+        JsonObject endTime = new JsonObject();
+        endTime.addProperty("type", "string");
+        endTime.addProperty("description", "Range end, in the same formats (default: 'now')");
+        properties.add("end_time", endTime);
+
+        JsonObject source = new JsonObject();
+        source.addProperty("type", "string");
+        source.addProperty("description", "Only alarms whose source path matches this pattern, with * wildcards " +
+                "(e.g. '*Line1*')");
+        properties.add("source_filter", source);
+
+        JsonObject minPriority = new JsonObject();
+        minPriority.addProperty("type", "string");
+        minPriority.addProperty("description", "Only alarms of this priority or higher: Diagnostic, Low, Medium, High, Critical");
+        properties.add("min_priority", minPriority);
+
+        JsonObject topN = new JsonObject();
+        topN.addProperty("type", "integer");
+        topN.addProperty("description", "Entries in each ranked list (default: 10)");
+        properties.add("top_n", topN);
+
+        JsonObject standingHours = new JsonObject();
+        standingHours.addProperty("type", "number");
+        standingHours.addProperty("description", "Hours an alarm must stay active to count as standing (default: 24)");
+        properties.add("standing_hours", standingHours);
+
+        JsonObject lookback = new JsonObject();
+        lookback.addProperty("type", "integer");
+        lookback.addProperty("description", "Hours before start_time searched for alarms that were already active at the " +
+                "start (default: " + DEFAULT_LOOKBACK_HOURS + ", max: " + MAX_LOOKBACK_HOURS + "). Alarms active for longer " +
+                "than this before the range are not reported as still active.");
+        properties.add("lookback_hours", lookback);
+
+        schema.add("properties", properties);
+
+        JsonArray required = new JsonArray();
+        required.add("database");
+        schema.add("required", required);
+
+        return schema;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        return params.has("database") ? params.get("database").getAsString() : null;
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        String databaseName = params.get("database").getAsString();
+        String table = params.has("table") ? params.get("table").getAsString().trim() : DEFAULT_TABLE;
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("Invalid table name: " + table);
+        }
+
+        long now = System.currentTimeMillis();
+        long start = TagHistoryTool.parseTime(params.has("start_time") ? params.get("start_time").getAsString() : "-24h", now);
+        long end = TagHistoryTool.parseTime(params.has("end_time") ? params.get("end_time").getAsString() : "now", now);
+        if (end <= start) {
+            throw new IllegalArgumentException("end_time must be after start_time");
+        }
+
+        int topN = params.has("top_n") ? params.get("top_n").getAsInt() : 10;
+        topN = Math.max(1, Math.min(topN, settings.getMaxAlarmHistoryRecords()));
+        double standingHours = params.has("standing_hours") ? params.get("standing_hours").getAsDouble() : 24;
+        int lookbackHours = params.has("lookback_hours") ? params.get("lookback_hours").getAsInt() : DEFAULT_LOOKBACK_HOURS;
+        lookbackHours = Math.max(0, Math.min(lookbackHours, MAX_LOOKBACK_HOURS));
+
+        Datasource datasource = gatewayContext.getDatasourceManager().getDatasource(databaseName);
+        if (datasource == null) {
+            throw new IllegalArgumentException("Database not found: " + databaseName);
+        }
+
+        logger.debug("Analyzing alarm journal " + table + " on " + databaseName);
+
+        AlarmJournalAnalyzer analyzer = new AlarmJournalAnalyzer(end, (long) (standingHours * 3_600_000L));
+        if (lookbackHours > 0) {
+            seedActive(datasource, table, params, start - lookbackHours * 3_600_000L, start, analyzer, context);
+        }
+
+        // Unquoted, so the name resolves with the database's own case rules, as when the journal created it
+        StringBuilder sql = new StringBuilder("SELECT eventid, source, displaypath, priority, eventtype, eventtime FROM ")
+            .append(table).append(" WHERE eventtime >= ? AND eventtime < ?");
+        List<Object> values = new ArrayList<>();
+        values.add(new Timestamp(start));
+        values.add(new Timestamp(end));
+        appendFilters(params, sql, values);
+        sql.append(" ORDER BY eventtime");
+
+        StreamingQuery.scan(datasource, sql.toString(), stmt -> {
+            for (int i = 0; i < values.size(); i++) {
+                stmt.setObject(i + 1, values.get(i));
+            }
+        }, settings.getQueryTimeoutSeconds(), context, rs -> {
+            Timestamp time = rs.getTimestamp("eventtime");
+            if (time != null) {
+                analyzer.add(rs.getString("eventid"), rs.getString("source"), rs.getString("displaypath"),
+                    rs.getInt("priority"), rs.getInt("eventtype"), time.getTime());
+            }
+        });
+
+        JsonObject result = new JsonObject();
+        result.addProperty("database", databaseName);
+        result.add("start_time", TabularResultEncoder.encodeValue(new Date(start)));
+        result.add("end_time", TabularResultEncoder.encodeValue(new Date(end)));
+        result.addProperty("lookback_hours", lookbackHours);
+        return analyzer.writeTo(result, topN);
+    }
+
+    /**
+     * Seed the analyzer with the alarms that went active in the lookback and had not cleared by
+     * the start. Grouped in the database, so only those alarms are read, not the lookback's events.
+     */
+    private void seedActive(Datasource datasource, String table, JsonObject params, long from, long start,
+                            AlarmJournalAnalyzer analyzer, ToolInvocationContext context) throws Exception {
+        StringBuilder sql = new StringBuilder("SELECT eventid, MAX(source) AS source, ")
+            .append("MIN(CASE WHEN eventtype = ").append(AlarmJournalAnalyzer.ACTIVE).append(" THEN eventtime END) AS activetime, ")
+            .append("MAX(CASE WHEN eventtype = ").append(AlarmJournalAnalyzer.ACKNOWLEDGE).append(" THEN 1 ELSE 0 END) AS acked FROM ")
+            .append(table).append(" WHERE eventtime >= ? AND eventtime < ?");
+        List<Object> values = new ArrayList<>();
+        values.add(new Timestamp(from));
+        values.add(new Timestamp(start));
+        appendFilters(params, sql, values);
+        sql.append(" GROUP BY eventid")
+            .append(" HAVING MIN(CASE WHEN eventtype = ").append(AlarmJournalAnalyzer.ACTIVE).append(" THEN eventtime END) IS NOT NULL")
+            .append(" AND MAX(CASE WHEN eventtype = ").append(AlarmJournalAnalyzer.CLEAR).append(" THEN 1 ELSE 0 END) = 0");
+
+        StreamingQuery.scan(datasource, sql.toString(), stmt -> {
+            for (int i = 0; i < values.size(); i++) {
+                stmt.setObject(i + 1, values.get(i));
+            }
+        }, settings.getQueryTimeoutSeconds(), context, rs -> {
+            Timestamp since = rs.getTimestamp("activetime");
+            if (since != null) {
+                analyzer.seedActive(rs.getString("eventid"), rs.getString("source"), since.getTime(), rs.getInt("acked") > 0);
+            }
+        });
+    }
+
+    /**
+     * Append the source and priority filters shared by the range and lookback queries.
+     */
+    private static void appendFilters(JsonObject params, StringBuilder sql, List<Object> values) {
+        if (params.has("source_filter") && !params.get("source_filter").getAsString().trim().isEmpty()) {
+            sql.append(" AND source LIKE ?");
+            values.add(params.get("source_filter").getAsString().trim().replace('*', '%'));
+        }
+        if (params.has("min_priority")) {
+            sql.append(" AND priority >= ?");
+            values.add(AlarmJournalAnalyzer.priorityOf(params.get("min_priority").getAsString()));
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.iai.ignition.gateway.tools.history;
+
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reduces one time series to a fixed number of points as its samples stream in.
+ *
+ * The time range is split into equal buckets. Depending on the mode, each bucket contributes
+ * the point that best keeps the shape of the curve (largest-triangle-three-buckets), its
+ * minimum and maximum, or one row of aggregates. Only the samples of two buckets are held at
+ * a time, so memory does not grow with the length of the range.
+ *
+ * Samples must arrive in time order; a sample older than the bucket being filled is counted
+ * in that bucket.
+ */
+final class SeriesDownsampler {
+
+    /**
+     * How buckets are reduced.
+     */
+    enum Mode {
+        /**
+         * One point per bucket chosen by largest-triangle-three-buckets, plus the first and last sample
+         */
+        LTTB,
+        /**
+         * The minimum and maximum sample of each bucket, in time order
+         */
+        MINMAX,
+        /**
+         * One row per bucket with avg, min, max and count
+         */
+        AGGREGATE,
+        /**
+         * Samples as stored, up to the point limit
+         */
+        RAW
+    }
+
+    private static final MathContext PRECISION = new MathContext(6);
+    private static final double LONG_LIMIT = 0x1p63;
+
+    private final String path;
+    private final Mode mode;
+    private final long start;
+    private final int buckets;
+    private final double bucketMillis;
+    private final int maxPoints;
+    private final List<Object[]> output = new ArrayList<>();
+
+    // Range statistics over all numeric samples
+    private long samples;
+    private long badQuality;
+    private long nonNumeric;
+    private double sum;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private long firstTime = -1;
+    private long lastTime = -1;
+    private Object lastValue;
+    private boolean truncated;
+
+    // LTTB state: the selected point before the pending bucket, the pending bucket and the one after it
+    private Point anchor;
+    private List<Point> pending = new ArrayList<>();
+    private List<Point> current = new ArrayList<>();
+    private int pendingBucket = -1;
+    private int currentBucket = -1;
+    private Point last;
+
+    // MINMAX and AGGREGATE state for the bucket being filled
+    private int bucket = -1;
+    private Point bucketMin;
+    private Point bucketMax;
+    private long bucketCount;
+    private double bucketSum;
+
+    /**
+     * @param path The series name written to each output row
+     * @param mode How buckets are reduced
+     * @param start Start of the range (epoch millis)
+     * @param end End of the range (epoch millis)
+     * @param maxPoints Output points (rows in AGGREGATE mode) to aim for
+     */
+    SeriesDownsampler(String path, Mode mode, long start, long end, int maxPoints) {
+        this.path = path;
+        this.mode = mode;
+        this.start = start;
+        this.maxPoints = Math.max(mode == Mode.LTTB ? 3 : 2, maxPoints);
+
+        switch (mode) {
+            case LTTB:
+                // The first and last sample are kept in addition to one point per bucket
+                this.buckets = this.maxPoints - 2;
+                break;
+            case MINMAX:
+                this.buckets = this.maxPoints / 2;
+                break;
+            default:
+                this.buckets = this.maxPoints;
+        }
+        this.bucketMillis = Math.max(1.0, (double) (end - start) / buckets);
+    }
+
+    /**
+     * Add a sample.
+     *
+     * @param time Sample time (epoch millis)
+     * @param value The stored value
+     * @param good Whether the sample's quality is good; bad samples are counted but not used
+     */
+    void add(long time, Object value, boolean good) {
+        if (!good) {
+            badQuality++;
+            return;
+        }
+
+        double y;
+        if (value instanceof Number) {
+            y = ((Number) value).doubleValue();
+        } else if (value instanceof Boolean) {
+            y = (Boolean) value ? 1 : 0;
+        } else {
+            nonNumeric++;
+            if (mode == Mode.RAW) {
+                emit(time, value);
+            }
+            lastValue = value;
+            return;
+        }
+        if (Double.isNaN(y) || Double.isInfinite(y)) {
+            nonNumeric++;
+            return;
+        }
+
+        samples++;
+        sum += y;
+        min = Double.isNaN(min) ? y : Math.min(min, y);
+        max = Double.isNaN(max) ? y : Math.max(max, y);
+        if (firstTime < 0) {
+            firstTime = time;
+        }
+        lastTime = time;
+        lastValue = value;
+
+        switch (mode) {
+            case LTTB:
+                addLttb(new Point(time, y));
+                break;
+            case MINMAX:
+            case AGGREGATE:
+                addBucketed(new Point(time, y));
+                break;
+            default:
+                emit(time, y);
+        }
+    }
+
+    /**
+     * Flush the remaining buckets. Call once after the last sample.
+     */
+    void finish() {
+        if (mode == Mode.LTTB) {
+            finishLttb();
+        } else if (mode == Mode.MINMAX || mode == Mode.AGGREGATE) {
+            flushBucket();
+        }
+    }
+
+    /**
+     * The bucket of a sample time. A sample at the end of the range goes in the last bucket
+     * rather than opening one past it.
+     */
+    private int bucketOf(long time) {
+        return (int) Math.max(0, Math.min(buckets - 1, (time - start) / bucketMillis));
+    }
+
+    private void addLttb(Point point) {
+        if (anchor == null) {
+            anchor = point;
+            output(anchor);
+            return;
+        }
+        if (last != null) {
+            // The newest sample is held back, since the last sample is always kept as is
+            addToBuckets(last);
+        }
+        last = point;
+    }
+
+    private void addToBuckets(Point point) {
+        int b = Math.max(bucketOf(point.time), Math.max(pendingBucket, currentBucket));
+        if (pending.isEmpty() || b == pendingBucket) {
+            pending.add(point);
+            pendingBucket = b;
+        } else if (current.isEmpty() || b == currentBucket) {
+            current.add(point);
+            currentBucket = b;
+        } else {
+            // The bucket after the pending one is complete, so the pending one can be decided
+            anchor = select(pending, anchor, average(current));
+            output(anchor);
+            pending = current;
+            pendingBucket = currentBucket;
+            current = new ArrayList<>();
+            current.add(point);
+            currentBucket = b;
+        }
+    }
+
+    private void finishLttb() {
+        if (last == null) {
+            return;
+        }
+        if (!pending.isEmpty()) {
+            anchor = select(pending, anchor, current.isEmpty() ? last : average(current));
+            output(anchor);
+        }
+        if (!current.isEmpty()) {
+            output(select(current, anchor, last));
+        }
+        output(last);
+    }
+
+    /**
+     * The point of a bucket forming the largest triangle with the previous selection and the
+     * average of the next bucket.
+     */
+    private static Point select(List<Point> bucket, Point previous, Point next) {
+        Point best = bucket.get(0);
+        double bestArea = -1;
+        for (Point point : bucket) {
+            double area = Math.abs((previous.time - next.time) * (point.value - previous.value)
+                - (previous.time - point.time) * (next.value - previous.value));
+            if (area > bestArea) {
+                bestArea = area;
+                best = point;
+            }
+        }
+        return best;
+    }
+
+    private static Point average(List<Point> bucket) {
+        double time = 0;
+        double value = 0;
+        for (Point point : bucket) {
+            time += point.time;
+            value += point.value;
+        }
+        return new Point((long) (time / bucket.size()), value / bucket.size());
+    }
+
+    private void addBucketed(Point point) {
+        int b = Math.max(bucketOf(point.time), bucket);
+        if (b != bucket) {
+            flushBucket();
+            bucket = b;
+        }
+        if (bucketMin == null || point.value < bucketMin.value) {
+            bucketMin = point;
+        }
+        if (bucketMax == null || point.value > bucketMax.value) {
+            bucketMax = point;
+        }
+        bucketCount++;
+        bucketSum += point.value;
+    }
+
+    private void flushBucket() {
+        if (bucketCount == 0) {
+            return;
+        }
+        if (mode == Mode.AGGREGATE) {
+            long bucketStart = start + (long) (bucket * bucketMillis);
+            addRow(new Object[]{new Date(bucketStart), path, round(bucketSum / bucketCount), round(bucketMin.value),
+                round(bucketMax.value), bucketCount});
+        } else if (bucketMin == bucketMax) {
+            output(bucketMin);
+        } else if (bucketMin.time <= bucketMax.time) {
+            output(bucketMin);
+            output(bucketMax);
+        } else {
+            output(bucketMax);
+            output(bucketMin);
+        }
+        bucketMin = null;
+        bucketMax = null;
+        bucketCount = 0;
+        bucketSum = 0;
+    }
+
+    private void output(Point point) {
+        emit(point.time, point.value);
+    }
+
+    private void emit(long time, Object value) {
+        addRow(new Object[]{new Date(time), path, value instanceof Double ? round((Double) value) : value});
+    }
+
+    /**
+     * Add an output row unless the point limit is reached.
+     */
+    private void addRow(Object[] row) {
+        if (output.size() >= maxPoints) {
+            truncated = true;
+            return;
+        }
+        output.add(row);
+    }
+
+    /**
+     * Six significant digits for fractional values, whose historian floats carry noise well below
+     * that, without rounding away integer digits. Integral values (counters, totalizers) are
+     * returned exactly: as a long, or as a double if they don't fit in one.
+     */
+    static Number round(double value) {
+        if (value == Math.rint(value)) {
+            return Math.abs(value) < LONG_LIMIT ? (Number) (long) value : (Number) value;
+        }
+        BigDecimal exact = new BigDecimal(value);
+        BigDecimal rounded = exact.round(PRECISION);
+        if (rounded.scale() < 0) {
+            // Six digits would round the integer part; keep it and drop only the fraction
+            rounded = exact.setScale(0, RoundingMode.HALF_EVEN);
+        }
+        rounded = rounded.stripTrailingZeros();
+        return rounded.scale() <= 0 ? (Number) rounded.longValue() : (Number) rounded.doubleValue();
+    }
+
+    /**
+     * Add the output rows of this series to a table with the columns of {@link #addColumns}.
+     */
+    void writeRows(TabularResultEncoder table) {
+        for (Object[] row : output) {
+            table.addRow(row);
+        }
+    }
+
+    /**
+     * Add the output columns for a mode to a table.
+     */
+    static void addColumns(TabularResultEncoder table, Mode mode) {
+        table.addColumn("t", "TIMESTAMP");
+        table.addColumn("path", "VARCHAR");
+        if (mode == Mode.AGGREGATE) {
+            table.addColumn("avg", "DOUBLE");
+            table.addColumn("min", "DOUBLE");
+            table.addColumn("max", "DOUBLE");
+            table.addColumn("count", "BIGINT");
+        } else {
+            table.addColumn("value", "DOUBLE");
+        }
+    }
+
+    /**
+     * Statistics of the whole range, computed from every sample read.
+     */
+    JsonObject summary() {
+        JsonObject summary = new JsonObject();
+        summary.addProperty("path", path);
+        summary.addProperty("samples", samples);
+        summary.addProperty("points", output.size());
+        if (samples > 0) {
+            summary.addProperty("min", round(min));
+            summary.addProperty("max", round(max));
+            summary.addProperty("avg", round(sum / samples));
+            summary.add("first_time", TabularResultEncoder.encodeValue(new Date(firstTime)));
+            summary.add("last_time", TabularResultEncoder.encodeValue(new Date(lastTime)));
+        }
+        if (lastValue != null) {
+            summary.add("last_value", TabularResultEncoder.encodeValue(lastValue));
+        }
+        if (badQuality > 0) {
+            summary.addProperty("bad_quality_samples", badQuality);
+        }
+        if (nonNumeric > 0) {
+            summary.addProperty("non_numeric_samples", nonNumeric);
+        }
+        if (truncated) {
+            summary.addProperty("truncated", true);
+        }
+        return summary;
+    }
+
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    private static final class Point {
+        final long time;
+        final double value;
+
+        Point(long time, double value) {
+            this.time = time;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.iai.ignition.gateway.tools.history;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.ResultCursorCache;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.QualifiedPath;
+import com.inductiveautomation.ignition.common.QualifiedPathUtils;
+import com.inductiveautomation.ignition.common.StreamingDatasetWriter;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.model.values.QualityCode;
+import com.inductiveautomation.ignition.common.sqltags.history.AggregationMode;
+import com.inductiveautomation.ignition.common.sqltags.history.BasicTagHistoryQueryParams;
+import com.inductiveautomation.ignition.common.sqltags.history.ReturnFormat;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tool for reading tag history through the gateway's historian, downsampled on the gateway.
+ *
+ * Samples are streamed from the historian into one {@link SeriesDownsampler} per tag, so a
+ * week of one-second data is reduced to a few hundred points without ever being held in
+ * memory. The number of points is chosen from the result size limit and the turn's remaining
+ * token budget, capped by the MaxTagHistoryRecords setting.
+ */
+public class TagHistoryTool implements IAITool {
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.history.TagHistoryTool");
+
+    private static final Pattern RELATIVE_TIME = Pattern.compile("-\\s*(\\d{1,6})\\s*(s|m|h|d|w)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Rows between cancellation and deadline checks.
+     */
+    private static final int CHECK_INTERVAL_ROWS = 1000;
+
+    /**
+     * Distinct unmatched historian paths logged per query.
+     */
+    private static final int MAX_LOGGED_UNMATCHED_PATHS = 10;
+
+    /**
+     * Approximate encoded size of an output row, not counting the tag path.
+     */
+    private static final int POINT_BYTES = 40;
+    private static final int AGGREGATE_ROW_BYTES = 70;
+
+    private final GatewayContext gatewayContext;
+    private final IAISettings settings;
+
+    public TagHistoryTool(GatewayContext gatewayContext, IAISettings settings) {
+        this.gatewayContext = gatewayContext;
+        this.settings = settings;
+    }
+
+    @Override
+    public String getName() {
+        return "query_tag_history";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Read tag history for one or more tags over a time range, downsampled on the gateway to a compact " +
+                "series that fits the result budget. Modes: 'lttb' (default; keeps the shape of the trend), 'minmax' " +
+                "(min and max of each interval; keeps spikes), 'aggregate' (avg/min/max/count per interval) or 'raw'. " +
+                "Each tag also gets a summary of the whole range (samples, min, max, avg, last value) computed from " +
+                "every stored sample. Use this instead of system.tag.queryTagHistory.";
+    }
+
+    @Override
+    public JsonObject getParameterSchema() {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+
+        JsonObject tagPaths = new JsonObject();
+        tagPaths.addProperty("type", "array");
+        JsonObject items = new JsonObject();
+        items.addProperty("type", "string");
+        tagPaths.add("items", items);
+        tagPaths.addProperty("description", "Historized tag paths, e.g. ['[default]Line1/Motor/Speed']");
+        properties.add("tag_paths", tagPaths);
+
+        JsonObject startTime = new JsonObject();
+        startTime.addProperty("type", "string");
+        startTime.addProperty("description", "Range start: ISO-8601 (e.g. '2024-05-01T06:00:00Z'), gateway local " +
+                "'yyyy-MM-dd HH:mm:ss', or relative to now like '-8h', '-7d' (default: '-1h')");
+        properties.add("start_time", startTime);
+
+        JsonObject endTime = new JsonObject();
+        endTime.addProperty("type", "string");
+        endTime.addProperty("description", "Range end, in the same formats (default: 'now')");
+        properties.add("end_time", endTime);
+
+        JsonObject mode = new JsonObject();
+        mode.addProperty("type", "string");
+        JsonArray modes = new JsonArray();
+        for (SeriesDownsampler.Mode value : SeriesDownsampler.Mode.values()) {
+            modes.add(value.name().toLowerCase(Locale.ROOT));
+        }
+        mode.add("enum", modes);
+        mode.addProperty("description", "How the series is reduced (default: lttb)");
+        properties.add("mode", mode);
+
+        JsonObject maxPoints = new JsonObject();
+        maxPoints.addProperty("type", "integer");
+        maxPoints.addProperty("description", "Points (or aggregate rows) per tag; lowered if the result budget is smaller");
+        properties.add("max_points", maxPoints);
+
+        schema.add("properties", properties);
+
+        JsonArray required = new JsonArray();
+        required.add("tag_paths");
+        schema.add("required", required);
+
+        return schema;
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        if (!params.has("tag_paths") || !params.get("tag_paths").isJsonArray() || params.getAsJsonArray("tag_paths").size() == 0) {
+            return null;
+        }
+        JsonArray paths = params.getAsJsonArray("tag_paths");
+        return paths.size() == 1 ? paths.get(0).getAsString() : paths.size() + " tags";
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        List<String> tagPaths = new ArrayList<>();
+        for (JsonElement element : params.getAsJsonArray("tag_paths")) {
+            tagPaths.add(element.getAsString());
+        }
+        if (tagPaths.isEmpty()) {
+            throw new IllegalArgumentException("tag_paths must name at least one tag");
+        }
+
+        long now = System.currentTimeMillis();
+        long start = parseTime(params.has("start_time") ? params.get("start_time").getAsString() : "-1h", now);
+        long end = parseTime(params.has("end_time") ? params.get("end_time").getAsString() : "now", now);
+        if (end <= start) {
+            throw new IllegalArgumentException("end_time must be after start_time");
+        }
+
+        SeriesDownsampler.Mode mode = SeriesDownsampler.Mode.LTTB;
+        if (params.has("mode")) {
+            try {
+                mode = SeriesDownsampler.Mode.valueOf(params.get("mode").getAsString().trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown mode: " + params.get("mode").getAsString() +
+                    ". Use lttb, minmax, aggregate or raw.");
+            }
+        }
+
+        int pointsPerTag = pointsPerTag(tagPaths, mode, context);
+        if (params.has("max_points")) {
+            pointsPerTag = Math.max(2, Math.min(params.get("max_points").getAsInt(), pointsPerTag));
+        }
+
+        logger.debug("Querying history of " + tagPaths.size() + " tags, " + mode + ", " + pointsPerTag + " points per tag");
+
+        Map<String, SeriesDownsampler> series = new LinkedHashMap<>();
+        List<QualifiedPath> paths = new ArrayList<>();
+        for (String tagPath : tagPaths) {
+            series.put(tagPath, new SeriesDownsampler(tagPath, mode, start, end, pointsPerTag));
+            paths.add(QualifiedPathUtils.toPathFromHistoricalString(tagPath));
+        }
+
+        // Raw samples in tall format (one row per sample), aliased to the paths as given so rows map back
+        BasicTagHistoryQueryParams query = new BasicTagHistoryQueryParams(paths, new Date(start), new Date(end), -1,
+            AggregationMode.LastValue, ReturnFormat.Tall, tagPaths, Collections.emptyList());
+        SeriesWriter writer = new SeriesWriter(series, context);
+        gatewayContext.getTagHistoryManager().queryHistory(query, writer);
+        if (writer.error != null) {
+            throw writer.error;
+        }
+
+        TabularResultEncoder table = new TabularResultEncoder();
+        SeriesDownsampler.addColumns(table, mode);
+        JsonArray summaries = new JsonArray();
+        boolean truncated = false;
+        for (SeriesDownsampler downsampler : series.values()) {
+            downsampler.finish();
+            downsampler.writeRows(table);
+            summaries.add(downsampler.summary());
+            truncated |= downsampler.isTruncated();
+        }
+        if (truncated) {
+            table.setTruncated("Limited to " + pointsPerTag + " points per tag; narrow the range or use mode 'aggregate'");
+        }
+
+        JsonObject result = new JsonObject();
+        result.add("start_time", TabularResultEncoder.encodeValue(new Date(start)));
+        result.add("end_time", TabularResultEncoder.encodeValue(new Date(end)));
+        result.addProperty("mode", mode.name().toLowerCase(Locale.ROOT));
+        result.addProperty("samples_read", writer.rows);
+        if (writer.unmatched > 0) {
+            result.addProperty("samples_unmatched", writer.unmatched);
+            result.addProperty("unmatched_message", writer.unmatched + " samples came back under a path that matches " +
+                "none of the requested tags and are not in the result. Query the tags one at a time to include them.");
+        }
+        result.add("tags", summaries);
+        return table.writeTo(result);
+    }
+
+    /**
+     * Points per tag that fit the result budget, capped by MaxTagHistoryRecords across all tags.
+     */
+    private int pointsPerTag(List<String> tagPaths, SeriesDownsampler.Mode mode, ToolInvocationContext context) {
+        long budget = ResultCursorCache.pageBytes(settings.getMaxToolResultSizeKB(), context.getRemainingTokens());
+        // Leave room for the per-tag summaries
+        budget -= 300L * tagPaths.size();
+
+        long rowBytes = 0;
+        for (String tagPath : tagPaths) {
+            rowBytes += (mode == SeriesDownsampler.Mode.AGGREGATE ? AGGREGATE_ROW_BYTES : POINT_BYTES) + tagPath.length();
+        }
+        long points = Math.max(0, budget) / Math.max(1, rowBytes);
+        long cap = settings.getMaxTagHistoryRecords() / tagPaths.size();
+        return (int) Math.max(2, Math.min(points, cap));
+    }
+
+    /**
+     * Parse an absolute or relative time.
+     *
+     * @param now The time relative values count back from
+     * @return Epoch millis
+     * @throws IllegalArgumentException if the text is not a recognized time
+     */
+    static long parseTime(String text, long now) {
+        String value = text.trim();
+        if (value.isEmpty() || value.equalsIgnoreCase("now")) {
+            return now;
+        }
+
+        Matcher relative = RELATIVE_TIME.matcher(value);
+        if (relative.matches()) {
+            long amount = Long.parseLong(relative.group(1));
+            switch (relative.group(2).toLowerCase(Locale.ROOT)) {
+                case "s":
+                    return now - amount * 1000L;
+                case "m":
+                    return now - amount * 60_000L;
+                case "h":
+                    return now - amount * 3_600_000L;
+                case "d":
+                    return now - amount * 86_400_000L;
+                default:
+                    return now - amount * 7 * 86_400_000L;
+            }
+        }
+
+        if (value.matches("\\d{10,13}")) {
+            return Long.parseLong(value);
+        }
+
+        try {
+            if (value.endsWith("Z") || value.matches(".*[+-]\\d{2}:\\d{2}$")) {
+                return Instant.parse(value).toEpochMilli();
+            }
+            String local = value.replace(' ', 'T');
+            if (local.length() == 10) {
+                local += "T00:00:00";
+            }
+            return LocalDateTime.parse(local).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Unrecognized time: " + text +
+                ". Use ISO-8601, 'yyyy-MM-dd HH:mm:ss' or a relative time like '-8h'.");
+        }
+    }
+
+    /**
+     * Feeds historian rows to the downsamplers as they are read.
+     */
+    private static final class SeriesWriter implements StreamingDatasetWriter {
+        private final Map<String, SeriesDownsampler> series;
+        private final ToolInvocationContext context;
+        private int pathColumn = 0;
+        private int valueColumn = 1;
+        private int qualityColumn = 2;
+        private int timeColumn = 3;
+        private long rows;
+        private long unmatched;
+        private final Set<String> loggedPaths = new HashSet<>();
+        private Exception error;
+
+        SeriesWriter(Map<String, SeriesDownsampler> series, ToolInvocationContext context) {
+            this.series = series;
+            this.context = context;
+        }
+
+        @Override
+        public void initialize(String[] columnNames, Class<?>[] columnTypes, boolean qualitiesIncluded, int expectedRows) {
+            for (int i = 0; i < columnNames.length; i++) {
+                switch (columnNames[i].toLowerCase(Locale.ROOT)) {
+                    case "path":
+                        pathColumn = i;
+                        break;
+                    case "value":
+                        valueColumn = i;
+                        break;
+                    case "quality":
+                        qualityColumn = i;
+                        break;
+                    case "timestamp":
+                    case "t_stamp":
+                        timeColumn = i;
+                        break;
+                    default:
+                }
+            }
+        }
+
+        @Override
+        public void write(Object[] data, QualityCode[] qualities) throws Exception {
+            if (++rows % CHECK_INTERVAL_ROWS == 0) {
+                context.checkActive();
+            }
+
+            String path = String.valueOf(data[pathColumn]);
+            SeriesDownsampler downsampler = series.get(path);
+            if (downsampler == null) {
+                // The historian may report the path in its own form; single-tag queries can't be ambiguous
+                if (series.size() != 1) {
+                    unmatched++;
+                    if (loggedPaths.size() < MAX_LOGGED_UNMATCHED_PATHS && loggedPaths.add(path)) {
+                        logger.debug("History row for path " + path + " matches none of the requested tags " +
+                            series.keySet() + "; skipped");
+                    }
+                    return;
+                }
+                downsampler = series.values().iterator().next();
+            }
+
+            Object time = data[timeColumn];
+            long millis = time instanceof Date ? ((Date) time).getTime() : ((Number) time).longValue();
+            downsampler.add(millis, data[valueColumn], isGood(data, qualities));
+        }
+
+        private boolean isGood(Object[] data, QualityCode[] qualities) {
+            if (qualities != null && qualities.length > valueColumn && qualities[valueColumn] != null) {
+                return qualities[valueColumn].isGood();
+            }
+            if (qualityColumn < data.length && data[qualityColumn] instanceof QualityCode) {
+                return ((QualityCode) data[qualityColumn]).isGood();
+            }
+            return true;
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void finishWithError(Exception e) {
+            error = e;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.iai.ignition.gateway.tools.result;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.util.LoggerEx;
+
+/**
+ * Tool for reading further pages of a large result through the cursor returned with its first page.
+ */
+public class FetchMoreTool implements IAITool {
+
+    public static final String NAME = "fetch_more";
+
+    private static final LoggerEx logger = LoggerEx.newBuilder().build("com.iai.ignition.gateway.tools.result.FetchMoreTool");
+
+    private final IAISettings settings;
+    private final ResultCursorCache cursors;
+
+    public FetchMoreTool(IAISettings settings, ResultCursorCache cursors) {
+        this.settings = settings;
+        this.cursors = cursors;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Fetch the next page of a large result. Tools that return has_more=true also return a cursor; " +
+                "pass it here to read more rows. Only fetch more when the rows already returned are not enough. " +
+                "Set close=true to release a cursor you no longer need. Cursors expire after 10 minutes unused.";
+    }
+
+    @Override
+    public JsonObject getParameterSchema() {
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+
+        JsonObject properties = new JsonObject();
+
+        JsonObject cursor = new JsonObject();
+        cursor.addProperty("type", "string");
+        cursor.addProperty("description", "The cursor returned with the previous page");
+        properties.add("cursor", cursor);
+
+        JsonObject pageSize = new JsonObject();
+        pageSize.addProperty("type", "integer");
+        pageSize.addProperty("description", "Number of rows to return (default: " + settings.getResultPageRows() + ")");
+        properties.add("page_size", pageSize);
+
+        JsonObject close = new JsonObject();
+        close.addProperty("type", "boolean");
+        close.addProperty("description", "Release the cursor instead of fetching (default: false)");
+        properties.add("close", close);
+
+        schema.add("properties", properties);
+
+        JsonArray required = new JsonArray();
+        required.add("cursor");
+        schema.add("required", required);
+
+        return schema;
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        return execute(params, new ToolInvocationContext(null, null, null, 0, 0));
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        String cursorId = params.get("cursor").getAsString();
+        String conversationId = context.getConversationId();
+
+        if (params.has("close") && params.get("close").getAsBoolean()) {
+            JsonObject result = new JsonObject();
+            result.addProperty("cursor", cursorId);
+            result.addProperty("closed", cursors.close(cursorId, conversationId));
+            return result;
+        }
+
+        int pageSize = params.has("page_size") ? params.get("page_size").getAsInt() : settings.getResultPageRows();
+        pageSize = Math.min(Math.max(1, pageSize), settings.getMaxCursorRows());
+
+        logger.debug("Fetching " + pageSize + " rows from cursor " + cursorId);
+        return cursors.nextPage(cursorId, conversationId, pageSize,
+            ResultCursorCache.pageBytes(settings.getMaxToolResultSizeKB(), context.getRemainingTokens()));
+    }
+}
@@ -0,0 +1,222 @@
+package com.iai.ignition.gateway.tools.result;
+
+import com.iai.ignition.gateway.util.TokenCounter;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Server-side state for paged tool results.
+ *
+ * A tool that reads more rows than fit in one page returns the first page and opens a cursor
+ * over the rest; the model reads further pages with the fetch_more tool. Cursors belong to the
+ * conversation that opened them and expire when left unread. Memory is bounded by a cap on
+ * open cursors and on the size of the rows buffered across all of them; least recently read cursors are
+ * dropped first.
+ */
+public class ResultCursorCache {
+
+    private static final int MAX_CURSORS = 100;
+    private static final long MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    private final Map<String, Cursor> cursors = new LinkedHashMap<>(16, 0.75f, true);
+    private long bufferedBytes;
+
+    /**
+     * Add the first page of a table to a result, opening a cursor over the remaining rows.
+     *
+     * Sets the table header, "rows", "count", "total_rows" and "has_more" on the result, and
+     * "cursor" when rows remain.
+     *
+     * @param result The tool result to add the page to
+     * @param table All rows read by the tool
+     * @param conversationId The conversation that may read the cursor (may be null)
+     * @param source The tool that produced the rows, reported with each page
+     * @param pageSize Rows per page
+     * @param maxPageBytes Approximate size limit of the page; at least one row is always included
+     * @return The result
+     */
+    public JsonObject firstPage(JsonObject result, TabularResultEncoder table, String conversationId, String source,
+                                int pageSize, long maxPageBytes) {
+        JsonArray rows = table.getRows();
+        JsonArray page = page(rows, 0, pageSize, maxPageBytes);
+
+        table.writeHeader(result);
+        result.add("rows", page);
+        result.addProperty("count", page.size());
+        result.addProperty("total_rows", rows.size());
+        result.addProperty("has_more", rows.size() > page.size());
+        if (rows.size() > page.size()) {
+            result.addProperty("cursor", open(conversationId, source, table.getColumns(), rows, table.getEncodedBytes(), page.size()));
+        }
+        return result;
+    }
+
+    /**
+     * Read the next page of a cursor. The cursor is closed once its last row has been read.
+     *
+     * @param cursorId The cursor returned with an earlier page
+     * @param conversationId The calling conversation, which must be the one that opened the cursor
+     * @param pageSize Rows per page
+     * @param maxPageBytes Approximate size limit of the page; at least one row is always included
+     * @return The page, with "columns", "rows", "count", "offset", "total_rows", "remaining" and "has_more"
+     * @throws IllegalArgumentException if the cursor is unknown, expired or belongs to another conversation
+     */
+    public synchronized JsonObject nextPage(String cursorId, String conversationId, int pageSize, long maxPageBytes) {
+        expire(System.currentTimeMillis());
+
+        Cursor cursor = cursors.get(cursorId);
+        if (cursor == null || !Objects.equals(cursor.conversationId, conversationId)) {
+            throw new IllegalArgumentException("Cursor not found or expired: " + cursorId +
+                ". Run the original query again.");
+        }
+
+        int start = cursor.position;
+        JsonArray page = page(cursor.rows, start, pageSize, maxPageBytes);
+        int end = start + page.size();
+        cursor.position = end;
+        cursor.lastReadAt = System.currentTimeMillis();
+
+        int remaining = cursor.rows.size() - end;
+        JsonObject result = new JsonObject();
+        result.addProperty("source", cursor.source);
+        result.add("columns", cursor.columns);
+        result.add("rows", page);
+        result.addProperty("count", page.size());
+        result.addProperty("offset", start);
+        result.addProperty("total_rows", cursor.rows.size());
+        result.addProperty("remaining", remaining);
+        result.addProperty("has_more", remaining > 0);
+        if (remaining > 0) {
+            result.addProperty("cursor", cursorId);
+        } else {
+            remove(cursorId);
+        }
+        return result;
+    }
+
+    /**
+     * Page size limit for a tool result: the configured result size, or less if that would
+     * overrun the calling turn's remaining token budget.
+     *
+     * @param maxResultSizeKB The MaxToolResultSizeKB setting
+     * @param remainingTokens Tokens left in the caller's budget
+     */
+    public static long pageBytes(int maxResultSizeKB, long remainingTokens) {
+        return Math.min(maxResultSizeKB * 1024L, TokenCounter.estimateChars(remainingTokens));
+    }
+
+    private static JsonArray page(JsonArray rows, int start, int pageSize, long maxPageBytes) {
+        JsonArray page = new JsonArray();
+        long bytes = 0;
+        for (int i = start; i < rows.size() && page.size() < Math.max(1, pageSize); i++) {
+            bytes += TabularResultEncoder.estimateBytes(rows.get(i)) + 1;
+            if (bytes > maxPageBytes && page.size() > 0) {
+                break;
+            }
+            page.add(rows.get(i));
+        }
+        return page;
+    }
+
+    /**
+     * Close a cursor before it has been read to the end.
+     *
+     * @return true if the cursor was open and belonged to the conversation
+     */
+    public synchronized boolean close(String cursorId, String conversationId) {
+        Cursor cursor = cursors.get(cursorId);
+        if (cursor == null || !Objects.equals(cursor.conversationId, conversationId)) {
+            return false;
+        }
+        remove(cursorId);
+        return true;
+    }
+
+    /**
+     * Close every cursor of one conversation.
+     */
+    public synchronized void closeConversation(String conversationId) {
+        Iterator<Map.Entry<String, Cursor>> it = cursors.entrySet().iterator();
+        while (it.hasNext()) {
+            Cursor cursor = it.next().getValue();
+            if (Objects.equals(cursor.conversationId, conversationId)) {
+                bufferedBytes -= cursor.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Close every cursor.
+     */
+    public synchronized void clear() {
+        cursors.clear();
+        bufferedBytes = 0;
+    }
+
+    private synchronized String open(String conversationId, String source, JsonArray columns, JsonArray rows, long bytes, int position) {
+        long now = System.currentTimeMillis();
+        expire(now);
+
+        String id = UUID.randomUUID().toString();
+        cursors.put(id, new Cursor(conversationId, source, columns, rows, bytes, position, now));
+        bufferedBytes += bytes;
+
+        // Make room by dropping the least recently read cursors, never the one just opened
+        Iterator<Map.Entry<String, Cursor>> it = cursors.entrySet().iterator();
+        while ((cursors.size() > MAX_CURSORS || bufferedBytes > MAX_BUFFERED_BYTES) && it.hasNext()) {
+            Map.Entry<String, Cursor> eldest = it.next();
+            if (eldest.getKey().equals(id)) {
+                break;
+            }
+            bufferedBytes -= eldest.getValue().bytes;
+            it.remove();
+        }
+        return id;
+    }
+
+    private void expire(long now) {
+        Iterator<Cursor> it = cursors.values().iterator();
+        while (it.hasNext()) {
+            Cursor cursor = it.next();
+            if (now - cursor.lastReadAt > IDLE_TIMEOUT_MS) {
+                bufferedBytes -= cursor.bytes;
+                it.remove();
+            }
+        }
+    }
+
+    private void remove(String cursorId) {
+        Cursor cursor = cursors.remove(cursorId);
+        if (cursor != null) {
+            bufferedBytes -= cursor.bytes;
+        }
+    }
+
+    private static final class Cursor {
+        private final String conversationId;
+        private final String source;
+        private final JsonArray columns;
+        private final JsonArray rows;
+        private final long bytes;
+        private int position;
+        private long lastReadAt;
+
+        private Cursor(String conversationId, String source, JsonArray columns, JsonArray rows, long bytes, int position, long openedAt) {
+            this.conversationId = conversationId;
+            this.source = source;
+            this.columns = columns;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.position = position;
+            this.lastReadAt = openedAt;
+        }
+    }
+}
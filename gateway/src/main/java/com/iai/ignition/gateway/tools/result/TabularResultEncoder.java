@@ -0,0 +1,229 @@
+package com.iai.ignition.gateway.tools.result;
+
+import com.inductiveautomation.ignition.common.Dataset;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonElement;
+import com.inductiveautomation.ignition.common.gson.JsonNull;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.common.gson.JsonPrimitive;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.temporal.TemporalAccessor;
+import java.util.Date;
+
+/**
+ * Compact, columnar encoding shared by all tools that return rows.
+ *
+ * Column names and types are sent once, and each row is an array of values in column order:
+ * <pre>
+ * {"columns": ["id", "name"], "types": ["INTEGER", "VARCHAR"], "rows": [[1, "Pump 1"], [2, null]]}
+ * </pre>
+ * Values keep their JSON type (numbers, booleans, strings) and nulls are explicit. Timestamps
+ * are written as ISO-8601 UTC, binary values as their length only.
+ */
+public class TabularResultEncoder {
+
+    private final JsonArray columns = new JsonArray();
+    private final JsonArray types = new JsonArray();
+    private final JsonArray rows = new JsonArray();
+    private long encodedBytes;
+    private String truncationMessage;
+
+    /**
+     * Create an encoder for the columns of a JDBC result set.
+     */
+    public static TabularResultEncoder forResultSet(ResultSetMetaData metaData) throws SQLException {
+        TabularResultEncoder encoder = new TabularResultEncoder();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            encoder.addColumn(metaData.getColumnLabel(i), metaData.getColumnTypeName(i));
+        }
+        return encoder;
+    }
+
+    /**
+     * Encode an Ignition dataset, such as one returned by a system function.
+     */
+    public static TabularResultEncoder forDataset(Dataset dataset) {
+        TabularResultEncoder encoder = new TabularResultEncoder();
+        for (int c = 0; c < dataset.getColumnCount(); c++) {
+            Class<?> type = dataset.getColumnType(c);
+            encoder.addColumn(dataset.getColumnName(c), type != null ? type.getSimpleName() : "Object");
+        }
+
+        Object[] values = new Object[dataset.getColumnCount()];
+        for (int r = 0; r < dataset.getRowCount(); r++) {
+            for (int c = 0; c < values.length; c++) {
+                values[c] = dataset.getValueAt(r, c);
+            }
+            encoder.addRow(values);
+        }
+        return encoder;
+    }
+
+    /**
+     * Add a column. Columns must all be added before the first row.
+     */
+    public void addColumn(String name, String type) {
+        columns.add(name);
+        types.add(type);
+    }
+
+    /**
+     * Add the current row of a result set, whose columns match this encoder's.
+     */
+    public void addRow(ResultSet rs) throws SQLException {
+        JsonArray row = new JsonArray();
+        for (int i = 1; i <= columns.size(); i++) {
+            row.add(encodeValue(rs.getObject(i)));
+        }
+        addEncodedRow(row);
+    }
+
+    /**
+     * Add a row of values in column order.
+     */
+    public void addRow(Object... values) {
+        JsonArray row = new JsonArray();
+        for (Object value : values) {
+            row.add(encodeValue(value));
+        }
+        addEncodedRow(row);
+    }
+
+    /**
+     * Add a row of values already encoded with {@link #encodeValue}, e.g. copied from another result.
+     */
+    public void addEncodedRow(JsonArray row) {
+        rows.add(row);
+        encodedBytes += estimateBytes(row);
+    }
+
+    public JsonArray getColumns() {
+        return columns;
+    }
+
+    public JsonArray getTypes() {
+        return types;
+    }
+
+    /**
+     * @return The encoded rows; each is a JsonArray of values in column order
+     */
+    public JsonArray getRows() {
+        return rows;
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Approximate size of the encoded rows as JSON, without serializing them.
+     */
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /**
+     * Mark the rows as an incomplete prefix of the result.
+     *
+     * @param message Why reading stopped, reported to the model
+     */
+    public void setTruncated(String message) {
+        this.truncationMessage = message;
+    }
+
+    public boolean isTruncated() {
+        return truncationMessage != null;
+    }
+
+    /**
+     * @return Why reading stopped, or null if the rows are complete
+     */
+    public String getTruncationMessage() {
+        return truncationMessage;
+    }
+
+    /**
+     * Add "columns" and "types" to a result, and "truncated" and "message" if reading stopped early.
+     */
+    public void writeHeader(JsonObject result) {
+        result.add("columns", columns);
+        result.add("types", types);
+        if (truncationMessage != null) {
+            result.addProperty("truncated", true);
+            result.addProperty("message", truncationMessage);
+        }
+    }
+
+    /**
+     * Add the header, all rows and the row count to a result.
+     *
+     * @return The result
+     */
+    public JsonObject writeTo(JsonObject result) {
+        writeHeader(result);
+        result.add("rows", rows);
+        result.addProperty("count", rows.size());
+        return result;
+    }
+
+    /**
+     * Approximate JSON size of an encoded row or value.
+     */
+    static long estimateBytes(JsonElement element) {
+        if (element.isJsonArray()) {
+            long bytes = 2;
+            for (JsonElement value : element.getAsJsonArray()) {
+                bytes += estimateBytes(value) + 1;
+            }
+            return bytes;
+        }
+        if (element.isJsonNull()) {
+            return 4;
+        }
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        // Strings get quotes and the odd escape; numbers and booleans are their text
+        return primitive.isString() ? primitive.getAsString().length() + 3 : primitive.getAsString().length();
+    }
+
+    /**
+     * Encode one cell value.
+     */
+    public static JsonElement encodeValue(Object value) {
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            // NaN and infinities are not valid JSON numbers
+            return Double.isNaN(d) || Double.isInfinite(d) ? new JsonPrimitive(value.toString()) : new JsonPrimitive((Number) value);
+        }
+        if (value instanceof Number) {
+            return new JsonPrimitive((Number) value);
+        }
+        if (value instanceof Boolean) {
+            return new JsonPrimitive((Boolean) value);
+        }
+        if (value instanceof Timestamp) {
+            return new JsonPrimitive(((Timestamp) value).toInstant().toString());
+        }
+        if (value instanceof java.sql.Date || value instanceof java.sql.Time) {
+            // No time zone or no date part; the driver's text form is the exact value
+            return new JsonPrimitive(value.toString());
+        }
+        if (value instanceof Date) {
+            return new JsonPrimitive(((Date) value).toInstant().toString());
+        }
+        if (value instanceof TemporalAccessor) {
+            return new JsonPrimitive(value.toString());
+        }
+        if (value instanceof byte[]) {
+            return new JsonPrimitive("<" + ((byte[]) value).length + " bytes>");
+        }
+        return new JsonPrimitive(value.toString());
+    }
+}
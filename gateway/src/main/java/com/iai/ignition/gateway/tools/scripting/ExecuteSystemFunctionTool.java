@@ -2,11 +2,15 @@ package com.iai.ignition.gateway.tools.scripting;
 
 import com.iai.ignition.common.tools.IAITool;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.database.SqlNormalizer;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -80,6 +84,60 @@ public class ExecuteSystemFunctionTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean hasSideEffects(JsonObject params) {
+        // Only UNRESTRICTED mode allows write functions
+        return "UNRESTRICTED".equals(settings.getSystemFunctionMode());
+    }
+
+    /**
+     * Update queries name their database and tables; tag and alarm functions write no database.
+     * Anything else may have written to any database.
+     */
+    @Override
+    public Map<String, Set<String>> getWrittenTables(JsonObject params) {
+        String functionName = params.has("function_name") ? params.get("function_name").getAsString() : "";
+        if (functionName.startsWith("system.tag.") || functionName.startsWith("system.alarm.")) {
+            return Collections.emptyMap();
+        }
+
+        // system.db.runUpdateQuery(query, database, ...) and runPrepUpdate(query, args, database, ...)
+        int databaseArg;
+        if (functionName.equals("system.db.runUpdateQuery")) {
+            databaseArg = 1;
+        } else if (functionName.equals("system.db.runPrepUpdate")) {
+            databaseArg = 2;
+        } else {
+            return null;
+        }
+
+        JsonObject functionParams = params.has("params") && params.get("params").isJsonObject()
+            ? params.getAsJsonObject("params") : new JsonObject();
+        String query = argument(functionParams, 0, "query");
+        String database = argument(functionParams, databaseArg, "database");
+        if (query == null || database == null || database.isEmpty()) {
+            // Without a database name the project default was used, which isn't known here
+            return null;
+        }
+        return Collections.singletonMap(database, SqlNormalizer.writtenTables(query));
+    }
+
+    /**
+     * A string argument given by position ("0", "1", ...) or by keyword, or null.
+     */
+    private static String argument(JsonObject functionParams, int position, String name) {
+        String key = functionParams.has(String.valueOf(position)) ? String.valueOf(position) : name;
+        if (!functionParams.has(key) || !functionParams.get(key).isJsonPrimitive()) {
+            return null;
+        }
+        return functionParams.get(key).getAsString();
+    }
+
+    @Override
+    public String getMetricsTarget(JsonObject params) {
+        return params.has("function_name") ? params.get("function_name").getAsString() : null;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
         // Check if execution is enabled
@@ -154,7 +212,7 @@ public class ExecuteSystemFunctionTool implements IAITool {
 
         } catch (TimeoutException e) {
             logger.error("System function timeout: " + functionName, e);
-            throw new Exception(
+            throw new TimeoutException(
                 "Function execution timeout after " +
                 settings.getSystemFunctionTimeoutSeconds() + " seconds"
             );
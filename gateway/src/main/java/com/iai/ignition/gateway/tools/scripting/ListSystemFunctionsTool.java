@@ -24,7 +24,7 @@ public class ListSystemFunctionsTool implements IAITool {
     private final ScriptExecutor scriptExecutor;
 
     // System function catalog (built dynamically via reflection)
-    private static List<SystemFunctionMetadata> FUNCTION_CATALOG = null;
+    private static volatile List<SystemFunctionMetadata> FUNCTION_CATALOG = null;
 
     public ListSystemFunctionsTool(GatewayContext gatewayContext, IAISettings settings, ScriptExecutor scriptExecutor) {
         this.gatewayContext = gatewayContext;
@@ -72,14 +72,11 @@ public class ListSystemFunctionsTool implements IAITool {
     }
 
     @Override
-    public JsonObject execute(JsonObject params) throws Exception {
-        String mode = settings.getSystemFunctionMode();
-        String searchQuery = params.has("query") ? params.get("query").getAsString() : null;
-        String categoryFilter = params.has("category") ? params.get("category").getAsString() : null;
-
-        logger.debug("Listing system functions - mode: " + mode + ", query: " + searchQuery + ", category: " + categoryFilter);
+    public void warmUp() {
+        ensureCatalog();
+    }
 
-        // Build catalog on first use (lazy initialization)
+    private static void ensureCatalog() {
         if (FUNCTION_CATALOG == null) {
             synchronized (ListSystemFunctionsTool.class) {
                 if (FUNCTION_CATALOG == null) {
@@ -87,6 +84,29 @@ public class ListSystemFunctionsTool implements IAITool {
                 }
             }
         }
+    }
+
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        return true;
+    }
+
+    @Override
+    public long getResultTtlMillis() {
+        // The function catalog is fixed for the gateway version
+        return 30 * 60_000L;
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params) throws Exception {
+        String mode = settings.getSystemFunctionMode();
+        String searchQuery = params.has("query") ? params.get("query").getAsString() : null;
+        String categoryFilter = params.has("category") ? params.get("category").getAsString() : null;
+
+        logger.debug("Listing system functions - mode: " + mode + ", query: " + searchQuery + ", category: " + categoryFilter);
+
+        // Build catalog on first use if warm-up didn't
+        ensureCatalog();
 
         // Filter functions based on mode and search criteria
         JsonArray functions = new JsonArray();
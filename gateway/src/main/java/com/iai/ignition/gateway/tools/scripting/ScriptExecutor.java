@@ -1,6 +1,8 @@
 package com.iai.ignition.gateway.tools.scripting;
 
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.Dataset;
 import com.inductiveautomation.ignition.common.TypeUtilities;
 import com.inductiveautomation.ignition.common.gson.JsonElement;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
@@ -40,7 +42,12 @@ public class ScriptExecutor {
         this.gatewayContext = ctx;
         this.settings = settings;
         this.readOnlyWhitelist = buildReadOnlyWhitelist();
-        this.executorService = Executors.newCachedThreadPool();
+        // One executor per registry; shut down when the registry is replaced
+        this.executorService = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "IAI-ScriptExecutor");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     /**
@@ -101,6 +108,12 @@ public class ScriptExecutor {
                     throw new Exception("Script did not set 'result' variable");
                 }
 
+                // Datasets (query results, tag and alarm history) use the columnar row encoding
+                Object javaResult = resultPy.__tojava__(Dataset.class);
+                if (javaResult instanceof Dataset) {
+                    return TabularResultEncoder.forDataset((Dataset) javaResult).writeTo(new JsonObject());
+                }
+
                 // Convert result Python → JSON with fallback strategies
                 JsonElement resultElement = null;
                 try {
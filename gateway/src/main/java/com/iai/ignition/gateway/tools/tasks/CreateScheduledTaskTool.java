@@ -2,8 +2,10 @@ package com.iai.ignition.gateway.tools.tasks;
 
 import com.iai.ignition.common.model.ScheduledTask;
 import com.iai.ignition.common.tools.IAITool;
-import com.iai.ignition.gateway.database.TaskDAO;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.GatewayHook;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.store.ConversationStore;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
@@ -11,6 +13,9 @@ import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
 import java.text.ParseException;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -23,23 +28,12 @@ public class CreateScheduledTaskTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
-    private String currentUserName;
-    private String currentProjectName;
 
     public CreateScheduledTaskTool(GatewayContext gatewayContext, IAISettings settings) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
     }
 
-    /**
-     * Set the current conversation context.
-     * Called by ToolRegistry before execute().
-     */
-    public void setContext(String userName, String projectName) {
-        this.currentUserName = userName;
-        this.currentProjectName = projectName;
-    }
-
     @Override
     public String getName() {
         return "create_scheduled_task";
@@ -81,6 +75,12 @@ public class CreateScheduledTaskTool implements IAITool {
         cronExpression.addProperty("description", "Cron expression (5 fields: minute hour day month weekday). Examples: '*/5 * * * *' (every 5 min), '0 6 * * *' (daily 6 AM), '0 9 * * 1-5' (weekdays 9 AM)");
         properties.add("cronExpression", cronExpression);
 
+        // keepRuns (optional per-task retention)
+        JsonObject keepRuns = new JsonObject();
+        keepRuns.addProperty("type", "integer");
+        keepRuns.addProperty("description", "Optional: number of most recent runs (and their conversations) to keep for this task. Older runs are removed by the retention service. Defaults to the module setting.");
+        properties.add("keepRuns", keepRuns);
+
         // Note: resultStorage removed - tasks always create new conversations (prevents token limit issues)
 
         schema.add("properties", properties);
@@ -95,11 +95,27 @@ public class CreateScheduledTaskTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean hasSideEffects(JsonObject params) {
+        return true;
+    }
+
+    @Override
+    public Map<String, Set<String>> getWrittenTables(JsonObject params) {
+        // Writes the conversation store only, never a database queries are cached from
+        return Collections.emptyMap();
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
-        // Use context values (set by ToolRegistry) instead of parameters
-        String userName = currentUserName;
-        String projectName = currentProjectName;
+        throw new IllegalStateException("Creating a scheduled task requires a conversation context");
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        // User and project come from the calling conversation, not from parameters
+        String userName = context.getUserName();
+        String projectName = context.getProjectName();
 
         String taskDescription = params.get("taskDescription").getAsString();
         String prompt = params.get("prompt").getAsString();
@@ -112,9 +128,9 @@ public class CreateScheduledTaskTool implements IAITool {
 
         logger.info("Creating scheduled task: " + taskDescription);
 
-        String dbConnection = settings.getDatabaseConnection();
-        if (dbConnection == null || dbConnection.isEmpty()) {
-            throw new IllegalStateException("Database connection not configured in module settings");
+        ConversationStore store = GatewayHook.getConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available. Check the module's database connection and storage backend settings");
         }
 
         // Calculate next run time
@@ -140,11 +156,16 @@ public class CreateScheduledTaskTool implements IAITool {
         task.setResultStorage("NEW_CONVERSATION"); // Always create new conversation per execution
         task.setCreatedAt(System.currentTimeMillis());
         task.setEnabled(true);
+        if (params.has("keepRuns") && !params.get("keepRuns").isJsonNull()) {
+            int keepRuns = params.get("keepRuns").getAsInt();
+            if (keepRuns < 1) {
+                throw new IllegalArgumentException("keepRuns must be at least 1");
+            }
+            task.setKeepRuns(keepRuns);
+        }
 
-        // Save to database
-        boolean created = TaskDAO.createTask(
-            gatewayContext.getDatasourceManager(),
-            dbConnection,
+        // Save to the conversation store
+        boolean created = store.createTask(
             task
         );
 
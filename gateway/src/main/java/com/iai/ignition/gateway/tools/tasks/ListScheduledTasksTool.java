@@ -2,8 +2,10 @@ package com.iai.ignition.gateway.tools.tasks;
 
 import com.iai.ignition.common.model.ScheduledTask;
 import com.iai.ignition.common.tools.IAITool;
-import com.iai.ignition.gateway.database.TaskDAO;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.GatewayHook;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.store.ConversationStore;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
@@ -21,23 +23,12 @@ public class ListScheduledTasksTool implements IAITool {
 
     private final GatewayContext gatewayContext;
     private final IAISettings settings;
-    private String currentUserName;
-    private String currentProjectName;
 
     public ListScheduledTasksTool(GatewayContext gatewayContext, IAISettings settings) {
         this.gatewayContext = gatewayContext;
         this.settings = settings;
     }
 
-    /**
-     * Set the current conversation context.
-     * Called by ToolRegistry before execute().
-     */
-    public void setContext(String userName, String projectName) {
-        this.currentUserName = userName;
-        this.currentProjectName = projectName;
-    }
-
     @Override
     public String getName() {
         return "list_scheduled_tasks";
@@ -66,11 +57,27 @@ public class ListScheduledTasksTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean isIdempotent(JsonObject params) {
+        return true;
+    }
+
+    @Override
+    public long getResultTtlMillis() {
+        // Task status changes as tasks run
+        return 30_000L;
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
-        // Use context values (set by ToolRegistry) instead of parameters
-        String userName = currentUserName;
-        String projectName = currentProjectName;
+        throw new IllegalStateException("Listing scheduled tasks requires a conversation context");
+    }
+
+    @Override
+    public JsonObject execute(JsonObject params, ToolInvocationContext context) throws Exception {
+        // User and project come from the calling conversation, not from parameters
+        String userName = context.getUserName();
+        String projectName = context.getProjectName();
 
         // Validate context
         if (projectName == null || projectName.isEmpty()) {
@@ -79,15 +86,13 @@ public class ListScheduledTasksTool implements IAITool {
 
         logger.debug("Listing scheduled tasks: userName=" + userName + ", projectName=" + projectName);
 
-        String dbConnection = settings.getDatabaseConnection();
-        if (dbConnection == null || dbConnection.isEmpty()) {
-            throw new IllegalStateException("Database connection not configured in module settings");
+        ConversationStore store = GatewayHook.getConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available. Check the module's database connection and storage backend settings");
         }
 
-        // Query tasks from database
-        List<ScheduledTask> tasks = TaskDAO.getTasksByUser(
-            gatewayContext.getDatasourceManager(),
-            dbConnection,
+        // Query tasks from the conversation store
+        List<ScheduledTask> tasks = store.getTasksByUser(
             userName,
             projectName
         );
@@ -1,13 +1,18 @@
 package com.iai.ignition.gateway.tools.tasks;
 
 import com.iai.ignition.common.tools.IAITool;
-import com.iai.ignition.gateway.database.TaskDAO;
+import com.iai.ignition.gateway.GatewayHook;
 import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.store.ConversationStore;
 import com.inductiveautomation.ignition.common.gson.JsonArray;
 import com.inductiveautomation.ignition.common.gson.JsonObject;
 import com.inductiveautomation.ignition.common.util.LoggerEx;
 import com.inductiveautomation.ignition.gateway.model.GatewayContext;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Tool for managing scheduled tasks (pause, resume, delete).
  * Allows the AI to control task execution state.
@@ -71,6 +76,17 @@ public class ManageScheduledTaskTool implements IAITool {
         return schema;
     }
 
+    @Override
+    public boolean hasSideEffects(JsonObject params) {
+        return true;
+    }
+
+    @Override
+    public Map<String, Set<String>> getWrittenTables(JsonObject params) {
+        // Writes the conversation store only, never a database queries are cached from
+        return Collections.emptyMap();
+    }
+
     @Override
     public JsonObject execute(JsonObject params) throws Exception {
         String taskId = params.get("taskId").getAsString();
@@ -83,9 +99,9 @@ public class ManageScheduledTaskTool implements IAITool {
 
         logger.info("Managing scheduled task: taskId=" + taskId + ", action=" + action);
 
-        String dbConnection = settings.getDatabaseConnection();
-        if (dbConnection == null || dbConnection.isEmpty()) {
-            throw new IllegalStateException("Database connection not configured in module settings");
+        ConversationStore store = GatewayHook.getConversationStore();
+        if (store == null) {
+            throw new IllegalStateException("Conversation storage not available. Check the module's database connection and storage backend settings");
         }
 
         boolean success = false;
@@ -93,9 +109,7 @@ public class ManageScheduledTaskTool implements IAITool {
 
         switch (action) {
             case "pause":
-                success = TaskDAO.updateTaskEnabled(
-                    gatewayContext.getDatasourceManager(),
-                    dbConnection,
+                success = store.updateTaskEnabled(
                     taskId,
                     false
                 );
@@ -103,9 +117,7 @@ public class ManageScheduledTaskTool implements IAITool {
                 break;
 
             case "resume":
-                success = TaskDAO.updateTaskEnabled(
-                    gatewayContext.getDatasourceManager(),
-                    dbConnection,
+                success = store.updateTaskEnabled(
                     taskId,
                     true
                 );
@@ -113,9 +125,7 @@ public class ManageScheduledTaskTool implements IAITool {
                 break;
 
             case "delete":
-                success = TaskDAO.deleteTask(
-                    gatewayContext.getDatasourceManager(),
-                    dbConnection,
+                success = store.deleteTask(
                     taskId
                 );
                 message = success ? "Task deleted successfully. It has been permanently removed." : "Failed to delete task";
@@ -67,6 +67,19 @@ public class TokenCounter {
         return estimateTokens(systemPrompt);
     }
 
+    /**
+     * Estimate how many characters of text fit in a number of tokens.
+     *
+     * @param tokens Token count
+     * @return Estimated character count
+     */
+    public static long estimateChars(long tokens) {
+        if (tokens >= Long.MAX_VALUE / 4) {
+            return Long.MAX_VALUE;
+        }
+        return (long) (tokens * CHARS_PER_TOKEN);
+    }
+
     /**
      * Check if token count is approaching the context limit.
      *
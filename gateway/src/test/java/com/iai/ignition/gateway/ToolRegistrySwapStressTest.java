@@ -0,0 +1,196 @@
+package com.iai.ignition.gateway;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.metrics.ToolMetrics;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.iai.ignition.gateway.tools.ToolRegistry;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs many turns while the shared tool registry is replaced, the way a settings save does, and
+ * checks the acquire/retire/release lifecycle: no tool call runs on a registry that has been
+ * shut down, and every replaced registry is shut down exactly once.
+ */
+class ToolRegistrySwapStressTest {
+
+    private static final int TURN_THREADS = 8;
+    private static final int CALLS_PER_TURN = 3;
+    private static final int SWAPS = 200;
+
+    private GatewayContext gatewayContext;
+    private IAISettings settings;
+    private ToolMetrics metrics;
+
+    private final List<TrackedRegistry> created = new CopyOnWriteArrayList<>();
+    private final AtomicInteger callsOnShutDownRegistry = new AtomicInteger();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        // Unset settings leave database, scripting and routing tools disabled
+        gatewayContext = mock(GatewayContext.class);
+        settings = mock(IAISettings.class);
+        metrics = new ToolMetrics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        GatewayHook.publishToolRegistry(null);
+    }
+
+    @Test
+    void turnsNeverRunOnShutDownRegistryWhileSwapping() throws Exception {
+        GatewayHook.publishToolRegistry(newRegistry());
+
+        AtomicBoolean swapping = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService turns = Executors.newFixedThreadPool(TURN_THREADS);
+        List<Future<Integer>> results = new CopyOnWriteArrayList<>();
+
+        for (int t = 0; t < TURN_THREADS; t++) {
+            String conversationId = "conversation-" + t;
+            results.add(turns.submit(() -> {
+                start.await();
+                int completed = 0;
+                while (swapping.get()) {
+                    runTurn(conversationId);
+                    completed++;
+                }
+                return completed;
+            }));
+        }
+
+        // Replace the registry as GatewayHook.rebuildToolRegistry does
+        start.countDown();
+        for (int i = 0; i < SWAPS; i++) {
+            GatewayHook.publishToolRegistry(newRegistry());
+            Thread.sleep(1);
+        }
+        swapping.set(false);
+
+        turns.shutdown();
+        assertTrue(turns.awaitTermination(30, TimeUnit.SECONDS), "turns did not finish");
+
+        int completedTurns = 0;
+        for (Future<Integer> result : results) {
+            completedTurns += result.get();
+        }
+
+        assertTrue(completedTurns > 0, "no turns ran");
+        assertEquals(completedTurns * CALLS_PER_TURN, calls.get());
+        assertEquals(0, callsOnShutDownRegistry.get(), "tool calls ran on a shut down registry");
+
+        // Every registry but the current one was retired and, with no turns left, shut down once
+        ToolRegistry current = GatewayHook.getToolRegistry();
+        assertEquals(SWAPS + 1, created.size());
+        for (TrackedRegistry registry : created) {
+            if (registry != current) {
+                assertEquals(1, registry.shutdowns.get(), "retired registry shut down " + registry.shutdowns.get() + " times");
+            } else {
+                assertEquals(0, registry.shutdowns.get(), "current registry was shut down");
+            }
+        }
+    }
+
+    /**
+     * One turn: hold the current registry, make a few tool calls, release it.
+     */
+    private void runTurn(String conversationId) throws Exception {
+        ToolRegistry registry = GatewayHook.acquireToolRegistry();
+        assertNotNull(registry);
+        try {
+            for (int i = 0; i < CALLS_PER_TURN; i++) {
+                ToolInvocationContext context = new ToolInvocationContext(conversationId, null, null, 0, 0);
+                registry.executeTool(ProbeTool.NAME, new JsonObject(), context);
+            }
+        } finally {
+            registry.release();
+        }
+    }
+
+    private TrackedRegistry newRegistry() {
+        TrackedRegistry registry = new TrackedRegistry(gatewayContext, settings, metrics);
+        registry.registerTool(new ProbeTool(registry));
+        created.add(registry);
+        return registry;
+    }
+
+    /**
+     * Registry that counts how often it is shut down.
+     */
+    private static class TrackedRegistry extends ToolRegistry {
+        final AtomicInteger shutdowns = new AtomicInteger();
+
+        TrackedRegistry(GatewayContext gatewayContext, IAISettings settings, ToolMetrics metrics) {
+            super(gatewayContext, settings, metrics);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdowns.incrementAndGet();
+            super.shutdown();
+        }
+    }
+
+    /**
+     * Tool that records whether the registry it belongs to was shut down before or during the call.
+     */
+    private class ProbeTool implements IAITool {
+        static final String NAME = "stress_probe";
+
+        private final TrackedRegistry owner;
+
+        ProbeTool(TrackedRegistry owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Stress test probe";
+        }
+
+        @Override
+        public JsonObject getParameterSchema() {
+            return new JsonObject();
+        }
+
+        @Override
+        public JsonObject execute(JsonObject params) throws Exception {
+            calls.incrementAndGet();
+            if (owner.shutdowns.get() > 0) {
+                callsOnShutDownRegistry.incrementAndGet();
+            }
+            // Widen the window for a swap to land mid-call
+            Thread.yield();
+            if (owner.shutdowns.get() > 0) {
+                callsOnShutDownRegistry.incrementAndGet();
+            }
+            return new JsonObject();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.iai.ignition.gateway.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replaying a segment after a clean shutdown and after a write that was interrupted part way.
+ */
+class LogSegmentTest {
+
+    private static final int CAPACITY = 4096;
+    private static final byte TYPE = 3;
+
+    @TempDir
+    Path dir;
+
+    private final List<LogSegment> opened = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (LogSegment segment : opened) {
+            segment.close();
+        }
+    }
+
+    @Test
+    void cleanSegmentReplaysEveryRecord() throws IOException {
+        LogLocation last = write("one", "two", "three");
+
+        List<String> replayed = new ArrayList<>();
+        LogSegment segment = reopen();
+        assertTrue(segment.recover(collect(replayed)));
+        assertEquals(Arrays.asList("one", "two", "three"), replayed);
+
+        // Appends continue after the last record
+        LogLocation next = segment.append(TYPE, bytes("four"));
+        assertEquals(last.offset + last.size, next.offset);
+        assertEquals("four", new String(segment.read(next.offset), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void recordWithBadCrcEndsTheSegment() throws IOException {
+        LogLocation last = write("one", "two", "three");
+        // A payload byte of the last record never reached the disk
+        corrupt(last.offset + LogSegment.HEADER_BYTES + 2, (byte) 0);
+
+        assertTornTail(last, "one", "two");
+    }
+
+    @Test
+    void lengthPastTheEndOfTheFileEndsTheSegment() throws IOException {
+        LogLocation last = write("one", "two", "three");
+        corrupt(last.offset, (byte) 0x7f);
+
+        assertTornTail(last, "one", "two");
+    }
+
+    @Test
+    void negativeLengthEndsTheSegment() throws IOException {
+        LogLocation last = write("one", "two");
+        corrupt(last.offset, (byte) 0xff);
+
+        assertTornTail(last, "one");
+    }
+
+    @Test
+    void recordsAfterADamagedOneAreDiscarded() throws IOException {
+        LogSegment writer = LogSegment.create(dir, 1, CAPACITY);
+        writer.append(TYPE, bytes("one"));
+        LogLocation damaged = writer.append(TYPE, bytes("two"));
+        writer.append(TYPE, bytes("three"));
+        writer.force();
+        writer.close();
+        corrupt(damaged.offset + LogSegment.HEADER_BYTES + 1, (byte) 'X');
+
+        assertTornTail(damaged, "one");
+    }
+
+    @Test
+    void segmentFileNames() {
+        assertEquals("segment-0000000000000042.log", LogSegment.fileName(42));
+        assertEquals(42L, LogSegment.parseId(LogSegment.fileName(42)));
+        assertEquals(-1L, LogSegment.parseId("segment-x.log"));
+        assertEquals(-1L, LogSegment.parseId("store.lock"));
+    }
+
+    /**
+     * Recovery keeps the records before the damaged one, zeroes the rest, and leaves a segment
+     * that appends in place of the damaged record and replays cleanly afterwards.
+     */
+    private void assertTornTail(LogLocation damaged, String... kept) throws IOException {
+        List<String> replayed = new ArrayList<>();
+        LogSegment segment = reopen();
+        assertFalse(segment.recover(collect(replayed)));
+        assertEquals(Arrays.asList(kept), replayed);
+
+        segment.force();
+        assertArrayEquals(new byte[CAPACITY - damaged.offset],
+            Arrays.copyOfRange(Files.readAllBytes(segmentPath()), damaged.offset, CAPACITY));
+
+        LogLocation next = segment.append(TYPE, bytes("after"));
+        assertEquals(damaged.offset, next.offset);
+        segment.force();
+        segment.close();
+        opened.remove(segment);
+
+        replayed.clear();
+        assertTrue(reopen().recover(collect(replayed)));
+        List<String> expected = new ArrayList<>(Arrays.asList(kept));
+        expected.add("after");
+        assertEquals(expected, replayed);
+    }
+
+    /**
+     * Write records to a new segment and close it; returns the location of the last one.
+     */
+    private LogLocation write(String... payloads) throws IOException {
+        LogSegment segment = LogSegment.create(dir, 1, CAPACITY);
+        LogLocation last = null;
+        for (String payload : payloads) {
+            assertTrue(segment.hasRoom(payload.length()));
+            last = segment.append(TYPE, bytes(payload));
+        }
+        segment.force();
+        segment.close();
+        return last;
+    }
+
+    private LogSegment reopen() throws IOException {
+        LogSegment segment = LogSegment.open(segmentPath(), 1);
+        opened.add(segment);
+        return segment;
+    }
+
+    private void corrupt(int offset, byte value) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath().toFile(), "rw")) {
+            file.seek(offset);
+            file.write(value);
+        }
+    }
+
+    private Path segmentPath() {
+        return dir.resolve(LogSegment.fileName(1));
+    }
+
+    private static LogSegment.RecordVisitor collect(List<String> replayed) {
+        return (type, payload, location) -> {
+            assertEquals(TYPE, type);
+            replayed.add(new String(payload, StandardCharsets.UTF_8));
+        };
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
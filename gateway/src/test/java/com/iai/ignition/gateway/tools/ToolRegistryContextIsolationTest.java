@@ -0,0 +1,166 @@
+package com.iai.ignition.gateway.tools;
+
+import com.iai.ignition.common.tools.IAITool;
+import com.iai.ignition.common.tools.ToolInvocationContext;
+import com.iai.ignition.gateway.metrics.ToolMetrics;
+import com.iai.ignition.gateway.records.IAISettings;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import com.inductiveautomation.ignition.gateway.model.GatewayContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs many concurrent calls through one shared registry, each with its own invocation context,
+ * and checks that every call sees only its own conversation, user and project. Conversation
+ * memory and the scheduled task tools scope their reads and writes by these.
+ */
+class ToolRegistryContextIsolationTest {
+
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 500;
+
+    private ToolRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        // Unset settings leave database, scripting and routing tools disabled
+        registry = new ToolRegistry(mock(GatewayContext.class), mock(IAISettings.class), new ToolMetrics());
+        registry.registerTool(new EchoContextTool(EchoContextTool.NAME, false));
+        registry.registerTool(new EchoContextTool(EchoContextTool.MEMOIZED_NAME, true));
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void concurrentCallsSeeOnlyTheirOwnContext() throws Exception {
+        assertIsolated(EchoContextTool.NAME);
+    }
+
+    @Test
+    void memoizedResultsAreNotSharedBetweenConversations() throws Exception {
+        // Same tool and parameters in every conversation; a memo keyed without the conversation would leak
+        assertIsolated(EchoContextTool.MEMOIZED_NAME);
+    }
+
+    private void assertIsolated(String toolName) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            results.add(pool.submit(() -> {
+                start.await();
+                int checked = 0;
+                for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                    // A few conversations per thread, so contexts are also replaced between calls
+                    String conversationId = "conversation-" + thread + "-" + (i % 4);
+                    String userName = "user-" + thread;
+                    String projectName = "project-" + thread + "-" + (i % 4);
+                    ToolInvocationContext context = new ToolInvocationContext(conversationId, userName, projectName, 0, 0);
+
+                    JsonObject result = registry.executeTool(toolName, new JsonObject(), context);
+                    for (String phase : new String[] {"before", "after"}) {
+                        JsonObject seen = result.getAsJsonObject(phase);
+                        assertEquals(conversationId, seen.get("conversation").getAsString(), phase + " conversation");
+                        assertEquals(userName, seen.get("user").getAsString(), phase + " user");
+                        assertEquals(projectName, seen.get("project").getAsString(), phase + " project");
+                    }
+                    checked++;
+                }
+                return checked;
+            }));
+        }
+
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS), "calls did not finish");
+
+        int checked = 0;
+        for (Future<Integer> result : results) {
+            // Rethrows a failed assertion from a call
+            checked += result.get();
+        }
+        assertEquals(THREADS * CALLS_PER_THREAD, checked);
+    }
+
+    /**
+     * Tool that returns the context it was called with, read before and after yielding so that a
+     * context swapped in mid-call is caught.
+     */
+    private static final class EchoContextTool implements IAITool {
+        static final String NAME = "echo_context";
+        static final String MEMOIZED_NAME = "echo_context_memoized";
+
+        private final String name;
+        private final boolean idempotent;
+
+        EchoContextTool(String name, boolean idempotent) {
+            this.name = name;
+            this.idempotent = idempotent;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Echoes the invocation context";
+        }
+
+        @Override
+        public JsonObject getParameterSchema() {
+            return new JsonObject();
+        }
+
+        @Override
+        public boolean isIdempotent(JsonObject params) {
+            return idempotent;
+        }
+
+        @Override
+        public long getResultTtlMillis(JsonObject params) {
+            return TimeUnit.MINUTES.toMillis(5);
+        }
+
+        @Override
+        public JsonObject execute(JsonObject params) {
+            throw new UnsupportedOperationException("Called without a context");
+        }
+
+        @Override
+        public JsonObject execute(JsonObject params, ToolInvocationContext context) {
+            JsonObject result = new JsonObject();
+            result.add("before", describe(context));
+            Thread.yield();
+            result.add("after", describe(context));
+            return result;
+        }
+
+        private static JsonObject describe(ToolInvocationContext context) {
+            JsonObject seen = new JsonObject();
+            seen.addProperty("conversation", context.getConversationId());
+            seen.addProperty("user", context.getUserName());
+            seen.addProperty("project", context.getProjectName());
+            return seen;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.iai.ignition.gateway.tools.database;
+
+import com.iai.ignition.gateway.records.IAISettings;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Value parameters turned into JDBC placeholders, and the values query string parameters accept.
+ */
+class NamedQueryCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void valueParametersBecomePlaceholdersInOrder() {
+        List<String> placeholders = new ArrayList<>();
+        assertEquals("SELECT * FROM t WHERE a = ? AND b > ? OR a = ?",
+            NamedQueryCatalog.replacePlaceholders("SELECT * FROM t WHERE a = :line AND b > :min_value OR a = :line", placeholders));
+        assertEquals(Arrays.asList("line", "min_value", "line"), placeholders);
+    }
+
+    @Test
+    void colonsInLiteralsCommentsAndCastsAreKept() {
+        String sql = "SELECT ':a', \"b:c\", x::int FROM t -- :d\nWHERE e = :e /* :f */ AND g = 'it'':s'";
+        List<String> placeholders = new ArrayList<>();
+        assertEquals("SELECT ':a', \"b:c\", x::int FROM t -- :d\nWHERE e = ? /* :f */ AND g = 'it'':s'",
+            NamedQueryCatalog.replacePlaceholders(sql, placeholders));
+        assertEquals(Arrays.asList("e"), placeholders);
+    }
+
+    @Test
+    void unterminatedLiteralRunsToTheEnd() {
+        List<String> placeholders = new ArrayList<>();
+        assertEquals("SELECT 'x :a", NamedQueryCatalog.replacePlaceholders("SELECT 'x :a", placeholders));
+        assertTrue(placeholders.isEmpty());
+    }
+
+    @Test
+    void sqlTypeCodesAndNames() {
+        assertEquals("Int4", NamedQueryCatalog.sqlTypeName("2"));
+        assertEquals("DateTime", NamedQueryCatalog.sqlTypeName("8"));
+        assertEquals("String", NamedQueryCatalog.sqlTypeName("String"));
+        assertEquals("42", NamedQueryCatalog.sqlTypeName("42"));
+    }
+
+    @Test
+    void queryWithoutQueryStringsRendersItsParsedSql() throws IOException {
+        NamedQueryCatalog.NamedQuery query = query("SELECT * FROM t WHERE line = :line", "line", "7");
+
+        String sql = query.render(values("line", "L1"));
+        assertEquals("SELECT * FROM t WHERE line = ?", sql);
+        assertSame(sql, query.render(values("line", "L2")));
+        assertEquals("Query", query.getType());
+        assertEquals("String", query.getParameters().get("line"));
+    }
+
+    @Test
+    void queryStringsAcceptNamesAndNumbers() throws IOException {
+        NamedQueryCatalog.NamedQuery query = query("SELECT {columns} FROM t ORDER BY 1 {direction} LIMIT :n",
+            "columns", "7", "direction", "7", "n", "2");
+
+        assertEquals("SELECT s.line, t_stamp FROM t ORDER BY 1 desc LIMIT ?",
+            query.render(values("columns", "s.line, t_stamp", "direction", "desc")));
+        assertEquals("SELECT -1.5, NULL, true FROM t ORDER BY 1 ASC LIMIT ?",
+            query.render(values("columns", "-1.5, NULL, true", "direction", "ASC")));
+    }
+
+    @Test
+    void queryStringsRefuseKeywords() throws IOException {
+        NamedQueryCatalog.NamedQuery query = query("SELECT {columns} FROM t", "columns", "7");
+
+        for (String value : new String[] {"union", "pg_sleep", "x.Drop", "a, select", "Sleep"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> query.render(values("columns", value)), value);
+            assertTrue(e.getMessage().contains("keyword"), e.getMessage());
+        }
+    }
+
+    @Test
+    void queryStringsRefuseOperatorsLiteralsAndComments() throws IOException {
+        NamedQueryCatalog.NamedQuery query = query("SELECT {columns} FROM t", "columns", "7");
+
+        for (String value : new String[] {"a; b", "'x'", "a -- b", "a /* b */", "a=b", "(a)", "a b", "", "a,,b"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> query.render(values("columns", value)), value);
+            assertFalse(e.getMessage().contains("keyword"), e.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class, () -> query.render(new JsonObject()));
+    }
+
+    @Test
+    void pathsOutsideTheProjectAreRefused() {
+        NamedQueryCatalog catalog = new NamedQueryCatalog(mock(IAISettings.class));
+        assertThrows(IllegalArgumentException.class, () -> catalog.get("Plant", "../other/Query"));
+        assertThrows(IllegalArgumentException.class, () -> catalog.get("Plant", "Folder//Query"));
+        assertThrows(IllegalArgumentException.class, () -> catalog.get("../Plant", "Query"));
+    }
+
+    /**
+     * A parsed query from an 8.1 resource folder; parameters are given as name and sqlType code pairs.
+     */
+    private NamedQueryCatalog.NamedQuery query(String sql, String... parameters) throws IOException {
+        StringBuilder json = new StringBuilder("{\"attributes\": {\"type\": \"Query\", \"parameters\": [");
+        for (int i = 0; i < parameters.length; i += 2) {
+            json.append(i == 0 ? "" : ", ")
+                .append("{\"identifier\": \"").append(parameters[i]).append("\", \"sqlType\": ").append(parameters[i + 1]).append('}');
+        }
+        json.append("]}}");
+
+        Path resourceFile = dir.resolve("resource.json");
+        Path sqlFile = dir.resolve("query.sql");
+        Files.write(resourceFile, json.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(sqlFile, sql.getBytes(StandardCharsets.UTF_8));
+        return NamedQueryCatalog.parse("Test/Query", resourceFile, sqlFile, 1, 1);
+    }
+
+    private static JsonObject values(String... pairs) {
+        JsonObject values = new JsonObject();
+        for (int i = 0; i < pairs.length; i += 2) {
+            values.addProperty(pairs[i], pairs[i + 1]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,100 @@
+package com.iai.ignition.gateway.tools.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Canonical forms used as query cache keys, and the table names used to invalidate them.
+ */
+class SqlNormalizerTest {
+
+    @Test
+    void spacingCaseAndTrailingSemicolonDoNotMatter() {
+        String canonical = SqlNormalizer.normalize("SELECT a, b FROM t WHERE x = 1");
+        assertEquals(canonical, SqlNormalizer.normalize("select   a ,b\n from t\twhere x=1;"));
+        assertEquals(canonical, SqlNormalizer.normalize("  Select a,  b From t Where x = 1 ;;"));
+    }
+
+    @Test
+    void commentsAreDropped() {
+        assertEquals(SqlNormalizer.normalize("SELECT a FROM t WHERE x = 1"),
+            SqlNormalizer.normalize("SELECT a -- the a column\nFROM t /* table t\n */ WHERE x = 1"));
+    }
+
+    @Test
+    void commentMarkersInsideLiteralsAreKept() {
+        assertNotEquals(SqlNormalizer.normalize("SELECT a FROM t WHERE s = '--x'"),
+            SqlNormalizer.normalize("SELECT a FROM t WHERE s = ''"));
+        assertEquals("SELECT a FROM t WHERE s = '/* not a comment */'",
+            SqlNormalizer.normalize("select a from t where s = '/* not a comment */'"));
+    }
+
+    @Test
+    void stringLiteralsKeepTheirCaseAndSpacing() {
+        assertNotEquals(SqlNormalizer.normalize("SELECT a FROM t WHERE s = 'Pump  1'"),
+            SqlNormalizer.normalize("SELECT a FROM t WHERE s = 'pump 1'"));
+        // A doubled quote is an escaped quote, not the end of the literal
+        assertEquals("SELECT a FROM t WHERE s = 'it''s -- here'",
+            SqlNormalizer.normalize("select a from t where s = 'it''s -- here'"));
+    }
+
+    @Test
+    void quotedIdentifiersAndUnquotedNamesKeepTheirCase() {
+        assertNotEquals(SqlNormalizer.normalize("SELECT \"Value\" FROM t"), SqlNormalizer.normalize("SELECT \"value\" FROM t"));
+        assertNotEquals(SqlNormalizer.normalize("SELECT a FROM Tags"), SqlNormalizer.normalize("SELECT a FROM tags"));
+    }
+
+    @Test
+    void functionCallsAndQualifiedNamesAreSpacedUniformly() {
+        assertEquals("SELECT COUNT(*), s.name FROM dbo.sites s",
+            SqlNormalizer.normalize("select count ( * ) , s . name from dbo . sites s"));
+    }
+
+    @Test
+    void referencedTablesFromFromListsAndJoins() {
+        assertEquals(set("a", "b", "c", "d"), SqlNormalizer.referencedTables(
+            "SELECT * FROM dbo.A x, \"B\" JOIN [c] ON x.id = c.id LEFT JOIN d USING (id) WHERE x.v > 1"));
+    }
+
+    @Test
+    void referencedTablesSkipTableValuedFunctions() {
+        assertEquals(set("t"), SqlNormalizer.referencedTables("SELECT * FROM t JOIN generate_series(1, 3) g ON true"));
+    }
+
+    @Test
+    void tablesInLiteralsAndCommentsAreNotReferenced() {
+        assertEquals(set("t"), SqlNormalizer.referencedTables("SELECT 'FROM x' FROM t -- JOIN y\n"));
+    }
+
+    @Test
+    void writtenTablesOfDataChangingStatements() {
+        assertEquals(set("orders"), SqlNormalizer.writtenTables("INSERT INTO dbo.Orders (id) VALUES (1)"));
+        assertEquals(set("orders"), SqlNormalizer.writtenTables("update orders set x = 1 where id = 2"));
+        assertEquals(set("orders"), SqlNormalizer.writtenTables("DELETE FROM orders WHERE id = 2"));
+        assertEquals(set("orders"), SqlNormalizer.writtenTables("DELETE orders WHERE id = 2"));
+        assertEquals(set("orders"), SqlNormalizer.writtenTables("TRUNCATE TABLE orders"));
+        assertEquals(set("orders"), SqlNormalizer.writtenTables("MERGE INTO orders o USING staging s ON o.id = s.id"));
+    }
+
+    @Test
+    void writtenTablesOfSeveralStatements() {
+        assertEquals(set("a", "b"), SqlNormalizer.writtenTables("INSERT INTO a SELECT * FROM c; UPDATE b SET x = 1"));
+    }
+
+    @Test
+    void noWrittenTablesForProcedureCallsOrKeywordsInLiterals() {
+        assertEquals(Collections.emptySet(), SqlNormalizer.writtenTables("EXEC refresh_totals"));
+        assertEquals(Collections.emptySet(), SqlNormalizer.writtenTables("SELECT 'UPDATE t SET x = 1' FROM dual"));
+    }
+
+    private static Set<String> set(String... names) {
+        return new LinkedHashSet<>(Arrays.asList(names));
+    }
+}
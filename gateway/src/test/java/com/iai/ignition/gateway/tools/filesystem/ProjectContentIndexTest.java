@@ -0,0 +1,129 @@
+package com.iai.ignition.gateway.tools.filesystem;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Which text of a file is indexed, and which literals a search expression is narrowed by.
+ */
+class ProjectContentIndexTest {
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    @Test
+    void textIsIndexedCaseInsensitively() {
+        assertTrue(indexed("def onClick(event):\n    system.tag.writeBlocking(['[default]Pump/Run'], [1])", "WRITEBLOCKING"));
+    }
+
+    @Test
+    void encodedRunsAreLeftOut() {
+        String blob = base64(3000, new Random(1));
+        String view = "{\"image\": \"data:image/png;base64," + blob + "\", \"text\": \"Start Pump\"}";
+
+        assertFalse(indexed(view, blob.substring(1000, 1020)));
+        assertTrue(indexed(view, "Start Pump"));
+        assertTrue(ProjectContentIndex.documentTrigrams(view).length < 500, "blob trigrams were indexed");
+    }
+
+    @Test
+    void longPathsAndUrlsAreIndexed() {
+        String url = "https://historian.example.com/api/v1/Plant1/Line2/Area3/Compressors/Compressor42/" +
+            "DischargePressure/History/Hourly/2024/Summary";
+        assertTrue(url.length() > ProjectContentIndex.MAX_ENCODED_RUN);
+        assertTrue(indexed("{\"url\": \"" + url + "\"}", "Compressor42/DischargePressure"));
+
+        String path = "[default]Site/Building7/Floor3/AirHandlers/AHU12/SupplyFan/Vfd/Parameters/AccelerationTime";
+        assertTrue(indexed("value = system.tag.readBlocking(['" + path + "'])", "AHU12/SupplyFan"));
+    }
+
+    @Test
+    void longRunsWithoutMixedCaseAndDigitsAreIndexed() {
+        char[] word = new char[ProjectContentIndex.MAX_ENCODED_RUN * 2];
+        Arrays.fill(word, 'a');
+        String run = new String(word) + "needle" + new String(word);
+        assertTrue(indexed(run, "needle"));
+    }
+
+    @Test
+    void shortEncodedLookingRunsAreIndexed() {
+        String token = base64(ProjectContentIndex.MAX_ENCODED_RUN, new Random(2));
+        assertTrue(indexed("key = '" + token + "'", token.substring(10, 30)));
+    }
+
+    @Test
+    void controlCharactersSplitRuns() {
+        assertFalse(indexed("ab\u0001cd", "bcd"));
+        assertTrue(indexed("ab\tcd", "b\tc"));
+    }
+
+    @Test
+    void filesWithTooManyTrigramsAreNotIndexed() {
+        Random random = new Random(3);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < ProjectContentIndex.MAX_FILE_TRIGRAMS * 2; i++) {
+            text.append((char) (0x4E00 + random.nextInt(20_000)));
+        }
+        assertNull(ProjectContentIndex.documentTrigrams(text.toString()));
+    }
+
+    @Test
+    void plainTextIsOneLiteral() {
+        assertEquals(Collections.singletonList("tagRead"), ProjectContentIndex.requiredLiterals("tagRead"));
+        assertEquals(Collections.singletonList("system.tag.read"), ProjectContentIndex.requiredLiterals("system\\.tag\\.read"));
+        assertEquals(Collections.singletonList("(a.b)"), ProjectContentIndex.requiredLiterals("\\Q(a.b)\\E"));
+    }
+
+    @Test
+    void optionalAndRepeatedCharactersEndRuns() {
+        assertEquals(Collections.singletonList("colo"), ProjectContentIndex.requiredLiterals("colou?r"));
+        assertEquals(Collections.singletonList("cde"), ProjectContentIndex.requiredLiterals("ab{2}cde"));
+        assertEquals(Collections.singletonList("bcd"), ProjectContentIndex.requiredLiterals("a\\d+bcd"));
+        assertEquals(list("abc", "def"), ProjectContentIndex.requiredLiterals("abc.*def"));
+    }
+
+    @Test
+    void groupsAndClassesAreLeftOut() {
+        assertEquals(list("abc", "ghi"), ProjectContentIndex.requiredLiterals("abc(def)ghi"));
+        assertEquals(Collections.singletonList("def"), ProjectContentIndex.requiredLiterals("[abc]def"));
+        assertEquals(Collections.singletonList("pump"), ProjectContentIndex.requiredLiterals("(?i)pump"));
+    }
+
+    @Test
+    void unsafeExpressionsYieldNoLiterals() {
+        assertEquals(Collections.emptyList(), ProjectContentIndex.requiredLiterals("pump|valve"));
+        assertEquals(Collections.emptyList(), ProjectContentIndex.requiredLiterals("(?x)pump motor"));
+        assertEquals(Collections.emptyList(), ProjectContentIndex.requiredLiterals("pump\\y"));
+        assertEquals(Collections.emptyList(), ProjectContentIndex.requiredLiterals("pump\\"));
+    }
+
+    private static boolean indexed(String document, String needle) {
+        long[] trigrams = ProjectContentIndex.documentTrigrams(document);
+        for (long trigram : ProjectContentIndex.trigrams(needle)) {
+            if (Arrays.binarySearch(trigrams, trigram) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String base64(int length, Random random) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append(BASE64.charAt(random.nextInt(BASE64.length())));
+        }
+        return text.toString();
+    }
+
+    private static List<String> list(String... literals) {
+        return Arrays.asList(literals);
+    }
+}
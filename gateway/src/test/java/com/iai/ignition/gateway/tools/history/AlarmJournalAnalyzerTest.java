@@ -0,0 +1,143 @@
+package com.iai.ignition.gateway.tools.history;
+
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Alarm statistics from journal events: acknowledge and clear times, chatter, floods and
+ * alarms active at the start or end of the range.
+ */
+class AlarmJournalAnalyzerTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long START = 1_700_000_000_000L;
+    private static final long END = START + 24 * HOUR;
+
+    private final AlarmJournalAnalyzer analyzer = new AlarmJournalAnalyzer(END, 12 * HOUR);
+
+    @Test
+    void acknowledgeAfterClearIsStillMeasured() {
+        analyzer.add("e1", "Pump/HighTemp", "Pump 1 High Temp", 3, AlarmJournalAnalyzer.ACTIVE, START);
+        analyzer.add("e1", "Pump/HighTemp", null, 3, AlarmJournalAnalyzer.CLEAR, START + 60_000);
+        analyzer.add("e1", "Pump/HighTemp", null, 3, AlarmJournalAnalyzer.ACKNOWLEDGE, START + 300_000);
+
+        JsonObject result = analyze();
+        assertEquals(1L, result.get("activations").getAsLong());
+        assertEquals(1L, result.getAsJsonObject("time_to_clear").get("count").getAsLong());
+        assertEquals(60L, result.getAsJsonObject("time_to_clear").get("mean_seconds").getAsLong());
+        assertEquals(1L, result.getAsJsonObject("time_to_acknowledge").get("count").getAsLong());
+        assertEquals(300L, result.getAsJsonObject("time_to_acknowledge").get("mean_seconds").getAsLong());
+        assertEquals(0L, result.getAsJsonObject("standing_alarms").get("still_active").getAsLong());
+    }
+
+    @Test
+    void repeatedAcknowledgementIsMeasuredOnce() {
+        analyzer.add("e1", "Tank/Level", null, 2, AlarmJournalAnalyzer.ACTIVE, START);
+        analyzer.add("e1", "Tank/Level", null, 2, AlarmJournalAnalyzer.ACKNOWLEDGE, START + 10_000);
+        analyzer.add("e1", "Tank/Level", null, 2, AlarmJournalAnalyzer.ACKNOWLEDGE, START + 20_000);
+
+        JsonObject ack = analyze().getAsJsonObject("time_to_acknowledge");
+        assertEquals(1L, ack.get("count").getAsLong());
+        assertEquals(10L, ack.get("max_seconds").getAsLong());
+    }
+
+    @Test
+    void seededAlarmIsMeasuredFromItsActivation() {
+        // Went active two hours before the range and clears an hour into it
+        analyzer.seedActive("e1", "Valve/Fault", START - 2 * HOUR, false);
+        analyzer.add("e1", "Valve/Fault", null, 4, AlarmJournalAnalyzer.CLEAR, START + HOUR);
+
+        JsonObject result = analyze();
+        assertEquals(0L, result.get("activations").getAsLong());
+        assertEquals(3 * 3600L, result.getAsJsonObject("time_to_clear").get("max_seconds").getAsLong());
+        JsonObject standing = result.getAsJsonObject("standing_alarms");
+        assertEquals(1L, standing.get("active_at_start").getAsLong());
+        assertEquals(0L, standing.get("still_active").getAsLong());
+    }
+
+    @Test
+    void seededAlarmStillActiveAtEndIsStanding() {
+        analyzer.seedActive("e1", "Valve/Fault", START - 2 * HOUR, true);
+        analyzer.add("e2", "Pump/Trip", null, 3, AlarmJournalAnalyzer.ACTIVE, END - HOUR);
+
+        JsonObject standing = analyze().getAsJsonObject("standing_alarms");
+        assertEquals(2L, standing.get("still_active").getAsLong());
+        // Only the seeded alarm has been active for 12 hours
+        assertEquals(1L, standing.get("standing").getAsLong());
+        JsonArray longest = standing.getAsJsonArray("rows").get(0).getAsJsonArray();
+        assertEquals("Valve/Fault", longest.get(0).getAsString());
+        assertEquals(26L, longest.get(2).getAsLong());
+        assertTrue(longest.get(3).getAsBoolean());
+    }
+
+    @Test
+    void chatterNeedsThreeActivationsWithinAMinute() {
+        for (int i = 0; i < 3; i++) {
+            analyzer.add("c" + i, "Motor/Overload", null, 2, AlarmJournalAnalyzer.ACTIVE, START + i * 20_000);
+        }
+        for (int i = 0; i < 3; i++) {
+            // Three activations, but never three within a minute
+            analyzer.add("s" + i, "Fan/Vibration", null, 2, AlarmJournalAnalyzer.ACTIVE, START + HOUR + i * 45_000);
+        }
+
+        JsonObject chatter = analyze().getAsJsonObject("chattering");
+        assertEquals(1L, chatter.get("chattering_sources").getAsLong());
+        JsonArray row = chatter.getAsJsonArray("rows").get(0).getAsJsonArray();
+        assertEquals("Motor/Overload", row.get(0).getAsString());
+        assertEquals(3L, row.get(1).getAsLong());
+    }
+
+    @Test
+    void floodIsMoreThanTenActivationsInTenMinutes() {
+        long window = START - START % 600_000 + 600_000;
+        for (int i = 0; i < 11; i++) {
+            analyzer.add("f" + i, "Line/Sensor" + i, null, 1, AlarmJournalAnalyzer.ACTIVE, window + i * 1_000);
+        }
+        for (int i = 0; i < 10; i++) {
+            analyzer.add("g" + i, "Line/Sensor" + i, null, 1, AlarmJournalAnalyzer.ACTIVE, window + HOUR + i * 1_000);
+        }
+
+        JsonObject flood = analyze().getAsJsonObject("flood");
+        assertEquals(1L, flood.get("flood_windows").getAsLong());
+        assertEquals(11L, flood.get("peak_activations").getAsLong());
+    }
+
+    @Test
+    void activeAlarmsAreBoundedWhenClearsAreMissing() {
+        int extra = 5;
+        for (int i = 0; i < AlarmJournalAnalyzer.MAX_ACTIVE + extra; i++) {
+            analyzer.add("e" + i, "Area/Alarm" + (i % 10), null, 1, AlarmJournalAnalyzer.ACTIVE, START + i);
+        }
+        // The oldest were dropped, so their clear is not measured
+        analyzer.add("e0", "Area/Alarm0", null, 1, AlarmJournalAnalyzer.CLEAR, START + HOUR);
+
+        JsonObject result = analyze();
+        JsonObject standing = result.getAsJsonObject("standing_alarms");
+        assertEquals((long) AlarmJournalAnalyzer.MAX_ACTIVE, standing.get("still_active").getAsLong());
+        assertEquals((long) extra, standing.get("not_tracked").getAsLong());
+        assertEquals(0L, result.getAsJsonObject("time_to_clear").get("count").getAsLong());
+    }
+
+    @Test
+    void nothingUntrackedWithinTheBound() {
+        analyzer.add("e1", "Pump/Trip", null, 3, AlarmJournalAnalyzer.ACTIVE, START);
+        assertFalse(analyze().getAsJsonObject("standing_alarms").has("not_tracked"));
+    }
+
+    @Test
+    void priorityNamesAndNumbers() {
+        assertEquals(3, AlarmJournalAnalyzer.priorityOf("high"));
+        assertEquals(2, AlarmJournalAnalyzer.priorityOf(" 2 "));
+        assertEquals("Critical", AlarmJournalAnalyzer.priorityName(4));
+        assertEquals("7", AlarmJournalAnalyzer.priorityName(7));
+    }
+
+    private JsonObject analyze() {
+        return analyzer.writeTo(new JsonObject(), 10);
+    }
+}
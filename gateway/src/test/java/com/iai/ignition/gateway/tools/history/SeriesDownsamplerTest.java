@@ -0,0 +1,181 @@
+package com.iai.ignition.gateway.tools.history;
+
+import com.iai.ignition.gateway.tools.result.TabularResultEncoder;
+import com.inductiveautomation.ignition.common.gson.JsonArray;
+import com.inductiveautomation.ignition.common.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Point selection, bucket edges and value rounding of the streaming downsampler.
+ */
+class SeriesDownsamplerTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    void lttbKeepsFirstLastAndSpike() {
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.LTTB, START, START + 1000, 5);
+        for (long t = 0; t <= 1000; t += 10) {
+            series.add(START + t, t == 500 ? 100.0 : 0.0, true);
+        }
+        series.finish();
+
+        JsonArray rows = rows(series, SeriesDownsampler.Mode.LTTB);
+        assertTrue(rows.size() <= 5, "at most maxPoints points: " + rows);
+        assertEquals(time(START), rows.get(0).getAsJsonArray().get(0));
+        assertEquals(time(START + 1000), rows.get(rows.size() - 1).getAsJsonArray().get(0));
+        assertTrue(contains(rows, START + 500, 100), "spike kept: " + rows);
+        assertFalse(series.isTruncated());
+    }
+
+    @Test
+    void lttbPointsAreInTimeOrder() {
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.LTTB, START, START + 10_000, 12);
+        for (long t = 0; t < 10_000; t += 7) {
+            series.add(START + t, Math.sin(t / 300.0), true);
+        }
+        series.finish();
+
+        JsonArray rows = rows(series, SeriesDownsampler.Mode.LTTB);
+        assertTrue(rows.size() <= 12, "at most maxPoints points: " + rows.size());
+        Instant previous = Instant.MIN;
+        for (int i = 0; i < rows.size(); i++) {
+            Instant time = Instant.parse(rows.get(i).getAsJsonArray().get(0).getAsString());
+            assertTrue(time.isAfter(previous), "time order at " + i + ": " + rows);
+            previous = time;
+        }
+    }
+
+    @Test
+    void minmaxEmitsExtremesInTimeOrder() {
+        // One bucket; the maximum comes before the minimum
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.MINMAX, START, START + 100, 2);
+        series.add(START, 5.0, true);
+        series.add(START + 10, 9.0, true);
+        series.add(START + 20, 1.0, true);
+        series.add(START + 30, 4.0, true);
+        series.finish();
+
+        JsonArray rows = rows(series, SeriesDownsampler.Mode.MINMAX);
+        assertEquals(2, rows.size());
+        assertEquals(time(START + 10), rows.get(0).getAsJsonArray().get(0));
+        assertEquals(9L, rows.get(0).getAsJsonArray().get(2).getAsLong());
+        assertEquals(time(START + 20), rows.get(1).getAsJsonArray().get(0));
+        assertEquals(1L, rows.get(1).getAsJsonArray().get(2).getAsLong());
+    }
+
+    @Test
+    void minmaxBucketWithOneSampleEmitsItOnce() {
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.MINMAX, START, START + 100, 2);
+        series.add(START + 50, 3.0, true);
+        series.finish();
+
+        assertEquals(1, rows(series, SeriesDownsampler.Mode.MINMAX).size());
+    }
+
+    @Test
+    void sampleAtEndOfRangeStaysInLastAggregateBucket() {
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.AGGREGATE, START, START + 1000, 10);
+        for (long t = 0; t <= 1000; t += 50) {
+            series.add(START + t, (double) t, true);
+        }
+        series.finish();
+
+        JsonArray rows = rows(series, SeriesDownsampler.Mode.AGGREGATE);
+        assertEquals(10, rows.size());
+        assertFalse(series.isTruncated());
+        // The last bucket starts at 900 and holds 900, 950 and the sample at the end
+        JsonArray last = rows.get(9).getAsJsonArray();
+        assertEquals(time(START + 900), last.get(0));
+        assertEquals(3L, last.get(5).getAsLong());
+        assertEquals(1000L, last.get(4).getAsLong());
+    }
+
+    @Test
+    void sampleBeforeStartCountsInFirstBucket() {
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.AGGREGATE, START, START + 1000, 10);
+        series.add(START - 5, 1.0, true);
+        series.add(START + 5, 3.0, true);
+        series.finish();
+
+        JsonArray rows = rows(series, SeriesDownsampler.Mode.AGGREGATE);
+        assertEquals(1, rows.size());
+        assertEquals(2L, rows.get(0).getAsJsonArray().get(5).getAsLong());
+        assertEquals(2L, rows.get(0).getAsJsonArray().get(2).getAsLong());
+    }
+
+    @Test
+    void rawStopsAtPointLimitAndSaysSo() {
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.RAW, START, START + 1000, 4);
+        for (long t = 0; t < 10; t++) {
+            series.add(START + t, (double) t, true);
+        }
+        series.finish();
+
+        assertEquals(4, rows(series, SeriesDownsampler.Mode.RAW).size());
+        assertTrue(series.isTruncated());
+        JsonObject summary = series.summary();
+        assertEquals(10L, summary.get("samples").getAsLong());
+        assertTrue(summary.get("truncated").getAsBoolean());
+    }
+
+    @Test
+    void badQualityAndNonNumericSamplesAreCountedNotUsed() {
+        SeriesDownsampler series = new SeriesDownsampler("p", SeriesDownsampler.Mode.AGGREGATE, START, START + 1000, 10);
+        series.add(START, 1.0, true);
+        series.add(START + 1, 1000.0, false);
+        series.add(START + 2, "text", true);
+        series.add(START + 3, Double.NaN, true);
+        series.finish();
+
+        JsonObject summary = series.summary();
+        assertEquals(1L, summary.get("samples").getAsLong());
+        assertEquals(1L, summary.get("bad_quality_samples").getAsLong());
+        assertEquals(2L, summary.get("non_numeric_samples").getAsLong());
+        assertEquals(1L, summary.get("max").getAsLong());
+    }
+
+    @Test
+    void integralValuesAreKeptExactly() {
+        assertEquals(12345678L, SeriesDownsampler.round(12345678));
+        assertEquals(-3L, SeriesDownsampler.round(-3));
+        assertEquals(9_007_199_254_740_992L, SeriesDownsampler.round(9_007_199_254_740_992.0));
+        // Beyond a long, the double is returned instead of a wrapped long
+        assertEquals(1e19, SeriesDownsampler.round(1e19));
+    }
+
+    @Test
+    void fractionalValuesAreRoundedWithoutLosingIntegerDigits() {
+        assertEquals(1.23457, SeriesDownsampler.round(1.23456789));
+        assertEquals(0.3, SeriesDownsampler.round(0.1 + 0.2));
+        assertEquals(1234568L, SeriesDownsampler.round(1234567.89));
+    }
+
+    private static JsonArray rows(SeriesDownsampler series, SeriesDownsampler.Mode mode) {
+        TabularResultEncoder table = new TabularResultEncoder();
+        SeriesDownsampler.addColumns(table, mode);
+        series.writeRows(table);
+        return table.getRows();
+    }
+
+    private static Object time(long millis) {
+        return TabularResultEncoder.encodeValue(new Date(millis));
+    }
+
+    private static boolean contains(JsonArray rows, long millis, double value) {
+        for (int i = 0; i < rows.size(); i++) {
+            JsonArray row = rows.get(i).getAsJsonArray();
+            if (row.get(0).equals(time(millis)) && row.get(2).getAsDouble() == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -18,6 +18,9 @@ dependencyResolutionManagement {
             url = uri("https://nexus.inductiveautomation.com/repository/public/")
         }
 
+        // Test libraries
+        mavenCentral()
+
         // Node.js download repository for web builds
         ivy {
             name = "Node.js"